@@ -115,6 +115,19 @@ public class ArffLoader {
         return this.instanceInformation;
     }
 
+    /**
+     * Gets the line of the file holding the next token to be parsed. Lines
+     * are numbered from 1.
+     *
+     * @return the line number, or -1 if the end of the file has been reached
+     */
+    public int getNextTokenLine() {
+        if (streamTokenizer.ttype == StreamTokenizer.TT_EOF) {
+            return -1;
+        }
+        return streamTokenizer.lineno();
+    }
+
     /**
      * Reads instance. It detects if it is dense or sparse.
      *
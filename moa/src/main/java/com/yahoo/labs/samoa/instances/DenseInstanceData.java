@@ -49,6 +49,15 @@ public class DenseInstanceData implements InstanceData{
     /** The attribute values. */
     protected double[] attributeValues;
 
+    /**
+     * Gets the attribute values, without copying them.
+     *
+     * @return the attribute values
+     */
+    public double[] getAttributeValues() {
+        return this.attributeValues;
+    }
+
     /**
      * Num attributes.
      *
@@ -97,6 +97,15 @@ public class InstanceImpl implements MultiLabelInstance {
         this.weight = 1;
     }
 
+    /**
+     * Gets the instance data.
+     *
+     * @return the instance data
+     */
+    public InstanceData getInstanceData() {
+        return this.instanceData;
+    }
+
     /**
      * Weight.
      *
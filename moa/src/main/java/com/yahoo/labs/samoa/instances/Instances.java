@@ -484,6 +484,17 @@ public class Instances implements Serializable {
         }
     }
 
+    /**
+     * Gets the line of the file being read that holds the next token to be
+     * parsed, so that reading can be resumed from it.
+     *
+     * @return the line number, or -1 if the whole file has been read or the
+     * instances are not read from a file
+     */
+    public int getNextTokenLine() {
+        return (arff == null) ? -1 : arff.getNextTokenLine();
+    }
+
     /**
      * Delete.
      */
@@ -64,7 +64,10 @@ public class SamoaToWekaInstanceConverter implements Serializable {
         }
         //wekaInstance.insertAttributeAt(inst.classIndex());
         wekaInstance.setDataset(wekaInstanceInformation);
-        if (inst.numOutputAttributes() == 1){
+        // The class value is usually already in the values, and setting it
+        // copies them again
+        if (inst.numOutputAttributes() == 1
+                && Double.compare(wekaInstance.classValue(), inst.classValue()) != 0){
             wekaInstance.setClassValue(inst.classValue());
         }
         
@@ -32,6 +32,7 @@ import com.yahoo.labs.samoa.instances.InstancesHeader;
 
 import moa.core.Measurement;
 import moa.core.ObjectRepository;
+import moa.core.Profiler;
 import moa.core.StringUtils;
 import moa.gui.AWTRenderer;
 import moa.learners.Learner;
@@ -74,6 +75,9 @@ public abstract class AbstractClassifier extends AbstractOptionHandler
     /** Random Generator used in randomizable learners  */
     public Random classifierRandom;
 
+    /** Instances of a batch selected for training, see selectTrainingInstances */
+    protected transient Instance[] trainingBatch;
+
     /**
      * Creates an classifier and setups the random seed option
      * if the classifier is randomizable.
@@ -99,7 +103,10 @@ public abstract class AbstractClassifier extends AbstractOptionHandler
 	
     @Override
     public double[] getVotesForInstance(Example<Instance> example){
-		return getVotesForInstance(example.getData());
+		long profileStart = Profiler.start();
+		double[] votes = getVotesForInstance(example.getData());
+		Profiler.stop(Profiler.Phase.PREDICTION, profileStart);
+		return votes;
 	}
 
     @Override
@@ -179,6 +186,48 @@ public abstract class AbstractClassifier extends AbstractOptionHandler
         }
     }
 
+    @Override
+    public void trainOnInstances(Instance[] batch, int n) {
+        for (int i = 0; i < n; i++) {
+            trainOnInstance(batch[i]);
+        }
+    }
+
+    @Override
+    public double[][] getVotesForInstances(Instance[] batch, int n) {
+        double[][] votes = new double[n][];
+        for (int i = 0; i < n; i++) {
+            votes[i] = getVotesForInstance(batch[i]);
+        }
+        return votes;
+    }
+
+    /**
+     * Selects the instances of a batch that trainOnInstance would train on,
+     * and adds their weight to the training weight seen by the model. For
+     * learners overriding trainOnInstances, which then train on the first
+     * instances of trainingBatch.
+     *
+     * @param batch the instances to train on
+     * @param n the number of instances in the batch
+     * @return the number of instances selected in trainingBatch
+     */
+    protected int selectTrainingInstances(Instance[] batch, int n) {
+        if (this.trainingBatch == null || this.trainingBatch.length < n) {
+            this.trainingBatch = new Instance[n];
+        }
+        boolean semiSupervised = this instanceof SemiSupervisedLearner;
+        int selected = 0;
+        for (int i = 0; i < n; i++) {
+            Instance inst = batch[i];
+            if (inst.weight() > 0.0 && (semiSupervised || !inst.classIsMissing())) {
+                this.trainingWeightSeenByModel += inst.weight();
+                this.trainingBatch[selected++] = inst;
+            }
+        }
+        return selected;
+    }
+
     @Override
     public Measurement[] getModelMeasurements() {
         List<Measurement> measurementList = new LinkedList<Measurement>();
@@ -246,7 +295,9 @@ public abstract class AbstractClassifier extends AbstractOptionHandler
     
     @Override
     public void trainOnInstance(Example<Instance> example){
+		long profileStart = Profiler.start();
 		trainOnInstance(example.getData());
+		Profiler.stop(Profiler.Phase.TRAINING, profileStart);
 	}
 
     @Override
@@ -76,6 +76,36 @@ public interface Classifier extends Learner<Example<Instance>> {
      * test instance in each class
      */
     public double[] getVotesForInstance(Instance inst);
+
+    /**
+     * Trains this learner on a batch of instances, as if trainOnInstance was
+     * called for each of them in order. Learners that can share work between
+     * the instances of a batch override it.
+     *
+     * @param batch the instances to be used for training
+     * @param n the number of instances at the start of the batch array to use
+     */
+    public default void trainOnInstances(Instance[] batch, int n) {
+        for (int i = 0; i < n; i++) {
+            trainOnInstance(batch[i]);
+        }
+    }
+
+    /**
+     * Predicts the class memberships for a batch of instances, as
+     * getVotesForInstance does for each of them.
+     *
+     * @param batch the instances to be classified
+     * @param n the number of instances at the start of the batch array to use
+     * @return an array with the votes of every instance
+     */
+    public default double[][] getVotesForInstances(Instance[] batch, int n) {
+        double[][] votes = new double[n][];
+        for (int i = 0; i < n; i++) {
+            votes[i] = getVotesForInstance(batch[i]);
+        }
+        return votes;
+    }
     
     /**
      * Sets the reference to the header of the data stream. The header of the
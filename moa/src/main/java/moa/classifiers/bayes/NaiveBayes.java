@@ -72,18 +72,96 @@ public class NaiveBayes extends AbstractClassifier  implements MultiClassClassif
             if (obs == null) {
                 obs = inst.attribute(instAttIndex).isNominal() ? newNominalClassObserver()
                         : newNumericClassObserver();
+                if (obs instanceof NominalAttributeClassObserver) {
+                    ((NominalAttributeClassObserver) obs).ensureCapacity(
+                            inst.attribute(instAttIndex).numValues(), inst.numClasses());
+                }
                 this.attributeObservers.set(i, obs);
             }
             obs.observeAttributeClass(inst.value(instAttIndex), (int) inst.classValue(), inst.weight());
         }
     }
 
+    /**
+     * Trains on a batch attribute by attribute, so every observer is looked
+     * up once per batch. Every observer still sees the instances in order, so
+     * the model is the same as when training one instance at a time.
+     */
+    @Override
+    public void trainOnInstances(Instance[] batch, int n) {
+        n = selectTrainingInstances(batch, n);
+        if (n == 0) {
+            return;
+        }
+        Instance[] insts = this.trainingBatch;
+        for (int j = 0; j < n; j++) {
+            this.observedClassDistribution.addToValue((int) insts[j].classValue(), insts[j].weight());
+        }
+        int numInputAttributes = insts[0].numAttributes() - 1;
+        for (int i = 0; i < numInputAttributes; i++) {
+            AttributeClassObserver obs = this.attributeObservers.get(i);
+            for (int j = 0; j < n; j++) {
+                Instance inst = insts[j];
+                int instAttIndex = modelAttIndexToInstanceAttIndex(i, inst);
+                if (obs == null) {
+                    obs = inst.attribute(instAttIndex).isNominal() ? newNominalClassObserver()
+                            : newNumericClassObserver();
+                    if (obs instanceof NominalAttributeClassObserver) {
+                        ((NominalAttributeClassObserver) obs).ensureCapacity(
+                                inst.attribute(instAttIndex).numValues(), inst.numClasses());
+                    }
+                    this.attributeObservers.set(i, obs);
+                }
+                obs.observeAttributeClass(inst.value(instAttIndex), (int) inst.classValue(), inst.weight());
+            }
+        }
+    }
+
     @Override
     public double[] getVotesForInstance(Instance inst) {
         return doNaiveBayesPrediction(inst, this.observedClassDistribution,
                 this.attributeObservers);
     }
 
+    /**
+     * Predicts a batch attribute by attribute, multiplying the votes by the
+     * probabilities in the same order as doNaiveBayesPrediction.
+     */
+    @Override
+    public double[][] getVotesForInstances(Instance[] batch, int n) {
+        double[][] votes = new double[n][];
+        if (n == 0) {
+            return votes;
+        }
+        int numClasses = this.observedClassDistribution.numValues();
+        double observedClassSum = this.observedClassDistribution.sumOfValues();
+        for (int j = 0; j < n; j++) {
+            votes[j] = new double[numClasses];
+            for (int classIndex = 0; classIndex < numClasses; classIndex++) {
+                votes[j][classIndex] = this.observedClassDistribution.getValue(classIndex)
+                        / observedClassSum;
+            }
+        }
+        int numInputAttributes = batch[0].numAttributes() - 1;
+        for (int attIndex = 0; attIndex < numInputAttributes; attIndex++) {
+            AttributeClassObserver obs = this.attributeObservers.get(attIndex);
+            if (obs == null) {
+                continue;
+            }
+            for (int j = 0; j < n; j++) {
+                Instance inst = batch[j];
+                int instAttIndex = modelAttIndexToInstanceAttIndex(attIndex, inst);
+                if (!inst.isMissing(instAttIndex)) {
+                    double value = inst.value(instAttIndex);
+                    for (int classIndex = 0; classIndex < numClasses; classIndex++) {
+                        votes[j][classIndex] *= obs.probabilityOfAttributeValueGivenClass(value, classIndex);
+                    }
+                }
+            }
+        }
+        return votes;
+    }
+
     @Override
     protected Measurement[] getModelMeasurementsImpl() {
         return null;
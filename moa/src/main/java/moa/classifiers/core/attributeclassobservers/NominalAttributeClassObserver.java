@@ -27,6 +27,12 @@ import moa.core.ObjectRepository;
 import moa.tasks.TaskMonitor;
 import moa.core.Utils;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.ListIterator;
+
 import moa.core.AutoExpandVector;
 import moa.core.DoubleVector;
 import moa.options.AbstractOptionHandler;
@@ -36,19 +42,46 @@ import moa.options.AbstractOptionHandler;
  * This observer monitors the class distribution of a given attribute.
  * Used in naive Bayes and decision trees to monitor data statistics on leaves.
  *
+ * The weights are stored in one array, a row of attribute values per class,
+ * that grows when a new value or class is seen and can be sized beforehand
+ * from the header with {@link #ensureCapacity(int, int)}.
+ *
  * @author Richard Kirkby (rkirkby@cs.waikato.ac.nz)
  * @version $Revision: 7 $
  */
 public class NominalAttributeClassObserver extends AbstractOptionHandler implements
         DiscreteAttributeClassObserver {
 
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 2L;
 
     protected double totalWeightObserved = 0.0;
 
     protected double missingWeightObserved = 0.0;
 
-    public AutoExpandVector<DoubleVector> attValDistPerClass = new AutoExpandVector<DoubleVector>();
+    // weight of every attribute value per class, in rows of rowCapacity values
+    protected double[] attValWeights = new double[0];
+
+    protected int rowCapacity;
+
+    // number of attribute values observed per class, 0 if the class is not observed
+    protected int[] numAttValsPerClass = new int[0];
+
+    // one more than the highest class observed
+    protected int numClassesObserved;
+
+    /**
+     * The distribution of the attribute values per class, as the observer
+     * kept it before the weights were stored in one array. It is rebuilt from
+     * the weights when it is read after new observations, and changes made to
+     * it are not observed.
+     *
+     * @deprecated use {@link #getAttValDistPerClass()}
+     */
+    @Deprecated
+    public AutoExpandVector<DoubleVector> attValDistPerClass = new AttValDistPerClassView();
+
+    // whether attValDistPerClass has to be rebuilt before it is read
+    protected boolean attValDistPerClassChanged;
 
     @Override
     public void observeAttributeClass(double attVal, int classVal, double weight) {
@@ -56,22 +89,76 @@ public class NominalAttributeClassObserver extends AbstractOptionHandler impleme
             this.missingWeightObserved += weight;
         } else {
             int attValInt = (int) attVal;
-            DoubleVector valDist = this.attValDistPerClass.get(classVal);
-            if (valDist == null) {
-                valDist = new DoubleVector();
-                this.attValDistPerClass.set(classVal, valDist);
+            if (attValInt < 0) {
+                throw new ArrayIndexOutOfBoundsException(attValInt);
+            }
+            if (classVal >= this.numAttValsPerClass.length
+                    || attValInt >= this.rowCapacity) {
+                grow(Math.max(attValInt + 1, this.rowCapacity),
+                        Math.max(classVal + 1, this.numAttValsPerClass.length));
             }
-            valDist.addToValue(attValInt, weight);
+            this.attValWeights[classVal * this.rowCapacity + attValInt] += weight;
+            if (attValInt >= this.numAttValsPerClass[classVal]) {
+                this.numAttValsPerClass[classVal] = attValInt + 1;
+            }
+            if (classVal >= this.numClassesObserved) {
+                this.numClassesObserved = classVal + 1;
+            }
+            this.attValDistPerClassChanged = true;
         }
         this.totalWeightObserved += weight;
     }
 
+    /**
+     * Makes room for the weights of a number of attribute values and classes,
+     * usually those of the header, so that they are not grown while observing.
+     *
+     * @param numAttValues the number of values of the attribute
+     * @param numClasses the number of classes
+     */
+    public void ensureCapacity(int numAttValues, int numClasses) {
+        if (numAttValues > this.rowCapacity
+                || numClasses > this.numAttValsPerClass.length) {
+            grow(numAttValues, numClasses);
+        }
+    }
+
+    protected void grow(int numAttValues, int numClasses) {
+        int newRowCapacity = Math.max(this.rowCapacity, numAttValues);
+        if (newRowCapacity > this.rowCapacity && this.rowCapacity > 0) {
+            newRowCapacity = Math.max(newRowCapacity, 2 * this.rowCapacity);
+        }
+        int newNumRows = Math.max(this.numAttValsPerClass.length, numClasses);
+        if (newNumRows > this.numAttValsPerClass.length && this.numAttValsPerClass.length > 0) {
+            newNumRows = Math.max(newNumRows, 2 * this.numAttValsPerClass.length);
+        }
+        double[] newWeights = new double[newRowCapacity * newNumRows];
+        for (int i = 0; i < this.numClassesObserved; i++) {
+            System.arraycopy(this.attValWeights, i * this.rowCapacity,
+                    newWeights, i * newRowCapacity, this.numAttValsPerClass[i]);
+        }
+        this.attValWeights = newWeights;
+        this.rowCapacity = newRowCapacity;
+        this.numAttValsPerClass = Arrays.copyOf(this.numAttValsPerClass, newNumRows);
+    }
+
     @Override
     public double probabilityOfAttributeValueGivenClass(double attVal,
             int classVal) {
-        DoubleVector obs = this.attValDistPerClass.get(classVal);
-        return obs != null ? (obs.getValue((int) attVal) + 1.0)
-                / (obs.sumOfValues() + obs.numValues()) : 0.0;
+        int numAttVals = classVal >= 0 && classVal < this.numAttValsPerClass.length
+                ? this.numAttValsPerClass[classVal] : 0;
+        if (numAttVals == 0) {
+            return 0.0;
+        }
+        int offset = classVal * this.rowCapacity;
+        double sum = 0.0;
+        for (int j = 0; j < numAttVals; j++) {
+            sum += this.attValWeights[offset + j];
+        }
+        int attValInt = (int) attVal;
+        double attValWeight = attValInt >= 0 && attValInt < numAttVals
+                ? this.attValWeights[offset + attValInt] : 0.0;
+        return (attValWeight + 1.0) / (sum + numAttVals);
     }
 
     public double totalWeightOfClassObservations() {
@@ -82,6 +169,126 @@ public class NominalAttributeClassObserver extends AbstractOptionHandler impleme
         return this.missingWeightObserved;
     }
 
+    /**
+     * Returns the weight observed for an attribute value, over all classes.
+     */
+    public double weightOfAttributeValue(int attVal) {
+        double weight = 0.0;
+        for (int i = 0; i < this.numClassesObserved; i++) {
+            if (attVal >= 0 && attVal < this.numAttValsPerClass[i]) {
+                weight += this.attValWeights[i * this.rowCapacity + attVal];
+            }
+        }
+        return weight;
+    }
+
+    /**
+     * Returns the distribution of the attribute values per class, indexed by
+     * class, with null for the classes not observed. The vectors are copies
+     * of the weights observed.
+     */
+    public AutoExpandVector<DoubleVector> getAttValDistPerClass() {
+        AutoExpandVector<DoubleVector> attValDistPerClass = new AutoExpandVector<DoubleVector>(this.numClassesObserved);
+        addAttValDistPerClass(attValDistPerClass);
+        return attValDistPerClass;
+    }
+
+    protected void addAttValDistPerClass(AutoExpandVector<DoubleVector> attValDistPerClass) {
+        for (int i = 0; i < this.numClassesObserved; i++) {
+            int numAttVals = this.numAttValsPerClass[i];
+            attValDistPerClass.add(numAttVals > 0
+                    ? new DoubleVector(Arrays.copyOfRange(this.attValWeights,
+                    i * this.rowCapacity, i * this.rowCapacity + numAttVals))
+                    : null);
+        }
+    }
+
+    /**
+     * The deprecated attValDistPerClass field, rebuilt from the weights by
+     * the methods that read it when there were new observations.
+     */
+    protected class AttValDistPerClassView extends AutoExpandVector<DoubleVector> {
+
+        private static final long serialVersionUID = 1L;
+
+        protected void refresh() {
+            if (attValDistPerClassChanged) {
+                attValDistPerClassChanged = false;
+                super.clear();
+                addAttValDistPerClass(this);
+            }
+        }
+
+        @Override
+        public DoubleVector get(int pos) {
+            refresh();
+            return super.get(pos);
+        }
+
+        @Override
+        public int size() {
+            refresh();
+            return super.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            refresh();
+            return super.isEmpty();
+        }
+
+        @Override
+        public Iterator<DoubleVector> iterator() {
+            refresh();
+            return super.iterator();
+        }
+
+        @Override
+        public ListIterator<DoubleVector> listIterator() {
+            refresh();
+            return super.listIterator();
+        }
+
+        @Override
+        public ListIterator<DoubleVector> listIterator(int index) {
+            refresh();
+            return super.listIterator(index);
+        }
+
+        @Override
+        public Object[] toArray() {
+            refresh();
+            return super.toArray();
+        }
+
+        @Override
+        public <T> T[] toArray(T[] a) {
+            refresh();
+            return super.toArray(a);
+        }
+
+        @Override
+        public int indexOf(Object o) {
+            refresh();
+            return super.indexOf(o);
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            refresh();
+            return super.contains(o);
+        }
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        // the view is written empty and rebuilt when it is read
+        if (this.attValDistPerClass instanceof AttValDistPerClassView) {
+            this.attValDistPerClass.clear();
+            this.attValDistPerClassChanged = true;
+        }
+        out.defaultWriteObject();
+    }
+
     @Override
     public AttributeSplitSuggestion getBestEvaluatedSplitSuggestion(
             SplitCriterion criterion, double[] preSplitDist, int attIndex,
@@ -111,10 +318,9 @@ public class NominalAttributeClassObserver extends AbstractOptionHandler impleme
 
     public int getMaxAttValsObserved() {
         int maxAttValsObserved = 0;
-        for (DoubleVector attValDist : this.attValDistPerClass) {
-            if ((attValDist != null)
-                    && (attValDist.numValues() > maxAttValsObserved)) {
-                maxAttValsObserved = attValDist.numValues();
+        for (int i = 0; i < this.numClassesObserved; i++) {
+            if (this.numAttValsPerClass[i] > maxAttValsObserved) {
+                maxAttValsObserved = this.numAttValsPerClass[i];
             }
         }
         return maxAttValsObserved;
@@ -122,42 +328,53 @@ public class NominalAttributeClassObserver extends AbstractOptionHandler impleme
 
     public double[][] getClassDistsResultingFromMultiwaySplit(
             int maxAttValsObserved) {
-        DoubleVector[] resultingDists = new DoubleVector[maxAttValsObserved];
-        for (int i = 0; i < resultingDists.length; i++) {
-            resultingDists[i] = new DoubleVector();
-        }
-        for (int i = 0; i < this.attValDistPerClass.size(); i++) {
-            DoubleVector attValDist = this.attValDistPerClass.get(i);
-            if (attValDist != null) {
-                for (int j = 0; j < attValDist.numValues(); j++) {
-                    resultingDists[j].addToValue(i, attValDist.getValue(j));
-                }
+        // each distribution is as long as the highest class observed with its value
+        int[] numClasses = new int[maxAttValsObserved];
+        for (int i = 0; i < this.numClassesObserved; i++) {
+            int numAttVals = Math.min(this.numAttValsPerClass[i], maxAttValsObserved);
+            for (int j = 0; j < numAttVals; j++) {
+                numClasses[j] = i + 1;
             }
         }
         double[][] distributions = new double[maxAttValsObserved][];
-        for (int i = 0; i < distributions.length; i++) {
-            distributions[i] = resultingDists[i].getArrayRef();
+        for (int j = 0; j < distributions.length; j++) {
+            distributions[j] = new double[numClasses[j]];
+        }
+        for (int i = 0; i < this.numClassesObserved; i++) {
+            int offset = i * this.rowCapacity;
+            int numAttVals = Math.min(this.numAttValsPerClass[i], maxAttValsObserved);
+            for (int j = 0; j < numAttVals; j++) {
+                distributions[j][i] += this.attValWeights[offset + j];
+            }
         }
         return distributions;
     }
 
     public double[][] getClassDistsResultingFromBinarySplit(int valIndex) {
-        DoubleVector equalsDist = new DoubleVector();
-        DoubleVector notEqualDist = new DoubleVector();
-        for (int i = 0; i < this.attValDistPerClass.size(); i++) {
-            DoubleVector attValDist = this.attValDistPerClass.get(i);
-            if (attValDist != null) {
-                for (int j = 0; j < attValDist.numValues(); j++) {
-                    if (j == valIndex) {
-                        equalsDist.addToValue(i, attValDist.getValue(j));
-                    } else {
-                        notEqualDist.addToValue(i, attValDist.getValue(j));
-                    }
+        int numClassesEqual = 0;
+        int numClassesNotEqual = 0;
+        for (int i = 0; i < this.numClassesObserved; i++) {
+            int numAttVals = this.numAttValsPerClass[i];
+            if (valIndex >= 0 && valIndex < numAttVals) {
+                numClassesEqual = i + 1;
+            }
+            if (numAttVals > 1 || (numAttVals == 1 && valIndex != 0)) {
+                numClassesNotEqual = i + 1;
+            }
+        }
+        double[] equalsDist = new double[numClassesEqual];
+        double[] notEqualDist = new double[numClassesNotEqual];
+        for (int i = 0; i < this.numClassesObserved; i++) {
+            int offset = i * this.rowCapacity;
+            for (int j = 0; j < this.numAttValsPerClass[i]; j++) {
+                if (j == valIndex) {
+                    equalsDist[i] += this.attValWeights[offset + j];
+                } else {
+                    notEqualDist[i] += this.attValWeights[offset + j];
                 }
             }
         }
-        return new double[][]{equalsDist.getArrayRef(),
-                    notEqualDist.getArrayRef()};
+        return new double[][]{equalsDist, notEqualDist};
     }
 
     @Override
@@ -51,6 +51,8 @@ public class Cramer extends AbstractOptionHandler implements StatisticalTest {
 
     private List<Instance> sample1i;
     private List<Instance> sample2i;
+    private DistanceCache.Sample sample1;
+    private DistanceCache.Sample sample2;
 
     public FloatOption confidenceLevelOption = new FloatOption(
             "confidenceLevel",
@@ -174,6 +176,26 @@ public class Cramer extends AbstractOptionHandler implements StatisticalTest {
         }
     }
 
+    /**
+     * Returns the distances between the instances of a sample transformed by
+     * a kernel, computed once for every kernel and stored with the sample.
+     */
+    private double[][] kernelDistances(DistanceCache.Sample sample, int kernel) {
+        synchronized (sample) {
+            double[][] lookup = sample.getKernelDistances(kernel);
+            if (lookup == null) {
+                double[][] distances = sample.getDistances();
+                lookup = new double[distances.length][];
+                for (int i = 0; i < distances.length; i++) {
+                    lookup[i] = distances[i].clone();
+                }
+                this.kernel(kernel, lookup);
+                sample.putKernelDistances(kernel, lookup);
+            }
+            return lookup;
+        }
+    }
+
     private double sumCells(double[][] lookup, int[] xind, int[] yind) {
         double sum = 0;
         for (int i = 0; i < xind.length; i++) {
@@ -507,10 +529,6 @@ public class Cramer extends AbstractOptionHandler implements StatisticalTest {
             System.arraycopy(y.get(i).toArray(), 0, values, 0, values.length);
             daten[i + RVAL.m] = values;
         }
-        return this.compute(RVAL, daten, replicates, sim, justStatistic, kernel, maxM, k);
-    }
-
-    private CramerTest compute(CramerTest RVAL, double[][] daten, int replicates, String sim, boolean justStatistic, int kernel, double maxM, int k) {
         // lookup<-matrix(rep(0,(RVAL$m+RVAL$n)^2),ncol=(RVAL$m+RVAL$n))
         double[][] lookup = new double[RVAL.m + RVAL.n][RVAL.m + RVAL.n];
         // for (i in 2:(RVAL$m+RVAL$n)) for (j in 1:(i-1)) { lookup[i,j]<-sum((daten[i,]-daten[j,])^2); lookup[j,i]<-lookup[i,j]; }
@@ -522,6 +540,10 @@ public class Cramer extends AbstractOptionHandler implements StatisticalTest {
         }
         // lookup<-eval(call(kernel,lookup))
         this.kernel(kernel, lookup);
+        return this.compute(RVAL, lookup, replicates, sim, justStatistic, kernel, maxM, k);
+    }
+
+    private CramerTest compute(CramerTest RVAL, double[][] lookup, int replicates, String sim, boolean justStatistic, int kernel, double maxM, int k) {
         if (justStatistic) {
             RVAL.statistic = this.cramerStatistic(RVAL.m, RVAL.n, lookup);
         } else if (sim.equals("eigenvalue")) {
@@ -603,32 +625,45 @@ public class Cramer extends AbstractOptionHandler implements StatisticalTest {
     }
 
     public CramerTest cramerTest(List<Instance> x, List<Instance> y, double confLevel, int replicates, String sim, boolean justStatistic, int kernel, double maxM, int k) {
+        return this.cramerTest(new DistanceCache.Sample(x), new DistanceCache.Sample(y), confLevel, replicates, sim, justStatistic, kernel, maxM, k);
+    }
+
+    public CramerTest cramerTest(DistanceCache.Sample x, DistanceCache.Sample y) {
+        return this.cramerTest(x, y, this.confidenceLevelOption.getValue(), this.replicatesOption.getValue(), "ordinary", false, this.kernelOption.getChosenIndex(), this.maxMOption.getValue(), this.kOption.getValue());
+    }
+
+    /**
+     * Performs the test on two samples, reusing the distances between the
+     * instances of each sample transformed by the kernel, so only the
+     * distances between the instances of different samples are computed.
+     */
+    public CramerTest cramerTest(DistanceCache.Sample x, DistanceCache.Sample y, double confLevel, int replicates, String sim, boolean justStatistic, int kernel, double maxM, int k) {
         CramerTest RVAL = new CramerTest(0, 0, 0, 0, 0, 0, 0, confLevel, replicates, null, null, null);
         // if ((is.matrix(x))&&(is.matrix(y))) if (ncol(x)==ncol(y)) RVAL$d<-ncol(x)
-        RVAL.d = x.get(0).numAttributes();
+        RVAL.d = x.numAttributes();
         // RVAL$m<-nrow(x)
         RVAL.m = x.size();
         // RVAL$n<-nrow(y)
         RVAL.n = y.size();
-        // daten<-matrix(c(t(x),t(y)),ncol=ncol(x),byrow=TRUE)
-        double[][] daten = new double[RVAL.m + RVAL.n][];
+        // lookup<-matrix(rep(0,(RVAL$m+RVAL$n)^2),ncol=(RVAL$m+RVAL$n))
+        double[][] lookup = new double[RVAL.m + RVAL.n][RVAL.m + RVAL.n];
+        double[][] lookupX = this.kernelDistances(x, kernel);
+        double[][] lookupY = this.kernelDistances(y, kernel);
         for (int i = 0; i < RVAL.m; i++) {
-            Instance inst = x.get(i);
-            double[] values = new double[inst.numAttributes() - 1];
-            for (int j = 0; j < values.length; j++) {
-                values[j] = inst.value(j);
-            }
-            daten[i] = values;
+            System.arraycopy(lookupX[i], 0, lookup[i], 0, RVAL.m);
         }
         for (int i = 0; i < RVAL.n; i++) {
-            Instance inst = y.get(i);
-            double[] values = new double[inst.numAttributes() - 1];
-            for (int j = 0; j < values.length; j++) {
-                values[j] = inst.value(j);
+            System.arraycopy(lookupY[i], 0, lookup[i + RVAL.m], RVAL.m, RVAL.n);
+        }
+        double[][] lookupXY = x.getDistances(y);
+        this.kernel(kernel, lookupXY);
+        for (int i = 0; i < RVAL.m; i++) {
+            for (int j = 0; j < RVAL.n; j++) {
+                lookup[i][j + RVAL.m] = lookupXY[i][j];
+                lookup[j + RVAL.m][i] = lookupXY[i][j];
             }
-            daten[i + RVAL.m] = values;
         }
-        return this.compute(RVAL, daten, replicates, sim, justStatistic, kernel, maxM, k);
+        return this.compute(RVAL, lookup, replicates, sim, justStatistic, kernel, maxM, k);
     }
 
     private void reverse(double[] array) {
@@ -733,6 +768,9 @@ public class Cramer extends AbstractOptionHandler implements StatisticalTest {
 
     @Override
     public Double call() throws Exception {
+        if (this.sample1 != null) {
+            return this.cramerTest(this.sample1, this.sample2).confLevel;
+        }
         return this.test(sample1i, sample2i);
     }
 
@@ -740,5 +778,15 @@ public class Cramer extends AbstractOptionHandler implements StatisticalTest {
     public void set(List<Instance> x, List<Instance> y) {
         this.sample1i = x;
         this.sample2i = y;
+        this.sample1 = null;
+        this.sample2 = null;
+    }
+
+    @Override
+    public void set(List<Instance> x, List<Instance> y, DistanceCache cache) {
+        this.sample1i = x;
+        this.sample2i = y;
+        this.sample1 = cache.getSample(x);
+        this.sample2 = cache.getSample(y);
     }
 }
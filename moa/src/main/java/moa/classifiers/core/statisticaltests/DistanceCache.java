@@ -0,0 +1,181 @@
+/*
+ *    DistanceCache.java
+ *    Copyright (C) 2018 University of Waikato, Hamilton, New Zealand
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.classifiers.core.statisticaltests;
+
+import com.yahoo.labs.samoa.instances.Instance;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache of the samples compared by the statistical tests. The attribute
+ * values of a sample and the squared euclidean distances between its
+ * instances are computed once and reused by every test comparing it, so a
+ * test only computes the distances between the instances of its two samples.
+ *
+ * A sample is cached for a list of instances, as long as the list holds the
+ * same instances. The values are copied from the list when the sample is
+ * created, so the tests do not read the list while it changes.
+ *
+ * @version $Revision: 1 $
+ */
+public class DistanceCache {
+
+    /**
+     * The attribute values of a list of instances, without the class that is
+     * the last attribute, and the distances between them.
+     */
+    public static class Sample {
+
+        protected final Instance[] instances;
+
+        protected final double[][] values;
+
+        protected double[][] distances;
+
+        protected Map<Integer, double[][]> kernelDistances;
+
+        public Sample(List<Instance> instances) {
+            this.instances = instances.toArray(new Instance[instances.size()]);
+            this.values = new double[this.instances.length][];
+            for (int i = 0; i < this.instances.length; i++) {
+                Instance inst = this.instances[i];
+                double[] row = new double[inst.numAttributes() - 1];
+                for (int j = 0; j < row.length; j++) {
+                    row[j] = inst.value(j);
+                }
+                this.values[i] = row;
+            }
+        }
+
+        public int size() {
+            return this.values.length;
+        }
+
+        public int numAttributes() {
+            return this.instances[0].numAttributes();
+        }
+
+        /**
+         * Returns whether the sample holds the instances of a list.
+         */
+        public boolean holds(List<Instance> list) {
+            if (list.size() != this.instances.length) {
+                return false;
+            }
+            for (int i = 0; i < this.instances.length; i++) {
+                if (list.get(i) != this.instances[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Returns the squared distances between the instances of the sample,
+         * computed the first time they are needed.
+         */
+        public synchronized double[][] getDistances() {
+            if (this.distances == null) {
+                int n = this.values.length;
+                double[][] d = new double[n][n];
+                for (int i = 1; i < n; i++) {
+                    for (int j = 0; j < i; j++) {
+                        d[i][j] = squaredDistance(this.values[i], this.values[j]);
+                        d[j][i] = d[i][j];
+                    }
+                }
+                this.distances = d;
+            }
+            return this.distances;
+        }
+
+        /**
+         * Returns the distances transformed by a kernel, if they were stored.
+         */
+        public synchronized double[][] getKernelDistances(int kernel) {
+            return this.kernelDistances == null ? null : this.kernelDistances.get(kernel);
+        }
+
+        public synchronized void putKernelDistances(int kernel, double[][] distances) {
+            if (this.kernelDistances == null) {
+                this.kernelDistances = new HashMap<>();
+            }
+            this.kernelDistances.put(kernel, distances);
+        }
+
+        /**
+         * Returns the squared distances from the instances of the sample, in
+         * rows, to the instances of another sample, in columns.
+         */
+        public double[][] getDistances(Sample other) {
+            double[][] d = new double[this.values.length][other.values.length];
+            for (int i = 0; i < this.values.length; i++) {
+                for (int j = 0; j < other.values.length; j++) {
+                    d[i][j] = squaredDistance(this.values[i], other.values[j]);
+                }
+            }
+            return d;
+        }
+    }
+
+    protected final Map<List<Instance>, Sample> samples = new IdentityHashMap<>();
+
+    /**
+     * Returns the sample of a list of instances, from the cache if the list
+     * still holds the same instances.
+     */
+    public synchronized Sample getSample(List<Instance> instances) {
+        Sample sample = this.samples.get(instances);
+        if (sample == null || !sample.holds(instances)) {
+            sample = new Sample(instances);
+            this.samples.put(instances, sample);
+        }
+        return sample;
+    }
+
+    /**
+     * Removes the samples of the lists that are not in use any more.
+     */
+    public synchronized void retain(Collection<List<Instance>> inUse) {
+        Map<List<Instance>, Sample> kept = new IdentityHashMap<>();
+        for (List<Instance> instances : inUse) {
+            Sample sample = this.samples.get(instances);
+            if (sample != null) {
+                kept.put(instances, sample);
+            }
+        }
+        this.samples.clear();
+        this.samples.putAll(kept);
+    }
+
+    public synchronized void clear() {
+        this.samples.clear();
+    }
+
+    public static double squaredDistance(double[] a, double[] b) {
+        double sum = 0;
+        for (int k = 0; k < a.length; k++) {
+            sum += (a[k] - b[k]) * (a[k] - b[k]);
+        }
+        return sum;
+    }
+}
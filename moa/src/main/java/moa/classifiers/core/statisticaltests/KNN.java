@@ -21,7 +21,6 @@ package moa.classifiers.core.statisticaltests;
 
 import com.github.javacliparser.IntOption;
 import com.yahoo.labs.samoa.instances.Instance;
-import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 import java.util.PriorityQueue;
@@ -40,16 +39,15 @@ public class KNN extends AbstractOptionHandler implements StatisticalTest {
 
     private List<Instance> sample1i;
     private List<Instance> sample2i;
+    private DistanceCache.Sample sample1;
+    private DistanceCache.Sample sample2;
 
     public IntOption kValueOption = new IntOption("kValue", 'k',
             "K value of the K nearest neighbours algorithm.", 5, 1,
             Integer.MAX_VALUE);
 
-    private double[] compute(double[][] set, int d, int n1, int n2) throws InterruptedException {
+    private double[] compute(int n1, int n2, int[] counts) {
         double n = n1 + n2;
-        Arrays.fill(set[d], 0, n1, 1.0);
-        Arrays.fill(set[d], n1, n1 + n2, 2.0);
-        int[] counts = this.knn(set, n1 + n2, d, this.kValueOption.getValue());
         double Tk = 0;
         for (int i = 0; i < counts.length; i++) {
             Tk += counts[i];
@@ -66,30 +64,37 @@ public class KNN extends AbstractOptionHandler implements StatisticalTest {
         return new double[]{Tk, Z, P};
     }
 
-    private double[] attributeToDoubleArray(List<Instance> list, int attIndex) {
-        double[] ret = new double[list.size()];
-        for (int i = 0; i < list.size(); i++) {
-            ret[i] = list.get(i).value(attIndex);
+    public double[] mtsknn(List<Instance> x, List<Instance> y) throws InterruptedException {
+        if (x.get(0).numAttributes() != y.get(0).numAttributes()) {
+            System.out.println("The dimensions of two samples must match!!!");
+            return null;
         }
-        return ret;
+        return this.mtsknn(new DistanceCache.Sample(x), new DistanceCache.Sample(y));
     }
 
-    public double[] mtsknn(List<Instance> x, List<Instance> y) throws InterruptedException {
-        if (x.get(0).numAttributes() != y.get(0).numAttributes()) {
+    /**
+     * Performs the test on two samples, reusing the distances between the
+     * instances of each sample, so only the distances between the instances
+     * of different samples are computed.
+     *
+     * @param x First sample
+     * @param y Second sample
+     * @return the statistic, the normalized statistic and the p-value
+     * @throws InterruptedException
+     */
+    public double[] mtsknn(DistanceCache.Sample x, DistanceCache.Sample y) throws InterruptedException {
+        if (x.numAttributes() != y.numAttributes()) {
             System.out.println("The dimensions of two samples must match!!!");
             return null;
         }
-        int d = x.get(0).numAttributes() - 1;
         int n1 = x.size();
         int n2 = y.size();
-        double[][] set = new double[d + 1][n1 + n2];
-        for (int i = 0; i < d; i++) {
-            double[] t1 = this.attributeToDoubleArray(x, i);
-            double[] t2 = this.attributeToDoubleArray(y, i);
-            System.arraycopy(t1, 0, set[i], 0, t1.length);
-            System.arraycopy(t2, 0, set[i], t1.length, t2.length);
-        }
-        return this.compute(set, d, n1, n2);
+        double[][] distances1 = x.getDistances();
+        double[][] distances2 = y.getDistances();
+        double[][] distances12 = x.getDistances(y);
+        int[] counts = this.knn(distances1, distances2, distances12, n1, n2,
+                this.kValueOption.getValue());
+        return this.compute(n1, n2, counts);
     }
 
     private double pnorm(double x, double mu, double sigma, boolean lower_tail,
@@ -148,31 +153,36 @@ public class KNN extends AbstractOptionHandler implements StatisticalTest {
         }
     }
 
-    // Calculando as distancias entre dois pontos para todos os atributos
-    private double dist(double[][] points, int v1, int v2, int d) {
-        double sum = 0;
-        for (int i = 0; i != d; ++i) {
-            // Do not use Math.pow! It is 8x slower than computing directly
-            sum += (points[i][v1] - points[i][v2])
-                    * (points[i][v1] - points[i][v2]);
+    // Distancia entre dois pontos, com os pontos da primeira amostra antes
+    // dos pontos da segunda amostra
+    private double dist(double[][] distances1, double[][] distances2,
+            double[][] distances12, int n1, int v1, int v2) {
+        if (v1 < n1) {
+            return v2 < n1 ? distances1[v1][v2] : distances12[v1][v2 - n1];
         }
-        return sum;
+        return v2 < n1 ? distances12[v2][v1 - n1] : distances2[v1 - n1][v2 - n1];
     }
 
     /**
      * Computes, for each instance, the number of the k nearest neighbors that
      * are from the same sample.
      *
-     * @param points Instances of both samples put together, with the last
-     * column having 1 for the first sample and 2 for the second sample.
-     * @param n Number of instances.
-     * @param d Number of attributes + 1 column.
+     * @param distances1 Squared distances between the instances of the first
+     * sample.
+     * @param distances2 Squared distances between the instances of the second
+     * sample.
+     * @param distances12 Squared distances from the instances of the first
+     * sample to the instances of the second sample.
+     * @param n1 Number of instances of the first sample.
+     * @param n2 Number of instances of the second sample.
      * @param k K nearest neighbors.
      * @return the number of the closest neighbors that are from the same
      * sample.
      * @throws InterruptedException
      */
-    private int[] knn(double[][] points, int n, int d, int k) throws InterruptedException {
+    private int[] knn(double[][] distances1, double[][] distances2,
+            double[][] distances12, int n1, int n2, int k) throws InterruptedException {
+        int n = n1 + n2;
         int[] counts = new int[n];
         int[] closest = new int[n * k];
         // Percorrendo todos os atributos
@@ -186,7 +196,8 @@ public class KNN extends AbstractOptionHandler implements StatisticalTest {
             // Percorrendo os valores do atributo
             for (int j = 0; j != n; ++j) {
                 if (i != j) {
-                    DIPair dis = new DIPair(this.dist(points, i, j, d), j);
+                    DIPair dis = new DIPair(this.dist(distances1, distances2,
+                            distances12, n1, i, j), j);
                     if (q.size() == k) {
                         if (dis.getE() < q.peek().getE()) {
                             q.add(dis);
@@ -213,7 +224,7 @@ public class KNN extends AbstractOptionHandler implements StatisticalTest {
             for (int j = 0; j != k; ++j) {
                 // Verificando se as instancias mais proximas sao da mesma
                 // amostra
-                if (points[d][closest[i * k + j]] == points[d][i]) {
+                if ((closest[i * k + j] < n1) == (i < n1)) {
                     counts[i] += 1;
                 }
             }
@@ -411,6 +422,13 @@ public class KNN extends AbstractOptionHandler implements StatisticalTest {
 
     @Override
     public Double call() throws Exception {
+        if (this.sample1 != null) {
+            try {
+                return this.mtsknn(this.sample1, this.sample2)[2];
+            } catch (InterruptedException ie) {
+                return 0.0;
+            }
+        }
         return this.test(sample1i, sample2i);
     }
 
@@ -418,6 +436,16 @@ public class KNN extends AbstractOptionHandler implements StatisticalTest {
     public void set(List<Instance> x, List<Instance> y) {
         this.sample1i = x;
         this.sample2i = y;
+        this.sample1 = null;
+        this.sample2 = null;
+    }
+
+    @Override
+    public void set(List<Instance> x, List<Instance> y, DistanceCache cache) {
+        this.sample1i = x;
+        this.sample2i = y;
+        this.sample1 = cache.getSample(x);
+        this.sample2 = cache.getSample(y);
     }
 
     public static void main(String[] args) throws Exception {
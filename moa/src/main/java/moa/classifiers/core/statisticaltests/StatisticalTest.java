@@ -45,4 +45,13 @@ public interface StatisticalTest extends OptionHandler, Callable<Double> {
      * @param y List of instances
      */
     public void set(List<Instance> x, List<Instance> y);
+    /**
+     * This method sets the instances for later use in concurrent scenarios,
+     * reusing the distances between the instances of each list that are
+     * stored in a cache shared by the tests.
+     * @param x List of instances
+     * @param y List of instances
+     * @param cache Cache of the samples
+     */
+    public void set(List<Instance> x, List<Instance> y, DistanceCache cache);
 }
@@ -19,7 +19,6 @@
  */
 package moa.classifiers.functions;
 
-import moa.core.DoubleVector;
 import com.github.javacliparser.FloatOption;
 import com.yahoo.labs.samoa.instances.Instance;
 import moa.core.Utils;
@@ -64,7 +63,7 @@ public class AdaGrad extends SGD{
             1e-8);
 
     /** Stores the weights (+ bias in the last element) */
-    protected DoubleVector m_velocity;
+    protected double[] m_velocity;
     protected double m_biasVelocity;
 
     /**
@@ -117,20 +116,56 @@ public class AdaGrad extends SGD{
     public void trainOnInstanceImpl(Instance instance) {
 
         if (m_weights == null) {
-            m_weights = new DoubleVector();
-            m_velocity = new DoubleVector();
+            m_weights = new double[instance.numAttributes() + 1];
+            m_velocity = new double[instance.numAttributes() + 1];
             m_bias = 0;
-
-            m_weights.setValue(instance.numAttributes(), 0);
-            m_velocity.setValue(instance.numAttributes(), 0);
         }
 
         if (instance.classIsMissing()) {
             return;
         }
    
-        double z = dotProd(instance, m_weights, instance.classIndex()) + m_bias;
+        double z = weightedSum(instance) + m_bias;
+        double dldz = lossDerivative(instance, z);
+
+        //Weight update for the bias
+        double biasGradient = dldz;
+        m_biasVelocity += biasGradient * biasGradient;
+        m_bias -= (m_learningRate / (Math.sqrt(m_biasVelocity) + m_epsilon)) * biasGradient;
+
+        // Only the weights of the values of the instance have a gradient,
+        // each one only depends on its own weight
+        double regularization = m_lambda / (m_t + m_epsilon);
+        double[] values = LinearModelUtils.denseValues(instance);
+        if (values != null) {
+            for (int i = 0; i < values.length; i++) {
+                double g = values[i] * dldz + regularization * m_weights[i];
+                updateWeight(i, g);
+            }
+        } else {
+            int n = instance.numValues();
+            for (int i = 0; i < n; i++) {
+                int idx = instance.index(i);
+                double g = instance.valueSparse(i) * dldz + regularization * m_weights[idx];
+                updateWeight(idx, g);
+            }
+        }
+
+        m_t += 1.0;
+    }
 
+    /**
+     * Updates a weight and its velocity for a gradient.
+     */
+    protected void updateWeight(int i, double g) {
+        m_velocity[i] += g * g;
+        m_weights[i] += -(m_learningRate / (Math.sqrt(m_velocity[i]) + m_epsilon)) * g;
+    }
+
+    /**
+     * Returns the derivative of the loss with respect to the margin.
+     */
+    protected double lossDerivative(Instance instance, double z) {
         double y;
         double dldz;
 
@@ -158,30 +193,7 @@ public class AdaGrad extends SGD{
             y = instance.classValue();
             dldz = z - y;
         }
-
-        int n = instance.numValues();
-        DoubleVector gradients = new DoubleVector();
-        gradients.setValue(instance.numAttributes(), 0);
-
-        for(int i = 0; i < n; i++)
-        {
-            int idx = instance.index(i);
-            gradients.setValue(idx, instance.valueSparse(i) * dldz + (m_lambda / (m_t + m_epsilon)) * m_weights.getValue(idx));
-        }
-
-        //Weight update for the bias
-        double biasGradient = dldz;
-        m_biasVelocity += biasGradient * biasGradient;
-        m_bias -= (m_learningRate / (Math.sqrt(m_biasVelocity) + m_epsilon)) * biasGradient;
-
-        for(int i = 0; i < m_weights.numValues(); i++) {
-            //Weight update
-            double g = gradients.getValue(i);
-            m_velocity.addToValue(i, g * g);
-            m_weights.addToValue(i, -(m_learningRate / (Math.sqrt(m_velocity.getValue(i)) + m_epsilon)) * g);
-        }
-
-        m_t += 1.0;
+        return dldz;
     }
 
     @Override
@@ -0,0 +1,147 @@
+/*
+ *    LinearModelUtils.java
+ *    Copyright (C) 2018 University of Waikato, Hamilton, New Zealand
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.classifiers.functions;
+
+import com.yahoo.labs.samoa.instances.DenseInstanceData;
+import com.yahoo.labs.samoa.instances.Instance;
+import com.yahoo.labs.samoa.instances.InstanceData;
+import com.yahoo.labs.samoa.instances.InstanceImpl;
+
+/**
+ * Dot products and updates of the linear models, between the attribute
+ * values of an instance and a row of weights starting at an offset of a
+ * weight array, so several classes can share one flat weight matrix. The
+ * class attribute and missing values are skipped.
+ *
+ * Dense instances are read from their attribute array with plain loops over
+ * arrays, which the JIT compiles without the calls through the Instance
+ * interface. The values are summed in index order, as for sparse instances,
+ * so both give the same results.
+ *
+ * @version $Revision: 1 $
+ */
+public class LinearModelUtils {
+
+    /**
+     * Returns the attribute values of a dense instance, without copying
+     * them, or null if the instance is sparse.
+     */
+    public static double[] denseValues(Instance inst) {
+        if (inst instanceof InstanceImpl) {
+            InstanceData data = ((InstanceImpl) inst).getInstanceData();
+            if (data instanceof DenseInstanceData) {
+                return ((DenseInstanceData) data).getAttributeValues();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the dot product of dense attribute values with the weights
+     * from offset to offset + length.
+     */
+    public static double dotProd(double[] values, double[] weights, int offset,
+            int length, int classIndex) {
+        double result = 0;
+        int n = Math.min(values.length, length);
+        int end = Math.min(classIndex, n);
+        for (int i = 0; i < end; i++) {
+            double value = values[i];
+            if (!Double.isNaN(value)) {
+                result += value * weights[offset + i];
+            }
+        }
+        for (int i = Math.max(classIndex + 1, end); i < n; i++) {
+            double value = values[i];
+            if (!Double.isNaN(value)) {
+                result += value * weights[offset + i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the dot product of the values of an instance with the weights
+     * from offset to offset + length.
+     */
+    public static double dotProd(Instance inst, double[] weights, int offset,
+            int length, int classIndex) {
+        double result = 0;
+        int n = inst.numValues();
+        for (int p = 0; p < n; p++) {
+            int index = inst.index(p);
+            if (index >= length) {
+                break;
+            }
+            if (index != classIndex && !inst.isMissingSparse(p)) {
+                result += inst.valueSparse(p) * weights[offset + index];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds factor times the dense attribute values to the weights from offset
+     * to offset + length.
+     */
+    public static void addScaled(double[] values, double[] weights, int offset,
+            int length, double factor, int classIndex) {
+        int n = Math.min(values.length, length);
+        int end = Math.min(classIndex, n);
+        for (int i = 0; i < end; i++) {
+            double value = values[i];
+            if (!Double.isNaN(value)) {
+                weights[offset + i] += factor * value;
+            }
+        }
+        for (int i = Math.max(classIndex + 1, end); i < n; i++) {
+            double value = values[i];
+            if (!Double.isNaN(value)) {
+                weights[offset + i] += factor * value;
+            }
+        }
+    }
+
+    /**
+     * Adds factor times the values of an instance to the weights from offset
+     * to offset + length.
+     */
+    public static void addScaled(Instance inst, double[] weights, int offset,
+            int length, double factor, int classIndex) {
+        int n = inst.numValues();
+        for (int p = 0; p < n; p++) {
+            int index = inst.index(p);
+            if (index >= length) {
+                break;
+            }
+            if (index != classIndex && !inst.isMissingSparse(p)) {
+                weights[offset + index] += factor * inst.valueSparse(p);
+            }
+        }
+    }
+
+    /**
+     * Multiplies the weights from offset to offset + length by a factor.
+     */
+    public static void scale(double[] weights, int offset, int length, double factor) {
+        for (int i = offset; i < offset + length; i++) {
+            weights[i] *= factor;
+        }
+    }
+}
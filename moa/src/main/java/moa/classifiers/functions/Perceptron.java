@@ -95,6 +95,46 @@ public class Perceptron extends AbstractClassifier  implements MultiClassClassif
         }
     }
 
+    /**
+     * Trains on a batch with the same updates as trainOnInstanceImpl, reading
+     * the learning ratio once and reusing the prediction array.
+     */
+    @Override
+    public void trainOnInstances(Instance[] batch, int n) {
+        n = selectTrainingInstances(batch, n);
+        if (n == 0) {
+            return;
+        }
+        int start = 0;
+        if (this.reset == true) {
+            trainOnInstanceImpl(this.trainingBatch[0]);
+            start = 1;
+        }
+        double learningRatio = learningRatioOption.getValue();
+        double[] preds = new double[this.numberClasses];
+        for (int k = start; k < n; k++) {
+            Instance inst = this.trainingBatch[k];
+            int numClasses = inst.numClasses();
+            int numAttributes = inst.numAttributes();
+            if (preds.length < numClasses) {
+                preds = new double[numClasses];
+            }
+            for (int i = 0; i < numClasses; i++) {
+                preds[i] = prediction(inst, i);
+            }
+            int actualClass = (int) inst.classValue();
+            for (int i = 0; i < numClasses; i++) {
+                double actual = (i == actualClass) ? 1.0 : 0.0;
+                double delta = (actual - preds[i]) * preds[i] * (1 - preds[i]);
+                double[] weights = this.weightAttribute[i];
+                for (int j = 0; j < numAttributes - 1; j++) {
+                    weights[j] += learningRatio * delta * inst.valueInputAttribute(j);
+                }
+                weights[numAttributes - 1] += learningRatio * delta;
+            }
+        }
+    }
+
     public void setWeights(double[][] w) {
         //Perceptron Hoeffding Tree
         this.weightAttribute = w;
@@ -140,6 +180,38 @@ public class Perceptron extends AbstractClassifier  implements MultiClassClassif
         return votes;
     }
 
+    /**
+     * Predicts a batch one class at a time, so the weights of a class are read
+     * once for the whole batch.
+     */
+    @Override
+    public double[][] getVotesForInstances(Instance[] batch, int n) {
+        if (this.reset == true) {
+            return super.getVotesForInstances(batch, n);
+        }
+        double[][] votes = new double[n][];
+        int maxClasses = 0;
+        for (int j = 0; j < n; j++) {
+            votes[j] = new double[batch[j].numClasses()];
+            maxClasses = Math.max(maxClasses, votes[j].length);
+        }
+        for (int i = 0; i < maxClasses; i++) {
+            for (int j = 0; j < n; j++) {
+                if (i < votes[j].length) {
+                    votes[j][i] = prediction(batch[j], i);
+                }
+            }
+        }
+        for (int j = 0; j < n; j++) {
+            try {
+                Utils.normalize(votes[j]);
+            } catch (Exception e) {
+                // ignore all zero votes error
+            }
+        }
+        return votes;
+    }
+
     @Override
     protected Measurement[] getModelMeasurementsImpl() {
         return null;
@@ -69,11 +69,20 @@ public class SGD extends AbstractClassifier implements MultiClassClassifier, Reg
             'r', "Learning rate parameter.",
             0.0001, 0.00, Integer.MAX_VALUE);
 
-    /** Stores the weights (+ bias in the last element) */
-    protected DoubleVector m_weights;
+    /** Stores the weights, to be multiplied by m_wScale */
+    protected double[] m_weights;
     
     protected double m_bias;
 
+    /**
+     * Multiplier of the stored weights, so the weight decay for a sparse
+     * instance does not have to update every weight
+     */
+    protected double m_wScale = 1.0;
+
+    /** Smallest multiplier before it is applied to the stored weights */
+    protected static final double MIN_WEIGHT_SCALE = 1e-9;
+
     /** Holds the current iteration number */
     protected double m_t;
 
@@ -157,6 +166,27 @@ public class SGD extends AbstractClassifier implements MultiClassClassifier, Reg
         m_t = 1;
         m_weights = null;
         m_bias = 0.0;
+        m_wScale = 1.0;
+    }
+
+    /**
+     * Multiplies the stored weights by m_wScale, which becomes 1.
+     */
+    protected void applyWeightScale() {
+        LinearModelUtils.scale(m_weights, 0, m_weights.length, m_wScale);
+        m_wScale = 1.0;
+    }
+
+    /**
+     * Returns the dot product of an instance with the weights, reading the
+     * attribute array of dense instances directly.
+     */
+    protected double weightedSum(Instance inst) {
+        double[] values = LinearModelUtils.denseValues(inst);
+        double wx = values != null
+                ? LinearModelUtils.dotProd(values, m_weights, 0, m_weights.length, inst.classIndex())
+                : dotProd(inst, m_weights, inst.classIndex());
+        return wx * m_wScale;
     }
 
     protected double dloss(double z) {
@@ -179,17 +209,21 @@ public class SGD extends AbstractClassifier implements MultiClassClassifier, Reg
     }
 
     protected static double dotProd(Instance inst1, DoubleVector weights, int classIndex) {
+        return dotProd(inst1, weights.getArrayRef(), classIndex);
+    }
+
+    protected static double dotProd(Instance inst1, double[] weights, int classIndex) {
         double result = 0;
 
         int n1 = inst1.numValues();
-        int n2 = weights.numValues();
+        int n2 = weights.length;
 
         for (int p1 = 0, p2 = 0; p1 < n1 && p2 < n2;) {
             int ind1 = inst1.index(p1);
             int ind2 = p2;
             if (ind1 == ind2) {
                 if (ind1 != classIndex && !inst1.isMissingSparse(p1)) {
-                    result += inst1.valueSparse(p1) * weights.getValue(p2);
+                    result += inst1.valueSparse(p1) * weights[p2];
                 }
                 p1++;
                 p2++;
@@ -219,13 +253,20 @@ public class SGD extends AbstractClassifier implements MultiClassClassifier, Reg
     public void trainOnInstanceImpl(Instance instance) {
 
         if (m_weights == null) {
-            m_weights = new DoubleVector(); 
+            m_weights = new double[instance.numAttributes()];
             m_bias = 0.0;
+            m_wScale = 1.0;
         }
 
         if (!instance.classIsMissing()) {
 
-            double wx = dotProd(instance, m_weights, instance.classIndex());
+            // A dense instance updates every weight anyway, so it applies
+            // the weight decay directly
+            double[] values = LinearModelUtils.denseValues(instance);
+            if (values != null && m_wScale != 1.0) {
+                applyWeightScale();
+            }
+            double wx = weightedSum(instance);
 
             double y;
             double z;
@@ -245,8 +286,13 @@ public class SGD extends AbstractClassifier implements MultiClassClassifier, Reg
             } else {
                 multiplier = 1.0 - (m_learningRate * m_lambda) / m_numInstances;
             }
-            for (int i = 0; i < m_weights.numValues(); i++) {
-                m_weights.setValue(i,m_weights.getValue (i) * multiplier);
+            if (values != null) {
+                LinearModelUtils.scale(m_weights, 0, m_weights.length, multiplier);
+            } else {
+                m_wScale *= multiplier;
+                if (Math.abs(m_wScale) < MIN_WEIGHT_SCALE) {
+                    applyWeightScale();
+                }
             }
 
             // Only need to do the following if the loss is non-zero
@@ -256,12 +302,12 @@ public class SGD extends AbstractClassifier implements MultiClassClassifier, Reg
                 double factor = m_learningRate * y * dloss(z);
 
                 // Update coefficients for attributes
-                int n1 = instance.numValues();
-                for (int p1 = 0; p1 < n1; p1++) {
-                    int indS = instance.index(p1);
-                    if (indS != instance.classIndex() && !instance.isMissingSparse(p1)) {
-                        m_weights.addToValue(indS, factor * instance.valueSparse(p1));
-                    }
+                if (values != null) {
+                    LinearModelUtils.addScaled(values, m_weights, 0, m_weights.length,
+                            factor, instance.classIndex());
+                } else {
+                    LinearModelUtils.addScaled(instance, m_weights, 0, m_weights.length,
+                            factor / m_wScale, instance.classIndex());
                 }
 
                 // update the bias
@@ -289,14 +335,48 @@ public class SGD extends AbstractClassifier implements MultiClassClassifier, Reg
                 : new double[1];
 
 
-        double wx = dotProd(inst, m_weights, inst.classIndex());// * m_wScale;
+        double wx = weightedSum(inst);
         double z = (wx + m_bias);
 
         if (inst.classAttribute().isNumeric()) {
             result[0] = z;
             return result;
         }
+        setVotes(result, z);
+        return result;
+    }
+
+    /**
+     * Calculates the class membership probabilities for a batch of instances,
+     * reading the weights once for the whole batch.
+     *
+     * @param batch 	the instances to be classified
+     * @param n 	the number of instances in the batch
+     * @return 		predicted class probability distributions
+     */
+    @Override
+    public double[][] getVotesForInstances(Instance[] batch, int n) {
+        if (m_weights == null || n == 0) {
+            return super.getVotesForInstances(batch, n);
+        }
+        boolean numeric = batch[0].classAttribute().isNumeric();
+        double[][] votes = new double[n][];
+        for (int i = 0; i < n; i++) {
+            double z = weightedSum(batch[i]) + m_bias;
+            if (numeric) {
+                votes[i] = new double[]{z};
+            } else {
+                votes[i] = new double[2];
+                setVotes(votes[i], z);
+            }
+        }
+        return votes;
+    }
 
+    /**
+     * Sets the votes of the two classes for a margin.
+     */
+    protected void setVotes(double[] result, double z) {
         if (z <= 0) {
             //  z = 0;
             if (m_loss == LOGLOSS) {
@@ -313,7 +393,6 @@ public class SGD extends AbstractClassifier implements MultiClassClassifier, Reg
                 result[1] = 1;
             }
         }
-        return result;
     }
 
     @Override
@@ -348,7 +427,7 @@ public class SGD extends AbstractClassifier implements MultiClassClassifier, Reg
         // buff.append(m_data.classAttribute().name() + " = \n\n");
         int printed = 0;
 
-        for (int i = 0; i < m_weights.numValues(); i++) {
+        for (int i = 0; i < m_weights.length; i++) {
             // if (i != m_data.classIndex()) {
             if (printed > 0) {
                 buff.append(" + ");
@@ -356,7 +435,7 @@ public class SGD extends AbstractClassifier implements MultiClassClassifier, Reg
                 buff.append("   ");
             }
 
-            buff.append(Utils.doubleToString(m_weights.getValue(i), 12, 4) + " "
+            buff.append(Utils.doubleToString(m_weights[i] * m_wScale, 12, 4) + " "
                     // + m_data.attribute(i).name()
                     + "\n");
 
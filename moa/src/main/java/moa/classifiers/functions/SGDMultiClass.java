@@ -70,11 +70,26 @@ public class SGDMultiClass extends AbstractClassifier implements MultiClassClass
             'r', "Learning rate parameter.",
             0.0001, 0.00, Integer.MAX_VALUE);
 
-    /** Stores the weights (+ bias in the last element) */
-    protected DoubleVector[] m_weights;
+    /**
+     * Stores the weights of all the classes in one matrix, one row of
+     * m_numWeights weights per class, to be multiplied by m_wScale
+     */
+    protected double[] m_weights;
+
+    /** The number of weights of a class */
+    protected int m_numWeights;
     
     protected double[] m_bias;
 
+    /**
+     * Multiplier of the stored weights, so the weight decay for a sparse
+     * instance does not have to update every weight
+     */
+    protected double m_wScale = 1.0;
+
+    /** Smallest multiplier before it is applied to the stored weights */
+    protected static final double MIN_WEIGHT_SCALE = 1e-9;
+
     /** Holds the current iteration number */
     protected double m_t;
 
@@ -158,6 +173,39 @@ public class SGDMultiClass extends AbstractClassifier implements MultiClassClass
         m_t = 1;
         m_weights = null;
         m_bias = null; //0.0;
+        m_wScale = 1.0;
+    }
+
+    /**
+     * Multiplies the stored weights by m_wScale, which becomes 1.
+     */
+    protected void applyWeightScale() {
+        LinearModelUtils.scale(m_weights, 0, m_weights.length, m_wScale);
+        m_wScale = 1.0;
+    }
+
+    /**
+     * Returns the dot product of an instance with the weights of a class,
+     * reading the attribute array of dense instances directly.
+     */
+    protected double weightedSum(Instance inst, double[] values, int classLabel) {
+        double wx = values != null
+                ? LinearModelUtils.dotProd(values, m_weights, classLabel * m_numWeights,
+                        m_numWeights, inst.classIndex())
+                : LinearModelUtils.dotProd(inst, m_weights, classLabel * m_numWeights,
+                        m_numWeights, inst.classIndex());
+        return wx * m_wScale;
+    }
+
+    /**
+     * Returns the multiplier of the weight decay of an instance.
+     */
+    protected double decayMultiplier() {
+        if (m_numInstances == 0) {
+            return 1.0 - (m_learningRate * m_lambda) / m_t;
+        } else {
+            return 1.0 - (m_learningRate * m_lambda) / m_numInstances;
+        }
     }
 
     protected double dloss(double z) {
@@ -180,17 +228,21 @@ public class SGDMultiClass extends AbstractClassifier implements MultiClassClass
     }
 
     protected static double dotProd(Instance inst1, DoubleVector weights, int classIndex) {
+        return dotProd(inst1, weights.getArrayRef(), classIndex);
+    }
+
+    protected static double dotProd(Instance inst1, double[] weights, int classIndex) {
         double result = 0;
 
         int n1 = inst1.numValues();
-        int n2 = weights.numValues();
+        int n2 = weights.length;
 
         for (int p1 = 0, p2 = 0; p1 < n1 && p2 < n2;) {
             int ind1 = inst1.index(p1);
             int ind2 = p2;
             if (ind1 == ind2) {
                 if (ind1 != classIndex && !inst1.isMissingSparse(p1)) {
-                    result += inst1.valueSparse(p1) * weights.getValue(p2);
+                    result += inst1.valueSparse(p1) * weights[p2];
                 }
                 p1++;
                 p2++;
@@ -226,22 +278,30 @@ public class SGDMultiClass extends AbstractClassifier implements MultiClassClass
              } else {
                  length = 1;
              }
-            m_weights = new DoubleVector[length];
+            m_numWeights = instance.numAttributes();
+            m_weights = new double[length * m_numWeights];
             m_bias = new double[length];
-            for (int i = 0; i < m_weights.length; i++){
-                m_weights[i] = new DoubleVector(); 
-                m_bias[i] = 0.0;
-            }
+            m_wScale = 1.0;
         }
-        for (int i = 0; i < m_weights.length; i++){
+        if (LinearModelUtils.denseValues(instance) == null && !instance.classIsMissing()) {
+            trainOnSparseInstance(instance);
+        } else {
+            for (int i = 0; i < m_bias.length; i++){
                 this.trainOnInstanceImpl(instance, i); 
             }
+        }
         m_t++;
     }    
     public void trainOnInstanceImpl(Instance instance, int classLabel) {    
         if (!instance.classIsMissing()) {
 
-            double wx = dotProd(instance, m_weights[classLabel], instance.classIndex());
+            // Updating the weights of a class applies the weight decay directly
+            if (m_wScale != 1.0) {
+                applyWeightScale();
+            }
+            double[] values = LinearModelUtils.denseValues(instance);
+            int offset = classLabel * m_numWeights;
+            double wx = weightedSum(instance, values, classLabel);
 
             double y;
             double z;
@@ -254,16 +314,8 @@ public class SGDMultiClass extends AbstractClassifier implements MultiClassClass
                 y = 1;
             }
 
-            // Compute multiplier for weight decay
-            double multiplier = 1.0;
-            if (m_numInstances == 0) {
-                multiplier = 1.0 - (m_learningRate * m_lambda) / m_t;
-            } else {
-                multiplier = 1.0 - (m_learningRate * m_lambda) / m_numInstances;
-            }
-            for (int i = 0; i < m_weights[classLabel].numValues(); i++) {
-                m_weights[classLabel].setValue(i,m_weights[classLabel].getValue (i) * multiplier);
-            }
+            // Weight decay
+            LinearModelUtils.scale(m_weights, offset, m_numWeights, decayMultiplier());
 
             // Only need to do the following if the loss is non-zero
             if (m_loss != HINGE || (z < 1)) {
@@ -272,12 +324,12 @@ public class SGDMultiClass extends AbstractClassifier implements MultiClassClass
                 double factor = m_learningRate * y * dloss(z);
 
                 // Update coefficients for attributes
-                int n1 = instance.numValues();
-                for (int p1 = 0; p1 < n1; p1++) {
-                    int indS = instance.index(p1);
-                    if (indS != instance.classIndex() && !instance.isMissingSparse(p1)) {
-                        m_weights[classLabel].addToValue(indS, factor * instance.valueSparse(p1));
-                    }
+                if (values != null) {
+                    LinearModelUtils.addScaled(values, m_weights, offset, m_numWeights,
+                            factor, instance.classIndex());
+                } else {
+                    LinearModelUtils.addScaled(instance, m_weights, offset, m_numWeights,
+                            factor, instance.classIndex());
                 }
 
                 // update the bias
@@ -287,6 +339,45 @@ public class SGDMultiClass extends AbstractClassifier implements MultiClassClass
         }
     }
 
+    /**
+     * Trains all the classes with a sparse instance, applying the weight
+     * decay through m_wScale so only the weights of the values of the
+     * instance are updated.
+     *
+     * @param instance 	the new training instance to include in the model
+     */
+    protected void trainOnSparseInstance(Instance instance) {
+        double scale = m_wScale * decayMultiplier();
+        if (Math.abs(scale) < MIN_WEIGHT_SCALE) {
+            for (int i = 0; i < m_bias.length; i++) {
+                this.trainOnInstanceImpl(instance, i);
+            }
+            return;
+        }
+        for (int classLabel = 0; classLabel < m_bias.length; classLabel++) {
+            double wx = weightedSum(instance, null, classLabel);
+
+            double y;
+            double z;
+            if (instance.classAttribute().isNominal()) {
+                y = (instance.classValue() != classLabel) ? -1 : 1;
+                z = y * (wx + m_bias[classLabel]);
+            } else {
+                y = instance.classValue();
+                z = y - (wx + m_bias[classLabel]);
+                y = 1;
+            }
+
+            if (m_loss != HINGE || (z < 1)) {
+                double factor = m_learningRate * y * dloss(z);
+                LinearModelUtils.addScaled(instance, m_weights, classLabel * m_numWeights,
+                        m_numWeights, factor / scale, instance.classIndex());
+                m_bias[classLabel] += factor;
+            }
+        }
+        m_wScale = scale;
+    }
+
     /**
      * Calculates the class membership probabilities for the given test
      * instance.
@@ -304,38 +395,71 @@ public class SGDMultiClass extends AbstractClassifier implements MultiClassClass
                 ? new double[inst.numClasses()]
                 : new double[1];
         
+        double[] values = LinearModelUtils.denseValues(inst);
         if (inst.classAttribute().isNumeric()) {
-            double wx = dotProd(inst, m_weights[0], inst.classIndex());// * m_wScale;
+            double wx = weightedSum(inst, values, 0);
             double z = (wx + m_bias[0]);
             result[0] = z;
             return result;
         }
 
-        for (int i = 0; i < m_weights.length; i++){
-            double wx = dotProd(inst, m_weights[i], inst.classIndex());// * m_wScale;
+        for (int i = 0; i < m_bias.length; i++){
+            double wx = weightedSum(inst, values, i);
             double z = (wx + m_bias[i]);
-            if (z <= 0) {
-                //  z = 0;
-                if (m_loss == LOGLOSS) {
-                    //result[0] = 1.0 / (1.0 + Math.exp(z));
-                    //result[1] = 1.0 - result[0];
-                    result[i] = 1.0 - 1.0 / (1.0 + Math.exp(z)); 
-                } else {
-                    //result[0] = 1;
-                    result[i] = 0;
-                }
+            result[i] = classVote(z);
+        }
+        return result;
+    }
+
+    /**
+     * Calculates the class membership probabilities for a batch of instances,
+     * one class at a time, so the weights of a class are read once for the
+     * whole batch.
+     *
+     * @param batch 	the instances to be classified
+     * @param n 	the number of instances in the batch
+     * @return 		predicted class probability distributions
+     */
+    @Override
+    public double[][] getVotesForInstances(Instance[] batch, int n) {
+        if (m_weights == null || n == 0 || batch[0].classAttribute().isNumeric()) {
+            return super.getVotesForInstances(batch, n);
+        }
+        double[][] votes = new double[n][];
+        for (int j = 0; j < n; j++) {
+            votes[j] = new double[batch[j].numClasses()];
+        }
+        double[][] values = new double[n][];
+        for (int j = 0; j < n; j++) {
+            values[j] = LinearModelUtils.denseValues(batch[j]);
+        }
+        for (int i = 0; i < m_bias.length; i++) {
+            for (int j = 0; j < n; j++) {
+                double z = weightedSum(batch[j], values[j], i) + m_bias[i];
+                votes[j][i] = classVote(z);
+            }
+        }
+        return votes;
+    }
+
+    /**
+     * Returns the vote of a class for its margin.
+     */
+    protected double classVote(double z) {
+        if (z <= 0) {
+            //  z = 0;
+            if (m_loss == LOGLOSS) {
+                return 1.0 - 1.0 / (1.0 + Math.exp(z));
             } else {
-                if (m_loss == LOGLOSS) {
-                    //result[1] = 1.0 / (1.0 + Math.exp(-z));
-                    //result[0] = 1.0 - result[1];
-                    result[i] = 1.0 / (1.0 + Math.exp(-z)); 
-                } else {
-                    //result[1] = 1;
-                    result[i] = 1;
-                }
+                return 0;
+            }
+        } else {
+            if (m_loss == LOGLOSS) {
+                return 1.0 / (1.0 + Math.exp(-z));
+            } else {
+                return 1;
             }
         }
-        return result;
     }
 
     @Override
@@ -366,7 +490,7 @@ public class SGDMultiClass extends AbstractClassifier implements MultiClassClass
         // buff.append(m_data.classAttribute().name() + " = \n\n");
         int printed = 0;
 
-        for (int i = 0; i < m_weights[0].numValues(); i++) {
+        for (int i = 0; i < m_numWeights; i++) {
             // if (i != m_data.classIndex()) {
             if (printed > 0) {
                 buff.append(" + ");
@@ -374,7 +498,7 @@ public class SGDMultiClass extends AbstractClassifier implements MultiClassClass
                 buff.append("   ");
             }
 
-            buff.append(Utils.doubleToString(m_weights[0].getValue(i), 12, 4) + " "
+            buff.append(Utils.doubleToString(m_weights[i] * m_wScale, 12, 4) + " "
                     // + m_data.attribute(i).name()
                     + "\n");
 
@@ -94,10 +94,26 @@ public class SPegasos extends AbstractClassifier implements MultiClassClassifier
                 "Log loss (logistic regression)"}, 0);
 
     /**
-     * Stores the weights (+ bias in the last element)
+     * Stores the weights (+ bias in the last element), the weights to be
+     * multiplied by m_wScale
      */
     protected double[] m_weights;
 
+    /**
+     * Multiplier of the stored weights, so the scaling for a sparse instance
+     * does not have to update every weight
+     */
+    protected double m_wScale = 1.0;
+
+    /**
+     * Squared norm of the stored weights, kept up to date by the updates for
+     * sparse instances
+     */
+    protected double m_squaredNorm;
+
+    /** Smallest multiplier before it is applied to the stored weights */
+    protected static final double MIN_WEIGHT_SCALE = 1e-9;
+
     /**
      * Holds the current iteration number
      */
@@ -145,6 +161,34 @@ public class SPegasos extends AbstractClassifier implements MultiClassClassifier
     public void reset() {
         m_t = 2;
         m_weights = null;
+        m_wScale = 1.0;
+        m_squaredNorm = 0;
+    }
+
+    /**
+     * Multiplies the stored weights by m_wScale, which becomes 1, and
+     * recomputes their squared norm.
+     */
+    protected void applyWeightScale(int classIndex) {
+        m_squaredNorm = 0;
+        for (int j = 0; j < m_weights.length - 1; j++) {
+            if (j != classIndex) {
+                m_weights[j] *= m_wScale;
+                m_squaredNorm += m_weights[j] * m_weights[j];
+            }
+        }
+        m_wScale = 1.0;
+    }
+
+    /**
+     * Returns the dot product of an instance with the weights, reading the
+     * attribute array of dense instances directly.
+     */
+    protected double weightedSum(Instance inst, double[] values) {
+        double wx = values != null
+                ? LinearModelUtils.dotProd(values, m_weights, 0, m_weights.length - 1, inst.classIndex())
+                : dotProd(inst, m_weights, inst.classIndex());
+        return wx * m_wScale;
     }
 
     protected static double dotProd(Instance inst1, double[] weights, int classIndex) {
@@ -204,28 +248,38 @@ public class SPegasos extends AbstractClassifier implements MultiClassClassifier
             m_weights = new double[instance.numAttributes() + 1];
         }
         if (!instance.classIsMissing()) {
+            double[] values = LinearModelUtils.denseValues(instance);
+            if (values == null) {
+                trainOnSparseInstance(instance);
+                return;
+            }
+            if (m_wScale != 1.0) {
+                applyWeightScale(instance.classIndex());
+            }
 
             double learningRate = 1.0 / (m_lambda * m_t);
             //double scale = 1.0 - learningRate * m_lambda;
             double scale = 1.0 - 1.0 / m_t;
             double y = (instance.classValue() == 0) ? -1 : 1;
-            double wx = dotProd(instance, m_weights, instance.classIndex());
+            double wx = weightedSum(instance, values);
             double z = y * (wx + m_weights[m_weights.length - 1]);
 
-            for (int j = 0; j < m_weights.length - 1; j++) {
-                if (j != instance.classIndex()) {
+            int classIndex = instance.classIndex();
+            int numWeights = m_weights.length - 1;
+            for (int j = 0; j < numWeights; j++) {
+                if (j != classIndex) {
                     m_weights[j] *= scale;
                 }
             }
 
             if (m_loss == LOGLOSS || (z < 1)) {
                 double loss = dloss(z);
-                int n1 = instance.numValues();
-                for (int p1 = 0; p1 < n1; p1++) {
-                    int indS = instance.index(p1);
-                    if (indS != instance.classIndex() && !instance.isMissingSparse(p1)) {
-                        double m = learningRate * loss * (instance.valueSparse(p1) * y);
-                        m_weights[indS] += m;
+                int n1 = Math.min(values.length, numWeights);
+                for (int j = 0; j < n1; j++) {
+                    double value = values[j];
+                    if (j != classIndex && !Double.isNaN(value)) {
+                        double m = learningRate * loss * (value * y);
+                        m_weights[j] += m;
                     }
                 }
 
@@ -234,25 +288,74 @@ public class SPegasos extends AbstractClassifier implements MultiClassClassifier
             }
 
             double norm = 0;
-            for (int k = 0; k < m_weights.length - 1; k++) {
-                if (k != instance.classIndex()) {
+            for (int k = 0; k < numWeights; k++) {
+                if (k != classIndex) {
                     norm += (m_weights[k] * m_weights[k]);
                 }
             }
+            m_squaredNorm = norm;
 
             double scale2 = Math.min(1.0, (1.0 / (m_lambda * norm)));
             if (scale2 < 1.0) {
                 scale2 = Math.sqrt(scale2);
-                for (int j = 0; j < m_weights.length - 1; j++) {
-                    if (j != instance.classIndex()) {
+                for (int j = 0; j < numWeights; j++) {
+                    if (j != classIndex) {
                         m_weights[j] *= scale2;
                     }
                 }
+                m_squaredNorm = norm * scale2 * scale2;
             }
             m_t++;
         }
     }
 
+    /**
+     * Trains the classifier with a sparse instance, applying the scaling of
+     * the weights through m_wScale and keeping their squared norm up to date,
+     * so only the weights of the values of the instance are updated.
+     *
+     * @param instance the new training instance to include in the model
+     */
+    protected void trainOnSparseInstance(Instance instance) {
+        double learningRate = 1.0 / (m_lambda * m_t);
+        double scale = 1.0 - 1.0 / m_t;
+        double y = (instance.classValue() == 0) ? -1 : 1;
+        double wx = weightedSum(instance, null);
+        double z = y * (wx + m_weights[m_weights.length - 1]);
+
+        m_wScale *= scale;
+        if (Math.abs(m_wScale) < MIN_WEIGHT_SCALE) {
+            applyWeightScale(instance.classIndex());
+        }
+
+        if (m_loss == LOGLOSS || (z < 1)) {
+            double loss = dloss(z);
+            int n1 = instance.numValues();
+            for (int p1 = 0; p1 < n1; p1++) {
+                int indS = instance.index(p1);
+                if (indS != instance.classIndex() && !instance.isMissingSparse(p1)) {
+                    double m = learningRate * loss * (instance.valueSparse(p1) * y);
+                    double weight = m_weights[indS];
+                    m_weights[indS] = weight + m / m_wScale;
+                    m_squaredNorm += m_weights[indS] * m_weights[indS] - weight * weight;
+                }
+            }
+
+            // update the bias
+            m_weights[m_weights.length - 1] += learningRate * loss * y;
+        }
+
+        double norm = m_wScale * m_wScale * m_squaredNorm;
+        double scale2 = Math.min(1.0, (1.0 / (m_lambda * norm)));
+        if (scale2 < 1.0) {
+            m_wScale *= Math.sqrt(scale2);
+            if (Math.abs(m_wScale) < MIN_WEIGHT_SCALE) {
+                applyWeightScale(instance.classIndex());
+            }
+        }
+        m_t++;
+    }
+
     /**
      * Calculates the class membership probabilities for the given test
      * instance.
@@ -269,7 +372,7 @@ public class SPegasos extends AbstractClassifier implements MultiClassClassifier
 
         double[] result = new double[2];
 
-        double wx = dotProd(inst, m_weights, inst.classIndex());// * m_wScale;
+        double wx = weightedSum(inst, LinearModelUtils.denseValues(inst));
         double z = (wx + m_weights[m_weights.length - 1]);
         //System.out.print("" + z + ": ");
         // System.out.println(1.0 / (1.0 + Math.exp(-z)));
@@ -325,7 +428,7 @@ public class SPegasos extends AbstractClassifier implements MultiClassClassifier
                 buff.append("   ");
             }
 
-            buff.append(Utils.doubleToString(m_weights[i], 12, 4) + " "
+            buff.append(Utils.doubleToString(m_weights[i] * m_wScale, 12, 4) + " "
                     //+ m_data.attribute(i).name()
                     + "\n");
 
@@ -41,6 +41,10 @@ import moa.core.Utils;
  * for Coping with Recurring Concepts: The ADACC System. In : Neural Information 
  * Processing. Springer Berlin Heidelberg, 2013. p. 595-604.
  * 
+ * The predictions of the members and snapshots on the evaluation window can
+ * be computed by several threads when a snapshot is considered, with the
+ * same results as on one thread.
+ * 
  * @author Ghazal Jaber (ghazal.jaber@gmail.com)
  *
  */
@@ -68,6 +72,11 @@ public class ADACC extends DACC implements MultiClassClassifier {
      */
     public FloatOption equivIndexSizeOption = new FloatOption("CeThr", 'q',
             "The threshold for concept equivalence", 0.7, 0, 1);
+    /**
+     * Number of threads predicting the evaluation window
+     */
+    public IntOption numThreadsOption = new IntOption("numThreads", 'j',
+            "The number of threads predicting the evaluation window when considering a snapshot.", 1, 1, Integer.MAX_VALUE);
     /**
      * Size of the evaluation window to compute the stability index  
      */
@@ -92,6 +101,8 @@ public class ADACC extends DACC implements MultiClassClassifier {
      * Number of added snapshots
      */
     protected int addedPermanent = 0; 
+
+    protected transient ChunkWorkers workers;
     
 	@Override
 	protected void initVariables(){
@@ -131,6 +142,25 @@ public class ADACC extends DACC implements MultiClassClassifier {
      * (a copy) of the best adaptive classifier and keep it 
      * for future use, in case of concept recurrence 
      */
+    protected ChunkWorkers getWorkers() {
+        if (this.workers == null) {
+            this.workers = new ChunkWorkers(this.numThreadsOption.getValue());
+        }
+        return this.workers;
+    }
+
+    /**
+     * Returns the predictions of a classifier on the evaluation window
+     * @param classifier the classifier
+     * @return the predicted classes
+     */
+    private int[] predictRecentChunk(Classifier classifier){
+    	int[] votes=new int[tau_size];
+    	for (int k=0;k<tau_size;k++)
+    		votes[k]=Utils.maxIndex(classifier.getVotesForInstance(recentChunk.get(k)));
+    	return votes;
+    }
+
     private void takeSnapshot(){
 
     	this.index = computeStabilityIndex();
@@ -144,16 +174,20 @@ public class ADACC extends DACC implements MultiClassClassifier {
     			
     			Classifier candidate = getBestAdaptiveClassifier().copy();
     			
+    			// agreement of the candidate with every snapshot, checked in order
+    			final int[] candidateVotes=predictRecentChunk(candidate);
+    			final double[] kappas=new double[Math.min(MAXPERMANENT,addedPermanent)];
+    			getWorkers().forEach(kappas.length, new ChunkWorkers.Task() {
+    				@Override
+    				public void run(int j) {
+    					Classifier lastSnapshot=ensemble[ensemble.length-MAXPERMANENT+j];
+    					kappas[j]=computeKappa(candidateVotes,predictRecentChunk(lastSnapshot));
+    				}
+    			});
+    			
     			boolean duplicate = false;
-    			for (int j=0;j<Math.min(MAXPERMANENT,addedPermanent);j++){
-        			Classifier lastSnapshot=this.ensemble[this.ensemble.length-MAXPERMANENT+j];
-        			
-        			int[][] votes=new int[2][tau_size];
-        			for (int k=0;k<tau_size;k++){
-        				votes[0][k]=Utils.maxIndex(candidate.getVotesForInstance(recentChunk.get(k)));	
-        				votes[1][k]=Utils.maxIndex(lastSnapshot.getVotesForInstance(recentChunk.get(k)));	
-        			}
-        			double kappa=computeKappa(votes[0],votes[1]);
+    			for (int j=0;j<kappas.length;j++){
+        			double kappa=kappas[j];
         			
         			if (kappa>=this.theta_diff){
         				duplicate = true; break;
@@ -215,16 +249,21 @@ public class ADACC extends DACC implements MultiClassClassifier {
     private double computeStabilityIndex(){
     	
     	int m = (int)Math.floor((this.ensemble.length-MAXPERMANENT)/2);
-    	int[][] votes=new int[m][tau_size];
+    	final int[][] votes=new int[m][];
     	double errors=0;
     	int count=0;
    
     	
-    	Pair[] arr = getHalf(true);
+    	final Pair[] arr = getHalf(true);
     	
+    	getWorkers().forEach(m, new ChunkWorkers.Task() {
+    		@Override
+    		public void run(int i) {
+    			votes[i]=predictRecentChunk(ensemble[arr[i].index]);
+    		}
+    	});
     	for (int i=0;i<m;i++){
     		for (int j=0;j<tau_size;j++){
-    			votes[i][j]=Utils.maxIndex(this.ensemble[arr[i].index].getVotesForInstance(recentChunk.get(j)));
     			errors+=(votes[i][j]==(int) this.recentChunk.get(j).classValue())?0:1;
     			count++;
     		}
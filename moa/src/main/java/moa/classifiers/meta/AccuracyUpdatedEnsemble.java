@@ -19,6 +19,9 @@
  */
 package moa.classifiers.meta;
 
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+
 import moa.classifiers.AbstractClassifier;
 import moa.classifiers.Classifier;
 import moa.classifiers.MultiClassClassifier;
@@ -27,6 +30,7 @@ import moa.core.DoubleVector;
 import moa.core.Measurement;
 import moa.core.ObjectRepository;
 import moa.options.ClassOption;
+import com.github.javacliparser.FlagOption;
 import com.github.javacliparser.IntOption;
 import moa.tasks.TaskMonitor;
 import com.yahoo.labs.samoa.instances.Instance;
@@ -36,6 +40,12 @@ import com.yahoo.labs.samoa.instances.Instances;
  * The revised version of the Accuracy Updated Ensemble as proposed by
  * Brzezinski and Stefanowski in "Reacting to Different Types of Concept Drift:
  * The Accuracy Updated Ensemble Algorithm", IEEE Trans. Neural Netw, 2013.
+ *
+ * The members can be scored and trained on a chunk by several threads, with
+ * the same results as on one thread. A chunk can also be processed on a
+ * background thread while the next one is collected: the members are then
+ * copied before being trained, and the current members predict until the
+ * trained ones replace them.
  */
 public class AccuracyUpdatedEnsemble extends AbstractClassifier implements MultiClassClassifier {
 
@@ -65,6 +75,18 @@ public class AccuracyUpdatedEnsemble extends AbstractClassifier implements Multi
 	public IntOption maxByteSizeOption = new IntOption("maxByteSize", 'm', "Maximum memory consumed by ensemble.",
 			33554432, 0, Integer.MAX_VALUE);
 
+	/**
+	 * Number of threads processing a chunk.
+	 */
+	public IntOption numThreadsOption = new IntOption("numThreads", 'j',
+			"Number of threads scoring and training the members.", 1, 1, Integer.MAX_VALUE);
+
+	/**
+	 * Whether chunks are processed in the background.
+	 */
+	public FlagOption backgroundProcessingOption = new FlagOption("backgroundProcessing", 'g',
+			"Process each chunk on a background thread while the next one is collected, predicting with the previous members until the trained ones are ready.");
+
 	/**
 	 * The weights of stored classifiers. 
 	 * weights[x][0] = weight
@@ -97,6 +119,8 @@ public class AccuracyUpdatedEnsemble extends AbstractClassifier implements Multi
 	 */
 	protected Instances currentChunk;
 
+	protected transient ChunkWorkers workers;
+
 	@Override
 	public void prepareForUseImpl(TaskMonitor monitor, ObjectRepository repository) {
 		this.candidate = (Classifier) getPreparedClassOption(this.learnerOption);
@@ -107,6 +131,9 @@ public class AccuracyUpdatedEnsemble extends AbstractClassifier implements Multi
 
 	@Override
 	public void resetLearningImpl() {
+		if (this.workers != null) {
+			this.workers.cancel();
+		}
 		this.currentChunk = null;
 		this.classDistributions = null;
 		this.processedInstances = 0;
@@ -118,6 +145,7 @@ public class AccuracyUpdatedEnsemble extends AbstractClassifier implements Multi
 
 	@Override
 	public void trainOnInstanceImpl(Instance inst) {
+		this.getWorkers().applyIfDone();
 		this.initVariables();
 
 		this.classDistributions[(int) inst.classValue()]++;
@@ -125,8 +153,19 @@ public class AccuracyUpdatedEnsemble extends AbstractClassifier implements Multi
 		this.processedInstances++;
 
 		if (this.processedInstances % this.chunkSizeOption.getValue() == 0) {
-			this.processChunk();
+			if (this.backgroundProcessingOption.isSet()) {
+				this.processChunkInBackground();
+			} else {
+				this.processChunk();
+			}
+		}
+	}
+
+	protected ChunkWorkers getWorkers() {
+		if (this.workers == null) {
+			this.workers = new ChunkWorkers(this.numThreadsOption.getValue());
 		}
+		return this.workers;
 	}
 
 	/**
@@ -175,53 +214,138 @@ public class AccuracyUpdatedEnsemble extends AbstractClassifier implements Multi
 	 * This method is called after collecting a chunk of examples.
 	 */
 	protected void processChunk() {
-		Classifier addedClassifier = null;
-		double mse_r = this.computeMseR();
+		this.processChunk(this.currentChunk, this.classDistributions, this.candidate, false).run();
+		this.startChunk();
+	}
+
+	/**
+	 * Processes the current chunk on a background thread and starts collecting
+	 * the next one. The trained members replace the current ones once ready,
+	 * at the latest when the next chunk is complete.
+	 */
+	protected void processChunkInBackground() {
+		final Instances chunk = this.currentChunk;
+		final long[] chunkClassDistributions = this.classDistributions;
+		// the prepared candidate is shared, and reset when the next chunk starts
+		final Classifier chunkCandidate = this.candidate.copy();
+		this.startChunk();
+		this.getWorkers().submit(new Callable<Runnable>() {
+			@Override
+			public Runnable call() {
+				return processChunk(chunk, chunkClassDistributions, chunkCandidate, true);
+			}
+		});
+	}
+
+	/**
+	 * Starts collecting a new chunk, with a new candidate classifier.
+	 */
+	protected void startChunk() {
+		this.classDistributions = null;
+		this.currentChunk = null;
+		this.candidate = (Classifier) getPreparedClassOption(this.learnerOption);
+		this.candidate.resetLearning();
+	}
+
+	/**
+	 * Weights the members on a chunk, adds the candidate classifier and trains
+	 * the members on the chunk. The current members and weights are left
+	 * unchanged, except for the training of the members when they are not
+	 * copied.
+	 * 
+	 * @param chunk
+	 *            Chunk of examples.
+	 * @param chunkClassDistributions
+	 *            Class distribution of the chunk.
+	 * @param chunkCandidate
+	 *            Candidate classifier.
+	 * @param copyLearners
+	 *            Whether the members are copied before being trained.
+	 * @return The update replacing the members and their weights.
+	 */
+	protected Runnable processChunk(final Instances chunk, long[] chunkClassDistributions,
+			Classifier chunkCandidate, final boolean copyLearners) {
+		final double mse_r = this.computeMseR(chunkClassDistributions);
 
 		// Compute weights
 		double candidateClassifierWeight = 1.0 / (mse_r + Double.MIN_VALUE);
 
-		for (int i = 0; i < this.learners.length; i++) {
-			this.weights[i][0] = 1.0 / (mse_r + this.computeMse(this.learners[(int) this.weights[i][1]], this.currentChunk) + Double.MIN_VALUE);
-		}	
+		final Classifier[] currentLearners = this.learners;
+		int numLearners = currentLearners.length;
+		boolean addCandidate = numLearners < this.memberCountOption.getValue();
+		final Classifier[] newLearners = Arrays.copyOf(currentLearners, addCandidate ? numLearners + 1 : numLearners);
+		final double[][] newWeights = new double[newLearners.length][];
+		for (int i = 0; i < numLearners; i++) {
+			newWeights[i] = this.weights[i].clone();
+		}
+
+		this.getWorkers().forEach(numLearners, new ChunkWorkers.Task() {
+			@Override
+			public void run(int i) {
+				newWeights[i][0] = 1.0 / (mse_r + computeMse(currentLearners[(int) newWeights[i][1]], chunk) + Double.MIN_VALUE);
+			}
+		});
 
-		if (this.learners.length < this.memberCountOption.getValue()) {
+		if (addCandidate) {
 			// Train and add classifier
-			addedClassifier = this.addToStored(this.candidate, candidateClassifierWeight);
+			newLearners[numLearners] = chunkCandidate.copy();
+			newWeights[numLearners] = new double[] { candidateClassifierWeight, numLearners };
 		} else {
 			// Substitute poorest classifier
-			int poorestClassifier = this.getPoorestClassifierIndex();
+			int poorestClassifier = getPoorestClassifierIndex(newWeights);
 
-			if (this.weights[poorestClassifier][0] < candidateClassifierWeight) {
-				this.weights[poorestClassifier][0] = candidateClassifierWeight;
-				addedClassifier = this.candidate.copy();
-				this.learners[(int) this.weights[poorestClassifier][1]] = addedClassifier;
+			if (newWeights[poorestClassifier][0] < candidateClassifierWeight) {
+				newWeights[poorestClassifier][0] = candidateClassifierWeight;
+				newLearners[(int) newWeights[poorestClassifier][1]] = chunkCandidate.copy();
 			}
 		}
 
 		// train classifiers
-		for (int i = 0; i < this.learners.length; i++) {
-			this.trainOnChunk(this.learners[(int) this.weights[i][1]]);
-		}
+		this.getWorkers().forEach(newLearners.length, new ChunkWorkers.Task() {
+			@Override
+			public void run(int i) {
+				int index = (int) newWeights[i][1];
+				if (copyLearners && index < currentLearners.length
+						&& newLearners[index] == currentLearners[index]) {
+					newLearners[index] = newLearners[index].copy();
+				}
+				trainOnChunk(newLearners[index], chunk);
+			}
+		});
 
-		this.classDistributions = null;
-		this.currentChunk = null;
-		this.candidate = (Classifier) getPreparedClassOption(this.learnerOption);
-		this.candidate.resetLearning();
+		this.enforceMemoryLimit(newLearners, newWeights);
 
-		this.enforceMemoryLimit();
+		return new Runnable() {
+			@Override
+			public void run() {
+				learners = newLearners;
+				weights = newWeights;
+			}
+		};
 	}
 
 	/**
 	 * Checks if the memory limit is exceeded and if so prunes the classifiers in the ensemble.
 	 */
 	protected void enforceMemoryLimit() {
-		double memoryLimit = this.maxByteSizeOption.getValue() / (double) (this.learners.length + 1);
+		this.enforceMemoryLimit(this.learners, this.weights);
+	}
+
+	/**
+	 * Checks if the memory limit is exceeded by given members and if so prunes them.
+	 * 
+	 * @param members
+	 *            The members of the ensemble.
+	 * @param memberWeights
+	 *            The weights of the members.
+	 */
+	protected void enforceMemoryLimit(Classifier[] members, double[][] memberWeights) {
+		double memoryLimit = this.maxByteSizeOption.getValue() / (double) (members.length + 1);
 
-		for (int i = 0; i < this.learners.length; i++) {
-			((HoeffdingTree) this.learners[(int) this.weights[i][1]]).maxByteSizeOption.setValue((int) Math
+		for (int i = 0; i < members.length; i++) {
+			((HoeffdingTree) members[(int) memberWeights[i][1]]).maxByteSizeOption.setValue((int) Math
 					.round(memoryLimit));
-			((HoeffdingTree) this.learners[(int) this.weights[i][1]]).enforceTrackerLimit();
+			((HoeffdingTree) members[(int) memberWeights[i][1]]).enforceTrackerLimit();
 		}
 	}
 
@@ -231,11 +355,22 @@ public class AccuracyUpdatedEnsemble extends AbstractClassifier implements Multi
 	 * @return The MSEr threshold.
 	 */
 	protected double computeMseR() {
+		return this.computeMseR(this.classDistributions);
+	}
+
+	/**
+	 * Computes the MSEr threshold of a chunk.
+	 * 
+	 * @param chunkClassDistributions
+	 *            Class distribution of the chunk.
+	 * @return The MSEr threshold.
+	 */
+	protected double computeMseR(long[] chunkClassDistributions) {
 		double p_c;
 		double mse_r = 0;
 
-		for (int i = 0; i < this.classDistributions.length; i++) {
-			p_c = (double) this.classDistributions[i] / (double) this.chunkSizeOption.getValue();
+		for (int i = 0; i < chunkClassDistributions.length; i++) {
+			p_c = (double) chunkClassDistributions[i] / (double) this.chunkSizeOption.getValue();
 			mse_r += p_c * ((1 - p_c) * (1 - p_c));
 		}
 
@@ -332,11 +467,11 @@ public class AccuracyUpdatedEnsemble extends AbstractClassifier implements Multi
 	 * Finds the index of the classifier with the smallest weight.
 	 * @return
 	 */
-	private int getPoorestClassifierIndex() {
+	private static int getPoorestClassifierIndex(double[][] weights) {
 		int minIndex = 0;
 		
-		for (int i = 1; i < this.weights.length; i++) {
-			if(this.weights[i][0] < this.weights[minIndex][0]){
+		for (int i = 1; i < weights.length; i++) {
+			if(weights[i][0] < weights[minIndex][0]){
 				minIndex = i;
 			}
 		}
@@ -366,10 +501,12 @@ public class AccuracyUpdatedEnsemble extends AbstractClassifier implements Multi
 	 * 
 	 * @param classifierToTrain
 	 *            Classifier being trained.
+	 * @param chunk
+	 *            Chunk of examples.
 	 */
-	private void trainOnChunk(Classifier classifierToTrain) {
+	private void trainOnChunk(Classifier classifierToTrain, Instances chunk) {
 		for (int num = 0; num < this.chunkSizeOption.getValue(); num++) {
-			classifierToTrain.trainOnInstance(this.currentChunk.instance(num));
+			classifierToTrain.trainOnInstance(chunk.instance(num));
 		}
 	}
 
@@ -20,6 +20,7 @@
 package moa.classifiers.meta;
 
 import java.util.Random;
+import java.util.concurrent.Callable;
 import moa.classifiers.AbstractClassifier;
 import moa.classifiers.Classifier;
 import moa.classifiers.MultiClassClassifier;
@@ -27,6 +28,7 @@ import moa.core.DoubleVector;
 import moa.core.Measurement;
 import moa.core.ObjectRepository;
 import moa.options.ClassOption;
+import com.github.javacliparser.FlagOption;
 import com.github.javacliparser.FloatOption;
 import com.github.javacliparser.IntOption;
 import moa.tasks.TaskMonitor;
@@ -37,6 +39,12 @@ import moa.core.Utils;
 /**
  * The Accuracy Weighted Ensemble classifier as proposed by Wang et al. in
  * "Mining concept-drifting data streams using ensemble classifiers", KDD 2003.
+ *
+ * The folds of the candidate cross-validation and the stored classifiers can
+ * be scored on several threads, with the same weights as on one thread. A
+ * chunk can also be processed on a background thread while the next one is
+ * collected, so training does not stall at the end of every chunk; the
+ * previous ensemble predicts until the new one is ready.
  */
 public class AccuracyWeightedEnsemble extends AbstractClassifier implements MultiClassClassifier {
 
@@ -94,6 +102,16 @@ public class AccuracyWeightedEnsemble extends AbstractClassifier implements Mult
      */
     public IntOption numFoldsOption = new IntOption("numFolds", 'f', "Number of cross-validation folds for candidate classifier testing.", 10, 1, Integer.MAX_VALUE);
 
+    /**
+     * Number of threads processing a chunk.
+     */
+    public IntOption numThreadsOption = new IntOption("numThreads", 'j', "Number of threads cross-validating the candidate and scoring the stored classifiers.", 1, 1, Integer.MAX_VALUE);
+
+    /**
+     * Whether chunks are processed in the background.
+     */
+    public FlagOption backgroundProcessingOption = new FlagOption("backgroundProcessing", 'g', "Process each chunk on a background thread while the next one is collected, predicting with the previous ensemble until the new one is ready.");
+
     protected long[] classDistributions;
 
     protected Classifier[] ensemble;
@@ -122,6 +140,8 @@ public class AccuracyWeightedEnsemble extends AbstractClassifier implements Mult
 
     protected Instances currentChunk;
 
+    protected transient ChunkWorkers workers;
+
     @Override
     public void prepareForUseImpl(TaskMonitor monitor, ObjectRepository repository) {
         this.maxMemberCount = (int) memberCountOption.getValue();
@@ -141,6 +161,9 @@ public class AccuracyWeightedEnsemble extends AbstractClassifier implements Mult
 
     @Override
     public void resetLearningImpl() {
+        if (this.workers != null) {
+            this.workers.cancel();
+        }
         this.currentChunk = null;
         this.classDistributions = null;
         this.processedInstances = 0;
@@ -153,6 +176,7 @@ public class AccuracyWeightedEnsemble extends AbstractClassifier implements Mult
 
     @Override
     public void trainOnInstanceImpl(Instance inst) {
+        this.getWorkers().applyIfDone();
         this.initVariables();
 
         this.classDistributions[(int) inst.classValue()]++;
@@ -160,10 +184,21 @@ public class AccuracyWeightedEnsemble extends AbstractClassifier implements Mult
         this.processedInstances++;
 
         if (this.processedInstances % this.chunkSize == 0) {
-            this.processChunk();
+            if (this.backgroundProcessingOption.isSet()) {
+                this.processChunkInBackground();
+            } else {
+                this.processChunk();
+            }
         }
     }
 
+    protected ChunkWorkers getWorkers() {
+        if (this.workers == null) {
+            this.workers = new ChunkWorkers(this.numThreadsOption.getValue());
+        }
+        return this.workers;
+    }
+
     /**
      * Initiates the current chunk and class distribution variables.
      */
@@ -183,41 +218,87 @@ public class AccuracyWeightedEnsemble extends AbstractClassifier implements Mult
 
     /**
      * Processes a chunk.
-     *
-     * @param useMseR Determines whether to use the MSEr threshold.
      */
     protected void processChunk() {
+        this.processChunk(this.currentChunk, this.classDistributions, this.candidateClassifier).run();
+        this.startChunk();
+    }
+
+    /**
+     * Processes the current chunk on a background thread and starts collecting
+     * the next one. The ensemble built from the chunk replaces the current one
+     * once ready, at the latest when the next chunk is complete.
+     */
+    protected void processChunkInBackground() {
+        final Instances chunk = this.currentChunk;
+        final long[] chunkClassDistributions = this.classDistributions;
+        // the prepared candidate is shared, and reset when the next chunk starts
+        final Classifier candidate = this.candidateClassifier.copy();
+        this.startChunk();
+        this.getWorkers().submit(new Callable<Runnable>() {
+            @Override
+            public Runnable call() {
+                return processChunk(chunk, chunkClassDistributions, candidate);
+            }
+        });
+    }
+
+    /**
+     * Starts collecting a new chunk, with a new candidate classifier.
+     */
+    protected void startChunk() {
+        this.classDistributions = null;
+        this.currentChunk = null;
+        this.candidateClassifier = (Classifier) getPreparedClassOption(this.learnerOption);
+        this.candidateClassifier.resetLearning();
+    }
+
+    /**
+     * Weights the stored classifiers and the candidate on a chunk, and updates
+     * the stored classifiers.
+     *
+     * @param chunk Data chunk of examples.
+     * @param chunkClassDistributions Class distribution of the chunk.
+     * @param candidate Candidate classifier.
+     * @return The update replacing the ensemble by the best stored classifiers.
+     */
+    protected Runnable processChunk(final Instances chunk, long[] chunkClassDistributions, Classifier candidate) {
+        final double mse_r = this.computeMseR(chunkClassDistributions);
+
         // Compute weights
-        double candidateClassifierWeight = this.computeCandidateWeight(this.candidateClassifier, this.currentChunk, this.numFolds);
+        double candidateClassifierWeight = this.computeCandidateWeight(candidate, chunk, this.numFolds, mse_r);
 
-        for (int i = 0; i < this.storedLearners.length; i++) {
-            this.storedWeights[i][0] = this.computeWeight(this.storedLearners[(int) this.storedWeights[i][1]], this.currentChunk);
-        }
+        this.getWorkers().forEach(this.storedLearners.length, new ChunkWorkers.Task() {
+            @Override
+            public void run(int i) {
+                storedWeights[i][0] = computeWeight(storedLearners[(int) storedWeights[i][1]], chunk, mse_r);
+            }
+        });
 
         if (this.storedLearners.length < this.maxStoredCount) {
             // Train and add classifier
             for (int num = 0; num < this.chunkSize; num++) {
-                this.candidateClassifier.trainOnInstance(this.currentChunk.instance(num));
+                candidate.trainOnInstance(chunk.instance(num));
             }
 
-            this.addToStored(this.candidateClassifier, candidateClassifierWeight);
+            this.addToStored(candidate, candidateClassifierWeight);
         } else {
             // Substitute poorest classifier
             java.util.Arrays.sort(this.storedWeights, weightComparator);
 
             if (this.storedWeights[0][0] < candidateClassifierWeight) {
                 for (int num = 0; num < this.chunkSize; num++) {
-                    this.candidateClassifier.trainOnInstance(this.currentChunk.instance(num));
+                    candidate.trainOnInstance(chunk.instance(num));
                 }
 
                 this.storedWeights[0][0] = candidateClassifierWeight;
-                this.storedLearners[(int) this.storedWeights[0][1]] = this.candidateClassifier.copy();
+                this.storedLearners[(int) this.storedWeights[0][1]] = candidate.copy();
             }
         }
 
         int ensembleSize = java.lang.Math.min(this.storedLearners.length, this.maxMemberCount);
-        this.ensemble = new Classifier[ensembleSize];
-        this.ensembleWeights = new double[ensembleSize];
+        final Classifier[] newEnsemble = new Classifier[ensembleSize];
+        final double[] newEnsembleWeights = new double[ensembleSize];
 
         // Sort learners according to their weights
         java.util.Arrays.sort(this.storedWeights, weightComparator);
@@ -225,14 +306,17 @@ public class AccuracyWeightedEnsemble extends AbstractClassifier implements Mult
         // Select top k classifiers to construct the ensemble
         int storeSize = this.storedLearners.length;
         for (int i = 0; i < ensembleSize; i++) {
-            this.ensembleWeights[i] = this.storedWeights[storeSize - i - 1][0];
-            this.ensemble[i] = this.storedLearners[(int) this.storedWeights[storeSize - i - 1][1]];
+            newEnsembleWeights[i] = this.storedWeights[storeSize - i - 1][0];
+            newEnsemble[i] = this.storedLearners[(int) this.storedWeights[storeSize - i - 1][1]];
         }
 
-        this.classDistributions = null;
-        this.currentChunk = null;
-        this.candidateClassifier = (Classifier) getPreparedClassOption(this.learnerOption);
-        this.candidateClassifier.resetLearning();
+        return new Runnable() {
+            @Override
+            public void run() {
+                ensemble = newEnsemble;
+                ensembleWeights = newEnsembleWeights;
+            }
+        };
     }
 
     /**
@@ -241,11 +325,24 @@ public class AccuracyWeightedEnsemble extends AbstractClassifier implements Mult
      * @param candidate Candidate classifier.
      * @param chunk Data chunk of examples.
      * @param numFolds Number of folds in candidate classifier cross-validation.
-     * @param useMseR Determines whether to use the MSEr threshold.
      * @return Candidate classifier weight.
      */
     protected double computeCandidateWeight(Classifier candidate, Instances chunk, int numFolds) {
-        double candidateWeight = 0.0;
+        return this.computeCandidateWeight(candidate, chunk, numFolds, this.computeMseR());
+    }
+
+    /**
+     * Computes the weight of a candidate classifier. The folds are drawn in
+     * order before being trained and tested, in parallel if several threads
+     * are used, so the weight does not depend on the number of threads.
+     *
+     * @param candidate Candidate classifier.
+     * @param chunk Data chunk of examples.
+     * @param numFolds Number of folds in candidate classifier cross-validation.
+     * @param mse_r The MSEr threshold of the chunk.
+     * @return Candidate classifier weight.
+     */
+    protected double computeCandidateWeight(Classifier candidate, Instances chunk, int numFolds, final double mse_r) {
         Random random = new Random(1);
         Instances randData = new Instances(chunk);
         randData.randomize(random);
@@ -253,17 +350,30 @@ public class AccuracyWeightedEnsemble extends AbstractClassifier implements Mult
             randData.stratify(numFolds);
         }
 
+        final Instances[] trainFolds = new Instances[numFolds];
+        final Instances[] testFolds = new Instances[numFolds];
+        final Classifier[] learners = new Classifier[numFolds];
         for (int n = 0; n < numFolds; n++) {
-            Instances train = randData.trainCV(numFolds, n, random);
-            Instances test = randData.testCV(numFolds, n);
-
-            Classifier learner = candidate.copy();
+            trainFolds[n] = randData.trainCV(numFolds, n, random);
+            testFolds[n] = randData.testCV(numFolds, n);
+            learners[n] = candidate.copy();
+        }
 
-            for (int num = 0; num < train.numInstances(); num++) {
-                learner.trainOnInstance(train.instance(num));
+        final double[] foldWeights = new double[numFolds];
+        this.getWorkers().forEach(numFolds, new ChunkWorkers.Task() {
+            @Override
+            public void run(int n) {
+                Instances train = trainFolds[n];
+                for (int num = 0; num < train.numInstances(); num++) {
+                    learners[n].trainOnInstance(train.instance(num));
+                }
+                foldWeights[n] = computeWeight(learners[n], testFolds[n], mse_r);
             }
+        });
 
-            candidateWeight += computeWeight(learner, test);
+        double candidateWeight = 0.0;
+        for (int n = 0; n < numFolds; n++) {
+            candidateWeight += foldWeights[n];
         }
 
         double resultWeight = candidateWeight / numFolds;
@@ -280,12 +390,22 @@ public class AccuracyWeightedEnsemble extends AbstractClassifier implements Mult
      *
      * @param learner Classifier to calculate weight for.
      * @param chunk Data chunk of examples.
-     * @param useMseR Determines whether to use the MSEr threshold.
      * @return The given classifier's weight.
      */
     protected double computeWeight(Classifier learner, Instances chunk) {
+        return this.computeWeight(learner, chunk, this.computeMseR());
+    }
+
+    /**
+     * Computes the weight of a given classifier.
+     *
+     * @param learner Classifier to calculate weight for.
+     * @param chunk Data chunk of examples.
+     * @param mse_r The MSEr threshold of the chunk.
+     * @return The given classifier's weight.
+     */
+    protected double computeWeight(Classifier learner, Instances chunk, double mse_r) {
         double mse_i = 0;
-        double mse_r = 0;
 
         double f_ci;
         double voteSum;
@@ -309,7 +429,6 @@ public class AccuracyWeightedEnsemble extends AbstractClassifier implements Mult
         }
 
         mse_i /= this.chunkSize;
-        mse_r = this.computeMseR();
 
         return java.lang.Math.max(mse_r - mse_i, 0);
     }
@@ -320,11 +439,21 @@ public class AccuracyWeightedEnsemble extends AbstractClassifier implements Mult
      * @return The MSEr threshold.
      */
     protected double computeMseR() {
+        return this.computeMseR(this.classDistributions);
+    }
+
+    /**
+     * Computes the MSEr threshold of a chunk.
+     *
+     * @param chunkClassDistributions Class distribution of the chunk.
+     * @return The MSEr threshold.
+     */
+    protected double computeMseR(long[] chunkClassDistributions) {
         double p_c;
         double mse_r = 0;
 
-        for (int i = 0; i < this.classDistributions.length; i++) {
-            p_c = (double) this.classDistributions[i] / (double) this.chunkSize;
+        for (int i = 0; i < chunkClassDistributions.length; i++) {
+            p_c = (double) chunkClassDistributions[i] / (double) this.chunkSize;
             mse_r += p_c * ((1 - p_c) * (1 - p_c));
         }
 
@@ -26,7 +26,9 @@ import moa.core.DoubleVector;
 import moa.core.InstanceExample;
 import moa.core.Measurement;
 import moa.core.MiscUtils;
+import moa.core.Profiler;
 import moa.options.ClassOption;
+import moa.options.PrototypeFactories;
 
 import com.github.javacliparser.FloatOption;
 import com.github.javacliparser.FlagOption;
@@ -137,6 +139,7 @@ public class AdaptiveRandomForest extends AbstractClassifier implements MultiCla
     protected long instancesSeen;
     protected int subspaceSize;
     protected BasicClassificationPerformanceEvaluator evaluator;
+    protected PrototypeFactories prototypeFactories;
 
     private ExecutorService executor;
     
@@ -147,6 +150,7 @@ public class AdaptiveRandomForest extends AbstractClassifier implements MultiCla
         this.subspaceSize = 0;
         this.instancesSeen = 0;
         this.evaluator = new BasicClassificationPerformanceEvaluator();
+        this.prototypeFactories = new PrototypeFactories();
         
         // Multi-threading
         int numberOfJobs;
@@ -293,6 +297,14 @@ public class AdaptiveRandomForest extends AbstractClassifier implements MultiCla
         }
     }
     
+    /**
+     * Returns a new change detector with the options of the prepared one,
+     * instead of copying it.
+     */
+    protected ChangeDetector newChangeDetector(ClassOption option) {
+        return (ChangeDetector) this.prototypeFactories.newInstance(option, getPreparedClassOption(option));
+    }
+
     /**
      * Inner class that represents a single tree member of the forest. 
      * It contains some analysis information, such as the numberOfDriftsDetected, 
@@ -341,13 +353,13 @@ public class AdaptiveRandomForest extends AbstractClassifier implements MultiCla
 
             if(this.useDriftDetector) {
                 this.driftOption = driftOption;
-                this.driftDetectionMethod = ((ChangeDetector) getPreparedClassOption(this.driftOption)).copy();
+                this.driftDetectionMethod = newChangeDetector(this.driftOption);
             }
 
             // Init Drift Detector for Warning detection. 
             if(this.useBkgLearner) {
                 this.warningOption = warningOption;
-                this.warningDetectionMethod = ((ChangeDetector) getPreparedClassOption(this.warningOption)).copy();
+                this.warningDetectionMethod = newChangeDetector(this.warningOption);
             }
         }
 
@@ -370,12 +382,13 @@ public class AdaptiveRandomForest extends AbstractClassifier implements MultiCla
             else {
                 this.classifier.resetLearning();
                 this.createdOn = instancesSeen;
-                this.driftDetectionMethod = ((ChangeDetector) getPreparedClassOption(this.driftOption)).copy();
+                this.driftDetectionMethod = newChangeDetector(this.driftOption);
             }
             this.evaluator.reset();
         }
 
         public void trainOnInstance(Instance instance, double weight, long instancesSeen) {
+            long memberStart = Profiler.start();
             Instance weightedInstance = (Instance) instance.copy();
             weightedInstance.setWeight(instance.weight() * weight);
             this.classifier.trainOnInstance(weightedInstance);
@@ -389,7 +402,9 @@ public class AdaptiveRandomForest extends AbstractClassifier implements MultiCla
                 // Check for warning only if useBkgLearner is active
                 if(this.useBkgLearner) {
                     // Update the warning detection method
+                    long profileStart = Profiler.start();
                     this.warningDetectionMethod.input(correctlyClassifies ? 0 : 1);
+                    Profiler.stop(Profiler.Phase.DRIFT_DETECTION, profileStart);
                     // Check if there was a change
                     if(this.warningDetectionMethod.getChange()) {
                         this.lastWarningOn = instancesSeen;
@@ -408,14 +423,16 @@ public class AdaptiveRandomForest extends AbstractClassifier implements MultiCla
                         
                         // Update the warning detection object for the current object 
                         // (this effectively resets changes made to the object while it was still a bkg learner). 
-                        this.warningDetectionMethod = ((ChangeDetector) getPreparedClassOption(this.warningOption)).copy();
+                        this.warningDetectionMethod = newChangeDetector(this.warningOption);
                     }
                 }
                 
                 /*********** drift detection ***********/
                 
                 // Update the DRIFT detection method
+                long profileStart = Profiler.start();
                 this.driftDetectionMethod.input(correctlyClassifies ? 0 : 1);
+                Profiler.stop(Profiler.Phase.DRIFT_DETECTION, profileStart);
                 // Check if there was a change
                 if(this.driftDetectionMethod.getChange()) {
                     this.lastDriftOn = instancesSeen;
@@ -423,6 +440,7 @@ public class AdaptiveRandomForest extends AbstractClassifier implements MultiCla
                     this.reset();
                 }
             }
+            Profiler.stop(Profiler.Phase.ENSEMBLE_MEMBER, memberStart);
         }
 
         public double[] getVotesForInstance(Instance instance) {
@@ -443,6 +461,7 @@ public class AdaptiveRandomForest extends AbstractClassifier implements MultiCla
         final private Instance instance;
         final private double weight;
         final private long instancesSeen;
+        final private Profiler profiler;
 
         public TrainingRunnable(ARFBaseLearner learner, Instance instance, 
                 double weight, long instancesSeen) {
@@ -450,11 +469,18 @@ public class AdaptiveRandomForest extends AbstractClassifier implements MultiCla
             this.instance = instance;
             this.weight = weight;
             this.instancesSeen = instancesSeen;
+            this.profiler = Profiler.current();
         }
 
         @Override
         public void run() {
-            learner.trainOnInstance(this.instance, this.weight, this.instancesSeen);
+            // Member updates are recorded by the profiler of the task
+            Profiler previous = Profiler.bind(this.profiler);
+            try {
+                learner.trainOnInstance(this.instance, this.weight, this.instancesSeen);
+            } finally {
+                Profiler.bind(previous);
+            }
         }
 
         @Override
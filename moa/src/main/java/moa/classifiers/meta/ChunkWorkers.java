@@ -0,0 +1,202 @@
+/*
+ *    ChunkWorkers.java
+ *    Copyright (C) 2018 University of Waikato, Hamilton, New Zealand
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.classifiers.meta;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Threads of the chunk-based ensembles. A pool runs the independent tasks of
+ * a chunk, such as scoring the members or the folds of a cross-validation,
+ * in parallel, and a background thread can process a whole chunk while the
+ * next one is collected.
+ *
+ * The processing of a chunk in the background returns the update of the
+ * ensemble, which is applied on the training thread, so predictions never
+ * see a half updated ensemble. At most one chunk is processed at a time.
+ * With one thread the tasks of a chunk run in order on the calling thread.
+ *
+ * The threads are daemon threads, created when first needed and ending when
+ * idle, so copies and discarded ensembles do not keep them. As with the
+ * other learners using threads, their CPU time is not part of the CPU time
+ * of the training thread that evaluation tasks report.
+ *
+ * @version $Revision: 1 $
+ */
+public class ChunkWorkers {
+
+    /**
+     * One of several independent tasks on a chunk.
+     */
+    public interface Task {
+
+        void run(int index);
+    }
+
+    protected static final long KEEP_ALIVE_SECONDS = 10;
+
+    protected final int numThreads;
+
+    protected ExecutorService pool;
+
+    protected ExecutorService background;
+
+    protected Future<Runnable> pendingChunk;
+
+    public ChunkWorkers(int numThreads) {
+        this.numThreads = numThreads;
+    }
+
+    protected static ExecutorService newExecutor(int numThreads, final String name) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(numThreads, numThreads,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    protected synchronized ExecutorService getPool() {
+        if (this.pool == null) {
+            this.pool = newExecutor(this.numThreads, "Chunk worker");
+        }
+        return this.pool;
+    }
+
+    /**
+     * Runs a task for every index from 0 to n - 1 and waits for all of them.
+     * The tasks must not depend on each other.
+     */
+    public void forEach(int n, final Task task) {
+        if (this.numThreads <= 1 || n <= 1) {
+            for (int i = 0; i < n; i++) {
+                task.run(i);
+            }
+            return;
+        }
+        ExecutorService executor = getPool();
+        List<Future<?>> futures = new ArrayList<Future<?>>(n);
+        for (int i = 0; i < n; i++) {
+            final int index = i;
+            futures.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    task.run(index);
+                }
+            }));
+        }
+        Throwable failure = null;
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure = e;
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause();
+                }
+            }
+        }
+        if (failure != null) {
+            throw new RuntimeException("Processing a chunk failed.", failure);
+        }
+    }
+
+    /**
+     * Processes a chunk on the background thread, once the previous chunk is
+     * processed and its update applied. The processing returns the update of
+     * the ensemble, applied on the training thread by {@link #applyIfDone()}
+     * or {@link #awaitAndApply()}.
+     */
+    public void submit(Callable<Runnable> chunkProcessing) {
+        awaitAndApply();
+        if (this.background == null) {
+            this.background = newExecutor(1, "Chunk processor");
+        }
+        this.pendingChunk = this.background.submit(chunkProcessing);
+    }
+
+    public boolean isProcessing() {
+        return this.pendingChunk != null;
+    }
+
+    /**
+     * Applies the update of the chunk processed in the background, if it is
+     * ready, without waiting.
+     */
+    public void applyIfDone() {
+        if (this.pendingChunk != null && this.pendingChunk.isDone()) {
+            awaitAndApply();
+        }
+    }
+
+    /**
+     * Waits for the chunk processed in the background, if any, and applies
+     * its update.
+     */
+    public void awaitAndApply() {
+        Runnable update = await();
+        if (update != null) {
+            update.run();
+        }
+    }
+
+    /**
+     * Waits for the chunk processed in the background, if any, and drops its
+     * update, for instance when the ensemble is reset.
+     */
+    public void cancel() {
+        try {
+            await();
+        } catch (RuntimeException e) {
+            // the update is dropped anyway
+        }
+    }
+
+    protected Runnable await() {
+        if (this.pendingChunk == null) {
+            return null;
+        }
+        Future<Runnable> chunk = this.pendingChunk;
+        this.pendingChunk = null;
+        try {
+            return chunk.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while processing a chunk.", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Processing a chunk failed.", e.getCause());
+        }
+    }
+}
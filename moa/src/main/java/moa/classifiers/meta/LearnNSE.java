@@ -19,6 +19,7 @@
  */
 package moa.classifiers.meta;
 
+import com.github.javacliparser.FlagOption;
 import com.github.javacliparser.FloatOption;
 import com.github.javacliparser.IntOption;
 import com.github.javacliparser.MultiChoiceOption;
@@ -26,6 +27,7 @@ import com.yahoo.labs.samoa.instances.Instance;
 import com.yahoo.labs.samoa.instances.Instances;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import moa.classifiers.AbstractClassifier;
 import moa.classifiers.Classifier;
@@ -48,6 +50,11 @@ import moa.options.ClassOption;
  * http://dx.doi.org/10.1109/TNN.2011.2160459
  * </p>
  *
+ * <p>The ensemble and its members can be evaluated on a batch by several
+ * threads, with the same results as on one thread. A batch can also be
+ * processed on a background thread while the next one is collected, the
+ * previous ensemble predicting until the new one is ready.</p>
+ *
  * @author Paulo Gonçalves (paulogoncalves@recife.ifpe.edu.br)
  * @author Dariusz Brzezinski
  *
@@ -83,6 +90,15 @@ public class LearnNSE extends AbstractClassifier implements MultiClassClassifier
             new String[]{"NO", "AGE", "ERROR"}, new String[]{
                 "Don't prune classifiers", "Age-based", "Error-based"}, 0);
 
+    public IntOption numThreadsOption = new IntOption("numThreads", 'j',
+            "Number of threads evaluating the ensemble and its members on a batch.",
+            1, 1, Integer.MAX_VALUE);
+
+    public FlagOption backgroundProcessingOption = new FlagOption(
+            "backgroundProcessing", 'g',
+            "Process each batch on a background thread while the next one is collected, "
+            + "predicting with the previous ensemble until the new one is ready.");
+
     protected List<Classifier> ensemble;
     protected List<Double> ensembleWeights;
     protected List<ArrayList<Double>> bkts, wkts;
@@ -90,9 +106,13 @@ public class LearnNSE extends AbstractClassifier implements MultiClassClassifier
     protected long index;
     protected double slope, crossingPoint;
     protected int pruning, ensembleSize;
+    protected transient ChunkWorkers workers;
 
     @Override
     public void resetLearningImpl() {
+        if (this.workers != null) {
+            this.workers.cancel();
+        }
         this.ensemble = new ArrayList<>();
         this.ensembleWeights = new ArrayList<>();
         this.bkts = new ArrayList<>();
@@ -107,6 +127,7 @@ public class LearnNSE extends AbstractClassifier implements MultiClassClassifier
 
     @Override
     public void trainOnInstanceImpl(Instance inst) {
+        this.getWorkers().applyIfDone();
         this.index++;
         // Store instance in the buffer
         if (this.buffer == null) {
@@ -116,126 +137,191 @@ public class LearnNSE extends AbstractClassifier implements MultiClassClassifier
 
         if (this.index % this.periodOption.getValue() == 0) {
             this.index = 0;
-            double mt = this.buffer.numInstances();
-            Classifier classifier = ((Classifier) getPreparedClassOption(this.baseLearnerOption));
-            classifier.resetLearning();
-
-            if (this.ensemble.size() > 0) {
-                double et = 0;
-                // Reading all data chunk instances
-                for (int i = 0; i < mt; i++) {
-                    // Compute error of the existing ensemble on new data
-                    boolean vote = this.correctlyClassifies(this.buffer
-                            .instance(i));
-                    if (!vote) {
-                        et += 1.0 / mt;
+            final Instances chunk = this.buffer;
+            this.buffer = new Instances(this.getModelContext());
+            if (this.backgroundProcessingOption.isSet()) {
+                this.getWorkers().submit(new Callable<Runnable>() {
+                    @Override
+                    public Runnable call() {
+                        return processChunk(chunk, true);
                     }
+                });
+            } else {
+                this.processChunk(chunk, false).run();
+            }
+        }
+    }
+
+    protected ChunkWorkers getWorkers() {
+        if (this.workers == null) {
+            this.workers = new ChunkWorkers(this.numThreadsOption.getValue());
+        }
+        return this.workers;
+    }
+
+    /**
+     * Returns a reset base classifier. The prepared classifier of the option
+     * is shared, so a batch processed in the background trains a copy of it
+     * instead of a classifier the ensemble may be predicting with.
+     *
+     * @param copy whether to copy the prepared classifier
+     * @return the base classifier
+     */
+    protected Classifier newBaseClassifier(boolean copy) {
+        Classifier classifier = (Classifier) getPreparedClassOption(this.baseLearnerOption);
+        if (copy) {
+            classifier = classifier.copy();
+        }
+        classifier.resetLearning();
+        return classifier;
+    }
+
+    /**
+     * Trains a new classifier on a batch and weights the classifiers of the
+     * ensemble on it. The current ensemble is left unchanged, so it can keep
+     * predicting while a batch is processed in the background.
+     *
+     * @param chunk the batch of instances
+     * @param inBackground whether the batch is processed in the background
+     * @return the update replacing the ensemble and its weights
+     */
+    protected Runnable processChunk(final Instances chunk, boolean inBackground) {
+        double mt = chunk.numInstances();
+        Classifier classifier = this.newBaseClassifier(inBackground);
+
+        if (this.ensemble.size() > 0) {
+            // Predictions of the existing ensemble on new data
+            final boolean[] votes = new boolean[chunk.numInstances()];
+            this.getWorkers().forEach(votes.length, new ChunkWorkers.Task() {
+                @Override
+                public void run(int i) {
+                    votes[i] = correctlyClassifies(chunk.instance(i));
                 }
-                // Normalizing error
-                double weightSum = 0.0;
-                // Reading all data chunk instances
-                for (int i = 0; i < mt; i++) {
-                    Instance instance = this.buffer.instance(i);
-                    // Updating instance weights
-                    boolean vote = this.correctlyClassifies(instance);
-                    double error = (1.0 / mt) * (vote ? et : 1.0);
-                    instance.setWeight(error);
-                    weightSum += error;
+            });
+            double et = 0;
+            // Reading all data chunk instances
+            for (int i = 0; i < mt; i++) {
+                // Compute error of the existing ensemble on new data
+                if (!votes[i]) {
+                    et += 1.0 / mt;
                 }
-                // Reading all data chunk instances
-                for (int i = 0; i < mt; i++) {
-                    Instance instance = this.buffer.instance(i);
-                    // Normalize weights
-                    instance.setWeight(instance.weight() / weightSum);
+            }
+            // Normalizing error
+            double weightSum = 0.0;
+            // Reading all data chunk instances
+            for (int i = 0; i < mt; i++) {
+                Instance instance = chunk.instance(i);
+                // Updating instance weights
+                double error = (1.0 / mt) * (votes[i] ? et : 1.0);
+                instance.setWeight(error);
+                weightSum += error;
+            }
+            // Reading all data chunk instances
+            for (int i = 0; i < mt; i++) {
+                Instance instance = chunk.instance(i);
+                // Normalize weights
+                instance.setWeight(instance.weight() / weightSum);
 
-                    // Call base classifier
-                    Instance trainingInstance = (Instance) instance.copy();
-                    trainingInstance.setWeight(1);
-                    classifier.trainOnInstance(trainingInstance);
-                }
-            } else {
-                // First run! Iterating through all instances in the data chunk
-                for (int i = 0; i < mt; i++) {
-                    Instance instance = this.buffer.instance(i);
+                // Call base classifier
+                Instance trainingInstance = (Instance) instance.copy();
+                trainingInstance.setWeight(1);
+                classifier.trainOnInstance(trainingInstance);
+            }
+        } else {
+            // First run! Iterating through all instances in the data chunk
+            for (int i = 0; i < mt; i++) {
+                Instance instance = chunk.instance(i);
 
-                    // Initialize weights
-                    instance.setWeight(1.0 / mt);
+                // Initialize weights
+                instance.setWeight(1.0 / mt);
 
-                    // Call base classifier
-                    Instance trainingInstance = (Instance) instance.copy();
-                    trainingInstance.setWeight(1);
-                    classifier.trainOnInstance(trainingInstance);
-                }
+                // Call base classifier
+                Instance trainingInstance = (Instance) instance.copy();
+                trainingInstance.setWeight(1);
+                classifier.trainOnInstance(trainingInstance);
             }
-            this.ensemble.add(classifier);
-            this.bkts.add(new ArrayList());
-            this.wkts.add(new ArrayList());
-            this.ensembleWeights.clear();
-            int t = this.ensemble.size();
-            double maxError = Double.NEGATIVE_INFINITY;
-            int errorIndex = Integer.MIN_VALUE;
-            // Evaluate all existing classifiers on new data set
-            for (int k = 1; k <= t; k++) {
+        }
+        final List<Classifier> newEnsemble = new ArrayList<>(this.ensemble);
+        final List<Double> newEnsembleWeights = new ArrayList<>();
+        newEnsemble.add(classifier);
+        this.bkts.add(new ArrayList());
+        this.wkts.add(new ArrayList());
+        int t = newEnsemble.size();
+        double maxError = Double.NEGATIVE_INFINITY;
+        int errorIndex = Integer.MIN_VALUE;
+        // Evaluate all existing classifiers on new data set
+        final double[] ekts = new double[t];
+        this.getWorkers().forEach(t, new ChunkWorkers.Task() {
+            @Override
+            public void run(int k) {
                 double ekt = 0;
                 // Reading all data chunk instances
-                for (int i = 0; i < mt; i++) {
-                    Instance instance = this.buffer.instance(i);
-                    if (!this.ensemble.get(k - 1).correctlyClassifies(instance)) {
+                for (int i = 0; i < chunk.numInstances(); i++) {
+                    Instance instance = chunk.instance(i);
+                    if (!newEnsemble.get(k).correctlyClassifies(instance)) {
                         // Ensemble incorrectly classifies this instance
                         ekt += instance.weight();
                     }
                 }
-                if (k == t && ekt > 0.5) {
-                    // Generate a new classifier
-                    Classifier c = (Classifier) getPreparedClassOption(this.baseLearnerOption);
-                    c.resetLearning();
-                    this.ensemble.set(k - 1, c);
-                } else if (ekt > 0.5) {
-                    // Remove voting power of this classifier
-                    ekt = 0.5;
-                }
-				// Storing the index of the classifier with higher error in case
-                // of error-based pruning
-                if (ekt > maxError) {
-                    maxError = ekt;
-                    errorIndex = k;
-                }
-                // Normalizing errors
-                double bkt = ekt / (1.0 - ekt);
-                // Retrieving normalized errors for this classifier
-                ArrayList<Double> nbkt = this.bkts.get(k - 1);
-                nbkt.add(bkt);
-				// Compute the weighted average of all normalized errors for kth
-                // classifier h_k
-                double wkt = 1.0 / (1.0 + Math.exp(-this.slope
-                        * (t - k - this.crossingPoint)));
-                List<Double> weights = this.wkts.get(k - 1);
-                double sum = 0;
-                for (Double weight : weights) {
-                    sum += weight;
-                }
-                weights.add(wkt / (sum + wkt));
-                double sbkt = 0.0;
-                for (int j = 0; j < weights.size(); j++) {
-                    sbkt += weights.get(j) * nbkt.get(j);
-                }
-                // Calculate classifier voting weights
-                this.ensembleWeights.add(Math.log(1.0 / sbkt));
+                ekts[k] = ekt;
             }
-            // Ensemble pruning strategy				
-            if (pruning == 1 && t > ensembleSize) { // Age-based
-                this.ensemble.remove(0);
-                this.ensembleWeights.remove(0);
-                this.bkts.remove(0);
-                this.wkts.remove(0);
-            } else if (pruning == 2 && t > ensembleSize) { // Error-based
-                this.ensemble.remove(errorIndex - 1);
-                this.ensembleWeights.remove(errorIndex - 1);
-                this.bkts.remove(errorIndex - 1);
-                this.wkts.remove(errorIndex - 1);
+        });
+        for (int k = 1; k <= t; k++) {
+            double ekt = ekts[k - 1];
+            if (k == t && ekt > 0.5) {
+                // Generate a new classifier
+                newEnsemble.set(k - 1, this.newBaseClassifier(inBackground));
+            } else if (ekt > 0.5) {
+                // Remove voting power of this classifier
+                ekt = 0.5;
             }
-            this.buffer = new Instances(this.getModelContext());
+			// Storing the index of the classifier with higher error in case
+            // of error-based pruning
+            if (ekt > maxError) {
+                maxError = ekt;
+                errorIndex = k;
+            }
+            // Normalizing errors
+            double bkt = ekt / (1.0 - ekt);
+            // Retrieving normalized errors for this classifier
+            ArrayList<Double> nbkt = this.bkts.get(k - 1);
+            nbkt.add(bkt);
+			// Compute the weighted average of all normalized errors for kth
+            // classifier h_k
+            double wkt = 1.0 / (1.0 + Math.exp(-this.slope
+                    * (t - k - this.crossingPoint)));
+            List<Double> weights = this.wkts.get(k - 1);
+            double sum = 0;
+            for (Double weight : weights) {
+                sum += weight;
+            }
+            weights.add(wkt / (sum + wkt));
+            double sbkt = 0.0;
+            for (int j = 0; j < weights.size(); j++) {
+                sbkt += weights.get(j) * nbkt.get(j);
+            }
+            // Calculate classifier voting weights
+            newEnsembleWeights.add(Math.log(1.0 / sbkt));
         }
+        // Ensemble pruning strategy				
+        if (pruning == 1 && t > ensembleSize) { // Age-based
+            newEnsemble.remove(0);
+            newEnsembleWeights.remove(0);
+            this.bkts.remove(0);
+            this.wkts.remove(0);
+        } else if (pruning == 2 && t > ensembleSize) { // Error-based
+            newEnsemble.remove(errorIndex - 1);
+            newEnsembleWeights.remove(errorIndex - 1);
+            this.bkts.remove(errorIndex - 1);
+            this.wkts.remove(errorIndex - 1);
+        }
+        return new Runnable() {
+            @Override
+            public void run() {
+                ensemble = newEnsemble;
+                ensembleWeights = newEnsembleWeights;
+            }
+        };
     }
 
     @Override
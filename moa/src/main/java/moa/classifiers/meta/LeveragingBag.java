@@ -33,6 +33,7 @@ import com.yahoo.labs.samoa.instances.Instance;
 import moa.core.DoubleVector;
 import moa.core.Measurement;
 import moa.core.MiscUtils;
+import moa.core.Profiler;
 import moa.options.*;
 
 /**
@@ -177,11 +178,16 @@ public class LeveragingBag extends AbstractClassifier implements MultiClassClass
                     weightedInst.setClassValue((double) this.matrixCodes[i][(int) inst.classValue()]);
                 }
                 weightedInst.setWeight(inst.weight() * k);
+                long profileStart = Profiler.start();
                 this.ensemble[i].trainOnInstance(weightedInst);
+                Profiler.stop(Profiler.Phase.ENSEMBLE_MEMBER, profileStart);
             }
             boolean correctlyClassifies = this.ensemble[i].correctlyClassifies(weightedInst);
             double ErrEstim = this.ADError[i].getEstimation();
-            if (this.ADError[i].setInput(correctlyClassifies ? 0 : 1)) {
+            long profileStart = Profiler.start();
+            boolean detected = this.ADError[i].setInput(correctlyClassifies ? 0 : 1);
+            Profiler.stop(Profiler.Phase.DRIFT_DETECTION, profileStart);
+            if (detected) {
                 if (this.ADError[i].getEstimation() > ErrEstim) {
                     Change = true;
                 }
@@ -221,6 +227,37 @@ public class LeveragingBag extends AbstractClassifier implements MultiClassClass
         return combinedVote.getArrayRef();
     }
 
+    /**
+     * Predicts a batch one member at a time, combining the votes as
+     * getVotesForInstance does. With output codes the instances are
+     * predicted one at a time.
+     */
+    @Override
+    public double[][] getVotesForInstances(Instance[] batch, int n) {
+        if (this.outputCodesOption.isSet()) {
+            return super.getVotesForInstances(batch, n);
+        }
+        DoubleVector[] combinedVotes = new DoubleVector[n];
+        for (int j = 0; j < n; j++) {
+            combinedVotes[j] = new DoubleVector();
+        }
+        for (int i = 0; i < this.ensemble.length; i++) {
+            double[][] memberVotes = this.ensemble[i].getVotesForInstances(batch, n);
+            for (int j = 0; j < n; j++) {
+                DoubleVector vote = new DoubleVector(memberVotes[j]);
+                if (vote.sumOfValues() > 0.0) {
+                    vote.normalize();
+                    combinedVotes[j].addValues(vote);
+                }
+            }
+        }
+        double[][] votes = new double[n][];
+        for (int j = 0; j < n; j++) {
+            votes[j] = combinedVotes[j].getArrayRef();
+        }
+        return votes;
+    }
+
     public double[] getVotesForInstanceBinary(Instance inst) {
         double combinedVote[] = new double[(int) inst.numClasses()];
         Instance weightedInst = (Instance) inst.copy();
@@ -27,6 +27,7 @@ import moa.classifiers.MultiClassClassifier;
 import moa.core.DoubleVector;
 import moa.core.Measurement;
 import moa.core.MiscUtils;
+import moa.core.Profiler;
 import moa.options.ClassOption;
 import com.github.javacliparser.IntOption;
 
@@ -84,11 +85,67 @@ public class OzaBag extends AbstractClassifier implements MultiClassClassifier {
             if (k > 0) {
                 Instance weightedInst = (Instance) inst.copy();
                 weightedInst.setWeight(inst.weight() * k);
+                long profileStart = Profiler.start();
                 this.ensemble[i].trainOnInstance(weightedInst);
+                Profiler.stop(Profiler.Phase.ENSEMBLE_MEMBER, profileStart);
             }
         }
     }
 
+    /**
+     * Draws the weights of all the members for the whole batch, in the same
+     * order as trainOnInstanceImpl, then passes every member its weighted
+     * instances as one batch.
+     */
+    @Override
+    public void trainOnInstances(Instance[] batch, int n) {
+        n = selectTrainingInstances(batch, n);
+        int[][] weights = new int[n][this.ensemble.length];
+        for (int j = 0; j < n; j++) {
+            for (int i = 0; i < this.ensemble.length; i++) {
+                weights[j][i] = MiscUtils.poisson(1.0, this.classifierRandom);
+            }
+        }
+        Instance[] memberBatch = new Instance[n];
+        for (int i = 0; i < this.ensemble.length; i++) {
+            int memberBatchSize = 0;
+            for (int j = 0; j < n; j++) {
+                int k = weights[j][i];
+                if (k > 0) {
+                    Instance weightedInst = (Instance) this.trainingBatch[j].copy();
+                    weightedInst.setWeight(this.trainingBatch[j].weight() * k);
+                    memberBatch[memberBatchSize++] = weightedInst;
+                }
+            }
+            long profileStart = Profiler.start();
+            this.ensemble[i].trainOnInstances(memberBatch, memberBatchSize);
+            Profiler.stop(Profiler.Phase.ENSEMBLE_MEMBER, profileStart);
+        }
+    }
+
+    @Override
+    public double[][] getVotesForInstances(Instance[] batch, int n) {
+        DoubleVector[] combinedVotes = new DoubleVector[n];
+        for (int j = 0; j < n; j++) {
+            combinedVotes[j] = new DoubleVector();
+        }
+        for (int i = 0; i < this.ensemble.length; i++) {
+            double[][] memberVotes = this.ensemble[i].getVotesForInstances(batch, n);
+            for (int j = 0; j < n; j++) {
+                DoubleVector vote = new DoubleVector(memberVotes[j]);
+                if (vote.sumOfValues() > 0.0) {
+                    vote.normalize();
+                    combinedVotes[j].addValues(vote);
+                }
+            }
+        }
+        double[][] votes = new double[n][];
+        for (int j = 0; j < n; j++) {
+            votes[j] = combinedVotes[j].getArrayRef();
+        }
+        return votes;
+    }
+
     @Override
     public double[] getVotesForInstance(Instance inst) {
         DoubleVector combinedVote = new DoubleVector();
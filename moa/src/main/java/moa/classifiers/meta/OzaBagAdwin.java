@@ -28,6 +28,7 @@ import com.yahoo.labs.samoa.instances.Instance;
 import moa.core.DoubleVector;
 import moa.core.Measurement;
 import moa.core.MiscUtils;
+import moa.core.Profiler;
 import moa.options.ClassOption;
 import com.github.javacliparser.IntOption;
 
@@ -121,11 +122,16 @@ public class OzaBagAdwin extends AbstractClassifier implements MultiClassClassif
             if (k > 0) {
                 Instance weightedInst = (Instance) inst.copy();
                 weightedInst.setWeight(inst.weight() * k);
+                long profileStart = Profiler.start();
                 this.ensemble[i].trainOnInstance(weightedInst);
+                Profiler.stop(Profiler.Phase.ENSEMBLE_MEMBER, profileStart);
             }
             boolean correctlyClassifies = this.ensemble[i].correctlyClassifies(inst);
             double ErrEstim = this.ADError[i].getEstimation();
-            if (this.ADError[i].setInput(correctlyClassifies ? 0 : 1)) {
+            long profileStart = Profiler.start();
+            boolean detected = this.ADError[i].setInput(correctlyClassifies ? 0 : 1);
+            Profiler.stop(Profiler.Phase.DRIFT_DETECTION, profileStart);
+            if (detected) {
                 if (this.ADError[i].getEstimation() > ErrEstim) {
                     Change = true;
                 }
@@ -161,6 +167,33 @@ public class OzaBagAdwin extends AbstractClassifier implements MultiClassClassif
         return combinedVote.getArrayRef();
     }
 
+    /**
+     * Predicts a batch one member at a time, combining the votes as
+     * getVotesForInstance does.
+     */
+    @Override
+    public double[][] getVotesForInstances(Instance[] batch, int n) {
+        DoubleVector[] combinedVotes = new DoubleVector[n];
+        for (int j = 0; j < n; j++) {
+            combinedVotes[j] = new DoubleVector();
+        }
+        for (int i = 0; i < this.ensemble.length; i++) {
+            double[][] memberVotes = this.ensemble[i].getVotesForInstances(batch, n);
+            for (int j = 0; j < n; j++) {
+                DoubleVector vote = new DoubleVector(memberVotes[j]);
+                if (vote.sumOfValues() > 0.0) {
+                    vote.normalize();
+                    combinedVotes[j].addValues(vote);
+                }
+            }
+        }
+        double[][] votes = new double[n][];
+        for (int j = 0; j < n; j++) {
+            votes[j] = combinedVotes[j].getArrayRef();
+        }
+        return votes;
+    }
+
     @Override
     public boolean isRandomizable() {
         return true;
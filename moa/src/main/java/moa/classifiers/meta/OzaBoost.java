@@ -27,6 +27,7 @@ import moa.classifiers.MultiClassClassifier;
 import moa.core.DoubleVector;
 import moa.core.Measurement;
 import moa.core.MiscUtils;
+import moa.core.Profiler;
 import moa.options.ClassOption;
 import com.github.javacliparser.FlagOption;
 import com.github.javacliparser.IntOption;
@@ -96,7 +97,9 @@ public class OzaBoost extends AbstractClassifier implements MultiClassClassifier
             if (k > 0.0) {
                 Instance weightedInst = (Instance) inst.copy();
                 weightedInst.setWeight(inst.weight() * k);
+                long profileStart = Profiler.start();
                 this.ensemble[i].trainOnInstance(weightedInst);
+                Profiler.stop(Profiler.Phase.ENSEMBLE_MEMBER, profileStart);
             }
             if (this.ensemble[i].correctlyClassifies(inst)) {
                 this.scms[i] += lambda_d;
@@ -29,10 +29,14 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import moa.classifiers.Classifier;
+import moa.classifiers.core.statisticaltests.DistanceCache;
 import moa.classifiers.core.statisticaltests.StatisticalTest;
 import moa.classifiers.drift.SingleClassifierDrift;
 import moa.core.MiscUtils;
@@ -45,6 +49,11 @@ import moa.options.ClassOption;
  * are performed in parallel and classifiers are stored based on their accuracy
  * and stored time.
  *
+ * The tests run on a thread pool kept by the classifier, whose threads end
+ * when idle between searches, and the distances
+ * between the instances of each stored sample are computed once, so a test
+ * only computes the distances between the new data and a stored sample.
+ *
  * 1) Parameterized number of classifiers to store. 2) Classifiers are stored
  * removing the older ones if the set is full. 3) Classifier with higher
  * significance value is selected.
@@ -123,9 +132,20 @@ public class RCD extends SingleClassifierDrift {
 
     protected int index;
 
+    protected static final long THREAD_KEEP_ALIVE_SECONDS = 10;
+
+    protected transient ExecutorService threadPool;
+
+    protected transient DistanceCache distanceCache;
+
     @Override
     public void resetLearningImpl() {
         super.resetLearningImpl();
+        if (this.threadPool != null) {
+            this.threadPool.shutdownNow();
+            this.threadPool = null;
+        }
+        this.distanceCache = null;
         this.classifiers = new ArrayList();
         this.bufferSize = bufferSizeOption.getValue();
         this.currentChunk = null;
@@ -243,22 +263,30 @@ public class RCD extends SingleClassifierDrift {
      */
     private ClassifierKS getPreviousClassifier(Classifier classifier,
             List<Instance> instances) {
-        ExecutorService threadPool = Executors.newFixedThreadPool(this.threadSizeOption.getValue());
+        ExecutorService threadPool = this.getThreadPool();
+        if (this.distanceCache == null) {
+            this.distanceCache = new DistanceCache();
+        }
         int SIZE = this.classifiers.size();
         Map<Integer, Future<Double>> futures = new HashMap<>();
+        List<List<Instance>> samples = new ArrayList<>();
+        samples.add(instances);
         for (int i = 0; i < SIZE; i++) {
             ClassifierKS cs = this.classifiers.get(i);
             if (cs != null) {
                 if (cs.getClassifier() != classifier) {
                     StatisticalTest st = (StatisticalTest) getPreparedClassOption(this.statisticalTestOption);
                     StatisticalTest temp = (StatisticalTest) st.copy();
-                    temp.set(instances, cs.getInstances());
+                    temp.set(instances, cs.getInstances(), this.distanceCache);
+                    samples.add(cs.getInstances());
                     futures.put(i, threadPool.submit(temp));
                 }
             } else {
                 break;
             }
         }
+        // Samples no longer compared are dropped from the cache
+        this.distanceCache.retain(samples);
         ClassifierKS cks = null;
         int qtd = this.quantityClassifiersTestOption.getValue();
         double maxPValue = this.similarityBetweenDistributionsOption.getValue();
@@ -279,7 +307,30 @@ public class RCD extends SingleClassifierDrift {
         } catch (ExecutionException e) {
             throw new RuntimeException("Error computing statistical test.", e);
         }
-        threadPool.shutdownNow();
+        // The pool is kept, only the tests still running are stopped
+        for (Future<Double> f : futures.values()) {
+            f.cancel(true);
+        }
         return cks;
     }
+
+    private ExecutorService getThreadPool() {
+        if (this.threadPool == null) {
+            int threadSize = this.threadSizeOption.getValue();
+            // Threads time out, so a discarded classifier does not keep them
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(threadSize, threadSize,
+                    THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "RCD statistical test");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            pool.allowCoreThreadTimeOut(true);
+            this.threadPool = pool;
+        }
+        return this.threadPool;
+    }
 }
@@ -20,9 +20,18 @@
  */
 package moa.classifiers.meta;
 
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
 import moa.classifiers.AbstractClassifier;
 import moa.classifiers.MultiClassClassifier;
 import moa.core.Measurement;
+import com.github.javacliparser.FlagOption;
 import com.github.javacliparser.IntOption;
 import moa.options.WEKAClassOption;
 import weka.classifiers.Classifier;
@@ -34,6 +43,12 @@ import com.yahoo.labs.samoa.instances.SamoaToWekaInstanceConverter;
 /**
  * Class for using a classifier from WEKA.
  *
+ * Classifiers that are not updateable are rebuilt on windows of instances.
+ * With the backgroundBuild option, a rebuild runs on a background thread
+ * over a snapshot of the window, and the previous classifier keeps
+ * predicting until the new one replaces it. Training only waits for a
+ * rebuild that is still running when the next one is due.
+ *
  * @author Albert Bifet (abifet at cs dot waikato dot ac dot nz)
  * @author FracPete (fracpete at waikato dot ac dot nz)
  * @version $Revision$
@@ -64,23 +79,49 @@ public class WEKAClassifier
             "How many instances between samples of the learning performance.",
             0, 0, Integer.MAX_VALUE);
 
-    protected Classifier classifier;
+    public FlagOption backgroundBuildOption = new FlagOption("backgroundBuild", 'b',
+            "Build the classifiers that are not updateable on a background thread, predicting with the previous classifier meanwhile.");
+
+    protected volatile Classifier classifier;
+
+    /** Untrained copy of the classifier, copied by the background builds */
+    protected Classifier classifierTemplate;
+
+    protected static final long BUILDER_KEEP_ALIVE_SECONDS = 10;
+
+    protected transient ExecutorService buildExecutor;
+
+    protected transient Future<?> pendingBuild;
+
+    /** Changed by every reset, so that older builds are not swapped in */
+    protected int buildGeneration;
 
     protected int numberInstances;
 
     protected weka.core.Instances instancesBuffer;
 
-    protected boolean isClassificationEnabled;
+    protected volatile boolean isClassificationEnabled;
 
     protected boolean isBufferStoring;
 
     @Override
     public void resetLearningImpl() {
-
+        // Builds still running are not swapped in from here on
+        synchronized (this) {
+            this.buildGeneration++;
+        }
+        if (this.buildExecutor != null) {
+            this.buildExecutor.shutdown();
+            this.buildExecutor = null;
+        }
+        this.pendingBuild = null;
         try {
             //System.out.println(baseLearnerOption.getValue());
             String[] options = weka.core.Utils.splitOptions(baseLearnerOption.getValueAsCLIString());
             createWekaClassifier(options);
+            if (this.backgroundBuildOption.isSet()) {
+                this.classifierTemplate = weka.classifiers.AbstractClassifier.makeCopy(this.classifier);
+            }
         } catch (Exception e) {
             System.err.println("Creating a new classifier: " + e.getMessage());
         }
@@ -112,8 +153,7 @@ public class WEKAClassifier
             } else {
                 if (numberInstances == widthInitOption.getValue()) {
                     //Build first time Classifier
-                    buildClassifier();
-                    isClassificationEnabled = true;
+                    buildClassifier(true);
                     //Continue to store instances
                     if (sampleFrequencyOption.getValue() != 0) {
                         isBufferStoring = true;
@@ -140,9 +180,9 @@ public class WEKAClassifier
                     }
                     if (numInstances == widthOption.getValue()) {
                         //Build Classifier
-                        buildClassifier();
-                        isClassificationEnabled = true;
-                        this.instancesBuffer = new weka.core.Instances(inst.dataset());
+                        buildClassifier(true);
+                        //Reuse the buffer, the classifier was built on a snapshot
+                        this.instancesBuffer.delete();
                     }
                 }
             }
@@ -152,15 +192,99 @@ public class WEKAClassifier
     }
 
     public void buildClassifier() {
-        try {
-            if ((classifier instanceof UpdateableClassifier) == false) {
-                Classifier auxclassifier = weka.classifiers.AbstractClassifier.makeCopy(classifier);
-                auxclassifier.buildClassifier(instancesBuffer);
-                classifier = auxclassifier;
+        buildClassifier(false);
+    }
+
+    /**
+     * Builds the classifier on a snapshot of the instances of the buffer, on
+     * a background thread with the backgroundBuild option.
+     *
+     * @param enableClassification whether to predict with the classifier
+     * once it is built
+     */
+    protected void buildClassifier(boolean enableClassification) {
+        if ((classifier instanceof UpdateableClassifier) == false) {
+            weka.core.Instances snapshot = new weka.core.Instances(instancesBuffer, 0,
+                    instancesBuffer.numInstances());
+            if (this.backgroundBuildOption.isSet()) {
+                submitBuild(snapshot, enableClassification);
                 isBufferStoring = false;
+            } else {
+                try {
+                    Classifier auxclassifier = weka.classifiers.AbstractClassifier.makeCopy(classifier);
+                    auxclassifier.buildClassifier(snapshot);
+                    classifier = auxclassifier;
+                    isBufferStoring = false;
+                } catch (Exception e) {
+                    System.err.println("Building WEKA Classifier: " + e.getMessage());
+                }
             }
-        } catch (Exception e) {
-            System.err.println("Building WEKA Classifier: " + e.getMessage());
+        }
+        if (enableClassification && !this.backgroundBuildOption.isSet()) {
+            isClassificationEnabled = true;
+        }
+    }
+
+    /**
+     * Builds a copy of the untrained classifier on a background thread, and
+     * swaps it in once built, unless the learner was reset meanwhile. Waits
+     * for the previous build first, so at most one snapshot is pending.
+     */
+    protected void submitBuild(final weka.core.Instances snapshot,
+            final boolean enableClassification) {
+        waitForPendingBuild();
+        if (this.buildExecutor == null) {
+            // The thread exits when idle, so discarded copies do not keep it
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1,
+                    BUILDER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "WEKA classifier builder");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executor.allowCoreThreadTimeOut(true);
+            this.buildExecutor = executor;
+        }
+        final int generation = this.buildGeneration;
+        final Classifier template = this.classifierTemplate;
+        this.pendingBuild = this.buildExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Classifier auxclassifier = weka.classifiers.AbstractClassifier.makeCopy(template);
+                    auxclassifier.buildClassifier(snapshot);
+                    synchronized (WEKAClassifier.this) {
+                        if (generation == buildGeneration) {
+                            classifier = auxclassifier;
+                            if (enableClassification) {
+                                isClassificationEnabled = true;
+                            }
+                        }
+                    }
+                } catch (Exception e) {
+                    System.err.println("Building WEKA Classifier: " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    /**
+     * Waits until the classifier being built on the background thread, if
+     * any, is swapped in.
+     */
+    public void waitForPendingBuild() {
+        if (this.pendingBuild != null) {
+            try {
+                this.pendingBuild.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                System.err.println("Building WEKA Classifier: " + e.getMessage());
+            }
+            this.pendingBuild = null;
         }
     }
 
@@ -94,6 +94,15 @@ public class OzaBagML extends OzaBag implements MultiLabelLearner, MultiTargetRe
 		return compileVotes(this.ensemble, inst);
 	}
 
+	@Override
+	public double[][] getVotesForInstances(Instance[] batch, int n) {
+		double[][] votes = new double[n][];
+		for (int i = 0; i < n; i++) {
+			votes[i] = getVotesForInstance(batch[i]);
+		}
+		return votes;
+	}
+
 	public static double[] compileVotes(Classifier h[], Instance inst) {
 		double votes[] = h[0].getVotesForInstance(inst);
 		for (int i = 1; i < h.length; i++) {
@@ -29,6 +29,8 @@ package moa.classifiers.multilabel.trees;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import com.github.javacliparser.FlagOption;
 import com.github.javacliparser.FloatOption;
@@ -44,7 +46,6 @@ import moa.classifiers.MultiTargetRegressor;
 import moa.classifiers.multilabel.core.splitcriteria.ICVarianceReduction;
 import moa.classifiers.rules.core.Predicate;
 import moa.classifiers.rules.multilabel.attributeclassobservers.AttributeStatisticsObserver;
-import moa.classifiers.rules.multilabel.attributeclassobservers.MultiLabelBSTree;
 import moa.classifiers.rules.multilabel.attributeclassobservers.MultiLabelNominalAttributeObserver;
 import moa.classifiers.rules.multilabel.attributeclassobservers.NominalStatisticsObserver;
 import moa.classifiers.rules.multilabel.attributeclassobservers.NumericStatisticsObserver;
@@ -55,10 +56,15 @@ import moa.core.DoubleVector;
 import moa.core.Measurement;
 import moa.core.SizeOf;
 import moa.core.StringUtils;
+import moa.options.ClassOption;
+import moa.options.PrototypeFactory;
 
 /**
  * iSOUPTrees class for structured output prediction.
  *
+ * The splits of the attributes of a leaf can be evaluated by several threads
+ * of a fork/join pool, with the same results as on one thread.
+ *
  * @author Aljaž Osojnik (aljaz.osojnik@ijs.si)
  * @version $Revision: 1 $
  */
@@ -80,6 +86,10 @@ public class ISOUPTree extends AbstractMultiLabelLearner implements MultiTargetR
 
 	public int maxID = 0;
 
+	protected PrototypeFactory<NumericStatisticsObserver> numericObserverFactory;
+
+	protected transient ForkJoinPool splitPool;
+
 	//region ================ OPTIONS ================
 
 	public IntOption gracePeriodOption = new IntOption(
@@ -157,6 +167,19 @@ public class ISOUPTree extends AbstractMultiLabelLearner implements MultiTargetR
 			'n',
 			"Don't normalize.");
 
+	public ClassOption numericObserverOption = new ClassOption(
+			"numericObserver",
+			'z',
+			"Observer of the numeric attributes in the leaves.",
+			NumericStatisticsObserver.class,
+			"MultiLabelBSTree");
+
+	public IntOption numThreadsOption = new IntOption(
+			"numThreads",
+			'j',
+			"Number of threads evaluating the splits of the attributes of a leaf.",
+			1, 1, Integer.MAX_VALUE);
+
 
 	//endregion ================ OPTIONS ================
 
@@ -311,16 +334,22 @@ public class ISOUPTree extends AbstractMultiLabelLearner implements MultiTargetR
 			// number of instances passing through the node
 			examplesSeen += inst.weight();
 
+			// the statistics of the outputs, observed by every attribute observer
+			DoubleVector[] observations = new DoubleVector[inst.numOutputAttributes()];
 			for (int i = 0; i < tree.getModelContext().numOutputAttributes(); i++) {
+				double value = inst.valueOutputAttribute(i);
+				double weightedValue = inst.weight() * value;
+				observations[i] = new DoubleVector(new double[] {inst.weight(), weightedValue, weightedValue * value});
+
 				// sum of y values
-				sumOfValues.addToValue(i, inst.weight() * inst.valueOutputAttribute(i));
+				sumOfValues.addToValue(i, weightedValue);
 
 				// sum of squared y values
-				sumOfSquares.addToValue(i, inst.weight() * inst.valueOutputAttribute(i) * inst.valueOutputAttribute(i));
+				sumOfSquares.addToValue(i, weightedValue * value);
 
 				if (tree.buildingModelTree()) {
-					errorP.setValue(i, errorP.getValue(i) * 0.95 + Math.abs(predictionP[i] - inst.valueOutputAttribute(i)));
-					errorM.setValue(i, errorM.getValue(i) * 0.95 + Math.abs(predictionM[i] - inst.valueOutputAttribute(i)));
+					errorP.setValue(i, errorP.getValue(i) * 0.95 + Math.abs(predictionP[i] - value));
+					errorM.setValue(i, errorM.getValue(i) * 0.95 + Math.abs(predictionM[i] - value));
 				}
 			}
 			if (tree.buildingModelTree()) learningModel.updatePerceptron(inst);
@@ -339,13 +368,6 @@ public class ISOUPTree extends AbstractMultiLabelLearner implements MultiTargetR
 
 				}
 				if (obs != null) {
-					DoubleVector[] observations = new DoubleVector[inst.numOutputAttributes()];
-					for (int j = 0; j < inst.numOutputAttributes(); j++) {
-						observations[j] = new DoubleVector();
-						observations[j].setValue(0, inst.weight());
-						observations[j].setValue(1, inst.weight() * inst.valueOutputAttribute(j));
-						observations[j].setValue(2, inst.weight() * inst.valueOutputAttribute(j) * inst.valueOutputAttribute(j));
-					}
 					obs.observeAttribute(inst.valueInputAttribute(i), observations);
 
 					//obs.observeAttributeClassVector(inst.valueInputAttribute(i), getTargetVector(inst), inst.weight());
@@ -362,25 +384,24 @@ public class ISOUPTree extends AbstractMultiLabelLearner implements MultiTargetR
 		 */
 		public AttributeExpansionSuggestion[] getBestSplitSuggestions(MultiLabelSplitCriterion criterion) {
 
-			List<AttributeExpansionSuggestion> bestSuggestions = new LinkedList<AttributeExpansionSuggestion>();
-
-			for (int i = 0; i < attributeObservers.size(); i++) {
-				AttributeStatisticsObserver obs = attributeObservers.get(i);
-				if (obs != null) {
-					DoubleVector[] preSplitStatistics = new DoubleVector[tree.getModelContext().numOutputAttributes()];
-					for (int j = 0; j < tree.getModelContext().numOutputAttributes(); j++) {
-						preSplitStatistics[j] = new DoubleVector();
-						preSplitStatistics[j].setValue(0, examplesSeen);
-						preSplitStatistics[j].setValue(1, sumOfValues.getValue(j));
-						preSplitStatistics[j].setValue(2, sumOfSquares.getValue(j));
-					}
+			DoubleVector[] preSplitStatistics = new DoubleVector[tree.getModelContext().numOutputAttributes()];
+			for (int j = 0; j < tree.getModelContext().numOutputAttributes(); j++) {
+				preSplitStatistics[j] = new DoubleVector(new double[] {examplesSeen, sumOfValues.getValue(j), sumOfSquares.getValue(j)});
+			}
 
-					AttributeExpansionSuggestion bestSuggestion = null;
-					bestSuggestion = obs.getBestEvaluatedSplitSuggestion(criterion, preSplitStatistics, i);
+			// the best suggestion of every attribute, in the order of the attributes
+			AttributeExpansionSuggestion[] suggestions = new AttributeExpansionSuggestion[attributeObservers.size()];
+			SplitSuggestionTask task = new SplitSuggestionTask(attributeObservers, criterion, preSplitStatistics, suggestions, 0, suggestions.length);
+			if (tree.numThreadsOption.getValue() > 1 && suggestions.length > 1) {
+				tree.getSplitPool().invoke(task);
+			} else {
+				task.findSuggestions();
+			}
 
-					if (bestSuggestion != null) {
-						bestSuggestions.add(bestSuggestion);
-					}
+			List<AttributeExpansionSuggestion> bestSuggestions = new LinkedList<AttributeExpansionSuggestion>();
+			for (AttributeExpansionSuggestion bestSuggestion : suggestions) {
+				if (bestSuggestion != null) {
+					bestSuggestions.add(bestSuggestion);
 				}
 			}
 			return bestSuggestions.toArray(new AttributeExpansionSuggestion[bestSuggestions.size()]);
@@ -449,6 +470,61 @@ public class ISOUPTree extends AbstractMultiLabelLearner implements MultiTargetR
 
 	}
 
+	/**
+	 * Finds the best split suggestions of a range of attributes of a leaf. The
+	 * range is halved between the threads of a fork/join pool down to single
+	 * attributes, whose observers are independent.
+	 */
+	protected static class SplitSuggestionTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		protected final AutoExpandVector<AttributeStatisticsObserver> attributeObservers;
+
+		protected final MultiLabelSplitCriterion criterion;
+
+		protected final DoubleVector[] preSplitStatistics;
+
+		protected final AttributeExpansionSuggestion[] suggestions;
+
+		protected final int from;
+
+		protected final int to;
+
+		public SplitSuggestionTask(AutoExpandVector<AttributeStatisticsObserver> attributeObservers, MultiLabelSplitCriterion criterion,
+				DoubleVector[] preSplitStatistics, AttributeExpansionSuggestion[] suggestions, int from, int to) {
+			this.attributeObservers = attributeObservers;
+			this.criterion = criterion;
+			this.preSplitStatistics = preSplitStatistics;
+			this.suggestions = suggestions;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > 1) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new SplitSuggestionTask(attributeObservers, criterion, preSplitStatistics, suggestions, from, middle),
+						new SplitSuggestionTask(attributeObservers, criterion, preSplitStatistics, suggestions, middle, to));
+			} else {
+				findSuggestions();
+			}
+		}
+
+		/**
+		 * Finds the best split suggestions of the range on the calling thread.
+		 */
+		public void findSuggestions() {
+			for (int i = from; i < to; i++) {
+				AttributeStatisticsObserver obs = attributeObservers.get(i);
+				if (obs != null) {
+					suggestions[i] = obs.getBestEvaluatedSplitSuggestion(criterion, preSplitStatistics, i);
+				}
+			}
+		}
+	}
+
 	public static abstract class InnerNode extends Node {
 		// The InnerNode and SplitNode design is used for easy extension in ISOUPOptionTree
 		private static final long serialVersionUID = 1L;
@@ -597,8 +673,11 @@ public class ISOUPTree extends AbstractMultiLabelLearner implements MultiTargetR
 
 		protected ISOUPTree tree;
 
-		// The Perception weights 
-		protected double[][] weights; 
+		// The Perception weights, target after target, each with the weights
+		// of the inputs followed by the constant b
+		protected double[] weights; 
+
+		protected int numWeightsPerTarget;
 
 		// The number of instances contributing to this model
 		protected int instancesSeen = 0;
@@ -609,7 +688,10 @@ public class ISOUPTree extends AbstractMultiLabelLearner implements MultiTargetR
 
 		public MultitargetPerceptron(ISOUPTree tree, MultitargetPerceptron original) {
 			this.tree = tree;
-			weights = original.weights.clone();
+			// The weights stay shared with the original, as the rows of
+			// the weights were when they were kept per target
+			weights = original.weights;
+			numWeightsPerTarget = original.numWeightsPerTarget;
 		}
 
 		public MultitargetPerceptron(ISOUPTree tree) {
@@ -621,13 +703,12 @@ public class ISOUPTree extends AbstractMultiLabelLearner implements MultiTargetR
 			instancesSeen = 0;
 			int numTargets = tree.getModelContext().numOutputAttributes();
 			int numInputs = tree.getModelContext().numInputAttributes();
-			weights = new double[numTargets][numInputs+1];
+			numWeightsPerTarget = numInputs + 1;
+			weights = new double[numTargets * numWeightsPerTarget];
 			tree.classifierRandom.setSeed(1234);
-			for (int i = 0; i < numTargets; i++) {
-				for (int j = 0; j < numInputs + 1; j++) { 
-					// The last index corresponds to the constant b
-					weights[i][j] = 2 * tree.classifierRandom.nextDouble() - 1;
-				}
+			for (int i = 0; i < weights.length; i++) {
+				// The last weight of each target corresponds to the constant b
+				weights[i] = 2 * tree.classifierRandom.nextDouble() - 1;
 			}
 		}
 
@@ -659,10 +740,13 @@ public class ISOUPTree extends AbstractMultiLabelLearner implements MultiTargetR
 			    double[] normalizedPrediction = prediction(normalizedInput);
 
 				double[] normalizedTarget = tree.normalizedTargetVector(inst);
+				int numInputs = normalizedInput.length;
 				for (int i = 0; i < inst.numOutputAttributes(); i++){
 					double delta = normalizedTarget[i] - normalizedPrediction[i];
-					for (int j = 0; j < normalizedInput.length; j++) {
-						weights[i][j] += delta * learningRatio * normalizedInput[j];
+					double step = delta * learningRatio;
+					int offset = i * numWeightsPerTarget;
+					for (int j = 0; j < numInputs; j++) {
+						weights[offset + j] += step * normalizedInput[j];
 					}
 				}
 				normalizeWeights();
@@ -670,12 +754,13 @@ public class ISOUPTree extends AbstractMultiLabelLearner implements MultiTargetR
 		}
 
 		public void normalizeWeights() {
-			for (int j =0; j < weights.length; j++) {
+			for (int offset = 0; offset < weights.length; offset += numWeightsPerTarget) {
+				int end = offset + numWeightsPerTarget;
 				double sum = 0;
-				for (int i = 0; i < weights[j].length; i++)
-					sum += Math.abs(weights[j][i]);
-				for (int i = 0; i < weights[j].length; i++)
-					weights[j][i] /= sum;
+				for (int i = offset; i < end; i++)
+					sum += Math.abs(weights[i]);
+				for (int i = offset; i < end; i++)
+					weights[i] /= sum;
 			}
 		}
 
@@ -685,10 +770,12 @@ public class ISOUPTree extends AbstractMultiLabelLearner implements MultiTargetR
 		public double[] prediction(double[] instanceValues) {
 			double[] out = new double[tree.getModelContext().numOutputAttributes()];
 			for (int i = 0; i < tree.getModelContext().numOutputAttributes(); i++) {
-				out[i] = 0;
+				int offset = i * numWeightsPerTarget;
+				double sum = 0;
 				for (int j = 0; j < instanceValues.length; j++) {
-					out[i] += weights[i][j] * instanceValues[j];
+					sum += weights[offset + j] * instanceValues[j];
 				}
+				out[i] = sum;
 			}
 			return out;
 		}
@@ -720,13 +807,13 @@ public class ISOUPTree extends AbstractMultiLabelLearner implements MultiTargetR
 				if (getModelContext() != null) {
 				for (int j = 0; j < getModelContext().numOutputAttributes(); j++) {
 									if (getModelContext().attribute(j).isNumeric()) {
-										out.append((j == 0 || weights[i][j] < 0) ? " " : " + ");
-										out.append(String.format("%.4f", weights[i][j]));
+										out.append((j == 0 || weights[i * numWeightsPerTarget + j] < 0) ? " " : " + ");
+										out.append(String.format("%.4f", weights[i * numWeightsPerTarget + j]));
 										out.append(" * ");
 										out.append(getAttributeNameString(j));
 									}
 				}
-				out.append(" + " + weights[i][getModelContext().numOutputAttributes()]);
+				out.append(" + " + weights[i * numWeightsPerTarget + getModelContext().numOutputAttributes()]);
 				}
 				StringUtils.appendNewline(out);
 			}
@@ -749,6 +836,11 @@ public class ISOUPTree extends AbstractMultiLabelLearner implements MultiTargetR
 		leafNodeCount = 0;
 		splitNodeCount = 0;
 		maxID = 0;
+		numericObserverFactory = null;
+		if (splitPool != null) {
+			splitPool.shutdown();
+			splitPool = null;
+		}
 	}
 
 	public boolean isRandomizable() {
@@ -991,7 +1083,18 @@ public class ISOUPTree extends AbstractMultiLabelLearner implements MultiTargetR
 	//region --- Object instatiation methods
 
 	protected NumericStatisticsObserver newNumericClassObserver() {
-		return new MultiLabelBSTree();
+		if (numericObserverFactory == null) {
+			numericObserverFactory = new PrototypeFactory<NumericStatisticsObserver>(
+					(NumericStatisticsObserver) getPreparedClassOption(this.numericObserverOption));
+		}
+		return numericObserverFactory.newInstance();
+	}
+
+	protected ForkJoinPool getSplitPool() {
+		if (splitPool == null) {
+			splitPool = new ForkJoinPool(numThreadsOption.getValue());
+		}
+		return splitPool;
 	}
 
 	public NominalStatisticsObserver newNominalClassObserver() {
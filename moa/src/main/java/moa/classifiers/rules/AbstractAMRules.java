@@ -32,12 +32,13 @@ package moa.classifiers.rules;
  **/
 
 import java.util.Arrays;
-import java.util.Iterator;
+import java.util.List;
 
 import moa.classifiers.AbstractClassifier;
 import moa.classifiers.rules.core.Rule;
 import moa.classifiers.rules.core.Rule.Builder;
 import moa.classifiers.rules.core.RuleActiveLearningNode;
+import moa.classifiers.rules.core.RuleCoverageIndex;
 import moa.classifiers.rules.core.RuleSet;
 import moa.classifiers.rules.core.attributeclassobservers.FIMTDDNumericAttributeClassLimitObserver;
 import moa.classifiers.rules.core.voting.ErrorWeightedVote;
@@ -56,6 +57,7 @@ public abstract class AbstractAMRules extends AbstractClassifier {
 
 	private static final long serialVersionUID = 1L;
 	protected RuleSet ruleSet = new RuleSet();
+	protected RuleCoverageIndex<Rule> coverageIndex = new RuleCoverageIndex<Rule>();
 	protected Rule defaultRule;
 	protected int ruleNumberID;
 	protected double[] statistics;
@@ -195,59 +197,73 @@ public abstract class AbstractAMRules extends AbstractClassifier {
 					//Reset the default rule
 		 */
 		numInstances+=instance.weight();
-		debug("Train",3);
-		debug("Nº instance "+numInstances + " - " + instance.toString(),3);
+		if (isDebugging(3)) {
+			debug("Train",3);
+			debug("Nº instance "+numInstances + " - " + instance.toString(),3);
+		}
 		boolean rulesCoveringInstance = false;
-		Iterator<Rule> ruleIterator= this.ruleSet.iterator();
-		while (ruleIterator.hasNext()) { 
-			Rule rule = ruleIterator.next();
-			if (rule.isCovering(instance) == true) {
-				rulesCoveringInstance = true;
-				if (isAnomaly(instance, rule) == false) {
-					//Update Change Detection Tests
-					double error = rule.computeError(instance); //Use adaptive mode error
-					boolean changeDetected = rule.getLearningNode().updateChangeDetection(error);
-					if (changeDetected == true) {
+		List<Rule> coveringRules = this.coverageIndex.getCoveringRules(this.ruleSet, instance, !this.unorderedRulesOption.isSet());
+		for (Rule rule : coveringRules) {
+			rulesCoveringInstance = true;
+			if (isAnomaly(instance, rule) == false) {
+				//Update Change Detection Tests
+				double error = rule.computeError(instance); //Use adaptive mode error
+				boolean changeDetected = rule.getLearningNode().updateChangeDetection(error);
+				if (changeDetected == true) {
+					if (isDebugging(1)) {
 						debug("I) Drift Detected. Exa. : " +  this.numInstances + " (" + rule.getInstancesSeen() +") Remove Rule: " +rule.getRuleNumberID(),1);
+					}
 
-						ruleIterator.remove();
-						this.numChangesDetected+=instance.weight();  //Just for statistics 
-					} else {
-						rule.updateStatistics(instance);
-						if (rule.getInstancesSeen()  % this.gracePeriodOption.getValue() == 0.0) {
-							if (rule.tryToExpand(this.splitConfidenceOption.getValue(), this.tieThresholdOption.getValue()) ) 
-							{
-								rule.split();
+					this.ruleSet.remove(rule);
+					this.coverageIndex.ruleRemoved(rule);
+					this.numChangesDetected+=instance.weight();  //Just for statistics 
+				} else {
+					rule.updateStatistics(instance);
+					if (rule.getInstancesSeen()  % this.gracePeriodOption.getValue() == 0.0) {
+						if (rule.tryToExpand(this.splitConfidenceOption.getValue(), this.tieThresholdOption.getValue()) ) 
+						{
+							rule.split();
+							this.coverageIndex.ruleChanged(rule);
+							if (isDebugging(2)) {
 								debug("Rule Expanded:",2);
 								debug(rule.printRule(),2);
-							}	
-						}
+							}
+						}	
 					}
 				}
-				else {
+			}
+			else {
+				if (isDebugging(1)) {
 					debug("Anomaly Detected: " + this.numInstances + " Rule: " +rule.getRuleNumberID() ,1);
-					this.numAnomaliesDetected+=instance.weight();//Just for statistics
 				}
-				if (!this.unorderedRulesOption.isSet()) 
-					break;
+				this.numAnomaliesDetected+=instance.weight();//Just for statistics
 			}
+			if (!this.unorderedRulesOption.isSet()) 
+				break;
 		}	
 
 		if (rulesCoveringInstance == false){ 
 			defaultRule.updateStatistics(instance);
 			if (defaultRule.getInstancesSeen() % this.gracePeriodOption.getValue() == 0.0) {
-				debug("Nr. examples "+defaultRule.getInstancesSeen(), 4);
+				if (isDebugging(4)) {
+					debug("Nr. examples "+defaultRule.getInstancesSeen(), 4);
+				}
 
 				if (defaultRule.tryToExpand(this.splitConfidenceOption.getValue(), this.tieThresholdOption.getValue()) == true) {
 					Rule newDefaultRule=newRule(defaultRule.getRuleNumberID(),defaultRule.getLearningNode(),defaultRule.getLearningNode().getStatisticsOtherBranchSplit()); //other branch
 					defaultRule.split();
 					defaultRule.setRuleNumberID(++ruleNumberID);
 					this.ruleSet.add(this.defaultRule);
+					this.coverageIndex.ruleAdded(this.defaultRule);
 
-					debug("Default rule expanded! New Rule:",2);
-					debug(defaultRule.printRule(),2);
-					debug("New default rule:", 3);	
-					debug(newDefaultRule.printRule(),3);
+					if (isDebugging(2)) {
+						debug("Default rule expanded! New Rule:",2);
+						debug(defaultRule.printRule(),2);
+					}
+					if (isDebugging(3)) {
+						debug("New default rule:", 3);	
+						debug(newDefaultRule.printRule(),3);
+					}
 					defaultRule=newDefaultRule;
 
 				}
@@ -331,15 +347,25 @@ public abstract class AbstractAMRules extends AbstractClassifier {
 	}
 
 	/**
-	 * Print to console
+	 * Print to console. Messages built from the model or the instance should
+	 * be printed inside a check of {@link #isDebugging(int)}, so they are not
+	 * built when the verbosity is lower than their level.
 	 * @param string
 	 */
 	protected void debug(String string, int level) {
-		if (VerbosityOption.getValue()>=level){
+		if (isDebugging(level)){
 			System.out.println(string); 
 		}
 	}
 
+	/**
+	 * Returns whether messages of a level are printed to console.
+	 * @param level
+	 */
+	protected boolean isDebugging(int level) {
+		return VerbosityOption.getValue()>=level;
+	}
+
 	protected void VerboseToConsole(Instance inst) {
 		if(VerbosityOption.getValue()>=5){	
 			System.out.println(); 
@@ -354,6 +380,9 @@ public abstract class AbstractAMRules extends AbstractClassifier {
 	}
 
 	public void PrintRuleSet() {    	
+		if (!isDebugging(2)) {
+			return;
+		}
 		debug("Rule in RuleSet:",2);
 		for (Rule rule: ruleSet) {
 			debug(rule.printRule(),2);
@@ -407,18 +436,18 @@ public abstract class AbstractAMRules extends AbstractClassifier {
 		int numberOfRulesCovering = 0;
 
 		VerboseToConsole(instance); // Verbose to console Dataset name.
-		for (Rule rule : ruleSet) {
-			if (rule.isCovering(instance) == true){
-				numberOfRulesCovering++;
-				//DoubleVector vote = new DoubleVector(rule.getPrediction(instance));
-				double [] vote=rule.getPrediction(instance);
-				double error= rule.getCurrentError();
+		for (Rule rule : this.coverageIndex.getCoveringRules(this.ruleSet, instance, !this.unorderedRulesOption.isSet())) {
+			numberOfRulesCovering++;
+			//DoubleVector vote = new DoubleVector(rule.getPrediction(instance));
+			double [] vote=rule.getPrediction(instance);
+			double error= rule.getCurrentError();
+			if (isDebugging(3)) {
 				debug("Rule No"+ rule.getRuleNumberID() + " Vote: " + Arrays.toString(vote) + " Error: " + error + " Y: " + instance.classValue(),3); //predictionValueForThisRule);
-				errorWeightedVote.addVote(vote,error);
-				//combinedVote.addValues(vote);
-				if (!this.unorderedRulesOption.isSet()) { // Ordered Rules Option.
-					break; // Only one rule cover the instance.
-				}
+			}
+			errorWeightedVote.addVote(vote,error);
+			//combinedVote.addValues(vote);
+			if (!this.unorderedRulesOption.isSet()) { // Ordered Rules Option.
+				break; // Only one rule cover the instance.
 			}
 		}
 
@@ -428,12 +457,16 @@ public abstract class AbstractAMRules extends AbstractClassifier {
 			double error= defaultRule.getCurrentError();
 			errorWeightedVote.addVote(vote,error);
 			
-			debug("Default Rule Vote " + Arrays.toString(vote) + " Error " + error + "  Y: " + instance.classValue(),3);
+			if (isDebugging(3)) {
+				debug("Default Rule Vote " + Arrays.toString(vote) + " Error " + error + "  Y: " + instance.classValue(),3);
+			}
 		} 	
 		double[] weightedVote=errorWeightedVote.computeWeightedVote();
 		double weightedError=errorWeightedVote.getWeightedError();
 		
-		debug("Weighted Rule - Vote: " + Arrays.toString(weightedVote) + " Weighted Error: " + weightedError + " Y:" + instance.classValue(),3);
+		if (isDebugging(3)) {
+			debug("Weighted Rule - Vote: " + Arrays.toString(weightedVote) + " Weighted Error: " + weightedError + " Y:" + instance.classValue(),3);
+		}
 		return new Vote(weightedVote, weightedError);
 	}
 	
@@ -637,14 +637,8 @@ public void printAnomaliesSupervised(StringBuilder out, int indent) { // Get Mod
 							}
 						}
 					}else { //Nominal Attributes
-							AutoExpandVector<DoubleVector> attribNominal = ((NominalAttributeClassObserver)rl.observers.get(x)).attValDistPerClass; //Attributes values distribution per class
-							double numbAttribValue = 0.0;
 							double attribVal = inst.value(x); //Attribute value
-							for(int i = 0; i < attribNominal.size(); i++){
-								if(attribNominal.get(i) != null){
-									numbAttribValue = numbAttribValue + attribNominal.get(i).getValue((int)attribVal); 
-								}
-							}
+							double numbAttribValue = ((NominalAttributeClassObserver)rl.observers.get(x)).weightOfAttributeValue((int)attribVal); //Attribute value weight over all classes
 							double probability = numbAttribValue / rl.instancesSeen;
 							if(probability!= 0.0) {
 								D = D + Math.log(probability);
@@ -919,7 +913,7 @@ public void printAnomaliesSupervised(StringBuilder out, int indent) { // Get Mod
 			ArrayList<Double> attribBest = new ArrayList<Double>();
 			if(instance.attribute(instAttIndex).isNominal()){
 				this.minEntropyNominalAttrib=Double.MAX_VALUE;	
-				AutoExpandVector<DoubleVector> attribNominal = ((NominalAttributeClassObserver)observersParameter.get(z)).attValDistPerClass;
+				AutoExpandVector<DoubleVector> attribNominal = ((NominalAttributeClassObserver)observersParameter.get(z)).getAttValDistPerClass();
 				findBestValEntropyNominalAtt(attribNominal, instance.attribute(z).numValues());		// The best value (lowest entropy) of a nominal attribute.
 	            attribBest.add(this.saveBestEntropyNominalAttrib.getValue(0));
 	            attribBest.add(this.saveBestEntropyNominalAttrib.getValue(1));
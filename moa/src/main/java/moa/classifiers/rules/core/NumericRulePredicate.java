@@ -109,5 +109,9 @@ public class NumericRulePredicate extends AbstractMOAObject implements Predicate
 		return isEqualOrLower;
 	}
 
+	public double getAttributeValue() {
+		return attributeValue;
+	}
+
 
 }
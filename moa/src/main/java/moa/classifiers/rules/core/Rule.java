@@ -33,6 +33,7 @@ package moa.classifiers.rules.core;
  *
  */
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -49,7 +50,7 @@ import com.github.javacliparser.FloatOption;
 import com.yahoo.labs.samoa.instances.Instance;
 
 
-public class Rule extends AbstractMOAObject {
+public class Rule extends AbstractMOAObject implements RuleCoverageIndex.IndexedRule {
 
 	private static final long serialVersionUID = 1L;
 
@@ -130,6 +131,15 @@ public class Rule extends AbstractMOAObject {
 		return isCovering;
 	}
 
+	@Override
+	public List<Predicate> getPredicates() {
+		List<Predicate> predicates = new ArrayList<Predicate>(nodeList.size());
+		for (RuleSplitNode node : nodeList) {
+			predicates.add((Predicate) node.getSplitTest());
+		}
+		return predicates;
+	}
+
 	/**
 	 * MOA GUI output
 	 */
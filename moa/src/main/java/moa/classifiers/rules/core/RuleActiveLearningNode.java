@@ -122,11 +122,15 @@ public abstract class RuleActiveLearningNode extends ActiveLearningNode {
     }
 
     protected void debug(String string,int level) {
-        if (this.amRules.VerbosityOption.getValue() >= level) {
+        if (isDebugging(level)) {
             System.out.println(string);
         }
     }
 
+    protected boolean isDebugging(int level) {
+        return this.amRules.VerbosityOption.getValue() >= level;
+    }
+
     /* (non-Javadoc)
 	 * @see moa.classifiers.rules.RuleActiveLearningNodeInterface#getPrediction(weka.core.Instance)
 	 */
@@ -155,9 +155,15 @@ public class RuleActiveRegressionNode extends RuleActiveLearningNode{
 		if (predictionMode == 0) {
 			double 	perceptronError= this.perceptron.getCurrentError();
 			double meanTargetError =this.targetMean.getCurrentError();
-			debug("\n Check P:" + perceptronError + " M:" + meanTargetError,5);
-			debug("Rule" + this.owner.ruleNumberID + " P:" + this.perceptron.getVotesForInstance(instance)[0] + " (" + perceptronError + ")" + " M:" + this.targetMean.getVotesForInstance(instance)[0]+ " (" + meanTargetError + ")",3) ; //Commented by JD
-			debug("Observed Value: " + instance.classValue(),5);
+			if (isDebugging(5)) {
+				debug("\n Check P:" + perceptronError + " M:" + meanTargetError,5);
+			}
+			if (isDebugging(3)) {
+				debug("Rule" + this.owner.ruleNumberID + " P:" + this.perceptron.getVotesForInstance(instance)[0] + " (" + perceptronError + ")" + " M:" + this.targetMean.getVotesForInstance(instance)[0]+ " (" + meanTargetError + ")",3) ; //Commented by JD
+			}
+			if (isDebugging(5)) {
+				debug("Observed Value: " + instance.classValue(),5);
+			}
 			if (perceptronError < meanTargetError) {
 				predictionMode = 1; //PERCEPTRON
 			} else {
@@ -273,14 +279,16 @@ public class RuleActiveRegressionNode extends RuleActiveLearningNode{
 					atribSum,
 					perceptron.getInstancesSeen()
 					);
-			debug("Attribute : " + x, 5);
-			debug("Value : " + instance.value(instAttIndex), 5);
-			debug("Mean : " + mean, 5);
-			debug("SD : " + sd, 5);
-			debug("Probability : " + probability, 5);
-			debug("Univariate : " + uni, 5);
-			debug("Multivariate : " + multi, 5);
-			debug("Anomaly in rule :" + this.owner.ruleNumberID, 5);
+			if (isDebugging(5)) {
+				debug("Attribute : " + x, 5);
+				debug("Value : " + instance.value(instAttIndex), 5);
+				debug("Mean : " + mean, 5);
+				debug("SD : " + sd, 5);
+				debug("Probability : " + probability, 5);
+				debug("Univariate : " + uni, 5);
+				debug("Multivariate : " + multi, 5);
+				debug("Anomaly in rule :" + this.owner.ruleNumberID, 5);
+			}
 		}
 	}
 	public void initialize(RuleActiveLearningNode oldLearningNode) {
@@ -337,13 +345,17 @@ public class RuleActiveRegressionNode extends RuleActiveLearningNode{
 			// Determine the hoeffding bound value, used to select how many instances should be used to make a test decision
 			// to feel reasonably confident that the test chosen by this sample is the same as what would be chosen using infinite examples
 			double hoeffdingBound = computeHoeffdingBound(1, splitConfidence, getWeightSeen());
-			debug("Hoeffding bound " + hoeffdingBound, 4);
+			if (isDebugging(4)) {
+				debug("Hoeffding bound " + hoeffdingBound, 4);
+			}
 			// Determine the top two ranked splitting suggestions
 			bestSuggestion = bestSplitSuggestions[bestSplitSuggestions.length - 1];
 			AttributeSplitSuggestion secondBestSuggestion
 			= bestSplitSuggestions[bestSplitSuggestions.length - 2];
 
-			debug("Merits: " + secondBestSuggestion.merit + " " + bestSuggestion.merit, 4);
+			if (isDebugging(4)) {
+				debug("Merits: " + secondBestSuggestion.merit + " " + bestSuggestion.merit, 4);
+			}
 
 			// If the upper bound of the sample mean for the ratio of SDR(best suggestion) to SDR(second best suggestion),
 			// as determined using the hoeffding bound, is less than 1, then the true mean is also less than 1, and thus at this
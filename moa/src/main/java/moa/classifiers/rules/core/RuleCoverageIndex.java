@@ -0,0 +1,413 @@
+/*
+ *    RuleCoverageIndex.java
+ *    Copyright (C) 2018 University of Porto, Portugal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ *
+ */
+package moa.classifiers.rules.core;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import moa.classifiers.rules.core.conditionaltests.NumericAttributeBinaryRulePredicate;
+
+import com.yahoo.labs.samoa.instances.Instance;
+import com.yahoo.labs.samoa.instances.MultiLabelInstance;
+
+/**
+ * Index of the conditions of the rules of a rule set, returning all the rules
+ * covering an instance in one pass over the attributes tested by the rules,
+ * instead of evaluating the predicates of every rule.
+ *
+ * For every attribute, the thresholds of the numeric conditions and the
+ * values of the nominal conditions are kept sorted, so the rules failing a
+ * condition on the attribute are found by a binary search on the value of
+ * the instance, and marked in a bitset. The rules not marked on any
+ * attribute cover the instance. Predicates of other types are evaluated as
+ * they are, only on the rules covered by the indexed conditions.
+ *
+ * The index is updated when a rule is added at the end of the rule set,
+ * expanded or removed, only sorting again the conditions of the attributes
+ * tested by that rule. Any other change of the rule set must invalidate the
+ * index, which is then rebuilt from the rule set on the next query.
+ *
+ * @version $Revision: 1 $
+ */
+public class RuleCoverageIndex<R extends RuleCoverageIndex.IndexedRule> implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * A rule whose antecedent is a conjunction of predicates.
+	 */
+	public interface IndexedRule {
+
+		List<Predicate> getPredicates();
+	}
+
+	// Condition types: value > threshold, value <= threshold, value == v, value != v
+	protected static final int GREATER = 0;
+	protected static final int EQUAL_OR_LESS = 1;
+	protected static final int EQUAL = 2;
+	protected static final int NOT_EQUAL = 3;
+
+	protected static class Condition implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+		protected final Predicate predicate;
+		protected final int type;
+		protected final double value;
+		protected final int slot;
+
+		public Condition(Predicate predicate, int type, double value, int slot) {
+			this.predicate = predicate;
+			this.type = type;
+			this.value = value;
+			this.slot = slot;
+		}
+	}
+
+	/**
+	 * The conditions on one attribute, given by its index among the input
+	 * attributes or by its index in the model, that skips the class.
+	 */
+	protected static class AttributeConditions implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+		protected final int attIndex;
+		protected final boolean isInputIndex;
+		protected final List<Condition> conditions = new ArrayList<Condition>();
+		protected boolean isSorted;
+		protected double[][] values = new double[4][];
+		protected int[][] slots = new int[4][];
+
+		public AttributeConditions(int attIndex, boolean isInputIndex) {
+			this.attIndex = attIndex;
+			this.isInputIndex = isInputIndex;
+		}
+
+		protected void sort() {
+			List<List<Condition>> byType = new ArrayList<List<Condition>>();
+			for (int t = 0; t < 4; t++) {
+				byType.add(new ArrayList<Condition>());
+			}
+			for (Condition c : this.conditions) {
+				byType.get(c.type).add(c);
+			}
+			for (int t = 0; t < 4; t++) {
+				Condition[] sorted = byType.get(t).toArray(new Condition[byType.get(t).size()]);
+				Arrays.sort(sorted, new Comparator<Condition>() {
+					@Override
+					public int compare(Condition c1, Condition c2) {
+						return Double.compare(c1.value, c2.value);
+					}
+				});
+				this.values[t] = new double[sorted.length];
+				this.slots[t] = new int[sorted.length];
+				for (int i = 0; i < sorted.length; i++) {
+					this.values[t][i] = sorted[i].value;
+					this.slots[t][i] = sorted[i].slot;
+				}
+			}
+			this.isSorted = true;
+		}
+
+		/**
+		 * Marks the rules with a condition on the attribute not satisfied by
+		 * an instance.
+		 */
+		protected void markFailed(Instance inst, BitSet failed) {
+			if (!this.isSorted) {
+				sort();
+			}
+			boolean isMissing;
+			double value;
+			if (this.isInputIndex) {
+				isMissing = inst.isMissing(this.attIndex);
+				value = isMissing ? 0 : ((MultiLabelInstance) inst).valueInputAttribute(this.attIndex);
+			} else {
+				int instAttIndex = this.attIndex < inst.classIndex() ? this.attIndex : this.attIndex + 1;
+				isMissing = inst.isMissing(instAttIndex);
+				value = isMissing ? 0 : inst.value(instAttIndex);
+			}
+			if (isMissing) {
+				// no condition holds on a missing value
+				for (Condition c : this.conditions) {
+					failed.set(c.slot);
+				}
+			} else if (Double.isNaN(value)) {
+				for (Condition c : this.conditions) {
+					if (!c.predicate.evaluate(inst)) {
+						failed.set(c.slot);
+					}
+				}
+			} else {
+				// value > threshold fails for the thresholds >= value
+				markRange(failed, this.slots[GREATER], firstNotLess(this.values[GREATER], value), this.values[GREATER].length);
+				// value <= threshold fails for the thresholds < value
+				markRange(failed, this.slots[EQUAL_OR_LESS], 0, firstNotLess(this.values[EQUAL_OR_LESS], value));
+				// value == v fails for the other values
+				int from = firstNotLess(this.values[EQUAL], value);
+				int to = firstGreater(this.values[EQUAL], value);
+				markRange(failed, this.slots[EQUAL], 0, from);
+				markRange(failed, this.slots[EQUAL], to, this.values[EQUAL].length);
+				// value != v fails for the same value
+				markRange(failed, this.slots[NOT_EQUAL], firstNotLess(this.values[NOT_EQUAL], value),
+						firstGreater(this.values[NOT_EQUAL], value));
+			}
+		}
+
+		protected static void markRange(BitSet failed, int[] slots, int from, int to) {
+			for (int i = from; i < to; i++) {
+				failed.set(slots[i]);
+			}
+		}
+
+		protected static int firstNotLess(double[] values, double value) {
+			int low = 0, high = values.length;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (values[mid] < value) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+			return low;
+		}
+
+		protected static int firstGreater(double[] values, double value) {
+			int low = 0, high = values.length;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (values[mid] <= value) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+			return low;
+		}
+	}
+
+	protected static class RuleEntry implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+		protected final int slot;
+		protected final List<AttributeConditions> attributes = new ArrayList<AttributeConditions>();
+		protected final List<Predicate> otherPredicates = new ArrayList<Predicate>();
+
+		public RuleEntry(int slot) {
+			this.slot = slot;
+		}
+	}
+
+	protected boolean isValid;
+
+	/** Rules by slot, following the order of the rule set, null once removed */
+	protected List<R> rules = new ArrayList<R>();
+
+	protected int numRules;
+
+	protected Map<R, RuleEntry> entries = new IdentityHashMap<R, RuleEntry>();
+
+	protected Map<Integer, AttributeConditions> attributeConditions = new HashMap<Integer, AttributeConditions>();
+
+	protected List<AttributeConditions> attributeList = new ArrayList<AttributeConditions>();
+
+	protected BitSet alive = new BitSet();
+
+	protected BitSet failed = new BitSet();
+
+	protected BitSet covered = new BitSet();
+
+	/**
+	 * Rebuilds the index from the rule set on the next query.
+	 */
+	public void invalidate() {
+		this.isValid = false;
+	}
+
+	/**
+	 * Indexes a rule added at the end of the rule set.
+	 */
+	public void ruleAdded(R rule) {
+		if (this.isValid) {
+			int slot = this.rules.size();
+			this.rules.add(rule);
+			this.alive.set(slot);
+			this.numRules++;
+			RuleEntry entry = new RuleEntry(slot);
+			this.entries.put(rule, entry);
+			addConditions(rule, entry);
+		}
+	}
+
+	/**
+	 * Updates the conditions of a rule after its antecedent changed.
+	 */
+	public void ruleChanged(R rule) {
+		if (this.isValid) {
+			RuleEntry entry = this.entries.get(rule);
+			if (entry == null) {
+				invalidate();
+				return;
+			}
+			removeConditions(entry);
+			addConditions(rule, entry);
+		}
+	}
+
+	/**
+	 * Removes a rule from the index, keeping the order of the others.
+	 */
+	public void ruleRemoved(R rule) {
+		if (this.isValid) {
+			RuleEntry entry = this.entries.remove(rule);
+			if (entry == null) {
+				invalidate();
+				return;
+			}
+			removeConditions(entry);
+			this.rules.set(entry.slot, null);
+			this.alive.clear(entry.slot);
+			this.numRules--;
+			// renumber the rules once most slots are free
+			if (this.rules.size() > 2 * this.numRules + 64) {
+				invalidate();
+			}
+		}
+	}
+
+	/**
+	 * Returns the rules covering an instance, in the order of the rule set.
+	 *
+	 * @param ruleSet the rule set, read when the index must be rebuilt
+	 * @param inst the instance
+	 * @param firstOnly whether only the first covering rule is needed
+	 * @return the covering rules
+	 */
+	public List<R> getCoveringRules(List<R> ruleSet, Instance inst, boolean firstOnly) {
+		if (!this.isValid) {
+			rebuild(ruleSet);
+		}
+		this.failed.clear();
+		for (AttributeConditions attribute : this.attributeList) {
+			if (!attribute.conditions.isEmpty()) {
+				attribute.markFailed(inst, this.failed);
+			}
+		}
+		this.covered.clear();
+		this.covered.or(this.alive);
+		this.covered.andNot(this.failed);
+		List<R> coveringRules = new ArrayList<R>();
+		for (int slot = this.covered.nextSetBit(0); slot >= 0; slot = this.covered.nextSetBit(slot + 1)) {
+			R rule = this.rules.get(slot);
+			if (isCoveredByOtherPredicates(this.entries.get(rule), inst)) {
+				coveringRules.add(rule);
+				if (firstOnly) {
+					break;
+				}
+			}
+		}
+		return coveringRules;
+	}
+
+	protected boolean isCoveredByOtherPredicates(RuleEntry entry, Instance inst) {
+		for (Predicate predicate : entry.otherPredicates) {
+			if (!predicate.evaluate(inst)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	protected void rebuild(List<R> ruleSet) {
+		this.rules.clear();
+		this.entries.clear();
+		this.attributeConditions.clear();
+		this.attributeList.clear();
+		this.alive.clear();
+		this.numRules = 0;
+		this.isValid = true;
+		for (R rule : ruleSet) {
+			ruleAdded(rule);
+		}
+	}
+
+	protected void addConditions(R rule, RuleEntry entry) {
+		for (Predicate predicate : rule.getPredicates()) {
+			int type = -1;
+			double value = Double.NaN;
+			boolean isInputIndex = true;
+			if (predicate instanceof NumericAttributeBinaryRulePredicate) {
+				NumericAttributeBinaryRulePredicate p = (NumericAttributeBinaryRulePredicate) predicate;
+				// only the conditions built by AMRules, <= or > and not negated
+				if (p.isEqualOrLess() && (p.getOperator() == 1 || p.getOperator() == 2)) {
+					type = p.getOperator() == 1 ? EQUAL_OR_LESS : GREATER;
+					value = p.getSplitValue();
+					isInputIndex = false;
+				}
+			} else if (predicate instanceof NumericRulePredicate) {
+				NumericRulePredicate p = (NumericRulePredicate) predicate;
+				type = p.isEqualOrLess() ? EQUAL_OR_LESS : GREATER;
+				value = p.getAttributeValue();
+			} else if (predicate instanceof NominalRulePredicate) {
+				NominalRulePredicate p = (NominalRulePredicate) predicate;
+				type = p.isEqualOrLess() ? EQUAL : NOT_EQUAL;
+				value = p.getAttributeValue();
+			}
+			if (type < 0 || Double.isNaN(value)) {
+				entry.otherPredicates.add(predicate);
+			} else {
+				AttributeConditions attribute = getAttributeConditions(predicate.getAttributeIndex(), isInputIndex);
+				attribute.conditions.add(new Condition(predicate, type, value, entry.slot));
+				attribute.isSorted = false;
+				entry.attributes.add(attribute);
+			}
+		}
+	}
+
+	protected void removeConditions(RuleEntry entry) {
+		for (AttributeConditions attribute : entry.attributes) {
+			for (int i = attribute.conditions.size() - 1; i >= 0; i--) {
+				if (attribute.conditions.get(i).slot == entry.slot) {
+					attribute.conditions.remove(i);
+				}
+			}
+			attribute.isSorted = false;
+		}
+		entry.attributes.clear();
+		entry.otherPredicates.clear();
+	}
+
+	protected AttributeConditions getAttributeConditions(int attIndex, boolean isInputIndex) {
+		Integer key = 2 * attIndex + (isInputIndex ? 1 : 0);
+		AttributeConditions attribute = this.attributeConditions.get(key);
+		if (attribute == null) {
+			attribute = new AttributeConditions(attIndex, isInputIndex);
+			this.attributeConditions.put(key, attribute);
+			this.attributeList.add(attribute);
+		}
+		return attribute;
+	}
+}
@@ -0,0 +1,199 @@
+/*
+ *    FIMTDDNumericAttributeClassArrayObserver.java
+ *    Copyright (C) 2018 University of Porto, Portugal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *    
+ *    
+ */
+package moa.classifiers.rules.core.attributeclassobservers;
+
+import java.util.Arrays;
+
+import moa.classifiers.core.AttributeSplitSuggestion;
+import moa.classifiers.core.conditionaltests.NumericAttributeBinaryTest;
+import moa.classifiers.core.splitcriteria.SplitCriterion;
+
+/**
+ * E-BST observer for regression stored in arrays, with a bounded number of
+ * split points. It finds the same split points as
+ * FIMTDDNumericAttributeClassLimitObserver with the same maximum number of
+ * nodes.
+ *
+ * The split points are kept sorted, each with the count, sum and sum of
+ * squares of the targets of the values between the previous split point and
+ * itself. Once the budget of split points is used, a new value is added to
+ * the first split point not lower than it, or to the values above the last
+ * split point, so the statistics on the left of every split point remain
+ * those of all the values observed, as in the E-BST with a limited number of
+ * nodes. The best split is found in one scan of the prefix sums.
+ *
+ * The bad split points removed by {@link #removeBadSplits} give their
+ * statistics to the next split point and free room for new ones.
+ *
+ * See E. Ikonomovska, J. Gama, S. Dzeroski: Learning model trees from
+ * evolving data streams. Data Mining and Knowledge Discovery 23(1), 2011.
+ *
+ * @version $Revision: 1 $
+ */
+public class FIMTDDNumericAttributeClassArrayObserver extends FIMTDDNumericAttributeClassLimitObserver {
+
+    private static final long serialVersionUID = 1L;
+
+    protected static final int INITIAL_CAPACITY = 8;
+
+    /** Maximum number of split points, set on the first observation */
+    protected int maxSplitPoints;
+
+    protected int numSplitPoints;
+
+    /** Split points in ascending order */
+    protected double[] splitPoints;
+
+    /**
+     * Count, sum and sum of squares of every split point, followed by those
+     * of the values above the last split point.
+     */
+    protected double[] statistics;
+
+    @Override
+    public void observeAttributeClass(double attVal, double classVal, double weight) {
+        if (Double.isNaN(attVal)) {
+            return;
+        }
+        if (this.splitPoints == null) {
+            this.maxSplitPoints = (int) Math.min(Integer.MAX_VALUE - 1L,
+                    this.maxNodesOption.getValue() + 1L);
+            int capacity = Math.min(INITIAL_CAPACITY, this.maxSplitPoints);
+            this.splitPoints = new double[capacity];
+            this.statistics = new double[3 * (capacity + 1)];
+        }
+        int position = firstNotLess(attVal);
+        if ((position == this.numSplitPoints || this.splitPoints[position] != attVal)
+                && this.numSplitPoints < this.maxSplitPoints) {
+            insertSplitPoint(position, attVal);
+        }
+        int s = 3 * position;
+        this.statistics[s] += 1;
+        this.statistics[s + 1] += classVal;
+        this.statistics[s + 2] += classVal * classVal;
+    }
+
+    /**
+     * Returns the position of the first split point not lower than a value.
+     */
+    protected int firstNotLess(double value) {
+        int low = 0;
+        int high = this.numSplitPoints;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (this.splitPoints[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    protected void insertSplitPoint(int position, double value) {
+        if (this.numSplitPoints == this.splitPoints.length) {
+            int capacity = (int) Math.min(this.maxSplitPoints, 2L * this.splitPoints.length);
+            this.splitPoints = Arrays.copyOf(this.splitPoints, capacity);
+            this.statistics = Arrays.copyOf(this.statistics, 3 * (capacity + 1));
+        }
+        System.arraycopy(this.splitPoints, position, this.splitPoints, position + 1,
+                this.numSplitPoints - position);
+        System.arraycopy(this.statistics, 3 * position, this.statistics, 3 * (position + 1),
+                3 * (this.numSplitPoints + 1 - position));
+        this.splitPoints[position] = value;
+        this.statistics[3 * position] = 0;
+        this.statistics[3 * position + 1] = 0;
+        this.statistics[3 * position + 2] = 0;
+        this.numSplitPoints++;
+    }
+
+    @Override
+    public AttributeSplitSuggestion getBestEvaluatedSplitSuggestion(SplitCriterion criterion, double[] preSplitDist, int attIndex, boolean binaryOnly) {
+        AttributeSplitSuggestion bestSuggestion = null;
+        double[] left = new double[3];
+        double[] right = new double[]{preSplitDist[0], preSplitDist[1], preSplitDist[2]};
+        double[][] postSplitDists = new double[][]{left, right};
+        double[] splitDist = new double[3];
+        for (int i = 0; i < this.numSplitPoints && right[0] != 0.0; i++) {
+            for (int j = 0; j < 3; j++) {
+                double value = this.statistics[3 * i + j];
+                left[j] += value;
+                right[j] -= value;
+                splitDist[j] = left[j] + right[j];
+            }
+            double merit = criterion.getMeritOfSplit(splitDist, postSplitDists);
+            if (bestSuggestion == null || merit > bestSuggestion.merit) {
+                bestSuggestion = new AttributeSplitSuggestion(
+                        new NumericAttributeBinaryTest(attIndex, this.splitPoints[i], true),
+                        new double[][]{left.clone(), right.clone()}, merit);
+            }
+        }
+        return bestSuggestion;
+    }
+
+    /**
+     * Removes the split points whose merit is below the ratio of the second
+     * best to the best split by more than twice the Hoeffding bound.
+     */
+    @Override
+    public void removeBadSplits(SplitCriterion criterion, double lastCheckRatio, double lastCheckSDR, double lastCheckE) {
+        if (this.numSplitPoints == 0) {
+            return;
+        }
+        double[] total = new double[3];
+        for (int i = 0; i <= this.numSplitPoints; i++) {
+            for (int j = 0; j < 3; j++) {
+                total[j] += this.statistics[3 * i + j];
+            }
+        }
+        double[] left = new double[3];
+        double[] right = total.clone();
+        double[][] postSplitDists = new double[][]{left, right};
+        boolean[] bad = new boolean[this.numSplitPoints];
+        for (int i = 0; i < this.numSplitPoints; i++) {
+            for (int j = 0; j < 3; j++) {
+                double value = this.statistics[3 * i + j];
+                left[j] += value;
+                right[j] -= value;
+            }
+            double merit = criterion.getMeritOfSplit(total, postSplitDists);
+            bad[i] = (merit / lastCheckSDR) < (lastCheckRatio - (2 * lastCheckE));
+        }
+        int kept = 0;
+        for (int i = 0; i < this.numSplitPoints; i++) {
+            if (bad[i]) {
+                // the next split point, or the values above the last one
+                for (int j = 0; j < 3; j++) {
+                    this.statistics[3 * (i + 1) + j] += this.statistics[3 * i + j];
+                }
+            } else {
+                this.splitPoints[kept] = this.splitPoints[i];
+                System.arraycopy(this.statistics, 3 * i, this.statistics, 3 * kept, 3);
+                kept++;
+            }
+        }
+        System.arraycopy(this.statistics, 3 * this.numSplitPoints, this.statistics, 3 * kept, 3);
+        Arrays.fill(this.statistics, 3 * (kept + 1), 3 * (this.numSplitPoints + 1), 0);
+        this.numSplitPoints = kept;
+    }
+
+    public int getNumSplitPoints() {
+        return this.numSplitPoints;
+    }
+}
@@ -20,11 +20,13 @@
 
 package moa.classifiers.rules.multilabel;
 
+import java.util.List;
 import java.util.ListIterator;
 
 import moa.classifiers.AbstractMultiLabelLearner;
 import moa.classifiers.MultiLabelLearner;
 import moa.classifiers.core.driftdetection.ChangeDetector;
+import moa.classifiers.rules.core.RuleCoverageIndex;
 import moa.classifiers.rules.core.anomalydetection.AnomalyDetector;
 import moa.classifiers.rules.core.anomalydetection.OddsRatioScore;
 import moa.classifiers.rules.featureranking.FeatureRanking;
@@ -48,6 +50,7 @@ import moa.core.DoubleVector;
 import moa.core.Measurement;
 import moa.core.StringUtils;
 import moa.options.ClassOption;
+import moa.options.PrototypeFactories;
 
 import com.github.javacliparser.FlagOption;
 import com.github.javacliparser.FloatOption;
@@ -72,6 +75,7 @@ public abstract class AMRulesMultiLabelLearner extends AbstractMultiLabelLearner
 
 	private static final long serialVersionUID = 1L;
 	protected MultiLabelRuleSet ruleSet;
+	protected RuleCoverageIndex<MultiLabelRule> coverageIndex;
 	protected MultiLabelRule defaultRule;
 	protected int ruleNumberID=1;
 	protected double[] statistics;
@@ -155,6 +159,8 @@ public abstract class AMRulesMultiLabelLearner extends AbstractMultiLabelLearner
 	
 	protected double attributesPercentage;
 
+	protected PrototypeFactories prototypeFactories;
+
 	public double getAttributesPercentage() {
 		return attributesPercentage;
 	}
@@ -202,20 +208,20 @@ public abstract class AMRulesMultiLabelLearner extends AbstractMultiLabelLearner
 		//int numberOfRulesCovering = 0;
 
 		VerboseToConsole(instance); // Verbose to console Dataset name.
-		for (MultiLabelRule rule : ruleSet) {
-			if (rule.isCovering(instance) == true){
-				//numberOfRulesCovering++;
-				Prediction vote=rule.getPredictionForInstance(instance);
-				if (vote!=null){ //should only happen for first instance
-					double [] errors= rule.getCurrentErrors();
-					if(errors==null) //if errors==null, rule has seen no predictions since expansion: return maximum error, since prediction is not reliable
-						errors=defaultRuleErrors(vote);
+		for (MultiLabelRule rule : this.coverageIndex.getCoveringRules(this.ruleSet, instance, !this.unorderedRulesOption.isSet())) {
+			//numberOfRulesCovering++;
+			Prediction vote=rule.getPredictionForInstance(instance);
+			if (vote!=null){ //should only happen for first instance
+				double [] errors= rule.getCurrentErrors();
+				if(errors==null) //if errors==null, rule has seen no predictions since expansion: return maximum error, since prediction is not reliable
+					errors=defaultRuleErrors(vote);
+				if (isDebugging(3)) {
 					debug("Rule No"+ rule.getRuleNumberID() + " Vote: " + vote.toString() + " Error: " + errors + " Y: " + instance.classValue(),3); //predictionValueForThisRule);
-					errorWeightedVote.addVote(vote,errors);
-				}
-				if (!this.unorderedRulesOption.isSet()) { // Ordered Rules Option.
-					break; // Only one rule cover the instance.
 				}
+				errorWeightedVote.addVote(vote,errors);
+			}
+			if (!this.unorderedRulesOption.isSet()) { // Ordered Rules Option.
+				break; // Only one rule cover the instance.
 			}
 		}
 
@@ -239,7 +245,9 @@ public abstract class AMRulesMultiLabelLearner extends AbstractMultiLabelLearner
 					}
 				}
 				errorWeightedVote.addVote(fixVote,fixErrors);
-				debug("Default Rule Vote " + defaultVote.toString() + "\n Error " + defaultErrors + "  Y: " + instance,3);
+				if (isDebugging(3)) {
+					debug("Default Rule Vote " + defaultVote.toString() + "\n Error " + defaultErrors + "  Y: " + instance,3);
+				}
 			}
 		} 	
 		errorWeightedVote.computeWeightedVote();
@@ -303,18 +311,28 @@ public abstract class AMRulesMultiLabelLearner extends AbstractMultiLabelLearner
 		if(nAttributes==0)
 			nAttributes=instance.numInputAttributes();
 		numInstances+=instance.weight();
-		debug("Train",3);
-		debug("Nº instance "+numInstances + " - " + instance.toString(),3);
+		if (isDebugging(3)) {
+			debug("Train",3);
+			debug("Nº instance "+numInstances + " - " + instance.toString(),3);
+		}
 		boolean rulesCoveringInstance = false;
+		// The covering rules are listed in the order of the rule set, and
+		// the rules added while iterating are not visited
+		List<MultiLabelRule> coveringRules = this.coverageIndex.getCoveringRules(this.ruleSet, instance, !this.unorderedRulesOption.isSet());
+		int nextCoveringRule = 0;
 		ListIterator<MultiLabelRule> ruleIterator= this.ruleSet.listIterator();
-		while (ruleIterator.hasNext()) { 
+		while (ruleIterator.hasNext() && nextCoveringRule < coveringRules.size()) { 
 			MultiLabelRule rule = ruleIterator.next();
-			if (rule.isCovering(instance) == true) {
+			if (rule == coveringRules.get(nextCoveringRule)) {
+				nextCoveringRule++;
 				rulesCoveringInstance = true;
 				if (!rule.updateAnomalyDetection(instance)) {
 					if (rule.updateChangeDetection(instance)) {
-						debug("I) Drift Detected. Exa. : " +  this.numInstances + " (" + rule.getWeightSeenSinceExpansion() +") Remove Rule: " +rule.getRuleNumberID(),1);
+						if (isDebugging(1)) {
+							debug("I) Drift Detected. Exa. : " +  this.numInstances + " (" + rule.getWeightSeenSinceExpansion() +") Remove Rule: " +rule.getRuleNumberID(),1);
+						}
 						ruleIterator.remove();
+						this.coverageIndex.ruleRemoved(rule);
 
 						//Rule expansion event
 						rule.notifyAll(new ChangeDetectedMessage());
@@ -325,6 +343,7 @@ public abstract class AMRulesMultiLabelLearner extends AbstractMultiLabelLearner
 						if (rule.getWeightSeenSinceExpansion()  % this.gracePeriodOption.getValue() == 0.0) {
 							if (rule.tryToExpand(this.splitConfidenceOption.getValue(), this.tieThresholdOption.getValue()) ) 
 							{
+								this.coverageIndex.ruleChanged(rule);
 
 								MultiLabelRule otherMultiLabelRule=rule.getNewRuleFromOtherOutputs(); //Need to be outside to make sure other rules are cleaned
 								if(!dropOldRuleAfterExpansionOption.isSet() && rule.hasNewRuleFromOtherOutputs()){
@@ -332,18 +351,24 @@ public abstract class AMRulesMultiLabelLearner extends AbstractMultiLabelLearner
 									otherMultiLabelRule.setRuleNumberID(++ruleNumberID);
 									setRuleOptions(otherMultiLabelRule);
 									ruleIterator.add(otherMultiLabelRule);
+									// inserted before the next rules
+									this.coverageIndex.invalidate();
 									if(observer!=null)
 										otherMultiLabelRule.addObserver(observer);
 								}
 								setRuleOptions(rule);
-								debug("Rule Expanded:",2);
-								debug(rule.toString(),2);
+								if (isDebugging(2)) {
+									debug("Rule Expanded:",2);
+									debug(rule.toString(),2);
+								}
 							}	
 						}
 					}
 				}
 				else {
-					debug("Anomaly Detected: " + this.numInstances + " Rule: " +rule.getRuleNumberID() ,1);
+					if (isDebugging(1)) {
+						debug("Anomaly Detected: " + this.numInstances + " Rule: " +rule.getRuleNumberID() ,1);
+					}
 					this.numAnomaliesDetected+=instance.weight();//Just for statistics
 				}
 				if (!this.unorderedRulesOption.isSet()) 
@@ -355,7 +380,9 @@ public abstract class AMRulesMultiLabelLearner extends AbstractMultiLabelLearner
 		if (rulesCoveringInstance == false){ 
 			defaultRule.trainOnInstance(instance);
 			if (defaultRule.getWeightSeenSinceExpansion() % this.gracePeriodOption.getValue() == 0.0) {
-				debug("Nr. examples "+defaultRule.getWeightSeenSinceExpansion(), 4);
+				if (isDebugging(4)) {
+					debug("Nr. examples "+defaultRule.getWeightSeenSinceExpansion(), 4);
+				}
 
 				if (defaultRule.tryToExpand(this.splitConfidenceOption.getValue(), this.tieThresholdOption.getValue()) == true) {
 					
@@ -366,12 +393,17 @@ public abstract class AMRulesMultiLabelLearner extends AbstractMultiLabelLearner
 					//Add expanded rule to ruleset
 					setRuleOptions(defaultRule);
 					ruleSet.add(this.defaultRule);
+					this.coverageIndex.ruleAdded(this.defaultRule);
 
 
-					debug("Default rule expanded! New Rule:",2);
-					debug(defaultRule.toString(),2);
-					debug("New default rule:", 3);	
-					debug(newDefaultRule.toString(),3);
+					if (isDebugging(2)) {
+						debug("Default rule expanded! New Rule:",2);
+						debug(defaultRule.toString(),2);
+					}
+					if (isDebugging(3)) {
+						debug("New default rule:", 3);	
+						debug(newDefaultRule.toString(),3);
+					}
 					defaultRule=newDefaultRule;
 					if(observer!=null)
 						defaultRule.addObserver(observer);
@@ -481,15 +513,25 @@ public abstract class AMRulesMultiLabelLearner extends AbstractMultiLabelLearner
 	}
 
 	/**
-	 * Print to console
+	 * Print to console. Messages built from the model or the instance should
+	 * be printed inside a check of {@link #isDebugging(int)}, so they are not
+	 * built when the verbosity is lower than their level.
 	 * @param string
 	 */
 	protected void debug(String string, int level) {
-		if (VerbosityOption.getValue()>=level){
+		if (isDebugging(level)){
 			System.out.println(string); 
 		}
 	}
 
+	/**
+	 * Returns whether messages of a level are printed to console.
+	 * @param level
+	 */
+	protected boolean isDebugging(int level) {
+		return VerbosityOption.getValue()>=level;
+	}
+
 	protected void VerboseToConsole(MultiLabelInstance inst) {
 		if(VerbosityOption.getValue()>=5){	
 			System.out.println(); 
@@ -504,6 +546,9 @@ public abstract class AMRulesMultiLabelLearner extends AbstractMultiLabelLearner
 	}
 
 	public void PrintRuleSet() {    
+		if (!isDebugging(2)) {
+			return;
+		}
 		debug("Default rule :",2);
 		debug(this.defaultRule.toString(),2);
 
@@ -516,6 +561,7 @@ public abstract class AMRulesMultiLabelLearner extends AbstractMultiLabelLearner
 
 	@Override
 	public void resetLearningImpl() {
+		prototypeFactories=null;
 		defaultRule=newDefaultRule();
 		this.classifierRandom.setSeed(this.randomSeed);
 		MultiLabelLearner l = (MultiLabelLearner)((MultiLabelLearner)getPreparedClassOption(learnerOption)).copy();
@@ -525,6 +571,7 @@ public abstract class AMRulesMultiLabelLearner extends AbstractMultiLabelLearner
 		defaultRule.setInstanceTransformer(new NoInstanceTransformation());
 		setRuleOptions(defaultRule);
 		ruleSet = new MultiLabelRuleSet();
+		coverageIndex = new RuleCoverageIndex<MultiLabelRule>();
 		ruleNumberID=1;
 		statistics=null;
 		this.featureRanking=(FeatureRanking) getPreparedClassOption(this.featureRankingOption);
@@ -533,22 +580,32 @@ public abstract class AMRulesMultiLabelLearner extends AbstractMultiLabelLearner
 
 
 	protected void setRuleOptions(MultiLabelRule rule){
-		rule.setSplitCriterion((MultiLabelSplitCriterion)((MultiLabelSplitCriterion)getPreparedClassOption(splitCriterionOption)).copy());
-		rule.setChangeDetector((ChangeDetector)((ChangeDetector)getPreparedClassOption(changeDetector)).copy());
-		rule.setAnomalyDetector((AnomalyDetector)((AnomalyDetector)getPreparedClassOption(anomalyDetector)).copy());
-		rule.setNumericObserverOption((NumericStatisticsObserver)((NumericStatisticsObserver)getPreparedClassOption(numericObserverOption)).copy());
-		rule.setNominalObserverOption((NominalStatisticsObserver)((NominalStatisticsObserver)getPreparedClassOption(nominalObserverOption)).copy());
-		rule.setErrorMeasurer((MultiLabelErrorMeasurer)((MultiLabelErrorMeasurer)getPreparedClassOption(errorMeasurerOption)).copy());
-		rule.setOutputAttributesSelector((OutputAttributesSelector)((OutputAttributesSelector)getPreparedClassOption(outputSelectorOption)).copy());
+		rule.setSplitCriterion((MultiLabelSplitCriterion)newComponent(splitCriterionOption));
+		rule.setChangeDetector((ChangeDetector)newComponent(changeDetector));
+		rule.setAnomalyDetector((AnomalyDetector)newComponent(anomalyDetector));
+		rule.setNumericObserverOption((NumericStatisticsObserver)newComponent(numericObserverOption));
+		rule.setNominalObserverOption((NominalStatisticsObserver)newComponent(nominalObserverOption));
+		rule.setErrorMeasurer((MultiLabelErrorMeasurer)newComponent(errorMeasurerOption));
+		rule.setOutputAttributesSelector((OutputAttributesSelector)newComponent(outputSelectorOption));
 		rule.setRandomGenerator(this.classifierRandom);
 		rule.setAttributesPercentage(this.attributesPercentage);
-		rule.setInputAttributesSelector((InputAttributesSelector)((InputAttributesSelector)getPreparedClassOption(inputSelectorOption)).copy());
+		rule.setInputAttributesSelector((InputAttributesSelector)newComponent(inputSelectorOption));
+	}
+
+	/**
+	 * Returns a new instance of the prepared object of a class option, with
+	 * its options, instead of a copy of it.
+	 */
+	protected Object newComponent(ClassOption option){
+		if (prototypeFactories==null)
+			prototypeFactories=new PrototypeFactories();
+		return prototypeFactories.newInstance(option, getPreparedClassOption(option));
 	}
 
 	abstract protected MultiLabelRule newDefaultRule();
 
 	public ErrorWeightedVoteMultiLabel newErrorWeightedVote(){
-		return (ErrorWeightedVoteMultiLabel)((ErrorWeightedVoteMultiLabel) getPreparedClassOption(weightedVoteOption)).copy();
+		return (ErrorWeightedVoteMultiLabel)newComponent(weightedVoteOption);
 	}
 
 
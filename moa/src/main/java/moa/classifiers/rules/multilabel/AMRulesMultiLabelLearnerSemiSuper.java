@@ -48,6 +48,7 @@ import moa.core.DoubleVector;
 import moa.core.Measurement;
 import moa.core.StringUtils;
 import moa.options.ClassOption;
+import moa.options.PrototypeFactories;
 
 import com.github.javacliparser.FlagOption;
 import com.github.javacliparser.FloatOption;
@@ -154,6 +155,8 @@ public abstract class AMRulesMultiLabelLearnerSemiSuper extends AbstractMultiLab
 	
     protected double attributesPercentage;
 
+    protected PrototypeFactories prototypeFactories;
+
     public double getAttributesPercentage() {
         return attributesPercentage;
     }
@@ -205,7 +208,9 @@ public abstract class AMRulesMultiLabelLearnerSemiSuper extends AbstractMultiLab
                     double [] errors= rule.getCurrentErrors();
                     if(errors==null) //if errors==null, rule has seen no predictions since expansion: return maximum error, since prediction is not reliable
                         errors=defaultRuleErrors(vote);
-                    debug("Rule No"+ rule.getRuleNumberID() + " Vote: " + vote.toString() + " Error: " + errors + " Y: " + instance.classValue(),3); //predictionValueForThisRule);
+                    if (isDebugging(3)) {
+                        debug("Rule No"+ rule.getRuleNumberID() + " Vote: " + vote.toString() + " Error: " + errors + " Y: " + instance.classValue(),3); //predictionValueForThisRule);
+                    }
                     errorWeightedVote.addVote(vote,errors);
                 }
                 
@@ -250,7 +255,9 @@ public abstract class AMRulesMultiLabelLearnerSemiSuper extends AbstractMultiLab
                     }
                 }
                 errorWeightedVote.addVote(fixVote,fixErrors);
-                debug("Default Rule Vote " + defaultVote.toString() + "\n Error " + defaultErrors + "  Y: " + instance,3);
+                if (isDebugging(3)) {
+                    debug("Default Rule Vote " + defaultVote.toString() + "\n Error " + defaultErrors + "  Y: " + instance,3);
+                }
             }
         } 	
         errorWeightedVote.computeWeightedVote();
@@ -300,8 +307,10 @@ public abstract class AMRulesMultiLabelLearnerSemiSuper extends AbstractMultiLab
             nAttributes=instance.numInputAttributes();
         
         numInstances+=instance.weight();
-        debug("Train",3);
-        debug("NÃƒÆ’Ã†â€™Ãƒâ€ Ã¢â‚¬â„¢ÃƒÆ’Ã‚Â¢ÃƒÂ¢Ã¢â‚¬Å¡Ã‚Â¬Ãƒâ€¦Ã‚Â¡ÃƒÆ’Ã†â€™ÃƒÂ¢Ã¢â€šÂ¬Ã…Â¡ÃƒÆ’Ã¢â‚¬Å¡Ãƒâ€šÃ‚Âº instance "+numInstances + " - " + instance.toString(),3);
+        if (isDebugging(3)) {
+            debug("Train",3);
+            debug("NÃƒÆ’Ã†â€™Ãƒâ€ Ã¢â‚¬â„¢ÃƒÆ’Ã‚Â¢ÃƒÂ¢Ã¢â‚¬Å¡Ã‚Â¬Ãƒâ€¦Ã‚Â¡ÃƒÆ’Ã†â€™ÃƒÂ¢Ã¢â€šÂ¬Ã…Â¡ÃƒÆ’Ã¢â‚¬Å¡Ãƒâ€šÃ‚Âº instance "+numInstances + " - " + instance.toString(),3);
+        }
         
         boolean rulesCoveringInstance = false;
         ListIterator<MultiLabelRule> ruleIterator= this.ruleSet.listIterator();
@@ -343,7 +352,9 @@ public abstract class AMRulesMultiLabelLearnerSemiSuper extends AbstractMultiLab
 
                     //----------------------------------------------------------
                     if (rule.updateChangeDetection(instance)) {
-                        debug("I) Drift Detected. Exa. : " +  numInstances + " (" + rule.getWeightSeenSinceExpansion() +") Remove Rule: " +rule.getRuleNumberID(),1);
+                        if (isDebugging(1)) {
+                            debug("I) Drift Detected. Exa. : " +  numInstances + " (" + rule.getWeightSeenSinceExpansion() +") Remove Rule: " +rule.getRuleNumberID(),1);
+                        }
                         ruleIterator.remove();                         //Remove a regra 
                         rule.notifyAll(new ChangeDetectedMessage());   //Rule expansion event			
                         this.numChangesDetected += instance.weight();  //Just for statistics 
@@ -364,14 +375,18 @@ public abstract class AMRulesMultiLabelLearnerSemiSuper extends AbstractMultiLab
                                         otherMultiLabelRule.addObserver(observer);
                                 }
                                 setRuleOptions(rule);
-                                debug("Rule Expanded:",2);
-                                debug(rule.toString(),2);
+                                if (isDebugging(2)) {
+                                    debug("Rule Expanded:",2);
+                                    debug(rule.toString(),2);
+                                }
                             }	
                         }
                     }
                 }
                 else {
-                    debug("Anomaly Detected: " + numInstances + " Rule: " +rule.getRuleNumberID() ,1);
+                    if (isDebugging(1)) {
+                        debug("Anomaly Detected: " + numInstances + " Rule: " +rule.getRuleNumberID() ,1);
+                    }
                     numAnomaliesDetected+=instance.weight();//Just for statistics
                 }
   
@@ -403,17 +418,23 @@ public abstract class AMRulesMultiLabelLearnerSemiSuper extends AbstractMultiLab
             defaultRule.trainOnInstance(instance);
 
             if (defaultRule.getWeightSeenSinceExpansion() % this.gracePeriodOption.getValue() == 0.0) {
-                debug("Nr. examples "+defaultRule.getWeightSeenSinceExpansion(), 4);
+                if (isDebugging(4)) {
+                    debug("Nr. examples "+defaultRule.getWeightSeenSinceExpansion(), 4);
+                }
                 if ( defaultRule.tryToExpand(this.splitConfidenceOption.getValue(), this.tieThresholdOption.getValue()) == true) {
                     MultiLabelRule newDefaultRule=defaultRule.getNewRuleFromOtherBranch();
                     newDefaultRule.setRuleNumberID(++ruleNumberID);
                     setRuleOptions(newDefaultRule);
                     setRuleOptions(defaultRule);
                     ruleSet.add(defaultRule);
-                    debug("Default rule expanded! New Rule:",2);
-                    debug(defaultRule.toString(),2);
-                    debug("New default rule:", 3);	
-                    debug(newDefaultRule.toString(),3);
+                    if (isDebugging(2)) {
+                        debug("Default rule expanded! New Rule:",2);
+                        debug(defaultRule.toString(),2);
+                    }
+                    if (isDebugging(3)) {
+                        debug("New default rule:", 3);	
+                        debug(newDefaultRule.toString(),3);
+                    }
                     defaultRule=newDefaultRule;
                     if(observer!=null)
                         defaultRule.addObserver(observer);
@@ -524,15 +545,25 @@ public abstract class AMRulesMultiLabelLearnerSemiSuper extends AbstractMultiLab
 	}
 
 	/**
-	 * Print to console
+	 * Print to console. Messages built from the model or the instance should
+	 * be printed inside a check of {@link #isDebugging(int)}, so they are not
+	 * built when the verbosity is lower than their level.
 	 * @param string
 	 */
 	protected void debug(String string, int level) {
-		if (VerbosityOption.getValue()>=level){
+		if (isDebugging(level)){
 			System.out.println(string); 
 		}
 	}
 
+	/**
+	 * Returns whether messages of a level are printed to console.
+	 * @param level
+	 */
+	protected boolean isDebugging(int level) {
+		return VerbosityOption.getValue()>=level;
+	}
+
 	protected void VerboseToConsole(MultiLabelInstance inst) {
 		if(VerbosityOption.getValue()>=5){	
 			System.out.println(); 
@@ -547,6 +578,9 @@ public abstract class AMRulesMultiLabelLearnerSemiSuper extends AbstractMultiLab
 	}
 
 	public void PrintRuleSet() {    
+		if (!isDebugging(2)) {
+			return;
+		}
 		debug("Default rule :",2);
 		debug(this.defaultRule.toString(),2);
 
@@ -560,6 +594,7 @@ public abstract class AMRulesMultiLabelLearnerSemiSuper extends AbstractMultiLab
 	@Override
 	public void resetLearningImpl() {
             
+		prototypeFactories=null;
 		defaultRule=newDefaultRule();
 		this.classifierRandom.setSeed(this.randomSeed);
 		MultiLabelLearner l = (MultiLabelLearner)((MultiLabelLearner)getPreparedClassOption(learnerOption)).copy();
@@ -580,22 +615,32 @@ public abstract class AMRulesMultiLabelLearnerSemiSuper extends AbstractMultiLab
 
 
 	protected void setRuleOptions(MultiLabelRule rule){
-		rule.setSplitCriterion((MultiLabelSplitCriterion)((MultiLabelSplitCriterion)getPreparedClassOption(splitCriterionOption)).copy());
-		rule.setChangeDetector((ChangeDetector)((ChangeDetector)getPreparedClassOption(changeDetector)).copy());
-		rule.setAnomalyDetector((AnomalyDetector)((AnomalyDetector)getPreparedClassOption(anomalyDetector)).copy());
-		rule.setNumericObserverOption((NumericStatisticsObserver)((NumericStatisticsObserver)getPreparedClassOption(numericObserverOption)).copy());
-		rule.setNominalObserverOption((NominalStatisticsObserver)((NominalStatisticsObserver)getPreparedClassOption(nominalObserverOption)).copy());
-		rule.setErrorMeasurer((MultiLabelErrorMeasurer)((MultiLabelErrorMeasurer)getPreparedClassOption(errorMeasurerOption)).copy());
-		rule.setOutputAttributesSelector((OutputAttributesSelector)((OutputAttributesSelector)getPreparedClassOption(outputSelectorOption)).copy());
+		rule.setSplitCriterion((MultiLabelSplitCriterion)newComponent(splitCriterionOption));
+		rule.setChangeDetector((ChangeDetector)newComponent(changeDetector));
+		rule.setAnomalyDetector((AnomalyDetector)newComponent(anomalyDetector));
+		rule.setNumericObserverOption((NumericStatisticsObserver)newComponent(numericObserverOption));
+		rule.setNominalObserverOption((NominalStatisticsObserver)newComponent(nominalObserverOption));
+		rule.setErrorMeasurer((MultiLabelErrorMeasurer)newComponent(errorMeasurerOption));
+		rule.setOutputAttributesSelector((OutputAttributesSelector)newComponent(outputSelectorOption));
 		rule.setRandomGenerator(this.classifierRandom);
 		rule.setAttributesPercentage(this.attributesPercentage);
-		rule.setInputAttributesSelector((InputAttributesSelector)((InputAttributesSelector)getPreparedClassOption(inputSelectorOption)).copy());
+		rule.setInputAttributesSelector((InputAttributesSelector)newComponent(inputSelectorOption));
+	}
+
+	/**
+	 * Returns a new instance of the prepared object of a class option, with
+	 * its options, instead of a copy of it.
+	 */
+	protected Object newComponent(ClassOption option){
+		if (prototypeFactories==null)
+			prototypeFactories=new PrototypeFactories();
+		return prototypeFactories.newInstance(option, getPreparedClassOption(option));
 	}
 
 	abstract protected MultiLabelRule newDefaultRule();
 
 	public ErrorWeightedVoteMultiLabel newErrorWeightedVote(){
-		return (ErrorWeightedVoteMultiLabel)((ErrorWeightedVoteMultiLabel) getPreparedClassOption(weightedVoteOption)).copy();
+		return (ErrorWeightedVoteMultiLabel)newComponent(weightedVoteOption);
 	}
 
 
@@ -0,0 +1,223 @@
+/*
+ *    MultiLabelBSTreeArray.java
+ *    Copyright (C) 2018 University of Porto, Portugal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ *
+ */
+
+package moa.classifiers.rules.multilabel.attributeclassobservers;
+
+import java.util.Arrays;
+
+import moa.classifiers.rules.core.NumericRulePredicate;
+import moa.classifiers.rules.core.Utils;
+import moa.classifiers.rules.multilabel.core.AttributeExpansionSuggestion;
+import moa.classifiers.rules.multilabel.core.splitcriteria.MultiLabelSplitCriterion;
+import moa.core.DoubleVector;
+import moa.core.ObjectRepository;
+import moa.options.AbstractOptionHandler;
+import moa.tasks.TaskMonitor;
+
+import com.github.javacliparser.IntOption;
+
+/**
+ * Binary search tree for AMRules splitting points determination, stored in
+ * arrays. It finds the same splitting points as MultiLabelBSTree with the
+ * same maximum number of nodes.
+ *
+ * The splitting points are kept sorted, each with the statistics of the
+ * outputs for the values between the previous splitting point and itself,
+ * in one array for all points. Values observed once the maximum number of
+ * points is reached are added to the first point not lower than them, or to
+ * the values above the last point. The best split is found in one scan of
+ * the prefix sums.
+ */
+public class MultiLabelBSTreeArray extends AbstractOptionHandler implements NumericStatisticsObserver {
+
+	private static final long serialVersionUID = 1L;
+
+	public IntOption maxNodesOption = new IntOption("maxNodes", 'z', "Maximum number of nodes", 50, 0, Integer.MAX_VALUE);
+
+	protected static final int INITIAL_CAPACITY = 8;
+
+	protected int maxSplitPoints;
+
+	protected int numSplitPoints;
+
+	protected double [] splitPoints;
+
+	// offset of the statistics of every output in the statistics of a point
+	protected int [] offsets;
+
+	protected int [] widths;
+
+	protected int stride;
+
+	// statistics of every point, followed by those of the values above the last point
+	protected double [] statistics;
+
+	@Override
+	public void observeAttribute(double inputAttributeValue,
+			DoubleVector[] statistics) {
+		if (Double.isNaN(inputAttributeValue))
+			return;
+		if (this.splitPoints == null) {
+			this.maxSplitPoints=(int)Math.min(Integer.MAX_VALUE-1L, maxNodesOption.getValue()+1L);
+			int capacity=Math.min(INITIAL_CAPACITY, this.maxSplitPoints);
+			this.splitPoints=new double[capacity];
+			setWidths(statistics, capacity);
+		} else {
+			checkWidths(statistics);
+		}
+		int position=firstNotLess(inputAttributeValue);
+		if ((position==numSplitPoints || splitPoints[position]!=inputAttributeValue) && numSplitPoints<maxSplitPoints)
+			insertSplitPoint(position, inputAttributeValue);
+		int base=position*stride;
+		for (int i=0; i<statistics.length; i++) {
+			double [] values=statistics[i].getArrayRef();
+			int offset=base+offsets[i];
+			for (int j=0; j<values.length; j++)
+				this.statistics[offset+j]+=values[j];
+		}
+	}
+
+	protected void setWidths(DoubleVector [] statistics, int capacity) {
+		int numOutputs=statistics.length;
+		widths=new int[numOutputs];
+		offsets=new int[numOutputs];
+		stride=0;
+		for (int i=0; i<numOutputs; i++) {
+			widths[i]=statistics[i].numValues();
+			offsets[i]=stride;
+			stride+=widths[i];
+		}
+		this.statistics=new double[stride*(capacity+1)];
+	}
+
+	/**
+	 * Widens the statistics of the outputs with more values than before, for
+	 * instance when a new class is seen.
+	 */
+	protected void checkWidths(DoubleVector [] statistics) {
+		boolean wider=false;
+		for (int i=0; i<statistics.length; i++)
+			wider|=statistics[i].numValues()>widths[i];
+		if (!wider)
+			return;
+		int [] oldOffsets=offsets;
+		int [] oldWidths=widths;
+		int oldStride=stride;
+		double [] oldStatistics=this.statistics;
+		int numOutputs=statistics.length;
+		widths=new int[numOutputs];
+		offsets=new int[numOutputs];
+		stride=0;
+		for (int i=0; i<numOutputs; i++) {
+			widths[i]=Math.max(oldWidths[i], statistics[i].numValues());
+			offsets[i]=stride;
+			stride+=widths[i];
+		}
+		int capacity=splitPoints.length;
+		this.statistics=new double[stride*(capacity+1)];
+		for (int k=0; k<=numSplitPoints; k++)
+			for (int i=0; i<numOutputs; i++)
+				System.arraycopy(oldStatistics, k*oldStride+oldOffsets[i], this.statistics, k*stride+offsets[i], oldWidths[i]);
+	}
+
+	protected int firstNotLess(double value) {
+		int low=0;
+		int high=numSplitPoints;
+		while (low<high) {
+			int mid=(low+high)>>>1;
+			if (splitPoints[mid]<value)
+				low=mid+1;
+			else
+				high=mid;
+		}
+		return low;
+	}
+
+	protected void insertSplitPoint(int position, double value) {
+		if (numSplitPoints==splitPoints.length) {
+			int capacity=(int)Math.min(maxSplitPoints, 2L*splitPoints.length);
+			splitPoints=Arrays.copyOf(splitPoints, capacity);
+			statistics=Arrays.copyOf(statistics, stride*(capacity+1));
+		}
+		System.arraycopy(splitPoints, position, splitPoints, position+1, numSplitPoints-position);
+		System.arraycopy(statistics, position*stride, statistics, (position+1)*stride, (numSplitPoints+1-position)*stride);
+		splitPoints[position]=value;
+		Arrays.fill(statistics, position*stride, (position+1)*stride, 0);
+		numSplitPoints++;
+	}
+
+	@Override
+	public AttributeExpansionSuggestion getBestEvaluatedSplitSuggestion(
+			MultiLabelSplitCriterion criterion, DoubleVector[] preSplitStatistics, int inputAttributeIndex) {
+		if (numSplitPoints==0)
+			return null;
+		int numOutputs=preSplitStatistics.length;
+		DoubleVector[][] postSplitDists = new DoubleVector [numOutputs][2];
+		double [][] left=new double[numOutputs][];
+		double [][] right=new double[numOutputs][];
+		for (int i=0; i<numOutputs; i++)
+		{
+			int width=Math.max(widths[i], preSplitStatistics[i].numValues());
+			postSplitDists[i][0]=new DoubleVector(new double[width]); //sets statistics to zeros
+			postSplitDists[i][1]=new DoubleVector(new double[width]);
+			postSplitDists[i][1].addValues(preSplitStatistics[i]);
+			left[i]=postSplitDists[i][0].getArrayRef();
+			right[i]=postSplitDists[i][1].getArrayRef();
+		}
+		AttributeExpansionSuggestion bestSuggestion=null;
+		for (int k=0; k<numSplitPoints; k++) {
+			int base=k*stride;
+			for (int i=0; i<numOutputs; i++) {
+				int offset=base+offsets[i];
+				double [] l=left[i];
+				double [] r=right[i];
+				for (int j=0; j<widths[i]; j++) {
+					double value=statistics[offset+j];
+					l[j]+=value;
+					r[j]-=value;
+				}
+			}
+			double merit = criterion.getMeritOfSplit(preSplitStatistics, postSplitDists);
+			if ((bestSuggestion == null) || (merit > bestSuggestion.merit)) {
+				bestSuggestion= new AttributeExpansionSuggestion(new NumericRulePredicate(inputAttributeIndex, splitPoints[k], true), Utils.copy(postSplitDists), merit);
+			}
+		}
+		return bestSuggestion;
+	}
+
+	public int getNumSplitPoints() {
+		return numSplitPoints;
+	}
+
+	@Override
+	public String getPurposeString() {
+		return "Stores statistics for all output attributes for a given input attribute, in arrays.";
+	}
+
+	@Override
+	public void getDescription(StringBuilder sb, int indent) {
+	}
+
+	@Override
+	protected void prepareForUseImpl(TaskMonitor monitor,
+			ObjectRepository repository) {
+
+	}
+
+}
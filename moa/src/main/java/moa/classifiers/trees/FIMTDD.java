@@ -31,6 +31,7 @@ import com.github.javacliparser.FloatOption;
 import com.github.javacliparser.IntOption;
 
 import moa.options.ClassOption;
+import moa.options.PrototypeFactory;
 import moa.AbstractMOAObject;
 import moa.classifiers.Regressor;
 import moa.classifiers.core.AttributeSplitSuggestion;
@@ -66,6 +67,8 @@ public class FIMTDD extends AbstractClassifier implements Regressor {
 
 	public int maxID = 0;
 
+	protected PrototypeFactory<FIMTDDNumericAttributeClassObserver> numericObserverFactory;
+
 	//region ================ OPTIONS ================
 
 	public ClassOption splitCriterionOption = new ClassOption(
@@ -118,6 +121,10 @@ public class FIMTDD extends AbstractClassifier implements Regressor {
 	public FlagOption learningRatioConstOption = new FlagOption(
 			"learningRatioConst", 'p', "Keep learning rate constant instead of decaying.");
 
+	public ClassOption numericObserverOption = new ClassOption(
+			"numericObserver", 'n', "Observer of the numeric attributes in the leaves.",
+			FIMTDDNumericAttributeClassObserver.class, "FIMTDDNumericAttributeClassObserver");
+
 	//endregion ================ OPTIONS ================
 
 	//region ================ CLASSES ================
@@ -683,6 +690,7 @@ public class FIMTDD extends AbstractClassifier implements Regressor {
 
 		this.sumOfAttrValues = new DoubleVector();
 		this.sumOfAttrSquares = new DoubleVector();
+		this.numericObserverFactory = null;
 	}
 
 	public boolean isRandomizable() {
@@ -833,7 +841,11 @@ public class FIMTDD extends AbstractClassifier implements Regressor {
 	// region --- Object instatiation methods
 
 	protected FIMTDDNumericAttributeClassObserver newNumericClassObserver() {
-		return new FIMTDDNumericAttributeClassObserver();
+		if (this.numericObserverFactory == null) {
+			this.numericObserverFactory = new PrototypeFactory<FIMTDDNumericAttributeClassObserver>(
+					(FIMTDDNumericAttributeClassObserver) getPreparedClassOption(this.numericObserverOption));
+		}
+		return this.numericObserverFactory.newInstance();
 	}
 
 	protected SplitNode newSplitNode(InstanceConditionalTest splitTest) {
@@ -28,6 +28,8 @@ import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import com.github.javacliparser.FileOption;
 import com.github.javacliparser.FlagOption;
 import com.github.javacliparser.FloatOption;
@@ -89,6 +91,8 @@ import com.yahoo.labs.samoa.instances.Instance;
  * adaptive (NBAdaptive).</li>
  *  <li> -q : The number of instances a leaf should observe before
  * permitting Naive Bayes</li>
+ *  <li> -j : Number of threads training the leaves reached by an
+ * instance</li>
  * </ul>
  *
  * @author Richard Kirkby (rkirkby@cs.waikato.ac.nz)
@@ -176,6 +180,10 @@ public class HoeffdingOptionTree extends AbstractClassifier implements MultiClas
     public IntOption memoryStrategyOption = new IntOption("memStrategy", 'z',
             "Memory strategy to use.", 2);
 
+    public IntOption numThreadsOption = new IntOption("numThreads", 'j',
+            "Number of threads training the leaves reached by an instance.",
+            1, 1, Integer.MAX_VALUE);
+
     public static class FoundNode {
 
         public Node node;
@@ -191,6 +199,49 @@ public class HoeffdingOptionTree extends AbstractClassifier implements MultiClas
         }
     }
 
+    /**
+     * The nodes found for an instance. The buffer keeps its entries when it
+     * is cleared, so a buffer reused from instance to instance allocates
+     * nothing once it holds as many entries as the option paths of the tree.
+     */
+    public static class FoundNodeBuffer {
+
+        protected FoundNode[] foundNodes = new FoundNode[8];
+
+        protected int size;
+
+        public int size() {
+            return this.size;
+        }
+
+        public FoundNode get(int index) {
+            return this.foundNodes[index];
+        }
+
+        public void clear() {
+            this.size = 0;
+        }
+
+        public void add(Node node, SplitNode parent, int parentBranch) {
+            if (this.size == this.foundNodes.length) {
+                this.foundNodes = Arrays.copyOf(this.foundNodes, 2 * this.size);
+            }
+            FoundNode foundNode = this.foundNodes[this.size];
+            if (foundNode == null) {
+                this.foundNodes[this.size] = new FoundNode(node, parent, parentBranch);
+            } else {
+                foundNode.node = node;
+                foundNode.parent = parent;
+                foundNode.parentBranch = parentBranch;
+            }
+            this.size++;
+        }
+
+        public FoundNode[] toArray() {
+            return Arrays.copyOf(this.foundNodes, this.size);
+        }
+    }
+
     public static class Node extends AbstractMOAObject {
 
         private static final long serialVersionUID = 1L;
@@ -215,16 +266,16 @@ public class HoeffdingOptionTree extends AbstractClassifier implements MultiClas
 
         public FoundNode[] filterInstanceToLeaves(Instance inst,
                 SplitNode parent, int parentBranch, boolean updateSplitterCounts) {
-            List<FoundNode> nodes = new LinkedList<FoundNode>();
+            FoundNodeBuffer nodes = new FoundNodeBuffer();
             filterInstanceToLeaves(inst, parent, parentBranch, nodes,
                     updateSplitterCounts);
-            return nodes.toArray(new FoundNode[nodes.size()]);
+            return nodes.toArray();
         }
 
         public void filterInstanceToLeaves(Instance inst,
                 SplitNode splitparent, int parentBranch,
-                List<FoundNode> foundNodes, boolean updateSplitterCounts) {
-            foundNodes.add(new FoundNode(this, splitparent, parentBranch));
+                FoundNodeBuffer foundNodes, boolean updateSplitterCounts) {
+            foundNodes.add(this, splitparent, parentBranch);
         }
 
         public double[] getObservedClassDistribution() {
@@ -338,7 +389,7 @@ public class HoeffdingOptionTree extends AbstractClassifier implements MultiClas
 
         @Override
         public void filterInstanceToLeaves(Instance inst, SplitNode myparent,
-                int parentBranch, List<FoundNode> foundNodes,
+                int parentBranch, FoundNodeBuffer foundNodes,
                 boolean updateSplitterCounts) {
             if (updateSplitterCounts) {
                 this.observedClassDistribution.addToValue((int) inst.classValue(), inst.weight());
@@ -350,7 +401,7 @@ public class HoeffdingOptionTree extends AbstractClassifier implements MultiClas
                     child.filterInstanceToLeaves(inst, this, childIndex,
                             foundNodes, updateSplitterCounts);
                 } else {
-                    foundNodes.add(new FoundNode(null, this, childIndex));
+                    foundNodes.add(null, this, childIndex);
                 }
             }
             if (this.nextOption != null) {
@@ -559,6 +610,24 @@ public class HoeffdingOptionTree extends AbstractClassifier implements MultiClas
             return this.observedClassDistribution.sumOfValues();
         }
 
+        /**
+         * Returns the weight seen once an instance is learned, computed as
+         * {@link #getWeightSeen()} will compute it, for the leaves that add
+         * the weight of the instance to the observed class distribution.
+         */
+        public double getWeightSeenWith(Instance inst) {
+            double[] dist = this.observedClassDistribution.getArrayRef();
+            int classIndex = (int) inst.classValue();
+            double sum = 0.0;
+            for (int i = 0; i < dist.length; i++) {
+                sum += i == classIndex ? dist[i] + inst.weight() : dist[i];
+            }
+            if (classIndex >= dist.length) {
+                sum += inst.weight();
+            }
+            return sum;
+        }
+
         public double getWeightSeenAtLastSplitEvaluation() {
             return this.weightSeenAtLastSplitEvaluation;
         }
@@ -613,6 +682,57 @@ public class HoeffdingOptionTree extends AbstractClassifier implements MultiClas
 
     protected int maxPredictionPaths;
 
+    protected transient FoundNodeBuffer trainingNodes;
+
+    protected transient FoundNodeBuffer predictionNodes;
+
+    protected transient ForkJoinPool leafPool;
+
+    /**
+     * Trains the leaves of a range of the nodes found for an instance. The
+     * range is halved between the threads of a fork/join pool down to single
+     * leaves, which learn independently.
+     */
+    protected static class LeafTrainingTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        protected final HoeffdingOptionTree tree;
+
+        protected final Instance inst;
+
+        protected final FoundNodeBuffer foundNodes;
+
+        protected final int from;
+
+        protected final int to;
+
+        public LeafTrainingTask(HoeffdingOptionTree tree, Instance inst,
+                FoundNodeBuffer foundNodes, int from, int to) {
+            this.tree = tree;
+            this.inst = inst;
+            this.foundNodes = foundNodes;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from > 1) {
+                int middle = (this.from + this.to) >>> 1;
+                invokeAll(new LeafTrainingTask(this.tree, this.inst, this.foundNodes, this.from, middle),
+                        new LeafTrainingTask(this.tree, this.inst, this.foundNodes, middle, this.to));
+            } else {
+                for (int i = this.from; i < this.to; i++) {
+                    Node leafNode = this.foundNodes.get(i).node;
+                    if (leafNode instanceof LearningNode) {
+                        ((LearningNode) leafNode).learnFromInstance(this.inst, this.tree);
+                    }
+                }
+            }
+        }
+    }
+
     public int calcByteSize() {
         int size = (int) SizeOf.sizeOf(this);
         if (this.treeRoot != null) {
@@ -639,6 +759,10 @@ public class HoeffdingOptionTree extends AbstractClassifier implements MultiClas
         if (this.leafpredictionOption.getChosenIndex() > 0) {
             this.removePoorAttsOption = null;
         }
+        if (this.leafPool != null) {
+            this.leafPool.shutdown();
+            this.leafPool = null;
+        }
     }
 
     @Override
@@ -647,30 +771,24 @@ public class HoeffdingOptionTree extends AbstractClassifier implements MultiClas
             this.treeRoot = newLearningNode();
             this.activeLeafNodeCount = 1;
         }
-        FoundNode[] foundNodes = this.treeRoot.filterInstanceToLeaves(inst,
-                null, -1, true);
-        for (FoundNode foundNode : foundNodes) {
+        if (this.trainingNodes == null) {
+            this.trainingNodes = new FoundNodeBuffer();
+        }
+        FoundNodeBuffer foundNodes = this.trainingNodes;
+        foundNodes.clear();
+        this.treeRoot.filterInstanceToLeaves(inst, null, -1, foundNodes, true);
+        int numTrained = 0;
+        if (this.numThreadsOption.getValue() > 1 && foundNodes.size() > 1) {
+            numTrained = trainLeavesConcurrently(inst, foundNodes);
+        }
+        for (int i = numTrained; i < foundNodes.size(); i++) {
+            FoundNode foundNode = foundNodes.get(i);
             // option leaves will have a parentBranch of -999
             // option splits will have an option count of -999
-            Node leafNode = foundNode.node;
-            if (leafNode == null) {
-                leafNode = newLearningNode();
-                foundNode.parent.setChild(foundNode.parentBranch, leafNode);
-                this.activeLeafNodeCount++;
-            }
+            Node leafNode = getReachedLeaf(foundNode);
             if (leafNode instanceof LearningNode) {
-                LearningNode learningNode = (LearningNode) leafNode;
-                learningNode.learnFromInstance(inst, this);
-                if (learningNode instanceof ActiveLearningNode) {
-                    ActiveLearningNode activeLearningNode = (ActiveLearningNode) learningNode;
-                    double weightSeen = activeLearningNode.getWeightSeen();
-                    if (weightSeen
-                            - activeLearningNode.getWeightSeenAtLastSplitEvaluation() >= this.gracePeriodOption.getValue()) {
-                        attemptToSplit(activeLearningNode, foundNode.parent,
-                                foundNode.parentBranch);
-                        activeLearningNode.setWeightSeenAtLastSplitEvaluation(weightSeen);
-                    }
-                }
+                ((LearningNode) leafNode).learnFromInstance(inst, this);
+                attemptToSplitIfDue(foundNode);
             }
         }
         if (this.trainingWeightSeenByModel
@@ -679,14 +797,85 @@ public class HoeffdingOptionTree extends AbstractClassifier implements MultiClas
         }
     }
 
+    /**
+     * Returns the leaf of a node found for an instance, adding a new leaf to
+     * the empty branch found if there is none.
+     */
+    protected Node getReachedLeaf(FoundNode foundNode) {
+        if (foundNode.node == null) {
+            foundNode.node = newLearningNode();
+            foundNode.parent.setChild(foundNode.parentBranch, foundNode.node);
+            this.activeLeafNodeCount++;
+        }
+        return foundNode.node;
+    }
+
+    protected void attemptToSplitIfDue(FoundNode foundNode) {
+        if (foundNode.node instanceof ActiveLearningNode) {
+            ActiveLearningNode activeLearningNode = (ActiveLearningNode) foundNode.node;
+            double weightSeen = activeLearningNode.getWeightSeen();
+            if (weightSeen
+                    - activeLearningNode.getWeightSeenAtLastSplitEvaluation() >= this.gracePeriodOption.getValue()) {
+                attemptToSplit(activeLearningNode, foundNode.parent,
+                        foundNode.parentBranch);
+                activeLearningNode.setWeightSeenAtLastSplitEvaluation(weightSeen);
+            }
+        }
+    }
+
+    /**
+     * Trains the leaves reached by an instance on several threads, up to the
+     * first leaf that attempts to split once it learns the instance. A split
+     * changes the tree and may deactivate leaves, so the leaves after it are
+     * left to learn afterwards, in order, as they do on one thread.
+     *
+     * @return the number of found nodes whose leaves were trained
+     */
+    protected int trainLeavesConcurrently(Instance inst, FoundNodeBuffer foundNodes) {
+        int numLeaves = 0;
+        while (numLeaves < foundNodes.size()) {
+            Node leafNode = getReachedLeaf(foundNodes.get(numLeaves));
+            numLeaves++;
+            if (leafNode instanceof ActiveLearningNode) {
+                ActiveLearningNode activeLearningNode = (ActiveLearningNode) leafNode;
+                if (activeLearningNode.getWeightSeenWith(inst)
+                        - activeLearningNode.getWeightSeenAtLastSplitEvaluation() >= this.gracePeriodOption.getValue()) {
+                    break;
+                }
+            }
+        }
+        LeafTrainingTask task = new LeafTrainingTask(this, inst, foundNodes, 0, numLeaves);
+        if (numLeaves > 1) {
+            getLeafPool().invoke(task);
+        } else {
+            task.compute();
+        }
+        for (int i = 0; i < numLeaves; i++) {
+            attemptToSplitIfDue(foundNodes.get(i));
+        }
+        return numLeaves;
+    }
+
+    protected ForkJoinPool getLeafPool() {
+        if (this.leafPool == null) {
+            this.leafPool = new ForkJoinPool(this.numThreadsOption.getValue());
+        }
+        return this.leafPool;
+    }
+
     @Override
     public double[] getVotesForInstance(Instance inst) {
         if (this.treeRoot != null) {
-            FoundNode[] foundNodes = this.treeRoot.filterInstanceToLeaves(inst,
-                    null, -1, false);
+            if (this.predictionNodes == null) {
+                this.predictionNodes = new FoundNodeBuffer();
+            }
+            FoundNodeBuffer foundNodes = this.predictionNodes;
+            foundNodes.clear();
+            this.treeRoot.filterInstanceToLeaves(inst, null, -1, foundNodes, false);
             DoubleVector result = new DoubleVector();
             int predictionPaths = 0;
-            for (FoundNode foundNode : foundNodes) {
+            for (int i = 0; i < foundNodes.size(); i++) {
+                FoundNode foundNode = foundNodes.get(i);
                 if (foundNode.parentBranch != -999) {
                     Node leafNode = foundNode.node;
                     if (leafNode == null) {
@@ -753,12 +942,13 @@ public class HoeffdingOptionTree extends AbstractClassifier implements MultiClas
                 / (2.0 * n));
     }
 
-    protected AttributeClassObserver newNominalClassObserver() {
+    // The observers may be created by the threads training the leaves
+    protected synchronized AttributeClassObserver newNominalClassObserver() {
         AttributeClassObserver nominalClassObserver = (AttributeClassObserver) getPreparedClassOption(this.nominalEstimatorOption);
         return (AttributeClassObserver) nominalClassObserver.copy();
     }
 
-    protected AttributeClassObserver newNumericClassObserver() {
+    protected synchronized AttributeClassObserver newNumericClassObserver() {
         AttributeClassObserver numericClassObserver = (AttributeClassObserver) getPreparedClassOption(this.numericEstimatorOption);
         return (AttributeClassObserver) numericClassObserver.copy();
     }
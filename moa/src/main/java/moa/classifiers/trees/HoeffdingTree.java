@@ -36,6 +36,7 @@ import moa.classifiers.bayes.NaiveBayes;
 import moa.classifiers.core.AttributeSplitSuggestion;
 import moa.classifiers.core.attributeclassobservers.AttributeClassObserver;
 import moa.classifiers.core.attributeclassobservers.DiscreteAttributeClassObserver;
+import moa.classifiers.core.attributeclassobservers.NominalAttributeClassObserver;
 import moa.classifiers.core.attributeclassobservers.NullAttributeClassObserver;
 import moa.classifiers.core.attributeclassobservers.NumericAttributeClassObserver;
 import moa.classifiers.core.conditionaltests.InstanceConditionalTest;
@@ -43,10 +44,12 @@ import moa.classifiers.core.splitcriteria.SplitCriterion;
 import moa.core.AutoExpandVector;
 import moa.core.DoubleVector;
 import moa.core.Measurement;
+import moa.core.Profiler;
 import moa.core.SizeOf;
 import moa.core.StringUtils;
 import moa.core.Utils;
 import moa.options.ClassOption;
+import moa.options.PrototypeFactories;
 import com.yahoo.labs.samoa.instances.Instance;
 
 /**
@@ -416,6 +419,10 @@ public FlagOption binarySplitsOption = new FlagOption("binarySplits", 'b',
                 AttributeClassObserver obs = this.attributeObservers.get(i);
                 if (obs == null) {
                     obs = inst.attribute(instAttIndex).isNominal() ? ht.newNominalClassObserver() : ht.newNumericClassObserver();
+                    if (obs instanceof NominalAttributeClassObserver) {
+                        ((NominalAttributeClassObserver) obs).ensureCapacity(
+                                inst.attribute(instAttIndex).numValues(), inst.numClasses());
+                    }
                     this.attributeObservers.set(i, obs);
                 }
                 obs.observeAttributeClass(inst.value(instAttIndex), (int) inst.classValue(), inst.weight());
@@ -480,6 +487,8 @@ public FlagOption binarySplitsOption = new FlagOption("binarySplits", 'b',
 
     protected boolean growthAllowed;
 
+    protected PrototypeFactories prototypeFactories;
+
     public int calcByteSize() {
         int size = (int) SizeOf.sizeOf(this);
         if (this.treeRoot != null) {
@@ -503,6 +512,7 @@ public FlagOption binarySplitsOption = new FlagOption("binarySplits", 'b',
         this.activeLeafByteSizeEstimate = 0.0;
         this.byteSizeEstimateOverheadFraction = 1.0;
         this.growthAllowed = true;
+        this.prototypeFactories = null;
         if (this.leafpredictionOption.getChosenIndex()>0) { 
             this.removePoorAttsOption = null;
         }
@@ -611,18 +621,30 @@ public FlagOption binarySplitsOption = new FlagOption("binarySplits", 'b',
     }
     
 
+    /**
+     * Returns the factories creating the observers of the leaves from the
+     * prepared observers, instead of copying them.
+     */
+    protected PrototypeFactories getPrototypeFactories() {
+        if (this.prototypeFactories == null) {
+            this.prototypeFactories = new PrototypeFactories();
+        }
+        return this.prototypeFactories;
+    }
+
     protected AttributeClassObserver newNominalClassObserver() {
         AttributeClassObserver nominalClassObserver = (AttributeClassObserver) getPreparedClassOption(this.nominalEstimatorOption);
-        return (AttributeClassObserver) nominalClassObserver.copy();
+        return (AttributeClassObserver) getPrototypeFactories().newInstance(this.nominalEstimatorOption, nominalClassObserver);
     }
 
     protected AttributeClassObserver newNumericClassObserver() {
         AttributeClassObserver numericClassObserver = (AttributeClassObserver) getPreparedClassOption(this.numericEstimatorOption);
-        return (AttributeClassObserver) numericClassObserver.copy();
+        return (AttributeClassObserver) getPrototypeFactories().newInstance(this.numericEstimatorOption, numericClassObserver);
     }
 
     protected void attemptToSplit(ActiveLearningNode node, SplitNode parent,
             int parentIndex) {
+        long profileStart = Profiler.start();
         if (!node.observedClassDistributionIsPure()) {
             SplitCriterion splitCriterion = (SplitCriterion) getPreparedClassOption(this.splitCriterionOption);
             AttributeSplitSuggestion[] bestSplitSuggestions = node.getBestSplitSuggestions(splitCriterion, this);
@@ -697,6 +719,7 @@ public FlagOption binarySplitsOption = new FlagOption("binarySplits", 'b',
                 enforceTrackerLimit();
             }
         }
+        Profiler.stop(Profiler.Phase.SPLIT_ATTEMPT, profileStart);
     }
 
     public void enforceTrackerLimit() {
@@ -41,6 +41,7 @@ import moa.core.DoubleVector;
 import moa.core.Measurement;
 import moa.core.Utils;
 import moa.options.ClassOption;
+import moa.options.PrototypeFactories;
 
 public class Iadem2 extends AbstractClassifier implements MultiClassClassifier {
 
@@ -94,13 +95,14 @@ public class Iadem2 extends AbstractClassifier implements MultiClassClassifier {
     public void resetLearningImpl() {
         this.numberOfInstancesProcessed = 0;
         this.treeRoot = null;
+        this.prototypeFactories = null;
     }
 
     @Override
     public void trainOnInstanceImpl(Instance inst) {
         if (this.treeRoot == null) {
             IademCommonProcedures.setConfidence(this.splitConfidenceOption.getValue());
-            this.estimator = (AbstractChangeDetector) ((AbstractChangeDetector) getPreparedClassOption(this.driftDetectionMethodOption)).copy();
+            this.estimator = newPreparedEstimator();
             createRoot(inst);
         }
         try {
@@ -110,9 +112,28 @@ public class Iadem2 extends AbstractClassifier implements MultiClassClassifier {
         }
     }
 
+    /**
+     * Returns the factories creating the estimators and observers of the
+     * nodes from the prepared ones, instead of copying them.
+     */
+    protected PrototypeFactories getPrototypeFactories() {
+        if (this.prototypeFactories == null) {
+            this.prototypeFactories = new PrototypeFactories();
+        }
+        return this.prototypeFactories;
+    }
+
     protected IademNumericAttributeObserver newNumericClassObserver() {
         IademNumericAttributeObserver numericClassObserver = (IademNumericAttributeObserver) getPreparedClassOption(this.numericEstimatorOption);
-        return (IademNumericAttributeObserver) numericClassObserver.copy();
+        return (IademNumericAttributeObserver) getPrototypeFactories().newInstance(this.numericEstimatorOption, numericClassObserver);
+    }
+
+    /**
+     * Returns a new estimator with the options of the drift detection method.
+     */
+    protected AbstractChangeDetector newPreparedEstimator() {
+        AbstractChangeDetector estimator = (AbstractChangeDetector) getPreparedClassOption(this.driftDetectionMethodOption);
+        return (AbstractChangeDetector) getPrototypeFactories().newInstance(this.driftDetectionMethodOption, estimator);
     }
 
     @Override
@@ -148,11 +169,13 @@ public class Iadem2 extends AbstractClassifier implements MultiClassClassifier {
     
     protected AbstractChangeDetector estimator;
 
+    protected PrototypeFactories prototypeFactories;
+
     public int numberOfNodes = 1,
             numberOfLeaves = 1;
 
     public AbstractChangeDetector newEstimator() {
-        return (AbstractChangeDetector) this.estimator.copy();
+        return newPreparedEstimator();
     }
 
     public void createRoot(Instance instance) {
@@ -213,7 +236,7 @@ public class Iadem2 extends AbstractClassifier implements MultiClassClassifier {
                         this.naiveBayesLimit,
                         this.splitTestsOption.getChosenIndex() == 2,
                         this.splitTestsOption.getChosenIndex() == 0,
-                        (AbstractChangeDetector) ((AbstractChangeDetector) getPreparedClassOption(this.driftDetectionMethodOption)).copy(),
+                        this.estimator,
                         instance);
             }
             default: {
@@ -226,7 +249,7 @@ public class Iadem2 extends AbstractClassifier implements MultiClassClassifier {
                         this.naiveBayesLimit,
                         this.splitTestsOption.getChosenIndex() == 2,
                         this.splitTestsOption.getChosenIndex() == 0,
-                        (AbstractChangeDetector) ((AbstractChangeDetector) getPreparedClassOption(this.driftDetectionMethodOption)).copy(),
+                        this.estimator,
                         instance);
             }
         }
@@ -417,6 +440,7 @@ public class Iadem2 extends AbstractClassifier implements MultiClassClassifier {
                 boolean onlyMultiwayTest,
                 boolean onlyBinaryTest,
                 Instance instance) {
+            // The observer given goes to the first numeric attribute
             for (int i = 0; i < instance.numAttributes(); i++) {
                 if (instance.classIndex() != i
                         && instance.attribute(i).isNominal()) {
@@ -430,7 +454,8 @@ public class Iadem2 extends AbstractClassifier implements MultiClassClassifier {
                     this.virtualChildren.set(i, new NumericVirtualNode(this.tree,
                             this,
                             i,
-                            numericObserver));
+                            numericObserver != null ? numericObserver : this.tree.newNumericClassObserver()));
+                    numericObserver = null;
 
                 } else { // class attribute
                     this.virtualChildren.set(i, null);
@@ -907,8 +932,8 @@ public class Iadem2 extends AbstractClassifier implements MultiClassClassifier {
                     onlyMultiwayTest,
                     onlyBinaryTest,
                     instance);
-            this.naiveBayesError = (AbstractChangeDetector) estimator.copy();
-            this.majorityClassError = (AbstractChangeDetector) estimator.copy();
+            this.naiveBayesError = tree.newEstimator();
+            this.majorityClassError = tree.newEstimator();
         }
 
         @Override
@@ -1602,8 +1627,8 @@ public class Iadem2 extends AbstractClassifier implements MultiClassClassifier {
                 int attIndex,
                 IademNumericAttributeObserver numericAttClassObs) {
             super(tree, parent, attIndex);
-            int numIntervalos = this.tree.getMaxNumberOfBins();
-            this.numericAttClassObserver = (IademNumericAttributeObserver) numericAttClassObs.copy();
+            int numIntervalos = (int) numericAttClassObs.getMaxOfValues();
+            this.numericAttClassObserver = numericAttClassObs;
             this.numericAttClassObserver.setMaxBins(numIntervalos);
             this.bestCutPoint = 0.0;
         }
@@ -82,7 +82,7 @@ public class Iadem3 extends Iadem2 implements MultiClassClassifier {
     }
     
     public AbstractChangeDetector getEstimatorCopy() {
-        return (AbstractChangeDetector) ((AbstractChangeDetector) getPreparedClassOption(this.driftDetectionMethodOption)).copy();
+        return newPreparedEstimator();
     }
 
     @Override
@@ -339,7 +339,7 @@ public class Iadem3 extends Iadem2 implements MultiClassClassifier {
             super(arbol,
                     parent, instTreeCountSinceVirtual, instNodeCountSinceVirtual, initialClassCount, numericAttClassObserver, onlyMultiwayTest, onlyBinaryTest, instance);
             if (estimator != null) {
-                this.estimator = (AbstractChangeDetector) estimator.copy();
+                this.estimator = arbol.newEstimator();
             } else {
                 this.estimator = null;
             }
@@ -370,7 +370,8 @@ public class Iadem3 extends Iadem2 implements MultiClassClassifier {
                     virtualChildren.set(i, new AdaptiveNumericVirtualNode((Iadem3) tree,
                             this,
                             i,
-                            numericAttClassObserver));
+                            numericAttClassObserver != null ? numericAttClassObserver : this.tree.newNumericClassObserver()));
+                    numericAttClassObserver = null;
                 } else {
                     virtualChildren.set(i, null);
                 }
@@ -431,7 +432,6 @@ public class Iadem3 extends Iadem2 implements MultiClassClassifier {
                     mejorExpansion,
                     instance);
             splitNode.setParent(this.parent);
-            splitNode.estimator = this.tree.newEstimator();
 
             if (this.parent == null) {
                 tree.setTreeRoot(splitNode);
@@ -557,8 +557,8 @@ public class Iadem3 extends Iadem2 implements MultiClassClassifier {
                     onlyMultiwayTest,
                     onlyBinaryTest,
                     instance);
-            this.naiveBayesError = (AbstractChangeDetector) estimator.copy();
-            this.majorityClassError = (AbstractChangeDetector) estimator.copy();
+            this.naiveBayesError = tree.newEstimator();
+            this.majorityClassError = tree.newEstimator();
         }
 
         @Override
@@ -922,8 +922,9 @@ public class Iadem3 extends Iadem2 implements MultiClassClassifier {
                 AdaptiveLeafNode predictionLeaf,
                 int causeOfSplit) {
             super(tree, parent, child, freq, splitTest);
+            // A new detector, not the state of the leaf being split
             if (estimator != null) {
-                this.estimator = (AbstractChangeDetector) estimator.copy();
+                this.estimator = tree.newEstimator();
             } else {
                 this.estimator = null;
             }
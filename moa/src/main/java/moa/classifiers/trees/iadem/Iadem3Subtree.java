@@ -67,6 +67,11 @@ public class Iadem3Subtree extends Iadem3 {
         return this.mainTree.getEstimatorCopy();
     }
     
+    @Override
+    protected AbstractChangeDetector newPreparedEstimator() {
+        return this.mainTree.newPreparedEstimator();
+    }
+
     @Override
     protected IademNumericAttributeObserver newNumericClassObserver() {
         return this.mainTree.newNumericClassObserver();
@@ -1,8 +1,12 @@
 package moa.core;
 
+import java.io.Serializable;
+
 import com.yahoo.labs.samoa.instances.Instance;
 
-public class InstanceExample implements Example<Instance> {
+public class InstanceExample implements Example<Instance>, Serializable {
+
+	private static final long serialVersionUID = 1L;
 
 	public Instance instance;
 
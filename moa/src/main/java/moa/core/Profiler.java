@@ -0,0 +1,276 @@
+/*
+ *    Profiler.java
+ *    Copyright (C) 2018 University of Waikato, Hamilton, New Zealand
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.core;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Opt-in timing of the phases of an evaluation, such as reading the stream,
+ * predicting, training or attempting splits. A task that profiles opens a
+ * profiler, which is bound to the task thread, and code timing a phase does
+ *
+ * <pre>
+ * long start = Profiler.start();
+ * ...
+ * Profiler.stop(Profiler.Phase.TRAINING, start);
+ * </pre>
+ *
+ * When no profiler is open, start returns 0 and stop does nothing, so the
+ * cost is reading a volatile field. Otherwise, the durations are recorded in
+ * the histograms the thread has in the profiler bound to it, which are merged
+ * when the statistics are read. Threads with no profiler bound record nothing,
+ * so tasks running at the same time keep their statistics apart. Worker
+ * threads running on behalf of a task record into its profiler when they
+ * {@link #bind(Profiler)} the one {@link #current()} returns on the task
+ * thread.
+ *
+ * Phases nest, split attempts, ensemble member updates and drift detection
+ * are part of the training time. Prediction and training are timed when a
+ * task calls the learner, not when an ensemble calls its members.
+ *
+ * @version $Revision: 2 $
+ */
+public class Profiler {
+
+    public enum Phase {
+
+        STREAM("stream"),
+        PREDICTION("prediction"),
+        TRAINING("training"),
+        SPLIT_ATTEMPT("split attempt"),
+        ENSEMBLE_MEMBER("ensemble member update"),
+        DRIFT_DETECTION("drift detection"),
+        EVALUATION("evaluation");
+
+        private final String description;
+
+        Phase(String description) {
+            this.description = description;
+        }
+
+        public String getDescription() {
+            return this.description;
+        }
+    }
+
+    protected static final Phase[] PHASES = Phase.values();
+
+    /** Number of profilers open in the process. */
+    protected static final AtomicInteger numOpen = new AtomicInteger();
+
+    protected static final ThreadLocal<Binding> binding = new ThreadLocal<Binding>();
+
+    /**
+     * The histograms of a thread bound to a profiler.
+     */
+    protected static final class Binding {
+
+        protected final Profiler profiler;
+
+        protected final TimeHistogram[] histograms;
+
+        protected Binding(Profiler profiler, TimeHistogram[] histograms) {
+            this.profiler = profiler;
+            this.histograms = histograms;
+        }
+    }
+
+    /** Histograms of the threads that recorded, dropped when they terminate. */
+    protected final Map<Thread, TimeHistogram[]> threadHistograms = new HashMap<Thread, TimeHistogram[]>();
+
+    /** Merged histograms of the threads that terminated. */
+    protected final TimeHistogram[] terminated = newHistograms();
+
+    protected volatile boolean closed = false;
+
+    protected Profiler() {
+    }
+
+    /**
+     * Opens a profiler bound to the current thread. It must be closed when
+     * the task finishes.
+     */
+    public static Profiler open() {
+        Profiler profiler = new Profiler();
+        numOpen.incrementAndGet();
+        bind(profiler);
+        return profiler;
+    }
+
+    /**
+     * Stops profiling, unbinding the profiler from the current thread and
+     * dropping the histograms. Threads that are still bound to it stop
+     * recording.
+     */
+    public void close() {
+        synchronized (this.threadHistograms) {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            this.threadHistograms.clear();
+        }
+        if (current() == this) {
+            bind(null);
+        }
+        numOpen.decrementAndGet();
+    }
+
+    /**
+     * Returns whether some profiler is open in the process.
+     */
+    public static boolean isEnabled() {
+        return numOpen.get() > 0;
+    }
+
+    /**
+     * Returns the profiler bound to the current thread, or null.
+     */
+    public static Profiler current() {
+        Binding threadBinding = binding.get();
+        return threadBinding == null ? null : threadBinding.profiler;
+    }
+
+    /**
+     * Binds a profiler, or none if null, to the current thread, returning
+     * the one that was bound so that worker threads can restore it.
+     */
+    public static Profiler bind(Profiler profiler) {
+        Binding previous = binding.get();
+        if (previous == null ? profiler == null : previous.profiler == profiler) {
+            return profiler;
+        }
+        if (profiler == null) {
+            binding.remove();
+        } else {
+            binding.set(new Binding(profiler, profiler.histogramsOf(Thread.currentThread())));
+        }
+        return previous == null ? null : previous.profiler;
+    }
+
+    /**
+     * Returns the time at which a phase starts, or 0 if no profiler is open.
+     */
+    public static long start() {
+        return numOpen.get() > 0 ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * Records the duration of a phase that started at a time returned by
+     * {@link #start()}, if the current thread has an open profiler bound.
+     */
+    public static void stop(Phase phase, long start) {
+        if (start != 0L) {
+            Binding threadBinding = binding.get();
+            if (threadBinding != null && !threadBinding.profiler.closed) {
+                threadBinding.histograms[phase.ordinal()].record(System.nanoTime() - start);
+            }
+        }
+    }
+
+    protected TimeHistogram[] histogramsOf(Thread thread) {
+        synchronized (this.threadHistograms) {
+            TimeHistogram[] threadPhases = this.threadHistograms.get(thread);
+            if (threadPhases == null) {
+                threadPhases = newHistograms();
+                this.threadHistograms.put(thread, threadPhases);
+            }
+            return threadPhases;
+        }
+    }
+
+    /**
+     * Clears the durations recorded so far by all threads.
+     */
+    public void reset() {
+        synchronized (this.threadHistograms) {
+            for (TimeHistogram[] threadPhases : this.threadHistograms.values()) {
+                for (TimeHistogram histogram : threadPhases) {
+                    histogram.reset();
+                }
+            }
+            for (TimeHistogram histogram : this.terminated) {
+                histogram.reset();
+            }
+        }
+    }
+
+    /**
+     * Returns, indexed by phase ordinal, the durations recorded by all the
+     * threads. Values recorded while merging may be partially included. The
+     * histograms of threads that terminated are merged and then dropped.
+     */
+    public TimeHistogram[] getHistograms() {
+        TimeHistogram[] merged = newHistograms();
+        synchronized (this.threadHistograms) {
+            Iterator<Map.Entry<Thread, TimeHistogram[]>> entries = this.threadHistograms.entrySet().iterator();
+            while (entries.hasNext()) {
+                Map.Entry<Thread, TimeHistogram[]> entry = entries.next();
+                TimeHistogram[] threadPhases = entry.getValue();
+                boolean alive = entry.getKey().isAlive();
+                for (int i = 0; i < merged.length; i++) {
+                    if (alive) {
+                        merged[i].add(threadPhases[i]);
+                    } else {
+                        this.terminated[i].add(threadPhases[i]);
+                    }
+                }
+                if (!alive) {
+                    entries.remove();
+                }
+            }
+            for (int i = 0; i < merged.length; i++) {
+                merged[i].add(this.terminated[i]);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Returns the number of calls, the total time and the median and 99th
+     * percentile durations of every phase, from histograms returned by
+     * {@link #getHistograms()}.
+     */
+    public static Measurement[] getMeasurements(TimeHistogram[] merged) {
+        Measurement[] measurements = new Measurement[4 * merged.length];
+        for (int i = 0; i < merged.length; i++) {
+            String name = "profiled " + PHASES[i].getDescription();
+            measurements[4 * i] = new Measurement(name + " calls",
+                    merged[i].getCount());
+            measurements[4 * i + 1] = new Measurement(name + " time (seconds)",
+                    TimingUtils.nanoTimeToSeconds(merged[i].getTotal()));
+            measurements[4 * i + 2] = new Measurement(name + " p50 (ns)",
+                    merged[i].getQuantile(0.5));
+            measurements[4 * i + 3] = new Measurement(name + " p99 (ns)",
+                    merged[i].getQuantile(0.99));
+        }
+        return measurements;
+    }
+
+    protected static TimeHistogram[] newHistograms() {
+        TimeHistogram[] phases = new TimeHistogram[PHASES.length];
+        for (int i = 0; i < phases.length; i++) {
+            phases[i] = new TimeHistogram();
+        }
+        return phases;
+    }
+}
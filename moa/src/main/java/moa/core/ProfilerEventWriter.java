@@ -0,0 +1,118 @@
+/*
+ *    ProfilerEventWriter.java
+ *    Copyright (C) 2018 University of Waikato, Hamilton, New Zealand
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.core;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes the statistics of the {@link Profiler} as Java Flight Recorder
+ * events named moa.Profile, one per phase, when a recording is running. MOA
+ * is built for Java 8, so the jdk.jfr API of Java 11 and later is used
+ * through reflection, defining the event type at run time.
+ *
+ * @version $Revision: 1 $
+ */
+public class ProfilerEventWriter {
+
+    protected final Object eventFactory;
+
+    protected final Method newEvent;
+
+    protected final Method set;
+
+    protected final Method commit;
+
+    protected ProfilerEventWriter(Object eventFactory, Method newEvent, Method set, Method commit) {
+        this.eventFactory = eventFactory;
+        this.newEvent = newEvent;
+        this.set = set;
+        this.commit = commit;
+    }
+
+    /**
+     * Returns a writer, or null if the JVM has no Flight Recorder API.
+     */
+    public static ProfilerEventWriter create() {
+        try {
+            Class<?> annotationElementClass = Class.forName("jdk.jfr.AnnotationElement");
+            Class<?> valueDescriptorClass = Class.forName("jdk.jfr.ValueDescriptor");
+            Class<?> eventFactoryClass = Class.forName("jdk.jfr.EventFactory");
+            Class<?> eventClass = Class.forName("jdk.jfr.Event");
+            Constructor<?> annotation = annotationElementClass.getConstructor(Class.class, Object.class);
+            Constructor<?> value = valueDescriptorClass.getConstructor(Class.class, String.class, List.class);
+            Class<?> labelClass = Class.forName("jdk.jfr.Label");
+            Class<?> timespanClass = Class.forName("jdk.jfr.Timespan");
+            List<Object> annotations = new ArrayList<Object>();
+            annotations.add(annotation.newInstance(Class.forName("jdk.jfr.Name"), "moa.Profile"));
+            annotations.add(annotation.newInstance(labelClass, "MOA Profile"));
+            annotations.add(annotation.newInstance(Class.forName("jdk.jfr.Category"), new String[]{"MOA"}));
+            annotations.add(annotation.newInstance(Class.forName("jdk.jfr.Description"),
+                    "Calls and durations of a phase since profiling started"));
+            List<Object> fields = new ArrayList<Object>();
+            fields.add(value.newInstance(String.class, "phase",
+                    Arrays.asList(annotation.newInstance(labelClass, "Phase"))));
+            fields.add(value.newInstance(long.class, "calls",
+                    Arrays.asList(annotation.newInstance(labelClass, "Calls"))));
+            String[][] durations = {{"totalTime", "Total Time"}, {"p50", "Median"},
+                {"p99", "99th Percentile"}, {"max", "Maximum"}};
+            for (String[] duration : durations) {
+                fields.add(value.newInstance(long.class, duration[0],
+                        Arrays.asList(annotation.newInstance(labelClass, duration[1]),
+                        annotation.newInstance(timespanClass, "NANOSECONDS"))));
+            }
+            Object factory = eventFactoryClass.getMethod("create", List.class, List.class)
+                    .invoke(null, annotations, fields);
+            return new ProfilerEventWriter(factory,
+                    eventFactoryClass.getMethod("newEvent"),
+                    eventClass.getMethod("set", int.class, Object.class),
+                    eventClass.getMethod("commit"));
+        } catch (Exception ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Commits an event for every phase that was called.
+     */
+    public void write(TimeHistogram[] histograms) {
+        try {
+            Profiler.Phase[] phases = Profiler.Phase.values();
+            for (int i = 0; i < histograms.length; i++) {
+                TimeHistogram histogram = histograms[i];
+                if (histogram.getCount() == 0) {
+                    continue;
+                }
+                Object event = this.newEvent.invoke(this.eventFactory);
+                this.set.invoke(event, 0, phases[i].getDescription());
+                this.set.invoke(event, 1, histogram.getCount());
+                this.set.invoke(event, 2, histogram.getTotal());
+                this.set.invoke(event, 3, histogram.getQuantile(0.5));
+                this.set.invoke(event, 4, histogram.getQuantile(0.99));
+                this.set.invoke(event, 5, histogram.getMax());
+                this.commit.invoke(event);
+            }
+        } catch (Exception ex) {
+            throw new RuntimeException("Unable to write profiler events.", ex);
+        }
+    }
+}
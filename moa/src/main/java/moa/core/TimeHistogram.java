@@ -0,0 +1,145 @@
+/*
+ *    TimeHistogram.java
+ *    Copyright (C) 2018 University of Waikato, Hamilton, New Zealand
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.core;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Histogram of durations in nanoseconds with logarithmic buckets, each power
+ * of two being split in 32 linear sub-buckets, so quantiles are exact up to
+ * 32 nanoseconds and within about 3% above. Recording a value only increments
+ * counters of a preallocated array. Not thread safe.
+ *
+ * @version $Revision: 1 $
+ */
+public class TimeHistogram implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    protected static final int SUB_BUCKET_BITS = 5;
+
+    protected static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    protected static final int NUM_BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    protected final long[] counts = new long[NUM_BUCKETS];
+
+    protected long count;
+
+    protected long total;
+
+    protected long max;
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        this.counts[bucketIndex(nanos)]++;
+        this.count++;
+        this.total += nanos;
+        if (nanos > this.max) {
+            this.max = nanos;
+        }
+    }
+
+    protected static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Returns the largest value that falls in a bucket.
+     */
+    protected static long bucketHighestValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    public long getCount() {
+        return this.count;
+    }
+
+    /**
+     * Returns the sum of the recorded durations.
+     */
+    public long getTotal() {
+        return this.total;
+    }
+
+    public long getMax() {
+        return this.max;
+    }
+
+    public double getMean() {
+        return this.count == 0 ? 0.0 : (double) this.total / this.count;
+    }
+
+    /**
+     * Returns the duration under which a fraction q of the recorded durations
+     * fall, or 0 if nothing was recorded.
+     */
+    public long getQuantile(double q) {
+        if (this.count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(q * this.count);
+        if (rank < 1) {
+            rank = 1;
+        }
+        long seen = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            seen += this.counts[i];
+            if (seen >= rank) {
+                return Math.min(bucketHighestValue(i), this.max);
+            }
+        }
+        return this.max;
+    }
+
+    /**
+     * Adds the durations recorded by another histogram.
+     */
+    public void add(TimeHistogram other) {
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            this.counts[i] += other.counts[i];
+        }
+        this.count += other.count;
+        this.total += other.total;
+        if (other.max > this.max) {
+            this.max = other.max;
+        }
+    }
+
+    public void reset() {
+        Arrays.fill(this.counts, 0);
+        this.count = 0;
+        this.total = 0;
+        this.max = 0;
+    }
+}
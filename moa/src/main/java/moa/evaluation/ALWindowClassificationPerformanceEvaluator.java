@@ -22,7 +22,6 @@ package moa.evaluation;
 import java.util.Arrays;
 
 import moa.core.Example;
-import moa.core.Measurement;
 import com.yahoo.labs.samoa.instances.Instance;
 
 /**
@@ -42,6 +41,10 @@ public class ALWindowClassificationPerformanceEvaluator extends WindowClassifica
 
     private int acquiredInstances;
 
+    private transient String[] windowMeasurementNames;
+
+    private transient String[] measurementNames;
+
    /**
      * Receives the information if a label has been acquired and increases counters.
      *
@@ -71,13 +74,24 @@ public class ALWindowClassificationPerformanceEvaluator extends WindowClassifica
 
 	
 	@Override
-    public Measurement[] getPerformanceMeasurements() {
-		Measurement[] measurements = super.getPerformanceMeasurements(); 
-		measurements  = Arrays.copyOf(measurements, measurements.length + 2);
-		measurements[measurements.length - 2] = new Measurement("Abs Number of Label Acquisitions", getAbsNumOfAcqInst());
-		measurements[measurements.length - 1] = new Measurement("Rel Number of Label Acquisitions", getRelNumOfAcqInst());
-		return measurements;
-    }
+	public String[] getPerformanceMeasurementNames() {
+		String[] names = super.getPerformanceMeasurementNames();
+		if (names != this.windowMeasurementNames) {
+			this.measurementNames = Arrays.copyOf(names, names.length + 2);
+			this.measurementNames[names.length] = "Abs Number of Label Acquisitions";
+			this.measurementNames[names.length + 1] = "Rel Number of Label Acquisitions";
+			this.windowMeasurementNames = names;
+		}
+		return this.measurementNames;
+	}
+
+	@Override
+	public void getPerformanceMeasurementValues(double[] values, int offset) {
+		super.getPerformanceMeasurementValues(values, offset);
+		int i = offset + super.getPerformanceMeasurementNames().length;
+		values[i] = getAbsNumOfAcqInst();
+		values[i + 1] = getRelNumOfAcqInst();
+	}
 	
 	@Override
 	public void reset(int numClasses) {
@@ -49,7 +49,8 @@ import java.util.ArrayList;
  * @version $Revision: 8 $
  */
 public class BasicClassificationPerformanceEvaluator extends AbstractOptionHandler
-        implements ClassificationPerformanceEvaluator {
+        implements ClassificationPerformanceEvaluator,
+        SchemaPerformanceEvaluator<Example<Instance>> {
 
     private static final long serialVersionUID = 1L;
 
@@ -73,6 +74,10 @@ public class BasicClassificationPerformanceEvaluator extends AbstractOptionHandl
 
     private double totalWeightObserved;
 
+    private transient String[] measurementNames;
+
+    private transient int measurementNamesKey;
+
     public FlagOption precisionRecallOutputOption = new FlagOption("precisionRecallOutput",
             'o',
             "Outputs average precision, recall and F1 scores.");
@@ -158,44 +163,87 @@ public class BasicClassificationPerformanceEvaluator extends AbstractOptionHandl
 
     @Override
     public Measurement[] getPerformanceMeasurements() {
-        ArrayList<Measurement> measurements = new ArrayList<Measurement>();
-        measurements.add(new Measurement("classified instances", this.getTotalWeightObserved()));
-        measurements.add(new Measurement("classifications correct (percent)", this.getFractionCorrectlyClassified() * 100.0));
-        measurements.add(new Measurement("Kappa Statistic (percent)", this.getKappaStatistic() * 100.0));
-        measurements.add(new Measurement("Kappa Temporal Statistic (percent)", this.getKappaTemporalStatistic() * 100.0));
-        measurements.add(new Measurement("Kappa M Statistic (percent)", this.getKappaMStatistic() * 100.0));
-        if (precisionRecallOutputOption.isSet()) 
-            measurements.add(new Measurement("F1 Score (percent)", 
-                    this.getF1Statistic() * 100.0));
+        String[] names = getPerformanceMeasurementNames();
+        double[] values = new double[names.length];
+        getPerformanceMeasurementValues(values, 0);
+        Measurement[] measurements = new Measurement[names.length];
+        for (int i = 0; i < names.length; i++) {
+            measurements[i] = new Measurement(names[i], values[i]);
+        }
+        return measurements;
+    }
+
+    @Override
+    public String[] getPerformanceMeasurementNames() {
+        // The names only depend on the number of classes and the output flags
+        int key = this.numClasses * 16
+                + (precisionRecallOutputOption.isSet() ? 1 : 0)
+                + (precisionPerClassOption.isSet() ? 2 : 0)
+                + (recallPerClassOption.isSet() ? 4 : 0)
+                + (f1PerClassOption.isSet() ? 8 : 0);
+        if (this.measurementNames == null || this.measurementNamesKey != key) {
+            ArrayList<String> names = new ArrayList<String>();
+            names.add("classified instances");
+            names.add("classifications correct (percent)");
+            names.add("Kappa Statistic (percent)");
+            names.add("Kappa Temporal Statistic (percent)");
+            names.add("Kappa M Statistic (percent)");
+            if (precisionRecallOutputOption.isSet())
+                names.add("F1 Score (percent)");
+            if (f1PerClassOption.isSet()) {
+                for (int i = 0; i < this.numClasses; i++) {
+                    names.add("F1 Score for class " + i + " (percent)");
+                }
+            }
+            if (precisionRecallOutputOption.isSet())
+                names.add("Precision (percent)");
+            if (precisionPerClassOption.isSet()) {
+                for (int i = 0; i < this.numClasses; i++) {
+                    names.add("Precision for class " + i + " (percent)");
+                }
+            }
+            if (precisionRecallOutputOption.isSet())
+                names.add("Recall (percent)");
+            if (recallPerClassOption.isSet()) {
+                for (int i = 0; i < this.numClasses; i++) {
+                    names.add("Recall for class " + i + " (percent)");
+                }
+            }
+            this.measurementNames = names.toArray(new String[names.size()]);
+            this.measurementNamesKey = key;
+        }
+        return this.measurementNames;
+    }
+
+    @Override
+    public void getPerformanceMeasurementValues(double[] values, int offset) {
+        int i = offset;
+        values[i++] = this.getTotalWeightObserved();
+        values[i++] = this.getFractionCorrectlyClassified() * 100.0;
+        values[i++] = this.getKappaStatistic() * 100.0;
+        values[i++] = this.getKappaTemporalStatistic() * 100.0;
+        values[i++] = this.getKappaMStatistic() * 100.0;
+        if (precisionRecallOutputOption.isSet())
+            values[i++] = this.getF1Statistic() * 100.0;
         if (f1PerClassOption.isSet()) {
-            for (int i = 0; i < this.numClasses; i++) {
-                measurements.add(new Measurement("F1 Score for class " + i + 
-                        " (percent)", 100.0 * this.getF1Statistic(i)));
+            for (int c = 0; c < this.numClasses; c++) {
+                values[i++] = 100.0 * this.getF1Statistic(c);
             }
         }
         if (precisionRecallOutputOption.isSet())
-            measurements.add(new Measurement("Precision (percent)", 
-                this.getPrecisionStatistic() * 100.0));               
+            values[i++] = this.getPrecisionStatistic() * 100.0;
         if (precisionPerClassOption.isSet()) {
-            for (int i = 0; i < this.numClasses; i++) {
-                measurements.add(new Measurement("Precision for class " + i + 
-                        " (percent)", 100.0 * this.getPrecisionStatistic(i)));
+            for (int c = 0; c < this.numClasses; c++) {
+                values[i++] = 100.0 * this.getPrecisionStatistic(c);
             }
         }
         if (precisionRecallOutputOption.isSet())
-            measurements.add(new Measurement("Recall (percent)", 
-                this.getRecallStatistic() * 100.0));
+            values[i++] = this.getRecallStatistic() * 100.0;
         if (recallPerClassOption.isSet()) {
-            for (int i = 0; i < this.numClasses; i++) {
-                measurements.add(new Measurement("Recall for class " + i + 
-                        " (percent)", 100.0 * this.getRecallStatistic(i)));
+            for (int c = 0; c < this.numClasses; c++) {
+                values[i++] = 100.0 * this.getRecallStatistic(c);
             }
         }
-
-        Measurement[] result = new Measurement[measurements.size()];
-
-        return measurements.toArray(result);
-
     }
 
     public double getTotalWeightObserved() {
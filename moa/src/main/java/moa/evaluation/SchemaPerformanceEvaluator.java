@@ -0,0 +1,51 @@
+/*
+ *    SchemaPerformanceEvaluator.java
+ *    Copyright (C) 2018 University of Waikato, Hamilton, New Zealand
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *    
+ */
+package moa.evaluation;
+
+import moa.core.Example;
+
+/**
+ * Interface implemented by evaluators that can report their measurements as
+ * plain values following a fixed list of names, so that sampling them does
+ * not allocate.
+ *
+ * @version $Revision: 1 $
+ */
+public interface SchemaPerformanceEvaluator<E extends Example> extends LearningPerformanceEvaluator<E> {
+
+    /**
+     * Gets the names of the measurements monitored by this evaluator. The
+     * same array is returned for as long as the names do not change, so
+     * callers can compare it by reference to find out whether they need to
+     * map the names again.
+     *
+     * @return the names of the measurements, which must not be modified
+     */
+    public String[] getPerformanceMeasurementNames();
+
+    /**
+     * Writes the current value of every measurement, in the order of
+     * {@link #getPerformanceMeasurementNames()}, into an array.
+     *
+     * @param values the array to write to
+     * @param offset the position of the first value in the array
+     */
+    public void getPerformanceMeasurementValues(double[] values, int offset);
+
+}
@@ -18,7 +18,8 @@
  */
 package moa.evaluation;
 
-import java.util.TreeSet;
+import java.io.Serializable;
+import java.util.Arrays;
 
 import moa.core.Example;
 import moa.core.Measurement;
@@ -43,6 +44,10 @@ import moa.tasks.TaskMonitor;
  * Curve for Data Streams with Concept Drift", Knowledge and Information
  * Systems, 2017.
  * 
+ * <p>Window scores are kept in an order statistic tree, and the number of
+ * correctly ranked (positive, negative) pairs is updated on every addition
+ * and removal in O(log n), so AUC is read in constant time.</p>
+ * 
  * @author Dariusz Brzezinski (dbrzezinski at cs.put.poznan.pl)
  * @author Tomasz Pewinski
  */
@@ -74,81 +79,234 @@ public class WindowAUCImbalancedPerformanceEvaluator extends
         }
     }
 	
-	public class Estimator {
+	/**
+	 * Order statistic tree over the scores in the window. It is a treap with
+	 * one node per distinct score value, storing how many positive and
+	 * negative examples have that score, augmented with subtree counts and
+	 * score sums. Nodes live in parallel arrays that are recycled through a
+	 * free list, so updates do not allocate once the window is full.
+	 */
+	protected static class ScoreTree implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		protected static final int NIL = -1;
+
+		protected double[] key;
+		protected int[] priority;
+		protected int[] left;
+		protected int[] right;
+		protected int[] pos;
+		protected int[] neg;
+		protected int[] subPos;
+		protected int[] subNeg;
+		protected double[] subPosSum;
+		protected double[] subNegSum;
+		protected int root = NIL;
+		protected int free = NIL;
+		protected int used = 0;
+		protected int seed = 0x2545F491;
+
+		/** Positive and negative counts and score sums above the last query value. */
+		public int gtPos, gtNeg;
+		public double gtPosSum, gtNegSum;
+
+		/** Positive and negative counts at the last query value. */
+		public int eqPos, eqNeg;
+
+		public ScoreTree(int capacity) {
+			capacity = Math.max(capacity, 16);
+			key = new double[capacity];
+			priority = new int[capacity];
+			left = new int[capacity];
+			right = new int[capacity];
+			pos = new int[capacity];
+			neg = new int[capacity];
+			subPos = new int[capacity];
+			subNeg = new int[capacity];
+			subPosSum = new double[capacity];
+			subNegSum = new double[capacity];
+		}
+
+		private int newNode(double value) {
+			int t;
+			if (free != NIL) {
+				t = free;
+				free = left[t];
+			} else {
+				t = used++;
+			}
+			// xorshift, so the tree shape is reproducible
+			seed ^= seed << 13;
+			seed ^= seed >>> 17;
+			seed ^= seed << 5;
+			key[t] = value;
+			priority[t] = seed;
+			left[t] = NIL;
+			right[t] = NIL;
+			pos[t] = 0;
+			neg[t] = 0;
+			return t;
+		}
+
+		private void update(int t) {
+			int l = left[t], r = right[t];
+			subPos[t] = pos[t] + (l != NIL ? subPos[l] : 0) + (r != NIL ? subPos[r] : 0);
+			subNeg[t] = neg[t] + (l != NIL ? subNeg[l] : 0) + (r != NIL ? subNeg[r] : 0);
+			subPosSum[t] = pos[t] * key[t] + (l != NIL ? subPosSum[l] : 0) + (r != NIL ? subPosSum[r] : 0);
+			subNegSum[t] = neg[t] * key[t] + (l != NIL ? subNegSum[l] : 0) + (r != NIL ? subNegSum[r] : 0);
+		}
+
+		private int rotateRight(int t) {
+			int l = left[t];
+			left[t] = right[l];
+			right[l] = t;
+			update(t);
+			update(l);
+			return l;
+		}
+
+		private int rotateLeft(int t) {
+			int r = right[t];
+			right[t] = left[r];
+			left[r] = t;
+			update(t);
+			update(r);
+			return r;
+		}
+
+		public void add(double value, boolean isPositive) {
+			// grow before descending, as the recursion holds on to the arrays
+			if (free == NIL && used == key.length) {
+				int capacity = key.length << 1;
+				key = Arrays.copyOf(key, capacity);
+				priority = Arrays.copyOf(priority, capacity);
+				left = Arrays.copyOf(left, capacity);
+				right = Arrays.copyOf(right, capacity);
+				pos = Arrays.copyOf(pos, capacity);
+				neg = Arrays.copyOf(neg, capacity);
+				subPos = Arrays.copyOf(subPos, capacity);
+				subNeg = Arrays.copyOf(subNeg, capacity);
+				subPosSum = Arrays.copyOf(subPosSum, capacity);
+				subNegSum = Arrays.copyOf(subNegSum, capacity);
+			}
+			root = add(root, value, isPositive);
+		}
+
+		private int add(int t, double value, boolean isPositive) {
+			if (t == NIL) {
+				t = newNode(value);
+				if (isPositive) pos[t]++; else neg[t]++;
+			} else if (value < key[t]) {
+				left[t] = add(left[t], value, isPositive);
+				if (priority[left[t]] > priority[t])
+					return rotateRight(t);
+			} else if (value > key[t]) {
+				right[t] = add(right[t], value, isPositive);
+				if (priority[right[t]] > priority[t])
+					return rotateLeft(t);
+			} else {
+				if (isPositive) pos[t]++; else neg[t]++;
+			}
+			update(t);
+			return t;
+		}
+
+		public void remove(double value, boolean isPositive) {
+			root = remove(root, value, isPositive);
+		}
 
-		public class Score implements Comparable<Score> {
-			/**
-			 * Predicted score of the example
-			 */
-			protected double value;
-
-			/**
-			 * Age of example - position in the window where the example was
-			 * added
-			 */
-			protected int posWindow;
-
-			/**
-			 * True if example's true label is positive
-			 */
-			protected boolean isPositive;
-
-			/**
-			 * Constructor.
-			 * 
-			 * @param value
-			 *            score value
-			 * @param position
-			 *            score position in window (defines its age)
-			 * @param isPositive
-			 *            true if the example's true label is positive
-			 */
-			public Score(double value, int position, boolean isPositive) {
-				this.value = value;
-				this.posWindow = position;
-				this.isPositive = isPositive;
+		private int remove(int t, double value, boolean isPositive) {
+			if (t == NIL)
+				return NIL;
+			if (value < key[t]) {
+				left[t] = remove(left[t], value, isPositive);
+			} else if (value > key[t]) {
+				right[t] = remove(right[t], value, isPositive);
+			} else {
+				if (isPositive) pos[t]--; else neg[t]--;
+				if (pos[t] == 0 && neg[t] == 0)
+					return delete(t);
 			}
+			update(t);
+			return t;
+		}
 
-			/**
-			 * Sort descending based on score value.
-			 */
-			@Override
-			public int compareTo(Score o) {
-				if (o.value < this.value) {
-					return -1;
-				} else if (o.value > this.value){
-					return 1;
+		private int delete(int t) {
+			int l = left[t], r = right[t];
+			if (l == NIL || r == NIL) {
+				left[t] = free;
+				free = t;
+				return (l == NIL ? r : l);
+			}
+			int top;
+			if (priority[l] > priority[r]) {
+				left[t] = right[l];
+				right[l] = t;
+				top = l;
+				right[top] = delete(t);
+			} else {
+				right[t] = left[r];
+				left[r] = t;
+				top = r;
+				left[top] = delete(t);
+			}
+			update(top);
+			return top;
+		}
+
+		/**
+		 * Fills the gt* and eq* fields for the given value.
+		 */
+		public void query(double value) {
+			gtPos = gtNeg = eqPos = eqNeg = 0;
+			gtPosSum = gtNegSum = 0;
+			int t = root;
+			while (t != NIL) {
+				if (value < key[t]) {
+					int r = right[t];
+					gtPos += pos[t] + (r != NIL ? subPos[r] : 0);
+					gtNeg += neg[t] + (r != NIL ? subNeg[r] : 0);
+					gtPosSum += pos[t] * key[t] + (r != NIL ? subPosSum[r] : 0);
+					gtNegSum += neg[t] * key[t] + (r != NIL ? subNegSum[r] : 0);
+					t = left[t];
+				} else if (value > key[t]) {
+					t = right[t];
 				} else {
-					if (!o.isPositive && this.isPositive) {
-						return -1;
-					} else if (o.isPositive && !this.isPositive){
-						return 1;
-					} else {
-						if (o.posWindow > this.posWindow) {
-							return -1;
-						} else if (o.posWindow < this.posWindow){
-							return 1;
-						} else {
-							return 0;
-						}
+					int r = right[t];
+					if (r != NIL) {
+						gtPos += subPos[r];
+						gtNeg += subNeg[r];
+						gtPosSum += subPosSum[r];
+						gtNegSum += subNegSum[r];
 					}
+					eqPos = pos[t];
+					eqNeg = neg[t];
+					return;
 				}
 			}
-			
-			@Override
-			public boolean equals(Object o) {
-				return (o instanceof Score) && ((Score)o).posWindow == this.posWindow;
-			}
 		}
 
-		protected TreeSet<Score> sortedScores;
-		
-		protected TreeSet<Score> holdoutSortedScores;
+		public void clear() {
+			root = NIL;
+			free = NIL;
+			used = 0;
+		}
+	}
+
+	public class Estimator {
+
+		/** Scores in the window, indexed by position in the window */
+		protected double[] windowScores;
+
+		/** True labels in the window, indexed by position in the window */
+		protected boolean[] windowPositive;
 
-		protected Score[] window;
-		
 		protected double[] predictions;
 
+		/** Scores in the window, sorted */
+		protected ScoreTree sortedScores;
+
 		protected int posWindow;
 
 		protected int size;
@@ -160,6 +318,30 @@ public class WindowAUCImbalancedPerformanceEvaluator extends
 		protected double holdoutNumPos;
 
 		protected double holdoutNumNeg;
+
+		protected boolean holdoutEmpty;
+
+		/**
+		 * Twice the number of (positive, negative) pairs ranked correctly,
+		 * ties counting as half a pair, in the window and in the holdout
+		 * snapshot.
+		 */
+		protected long doubleCorrectPairs;
+
+		protected long holdoutDoubleCorrectPairs;
+
+		/**
+		 * Score-weighted pair sums of the scored AUC, maintained
+		 * incrementally and recomputed from the tree once in a while to
+		 * keep rounding errors from building up.
+		 */
+		protected double scoredPositiveSum;
+
+		protected double scoredNegativeSum;
+
+		protected double negativeScoreSum;
+
+		protected int updatesSinceResync;
 		
 		protected double correctPredictions;
 		
@@ -170,11 +352,11 @@ public class WindowAUCImbalancedPerformanceEvaluator extends
 	    protected double[] rowKappa;
 
 		public Estimator(int sizeWindow) {
-			this.sortedScores = new TreeSet<Score>();
-			this.holdoutSortedScores = new TreeSet<Score>();
 			this.size = sizeWindow;
-			this.window = new Score[sizeWindow];
-			this.predictions = new double[sizeWindow];
+			this.windowScores = new double[Math.max(sizeWindow, 0)];
+			this.windowPositive = new boolean[Math.max(sizeWindow, 0)];
+			this.predictions = new double[Math.max(sizeWindow, 0)];
+			this.sortedScores = new ScoreTree(sizeWindow);
 			
 	        this.rowKappa = new double[numClasses];
 	        this.columnKappa = new double[numClasses];
@@ -188,19 +370,77 @@ public class WindowAUCImbalancedPerformanceEvaluator extends
 			this.numNeg = 0;
 			this.holdoutNumPos = 0;
 			this.holdoutNumNeg = 0;
+			this.holdoutEmpty = true;
 			this.correctPredictions = 0;
 			this.correctPositivePredictions = 0;
 		}
 
+		/**
+		 * Adds (sign = 1) or removes (sign = -1) a score, updating the pair
+		 * counts in O(log n).
+		 */
+		protected void updateScore(double score, boolean isPositive, int sign) {
+			ScoreTree tree = this.sortedScores;
+			if (sign < 0)
+				tree.remove(score, isPositive);
+			tree.query(score);
+			if (isPositive) {
+				int lower = (int) numNeg - tree.gtNeg - tree.eqNeg;
+				doubleCorrectPairs += sign * (2L * lower + tree.eqNeg);
+				scoredPositiveSum += sign * score * (lower + tree.eqNeg / 2.0);
+				scoredNegativeSum += sign * tree.gtNegSum;
+				numPos += sign;
+			} else {
+				int lower = (int) numPos - tree.gtPos - tree.eqPos;
+				doubleCorrectPairs += sign * (2L * tree.gtPos + tree.eqPos);
+				scoredPositiveSum += sign * (tree.gtPosSum + score * tree.eqPos / 2.0);
+				scoredNegativeSum += sign * score * lower;
+				negativeScoreSum += sign * score;
+				numNeg += sign;
+			}
+			if (sign > 0)
+				tree.add(score, isPositive);
+			if (++updatesSinceResync >= Math.max(1024, numPos + numNeg))
+				resyncScoredSums();
+		}
+
+		/**
+		 * Recomputes the scored AUC sums by walking the tree from the
+		 * highest score down, positives before negatives on ties.
+		 */
+		protected void resyncScoredSums() {
+			double[] sums = new double[4];
+			walk(sortedScores.root, sums);
+			scoredPositiveSum = sums[0];
+			scoredNegativeSum = sums[1];
+			negativeScoreSum = sums[2];
+			updatesSinceResync = 0;
+		}
+
+		// sums: AUC part, AOC part, negative score sum (r), positive score sum (c)
+		private void walk(int t, double[] sums) {
+			ScoreTree tree = this.sortedScores;
+			if (t == ScoreTree.NIL)
+				return;
+			walk(tree.right[t], sums);
+			double value = tree.key[t];
+			double prevc = sums[3];
+			for (int i = 0; i < tree.pos[t]; ++i) {
+				sums[3] += value;
+				sums[1] += sums[2];
+			}
+			for (int i = 0; i < tree.neg[t]; ++i) {
+				sums[0] += (tree.pos[t] > 0 ? (sums[3] + prevc) / 2.0 : sums[3]);
+				sums[2] += value;
+			}
+			walk(tree.left[t], sums);
+		}
+
 		public void add(double score, boolean isPositive, boolean correctPrediction) {
             // // periodically update holdout evaluation
 			if (size > 0 && posWindow % this.size == 0) {
-				this.holdoutSortedScores = new TreeSet<Score>();
-				
-				for (Score s : this.sortedScores) {
-					this.holdoutSortedScores.add(s);
-				}
-				
+				this.holdoutDoubleCorrectPairs = this.doubleCorrectPairs;
+				this.holdoutEmpty = (this.numPos + this.numNeg == 0);
 				this.holdoutNumPos = this.numPos;
 				this.holdoutNumNeg = this.numNeg;
 			}
@@ -208,26 +448,20 @@ public class WindowAUCImbalancedPerformanceEvaluator extends
 			// // if the window is used and it's full			
 			if (size > 0 && posWindow >= this.size) {
 				// // remove the oldest example
-				sortedScores.remove(window[posWindow % size]);
-				correctPredictions -= predictions[posWindow % size];
-				correctPositivePredictions -= window[posWindow % size].isPositive ? predictions[posWindow % size] : 0;
+				int oldest = posWindow % size;
+				updateScore(windowScores[oldest], windowPositive[oldest], -1);
+				correctPredictions -= predictions[oldest];
+				correctPositivePredictions -= windowPositive[oldest] ? predictions[oldest] : 0;
 				
-				if (window[posWindow % size].isPositive) {
-					numPos--;
-				} else {
-					numNeg--;
-				}
-				
-				int oldestExampleTrueClass = window[posWindow % size].isPositive ? 1 : 0;
-	            int oldestExamplePredictedClass = predictions[posWindow % size] == 1.0 ? oldestExampleTrueClass : Math.abs(oldestExampleTrueClass - 1);  
+				int oldestExampleTrueClass = windowPositive[oldest] ? 1 : 0;
+	            int oldestExamplePredictedClass = predictions[oldest] == 1.0 ? oldestExampleTrueClass : Math.abs(oldestExampleTrueClass - 1);  
 	            
 				this.rowKappa[oldestExamplePredictedClass] -= 1;
 	            this.columnKappa[oldestExampleTrueClass] -= 1;
 			}
 			
 			// // add new example
-			Score newScore = new Score(score, posWindow, isPositive);
-			sortedScores.add(newScore);
+			updateScore(score, isPositive, 1);
 			correctPredictions += correctPrediction ? 1 : 0;
 			correctPositivePredictions += correctPrediction && isPositive ? 1 : 0;
 			
@@ -235,60 +469,26 @@ public class WindowAUCImbalancedPerformanceEvaluator extends
             int predictedClass = correctPrediction ? trueClass : Math.abs(trueClass - 1);    
             this.rowKappa[predictedClass] += 1;
             this.columnKappa[trueClass] += 1;
-			
-			if (newScore.isPositive) {
-				numPos++;
-			} else {
-				numNeg++;
-			}
 
 			if (size > 0) {
-				window[posWindow % size] = newScore;
+				windowScores[posWindow % size] = score;
+				windowPositive[posWindow % size] = isPositive;
 				predictions[posWindow % size] = correctPrediction ? 1 : 0;
 			}
 			
-			//// posWindow needs to be always incremented to differentiate between examples in the red-black tree
 			posWindow++;
 		}
 
 		public double getAUC() {
-			double AUC = 0;
-			double c = 0;
-			double prevc = 0;
-			double lastPosScore = Double.MAX_VALUE;
-					
 			if (numPos == 0 || numNeg == 0) {
 				return 1;
 			}
 			
-			for (Score s : sortedScores){
-				if(s.isPositive) {			
-					if (s.value != lastPosScore) {
-						prevc = c;
-						lastPosScore = s.value;
-					}
-					
-					c += 1;
-				} else {
-					if (s.value == lastPosScore) {
-						// tie
-						AUC += ((double)(c + prevc))/2.0;
-					} else {
-						AUC += c;
-					}
-				}
-			}
-			
-			return AUC / (numPos * numNeg);
+			return (doubleCorrectPairs / 2.0) / (numPos * numNeg);
 		}
 		
 		public double getHoldoutAUC() {
-			double AUC = 0;
-			double c = 0;
-			double prevc = 0;
-			double lastPosScore = Double.MAX_VALUE;
-
-			if (holdoutSortedScores.isEmpty()) {
+			if (holdoutEmpty) {
 				return 0;
 			}
 			
@@ -296,76 +496,18 @@ public class WindowAUCImbalancedPerformanceEvaluator extends
 				return 1;
 			}
 
-			for (Score s : holdoutSortedScores){
-				if(s.isPositive) {
-					if (s.value != lastPosScore) {
-						prevc = c;
-						lastPosScore = s.value;
-					}
-					
-					c += 1;
-				} else {
-					if (s.value == lastPosScore) {
-						// tie
-						AUC += ((double)(c + prevc))/2.0;
-					} else {
-						AUC += c;
-					}
-				}
-			}
-			
-			return AUC / (holdoutNumPos * holdoutNumNeg);
+			return (holdoutDoubleCorrectPairs / 2.0) / (holdoutNumPos * holdoutNumNeg);
 		}
 
 		public double getScoredAUC() {
-			double AOC = 0;
-			double AUC = 0;
-			double r = 0;
-			double prevr = 0;
-			double c = 0;
-			double prevc = 0;
 			double R_plus, R_minus;
-			double lastPosScore = Double.MAX_VALUE;
-			double lastNegScore = Double.MAX_VALUE;
 			
 			if (numPos == 0 || numNeg == 0) {
 				return 1;
 			}
 			
-			for (Score s : sortedScores){
-				if(s.isPositive) {
-					if (s.value != lastPosScore) {
-						prevc = c;
-						lastPosScore = s.value;
-					}
-					
-					c += s.value;
-					
-					if (s.value == lastNegScore) {
-						// tie
-						AOC += ((double)(r + prevr))/2.0;
-					} else {
-						AOC += r;
-					}
-				} else {
-					if (s.value != lastNegScore) {
-						prevr = r;
-						lastNegScore = s.value;
-					}
-					
-					r += s.value;
-					
-					if (s.value == lastPosScore) {
-						// tie
-						AUC += ((double)(c + prevc))/2.0;
-					} else {
-						AUC += c;
-					}
-				}
-			}
-			
-			R_minus = (numPos*r - AOC)/(numPos * numNeg);
-			R_plus = (AUC)/(numPos * numNeg);		
+			R_minus = (numPos*negativeScoreSum - scoredNegativeSum)/(numPos * numNeg);
+			R_plus = (scoredPositiveSum)/(numPos * numNeg);		
 			return R_plus - R_minus;
 		}
 		
@@ -0,0 +1,226 @@
+/*
+ *    BatchedPredictionSink.java
+ *    Copyright (C) 2018 University of Waikato, Hamilton, New Zealand
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.evaluation.output;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Prediction sink that collects the predictions in batches of primitive
+ * arrays and encodes and writes every full batch to a file on a background
+ * thread. The evaluation only waits for the writer when all the batches are
+ * waiting to be written, or when it asks for the predictions to be flushed.
+ * Predictions are appended to the file if it exists.
+ *
+ * @version $Revision: 1 $
+ */
+public abstract class BatchedPredictionSink implements PredictionSink {
+
+    /** Number of predictions in a batch. */
+    public static final int BATCH_SIZE = 4096;
+
+    /** Number of batches, the one being filled included. */
+    protected static final int NUM_BATCHES = 3;
+
+    /**
+     * Predictions stored by column.
+     */
+    public static class Batch {
+
+        public int size;
+
+        /** Milliseconds since the epoch when each prediction was added. */
+        public final long[] timestamps = new long[BATCH_SIZE];
+
+        public final int[] predictedClasses = new int[BATCH_SIZE];
+
+        public final double[] trueClasses = new double[BATCH_SIZE];
+
+        /** The votes of prediction i are at [voteOffsets[i], voteOffsets[i + 1]). */
+        public final int[] voteOffsets = new int[BATCH_SIZE + 1];
+
+        public double[] votes = new double[BATCH_SIZE * 2];
+
+        public void add(double[] predictionVotes, double trueClass, long timestamp) {
+            int offset = this.voteOffsets[this.size];
+            if (offset + predictionVotes.length > this.votes.length) {
+                double[] grown = new double[Math.max(this.votes.length * 2,
+                        offset + predictionVotes.length)];
+                System.arraycopy(this.votes, 0, grown, 0, offset);
+                this.votes = grown;
+            }
+            System.arraycopy(predictionVotes, 0, this.votes, offset, predictionVotes.length);
+            // Same as Utils.maxIndex
+            int maxIndex = 0;
+            for (int i = 1; i < predictionVotes.length; i++) {
+                if (predictionVotes[i] > predictionVotes[maxIndex]) {
+                    maxIndex = i;
+                }
+            }
+            this.timestamps[this.size] = timestamp;
+            this.predictedClasses[this.size] = maxIndex;
+            this.trueClasses[this.size] = trueClass;
+            this.size++;
+            this.voteOffsets[this.size] = offset + predictionVotes.length;
+        }
+
+        public int numVotes(int index) {
+            return this.voteOffsets[index + 1] - this.voteOffsets[index];
+        }
+
+        public boolean isFull() {
+            return this.size == BATCH_SIZE;
+        }
+    }
+
+    protected final File file;
+
+    protected final OutputStream out;
+
+    /** Whether the file was empty, so it needs a header. */
+    protected boolean newFile;
+
+    protected final ExecutorService executor;
+
+    protected final BlockingQueue<Batch> freeBatches;
+
+    protected Batch batch;
+
+    protected volatile Throwable failure;
+
+    protected BatchedPredictionSink(File file) throws IOException {
+        this.file = file;
+        this.newFile = !file.exists() || file.length() == 0;
+        this.out = new BufferedOutputStream(new FileOutputStream(file, !this.newFile), 1 << 16);
+        this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Prediction writer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.freeBatches = new ArrayBlockingQueue<Batch>(NUM_BATCHES);
+        for (int i = 1; i < NUM_BATCHES; i++) {
+            this.freeBatches.add(new Batch());
+        }
+        this.batch = new Batch();
+    }
+
+    /**
+     * Writes the header of a new file. Called on the writer thread.
+     */
+    protected void writeHeader(OutputStream out) throws IOException {
+    }
+
+    /**
+     * Encodes and writes a batch of predictions. Called on the writer thread.
+     */
+    protected abstract void writeBatch(Batch batch, OutputStream out) throws IOException;
+
+    @Override
+    public void addPrediction(double[] votes, double trueClass) {
+        this.batch.add(votes, trueClass, System.currentTimeMillis());
+        if (this.batch.isFull()) {
+            submitBatch();
+        }
+    }
+
+    protected void submitBatch() {
+        checkFailure();
+        final Batch full = this.batch;
+        this.executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (failure == null) {
+                        if (newFile) {
+                            writeHeader(out);
+                            newFile = false;
+                        }
+                        writeBatch(full, out);
+                    }
+                } catch (Throwable t) {
+                    failure = t;
+                } finally {
+                    full.size = 0;
+                    freeBatches.add(full);
+                }
+            }
+        });
+        try {
+            this.batch = this.freeBatches.take();
+        } catch (InterruptedException ex) {
+            throw new RuntimeException("Interrupted while writing predictions.");
+        }
+    }
+
+    @Override
+    public void flush() {
+        if (this.batch.size > 0) {
+            submitBatch();
+        }
+        try {
+            this.executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    out.flush();
+                    return null;
+                }
+            }).get();
+        } catch (InterruptedException ex) {
+            throw new RuntimeException("Interrupted while writing predictions.");
+        } catch (ExecutionException ex) {
+            this.failure = ex.getCause();
+        }
+        checkFailure();
+    }
+
+    @Override
+    public void close() {
+        try {
+            flush();
+        } finally {
+            this.executor.shutdown();
+            try {
+                this.out.close();
+            } catch (IOException ex) {
+                throw new RuntimeException("Unable to close prediction result file: "
+                        + this.file, ex);
+            }
+        }
+    }
+
+    protected void checkFailure() {
+        if (this.failure != null) {
+            throw new RuntimeException("Unable to write prediction result file: "
+                    + this.file, this.failure);
+        }
+    }
+}
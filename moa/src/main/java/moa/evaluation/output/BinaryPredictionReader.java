@@ -0,0 +1,132 @@
+/*
+ *    BinaryPredictionReader.java
+ *    Copyright (C) 2018 University of Waikato, Hamilton, New Zealand
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.evaluation.output;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Reads, one at a time, the predictions of a file written by
+ * {@link BinaryPredictionSink}.
+ *
+ * @version $Revision: 1 $
+ */
+public class BinaryPredictionReader {
+
+    protected final DataInputStream in;
+
+    protected final BatchedPredictionSink.Batch block = new BatchedPredictionSink.Batch();
+
+    /** Index in the block of the current prediction. */
+    protected int index = -1;
+
+    public BinaryPredictionReader(File file) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+        if (this.in.readInt() != BinaryPredictionSink.MAGIC) {
+            this.in.close();
+            throw new IOException("Not a binary prediction file: " + file);
+        }
+        int version = this.in.readInt();
+        if (version != BinaryPredictionSink.VERSION) {
+            this.in.close();
+            throw new IOException("Unsupported version " + version + " of prediction file: " + file);
+        }
+    }
+
+    /**
+     * Advances to the next prediction, returning false at the end of the file.
+     */
+    public boolean next() throws IOException {
+        this.index++;
+        if (this.index < this.block.size) {
+            return true;
+        }
+        if (!readBlock()) {
+            return false;
+        }
+        this.index = 0;
+        return true;
+    }
+
+    protected boolean readBlock() throws IOException {
+        int n;
+        try {
+            n = this.in.readInt();
+        } catch (EOFException ex) {
+            this.block.size = 0;
+            return false;
+        }
+        if (n < 0 || n > BatchedPredictionSink.BATCH_SIZE) {
+            throw new IOException("Corrupt prediction block of size " + n);
+        }
+        BatchedPredictionSink.Batch b = this.block;
+        for (int i = 0; i < n; i++) {
+            b.timestamps[i] = this.in.readLong();
+        }
+        for (int i = 0; i < n; i++) {
+            b.predictedClasses[i] = this.in.readInt();
+        }
+        for (int i = 0; i < n; i++) {
+            b.trueClasses[i] = this.in.readDouble();
+        }
+        b.voteOffsets[0] = 0;
+        for (int i = 0; i < n; i++) {
+            b.voteOffsets[i + 1] = b.voteOffsets[i] + this.in.readInt();
+        }
+        if (b.votes.length < b.voteOffsets[n]) {
+            b.votes = new double[b.voteOffsets[n]];
+        }
+        for (int i = 0; i < b.voteOffsets[n]; i++) {
+            b.votes[i] = this.in.readDouble();
+        }
+        b.size = n;
+        return n > 0 || readBlock();
+    }
+
+    public long timestamp() {
+        return this.block.timestamps[this.index];
+    }
+
+    public int predictedClass() {
+        return this.block.predictedClasses[this.index];
+    }
+
+    /**
+     * Returns the true class, or NaN if it was missing.
+     */
+    public double trueClass() {
+        return this.block.trueClasses[this.index];
+    }
+
+    public int numVotes() {
+        return this.block.numVotes(this.index);
+    }
+
+    public double vote(int classIndex) {
+        return this.block.votes[this.block.voteOffsets[this.index] + classIndex];
+    }
+
+    public void close() throws IOException {
+        this.in.close();
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ *    BinaryPredictionSink.java
+ *    Copyright (C) 2018 University of Waikato, Hamilton, New Zealand
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.evaluation.output;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes the predictions in a compact binary format, by blocks of columns.
+ * The file starts with a magic number and a version, as two ints, followed
+ * by blocks holding, for n predictions: n as an int, n timestamps as longs,
+ * n predicted classes as ints, n true classes as doubles (NaN if missing),
+ * n numbers of votes as ints and all the votes as doubles. Everything is big
+ * endian. Read the files with {@link BinaryPredictionReader}.
+ *
+ * @version $Revision: 1 $
+ */
+public class BinaryPredictionSink extends BatchedPredictionSink {
+
+    public static final int MAGIC = 0x4D4F4150;
+
+    public static final int VERSION = 1;
+
+    protected ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+
+    public BinaryPredictionSink(File file) throws IOException {
+        super(file);
+    }
+
+    @Override
+    protected void writeHeader(OutputStream out) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(8);
+        header.putInt(MAGIC).putInt(VERSION);
+        out.write(header.array());
+    }
+
+    @Override
+    protected void writeBatch(Batch batch, OutputStream out) throws IOException {
+        int n = batch.size;
+        int numVotes = batch.voteOffsets[n];
+        int length = 4 + n * (8 + 4 + 8 + 4) + numVotes * 8;
+        if (this.buffer.capacity() < length) {
+            this.buffer = ByteBuffer.allocate(Math.max(length, this.buffer.capacity() * 2));
+        }
+        ByteBuffer b = this.buffer;
+        b.clear();
+        b.putInt(n);
+        b.asLongBuffer().put(batch.timestamps, 0, n);
+        b.position(b.position() + n * 8);
+        b.asIntBuffer().put(batch.predictedClasses, 0, n);
+        b.position(b.position() + n * 4);
+        b.asDoubleBuffer().put(batch.trueClasses, 0, n);
+        b.position(b.position() + n * 8);
+        for (int i = 0; i < n; i++) {
+            b.putInt(batch.numVotes(i));
+        }
+        b.asDoubleBuffer().put(batch.votes, 0, numVotes);
+        b.position(b.position() + numVotes * 8);
+        out.write(b.array(), 0, b.position());
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ *    CSVPredictionSink.java
+ *    Copyright (C) 2018 University of Waikato, Hamilton, New Zealand
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.evaluation.output;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes one line per prediction with the predicted class and the true class,
+ * or " ? " if the true class is missing.
+ *
+ * @version $Revision: 1 $
+ */
+public class CSVPredictionSink extends BatchedPredictionSink {
+
+    public static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+    protected final StringBuilder text = new StringBuilder();
+
+    public CSVPredictionSink(File file) throws IOException {
+        super(file);
+    }
+
+    /**
+     * Appends the line of a prediction, without line separator.
+     */
+    public static void appendPrediction(StringBuilder sb, int predictedClass, double trueClass) {
+        sb.append(predictedClass).append(',');
+        if (Double.isNaN(trueClass)) {
+            sb.append(" ? ");
+        } else {
+            sb.append((int) trueClass);
+        }
+    }
+
+    @Override
+    protected void writeBatch(Batch batch, OutputStream out) throws IOException {
+        this.text.setLength(0);
+        for (int i = 0; i < batch.size; i++) {
+            appendPrediction(this.text, batch.predictedClasses[i], batch.trueClasses[i]);
+            this.text.append(LINE_SEPARATOR);
+        }
+        out.write(this.text.toString().getBytes());
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ *    PredictionSink.java
+ *    Copyright (C) 2018 University of Waikato, Hamilton, New Zealand
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.evaluation.output;
+
+/**
+ * Destination of the predictions made by a learner during an evaluation,
+ * one per instance, in the order the instances were tested.
+ *
+ * @version $Revision: 1 $
+ */
+public interface PredictionSink {
+
+    /**
+     * Records the votes of the learner for an instance, together with the
+     * true class of the instance. The sink copies what it needs, so the votes
+     * can be modified once the call returns.
+     *
+     * @param votes the votes for every class
+     * @param trueClass the index of the true class, or NaN if it is missing
+     */
+    public void addPrediction(double[] votes, double trueClass);
+
+    /**
+     * Returns once every prediction recorded so far is written out.
+     */
+    public void flush();
+
+    /**
+     * Writes out the remaining predictions and releases the output.
+     */
+    public void close();
+}
@@ -19,10 +19,12 @@
  */
 package moa.evaluation.preview;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
 
-import moa.core.DoubleVector;
 import moa.core.Measurement;
 import moa.core.StringUtils;
 import moa.evaluation.LearningEvaluation;
@@ -30,25 +32,42 @@ import moa.evaluation.LearningEvaluation;
 /**
  * Class that stores and keeps the history of evaluation measurements.
  *
+ * Values are stored by column, one array per measurement, so that adding an
+ * entry only writes into preallocated arrays. Measurement names are mapped to
+ * their column through a hash table; callers that register their names once
+ * with {@link #getMeasurementIndex(String)} can insert entries with
+ * {@link #insertEntry(double[], int[], int)} without building
+ * {@link Measurement} objects.
+ *
  * @author Richard Kirkby (rkirkby@cs.waikato.ac.nz)
  * @version $Revision: 7 $
  */
 public class LearningCurve extends Preview {
 
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 2L;
+
+    private static final int INITIAL_CAPACITY = 16;
 
     protected List<String> measurementNames = new ArrayList<String>();
 
-    protected List<double[]> measurementValues = new ArrayList<double[]>();
+    protected Map<String, Integer> measurementIndices = new HashMap<String, Integer>();
+
+    /** Column m holds the value of measurement m for every entry. */
+    protected double[][] measurementColumns = new double[0][];
+
+    /** Number of leading measurements recorded by each entry. */
+    protected int[] entryWidths = new int[INITIAL_CAPACITY];
+
+    protected int numEntries = 0;
 
     Class<?> taskClass = null;
     
     public LearningCurve(String orderingMeasurementName) {
-        this.measurementNames.add(orderingMeasurementName);
+        addMeasurementName(orderingMeasurementName);
     }
     
     public LearningCurve(String orderingMeasurementName, Class<?> taskClass) {
-        this.measurementNames.add(orderingMeasurementName);
+        addMeasurementName(orderingMeasurementName);
         this.taskClass = taskClass;
     }
 
@@ -61,46 +80,149 @@ public class LearningCurve extends Preview {
     		List<double[]> measurementValues) 
     {
     	this.measurementNames.clear();
-    	this.measurementValues.clear();
+    	this.measurementIndices.clear();
+    	this.measurementColumns = new double[0][];
+    	this.numEntries = 0;
     	
-    	this.measurementNames.addAll(measurementNames);
-    	this.measurementValues.addAll(measurementValues);
+    	for (String name : measurementNames) {
+    		this.measurementNames.add(name);
+    		if (!this.measurementIndices.containsKey(name)) {
+    			this.measurementIndices.put(name, this.measurementNames.size() - 1);
+    		}
+    		addColumn();
+    	}
+    	for (double[] values : measurementValues) {
+    		int index = openEntry(this.numEntries, values.length);
+    		int numValues = Math.min(values.length, this.measurementColumns.length);
+    		for (int i = 0; i < numValues; i++) {
+    			this.measurementColumns[i][index] = values[i];
+    		}
+    	}
     }
 
     public void insertEntry(LearningEvaluation learningEvaluation) {
         Measurement[] measurements = learningEvaluation.getMeasurements();
-        Measurement orderMeasurement = Measurement.getMeasurementNamed(
-                getOrderingMeasurementName(), measurements);
-        if (orderMeasurement == null) {
+        if (Measurement.getMeasurementNamed(getOrderingMeasurementName(),
+                measurements) == null) {
             throw new IllegalArgumentException();
         }
-        DoubleVector entryVals = new DoubleVector();
-        for (Measurement measurement : measurements) {
-            entryVals.setValue(addMeasurementName(measurement.getName()),
-                    measurement.getValue());
+        int[] measurementIndices = new int[measurements.length];
+        int width = 0;
+        for (int i = 0; i < measurements.length; i++) {
+            measurementIndices[i] = addMeasurementName(measurements[i].getName());
+            width = Math.max(width, measurementIndices[i] + 1);
+        }
+        // Measurements below the last one given default to zero
+        double[] values = new double[width];
+        int[] indices = new int[width];
+        for (int i = 0; i < width; i++) {
+            indices[i] = i;
         }
-        double orderVal = orderMeasurement.getValue();
-        int index = 0;
-        while ((index < this.measurementValues.size())
-                && (orderVal > this.measurementValues.get(index)[0])) {
-            index++;
+        for (int i = 0; i < measurements.length; i++) {
+            values[measurementIndices[i]] = measurements[i].getValue();
         }
-        this.measurementValues.add(index, entryVals.getArrayRef());
+        insertEntry(values, indices, width);
+    }
+
+    /**
+     * Inserts an entry, keeping the entries sorted by the ordering
+     * measurement, which must be among the values given. Entries with the
+     * same ordering value are kept in the order they were inserted, and
+     * measurements not given are missing from the entry.
+     *
+     * @param values the values of the entry
+     * @param indices the measurement index of each value, as returned by
+     * {@link #getMeasurementIndex(String)}
+     * @param count the number of values to read from both arrays
+     */
+    public void insertEntry(double[] values, int[] indices, int count) {
+        int width = 0;
+        int orderPosition = -1;
+        for (int i = 0; i < count; i++) {
+            if (indices[i] == 0) {
+                orderPosition = i;
+            }
+            width = Math.max(width, indices[i] + 1);
+        }
+        if (orderPosition < 0) {
+            throw new IllegalArgumentException();
+        }
+        double orderVal = values[orderPosition];
+        int index = this.numEntries;
+        double[] orderColumn = this.measurementColumns[0];
+        if (index > 0 && !(orderVal >= orderColumn[index - 1])) {
+            index = 0;
+            while ((index < this.numEntries)
+                    && (orderVal >= orderColumn[index])) {
+                index++;
+            }
+        }
+        index = openEntry(index, width);
+        for (int i = 0; i < count; i++) {
+            this.measurementColumns[indices[i]][index] = values[i];
+        }
+    }
+
+    /**
+     * Makes room for an entry at the given position, with all its
+     * measurements missing.
+     */
+    protected int openEntry(int index, int width) {
+        if (this.numEntries == this.entryWidths.length) {
+            int capacity = this.entryWidths.length * 2;
+            this.entryWidths = Arrays.copyOf(this.entryWidths, capacity);
+            for (int m = 0; m < this.measurementColumns.length; m++) {
+                double[] column = Arrays.copyOf(this.measurementColumns[m], capacity);
+                Arrays.fill(column, this.numEntries, capacity, Double.NaN);
+                this.measurementColumns[m] = column;
+            }
+        }
+        int moved = this.numEntries - index;
+        if (moved > 0) {
+            System.arraycopy(this.entryWidths, index, this.entryWidths, index + 1, moved);
+            for (double[] column : this.measurementColumns) {
+                System.arraycopy(column, index, column, index + 1, moved);
+            }
+        }
+        this.entryWidths[index] = width;
+        for (int m = 0; m < this.measurementColumns.length; m++) {
+            this.measurementColumns[m][index] = Double.NaN;
+        }
+        this.numEntries++;
+        return index;
     }
 
     public int numEntries() {
-        return this.measurementValues.size();
+        return this.numEntries;
+    }
+
+    /**
+     * Returns the index of the measurement with the given name, adding it to
+     * the curve if it is not known yet.
+     */
+    public int getMeasurementIndex(String name) {
+        return addMeasurementName(name);
     }
 
     protected int addMeasurementName(String name) {
-        int index = this.measurementNames.indexOf(name);
-        if (index < 0) {
+        Integer index = this.measurementIndices.get(name);
+        if (index == null) {
             index = this.measurementNames.size();
             this.measurementNames.add(name);
+            this.measurementIndices.put(name, index);
+            addColumn();
         }
         return index;
     }
 
+    private void addColumn() {
+        double[] column = new double[this.entryWidths.length];
+        Arrays.fill(column, Double.NaN);
+        this.measurementColumns = Arrays.copyOf(this.measurementColumns,
+                this.measurementColumns.length + 1);
+        this.measurementColumns[this.measurementColumns.length - 1] = column;
+    }
+
     public String headerToString() {
         StringBuilder sb = new StringBuilder();
         boolean first = true;
@@ -117,18 +239,27 @@ public class LearningCurve extends Preview {
 
     public String entryToString(int entryIndex) {
         StringBuilder sb = new StringBuilder();
-        double[] vals = this.measurementValues.get(entryIndex);
+        entryToString(entryIndex, sb);
+        return sb.toString();
+    }
+
+    /**
+     * Appends the comma separated values of an entry to the builder, with
+     * missing values written as '?'.
+     */
+    public void entryToString(int entryIndex, StringBuilder sb) {
+        checkEntryIndex(entryIndex);
         for (int i = 0; i < this.measurementNames.size(); i++) {
             if (i > 0) {
                 sb.append(',');
             }
-            if ((i >= vals.length) || Double.isNaN(vals[i])) {
+            double val = this.measurementColumns[i][entryIndex];
+            if (Double.isNaN(val)) {
                 sb.append('?');
             } else {
-                sb.append(Double.toString(vals[i]));
+                sb.append(val);
             }
         }
-        return sb.toString();
     }
 
     @Override
@@ -140,7 +271,8 @@ public class LearningCurve extends Preview {
     }
 
     public double getMeasurement(int entryIndex, int measurementIndex) {
-        return this.measurementValues.get(entryIndex)[measurementIndex];
+        checkEntryIndex(entryIndex);
+        return this.measurementColumns[measurementIndex][entryIndex];
     }
 
     public String getMeasurementName(int measurementIndex) {
@@ -152,7 +284,15 @@ public class LearningCurve extends Preview {
     }
 
     public int getEntryMeasurementCount(int entryIdx) {
-        return this.measurementValues.get(entryIdx).length;
+        checkEntryIndex(entryIdx);
+        return this.entryWidths[entryIdx];
+    }
+
+    private void checkEntryIndex(int entryIndex) {
+        if (entryIndex < 0 || entryIndex >= this.numEntries) {
+            throw new IndexOutOfBoundsException("Index: " + entryIndex
+                    + ", Size: " + this.numEntries);
+        }
     }
 
 	@Override
@@ -162,23 +302,15 @@ public class LearningCurve extends Preview {
 
 	@Override
 	public double[] getEntryData(int entryIndex) {
+		checkEntryIndex(entryIndex);
 		// get the number of measurements
 		int numMeasurements = getMeasurementNameCount();
-
-		int numEntryMeasurements = getEntryMeasurementCount(entryIndex);
 		// preallocate the array to store all measurements
 		double[] data = new double[numMeasurements];
-		// get measuements from the learning curve
+		// get measuements from the learning curve, missing ones are NaN
 		for(int measurementIdx = 0; measurementIdx < numMeasurements; ++measurementIdx)
 		{
-			if(measurementIdx < numEntryMeasurements)
-			{
-				data[measurementIdx] = getMeasurement(entryIndex, measurementIdx);	
-			}
-			else
-			{
-				data[measurementIdx] = Double.NaN;
-			}
+			data[measurementIdx] = this.measurementColumns[measurementIdx][entryIndex];
 		}
 		return data;
 	}
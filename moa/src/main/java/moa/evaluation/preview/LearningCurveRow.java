@@ -0,0 +1,155 @@
+/*
+ *    LearningCurveRow.java
+ *    Copyright (C) 2018 University of Waikato, Hamilton, New Zealand
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *    
+ */
+package moa.evaluation.preview;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import moa.core.Measurement;
+import moa.evaluation.LearningPerformanceEvaluator;
+import moa.evaluation.SchemaPerformanceEvaluator;
+
+/**
+ * Reusable buffer collecting the values of the next entry of a learning
+ * curve. Evaluators implementing {@link SchemaPerformanceEvaluator} write
+ * their values straight into the buffer, and their names are only mapped to
+ * curve measurements again when the evaluator reports new names. Subclasses
+ * of such evaluators that override
+ * {@link LearningPerformanceEvaluator#getPerformanceMeasurements()} but not
+ * the schema methods are read through the measurements instead.
+ *
+ * @version $Revision: 1 $
+ */
+public class LearningCurveRow implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    protected LearningCurve learningCurve;
+
+    protected double[] values = new double[32];
+
+    protected int[] indices = new int[32];
+
+    protected int count = 0;
+
+    protected String[] evaluatorNames;
+
+    protected int[] evaluatorIndices;
+
+    protected Class<?> evaluatorClass;
+
+    protected boolean evaluatorUsesSchema;
+
+    public LearningCurveRow(LearningCurve learningCurve) {
+        this.learningCurve = learningCurve;
+    }
+
+    public void clear() {
+        this.count = 0;
+    }
+
+    /**
+     * Adds a value for a measurement index obtained from
+     * {@link LearningCurve#getMeasurementIndex(String)}.
+     */
+    public void add(int measurementIndex, double value) {
+        ensureCapacity(this.count + 1);
+        this.indices[this.count] = measurementIndex;
+        this.values[this.count] = value;
+        this.count++;
+    }
+
+    public void add(String measurementName, double value) {
+        add(this.learningCurve.getMeasurementIndex(measurementName), value);
+    }
+
+    public void addAll(Measurement[] measurements) {
+        if (measurements == null) {
+            return;
+        }
+        ensureCapacity(this.count + measurements.length);
+        for (Measurement measurement : measurements) {
+            add(measurement.getName(), measurement.getValue());
+        }
+    }
+
+    public void addAll(LearningPerformanceEvaluator<?> evaluator) {
+        if (!usesSchema(evaluator)) {
+            addAll(evaluator.getPerformanceMeasurements());
+            return;
+        }
+        SchemaPerformanceEvaluator<?> schemaEvaluator = (SchemaPerformanceEvaluator<?>) evaluator;
+        String[] names = schemaEvaluator.getPerformanceMeasurementNames();
+        if (names != this.evaluatorNames) {
+            this.evaluatorIndices = new int[names.length];
+            for (int i = 0; i < names.length; i++) {
+                this.evaluatorIndices[i] = this.learningCurve.getMeasurementIndex(names[i]);
+            }
+            this.evaluatorNames = names;
+        }
+        ensureCapacity(this.count + names.length);
+        schemaEvaluator.getPerformanceMeasurementValues(this.values, this.count);
+        System.arraycopy(this.evaluatorIndices, 0, this.indices, this.count, names.length);
+        this.count += names.length;
+    }
+
+    /**
+     * Returns whether the values of an evaluator can be read through its
+     * schema, that is, whether it implements the schema methods at least as
+     * far down its class hierarchy as getPerformanceMeasurements().
+     */
+    protected boolean usesSchema(LearningPerformanceEvaluator<?> evaluator) {
+        if (evaluator.getClass() != this.evaluatorClass) {
+            this.evaluatorClass = evaluator.getClass();
+            this.evaluatorUsesSchema = false;
+            if (evaluator instanceof SchemaPerformanceEvaluator) {
+                try {
+                    Class<?> measurements = this.evaluatorClass.getMethod(
+                            "getPerformanceMeasurements").getDeclaringClass();
+                    Class<?> names = this.evaluatorClass.getMethod(
+                            "getPerformanceMeasurementNames").getDeclaringClass();
+                    Class<?> values = this.evaluatorClass.getMethod(
+                            "getPerformanceMeasurementValues", double[].class, int.class).getDeclaringClass();
+                    this.evaluatorUsesSchema = measurements.isAssignableFrom(names)
+                            && measurements.isAssignableFrom(values);
+                } catch (NoSuchMethodException e) {
+                    this.evaluatorUsesSchema = false;
+                }
+            }
+        }
+        return this.evaluatorUsesSchema;
+    }
+
+    /**
+     * Inserts the collected values as a new entry of the learning curve and
+     * clears the row.
+     */
+    public void insert() {
+        this.learningCurve.insertEntry(this.values, this.indices, this.count);
+        clear();
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > this.values.length) {
+            int newCapacity = Math.max(capacity, 2 * this.values.length);
+            this.values = Arrays.copyOf(this.values, newCapacity);
+            this.indices = Arrays.copyOf(this.indices, newCapacity);
+        }
+    }
+}
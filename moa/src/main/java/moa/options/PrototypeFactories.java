@@ -0,0 +1,57 @@
+/*
+ *    PrototypeFactories.java
+ *    Copyright (C) 2018 University of Waikato, Hamilton, New Zealand
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.options;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The prototype factories of the class options of a learner, one per option,
+ * created from the prepared object of the option the first time a new
+ * instance of it is needed.
+ *
+ * The factories keep the options the prepared objects had then, so a learner
+ * drops them when it is reset, for instance in its
+ * <code>resetLearningImpl</code>.
+ *
+ * @version $Revision: 1 $
+ */
+public class PrototypeFactories implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    protected final Map<String, PrototypeFactory<?>> factories = new HashMap<String, PrototypeFactory<?>>();
+
+    /**
+     * Returns a new instance of the prepared object of a class option.
+     *
+     * @param option the class option
+     * @param prepared the prepared object of the option
+     * @return a new instance with the options of the prepared object
+     */
+    public synchronized Object newInstance(ClassOption option, Object prepared) {
+        PrototypeFactory<?> factory = this.factories.get(option.getName());
+        if (factory == null) {
+            factory = new PrototypeFactory<Object>(prepared);
+            this.factories.put(option.getName(), factory);
+        }
+        return factory.newInstance();
+    }
+}
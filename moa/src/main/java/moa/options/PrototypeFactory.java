@@ -0,0 +1,72 @@
+/*
+ *    PrototypeFactory.java
+ *    Copyright (C) 2018 University of Waikato, Hamilton, New Zealand
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.options;
+
+import java.io.Serializable;
+
+/**
+ * Creates new instances of the class of a prototype, with the same options.
+ *
+ * Copying a prototype with {@link moa.MOAObject#copy()} serializes it, which
+ * is slow for objects created often, such as the attribute observers of the
+ * leaves of a tree. The instances created here are prepared for use with the
+ * options of the prototype instead, so the prototype must hold no other
+ * state than its options, as a prototype prepared from a class option.
+ * Prototypes without options are only instantiated.
+ *
+ * @param <T> the type of the instances
+ * @version $Revision: 1 $
+ */
+public class PrototypeFactory<T> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    protected final Class<? extends T> prototypeClass;
+
+    protected final String options;
+
+    @SuppressWarnings("unchecked")
+    public PrototypeFactory(T prototype) {
+        this.prototypeClass = (Class<? extends T>) prototype.getClass();
+        this.options = prototype instanceof OptionHandler
+                ? ((OptionHandler) prototype).getOptions().getAsCLIString() : null;
+    }
+
+    /**
+     * Returns a new instance of the class of the prototype, with its options,
+     * prepared for use.
+     */
+    public T newInstance() {
+        T instance;
+        try {
+            instance = this.prototypeClass.newInstance();
+        } catch (Exception e) {
+            throw new RuntimeException("Cannot create an instance of "
+                    + this.prototypeClass.getName() + ".", e);
+        }
+        if (instance instanceof OptionHandler) {
+            OptionHandler handler = (OptionHandler) instance;
+            if (this.options.length() > 0) {
+                handler.getOptions().setViaCLIString(this.options);
+            }
+            handler.prepareForUse();
+        }
+        return instance;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ *    AbstractFileDataset.java
+ *    Copyright (C) 2018 University of Waikato, Hamilton, New Zealand
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package moa.recommender.dataset;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import com.github.javacliparser.FlagOption;
+import moa.core.ObjectRepository;
+import moa.options.AbstractOptionHandler;
+import moa.recommender.dataset.impl.MappedRatingsReader;
+import moa.tasks.TaskMonitor;
+
+/**
+ * Base class for datasets stored as delimited text files with one
+ * (user, item, rating) triple per line. Ratings are streamed through a
+ * {@link MappedRatingsReader}, optionally with a binary cache, and the
+ * fraction of the file read so far is available for progress reporting.
+ */
+public abstract class AbstractFileDataset extends AbstractOptionHandler implements Dataset {
+
+    private static final long serialVersionUID = 1L;
+
+    public FlagOption cacheOption = new FlagOption("cache", 'c',
+            "Keep a binary copy of the parsed ratings next to the file, to skip parsing in later runs.");
+
+    protected transient MappedRatingsReader reader;
+
+    /**
+     * Returns the file with the ratings.
+     */
+    protected abstract File getFile();
+
+    /**
+     * Maps a rating as stored in the file to the rating used by the
+     * recommender.
+     */
+    protected double transformRating(double rating) {
+        return rating;
+    }
+
+    public void init() {
+        try {
+            reader = new MappedRatingsReader(getFile(), this.cacheOption.isSet());
+        } catch (IOException ex) {
+            Logger.getLogger(getClass().getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    @Override
+    public boolean next() {
+        try {
+            return reader != null && reader.next();
+        } catch (IOException ex) {
+            Logger.getLogger(getClass().getName()).log(Level.SEVERE, null, ex);
+        }
+        return false;
+    }
+
+    @Override
+    public int curUserID() {
+        return reader.userID();
+    }
+
+    @Override
+    public int curItemID() {
+        return reader.itemID();
+    }
+
+    @Override
+    public double curRating() {
+        return transformRating(reader.rating());
+    }
+
+    /**
+     * Returns the fraction of the dataset read so far.
+     */
+    public double getFractionRead() {
+        return (reader != null ? reader.fractionRead() : 0);
+    }
+
+    @Override
+    public void reset() {
+        try {
+            if (reader != null) {
+                reader.reset();
+            }
+            else {
+                this.init();
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(getClass().getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    @Override
+    protected void prepareForUseImpl(TaskMonitor monitor, ObjectRepository repository) {
+        this.init();
+    }
+
+    @Override
+    public void getDescription(StringBuilder sb, int indent) {
+        throw new UnsupportedOperationException("Not supported yet.");
+    }
+}
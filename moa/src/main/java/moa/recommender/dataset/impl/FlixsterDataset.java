@@ -20,103 +20,26 @@
 
 package moa.recommender.dataset.impl;
 
-import java.io.BufferedReader;
-import java.io.DataInputStream;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.util.logging.Level;
-import java.util.logging.Logger;
-import moa.core.ObjectRepository;
-import moa.options.AbstractOptionHandler;
+import java.io.File;
+import moa.recommender.dataset.AbstractFileDataset;
 import com.github.javacliparser.FileOption;
 
-import moa.recommender.dataset.Dataset;
-import moa.tasks.TaskMonitor;
+public class FlixsterDataset extends AbstractFileDataset {
 
-public class FlixsterDataset extends AbstractOptionHandler implements Dataset  {
-    private String strLine;
-    private BufferedReader br;
-        public FileOption fileOption = new FileOption("file", 'f',
+    public FileOption fileOption = new FileOption("file", 'f',
             "File to load.", "/home/alex/datasets/ratings.txt", "txt", false);
-    
-    /*public FlixsterDataset() throws IOException {
-        super();
-        FileInputStream fstream = new FileInputStream("/home/alex/datasets/ratings.txt");
-        DataInputStream in = new DataInputStream(fstream);
-        br = new BufferedReader(new InputStreamReader(in));
-    }*/
-        
-         @Override
-    public String getPurposeString() {
-        return "A Jester Dataset reader.";
-    }
-
-    public void init() {
-        FileInputStream fstream = null;
-        try {
-            fstream = new FileInputStream(this.fileOption.getFile());
-            DataInputStream in = new DataInputStream(fstream);
-            br = new BufferedReader(new InputStreamReader(in));
-        } catch (FileNotFoundException ex) {
-            Logger.getLogger(MovielensDataset.class.getName()).log(Level.SEVERE, null, ex);
-        }
-    }
-    
-    
-    @Override
-    public boolean next() {
-        try {
-            return (strLine = br.readLine()) != null;
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        return false;
-    }
-
-    @Override
-    public int curUserID() {
-        String[] split = strLine.split("\\s+");
-        return Integer.valueOf(split[0]);
-    }
 
     @Override
-    public int curItemID() {
-        String[] split = strLine.split("\\s+");
-        return Integer.valueOf(split[1]);
+    public String getPurposeString() {
+        return "A Flixster Dataset reader.";
     }
 
     @Override
-    public double curRating() {
-        String[] split = strLine.split("\\s+");
-        return Double.valueOf(split[2]);
+    protected File getFile() {
+        return this.fileOption.getFile();
     }
 
     public String toString() {
         return "Flixster";
     }
-
-    @Override
-    public void reset() {
-        try {
-            br.close();
-            //FileInputStream fstream = new FileInputStream("/home/alicia/datasets/flixster/ratings.txt");
-            //DataInputStream in = new DataInputStream(fstream);
-            //br = new BufferedReader(new InputStreamReader(in));
-            this.init();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-    }
-    
-    @Override
-    protected void prepareForUseImpl(TaskMonitor monitor, ObjectRepository repository) {
-        this.init();
-    }
-
-    @Override
-    public void getDescription(StringBuilder sb, int indent) {
-        throw new UnsupportedOperationException("Not supported yet.");
-    }
 }
@@ -0,0 +1,353 @@
+/*
+ *    MappedRatingsReader.java
+ *    Copyright (C) 2018 University of Waikato, Hamilton, New Zealand
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package moa.recommender.dataset.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads (user, item, rating) triples from a delimited text file through a
+ * memory-mapped window that slides over the file. The first three numeric
+ * columns of every line are parsed in place, straight from the mapped
+ * bytes, without creating strings. Any run of characters that cannot be part
+ * of a number separates columns, so "::", tabs, spaces and commas all work,
+ * further columns are ignored, and lines not starting with a number (such as
+ * CSV headers) are skipped.
+ *
+ * <p>Optionally the parsed triples are written to a binary cache file next
+ * to the text file while it is read for the first time. Later readers of the
+ * same, unmodified, file read the fixed-size records of the cache
+ * instead.</p>
+ */
+public class MappedRatingsReader {
+
+    /** Suffix appended to the file name to obtain the cache file name. */
+    public static final String CACHE_SUFFIX = ".ratings.bin";
+
+    private static final int CACHE_MAGIC = 0x4D4F4152;
+
+    private static final int CACHE_VERSION = 1;
+
+    private static final int CACHE_HEADER_SIZE = 24;
+
+    private static final int CACHE_RECORD_SIZE = 16;
+
+    private static final int DEFAULT_WINDOW_SIZE = 64 << 20;
+
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final File file;
+
+    private final boolean useCache;
+
+    private final int windowSize;
+
+    private RandomAccessFile raf;
+
+    private FileChannel channel;
+
+    private MappedByteBuffer window;
+
+    /** Offset in the file of the first byte of the window. */
+    private long windowStart;
+
+    /** Offset in the file of the next byte to read. */
+    private long position;
+
+    private long length;
+
+    private boolean readingCache;
+
+    private DataOutputStream cacheOut;
+
+    private File cacheTmp;
+
+    private int userID;
+
+    private int itemID;
+
+    private double rating;
+
+    private final long[] mantissa = new long[3];
+
+    private final int[] scale = new int[3];
+
+    public MappedRatingsReader(File file, boolean useCache) throws IOException {
+        this(file, useCache, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Creates a reader mapping windows of the given number of bytes. Every
+     * line must be shorter than a window, and a window must hold at least
+     * one record of the cache.
+     */
+    public MappedRatingsReader(File file, boolean useCache, int windowSize) throws IOException {
+        if (windowSize < CACHE_RECORD_SIZE)
+            throw new IllegalArgumentException("Window smaller than a cache record: " + windowSize);
+        this.file = file;
+        this.useCache = useCache;
+        this.windowSize = windowSize;
+        open();
+    }
+
+    public static File getCacheFile(File file) {
+        return new File(file.getPath() + CACHE_SUFFIX);
+    }
+
+    private void open() throws IOException {
+        File cache = getCacheFile(file);
+        readingCache = useCache && isValidCache(cache);
+        raf = new RandomAccessFile(readingCache ? cache : file, "r");
+        channel = raf.getChannel();
+        length = channel.size();
+        position = (readingCache ? CACHE_HEADER_SIZE : 0);
+        map(position);
+        if (useCache && !readingCache) {
+            cacheTmp = new File(cache.getPath() + ".tmp");
+            cacheOut = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(cacheTmp), 1 << 16));
+            cacheOut.writeInt(CACHE_MAGIC);
+            cacheOut.writeInt(CACHE_VERSION);
+            cacheOut.writeLong(file.length());
+            cacheOut.writeLong(file.lastModified());
+        }
+    }
+
+    private boolean isValidCache(File cache) throws IOException {
+        if (!cache.exists() || cache.length() < CACHE_HEADER_SIZE)
+            return false;
+        RandomAccessFile in = new RandomAccessFile(cache, "r");
+        try {
+            return in.readInt() == CACHE_MAGIC
+                    && in.readInt() == CACHE_VERSION
+                    && in.readLong() == file.length()
+                    && in.readLong() == file.lastModified()
+                    && (cache.length() - CACHE_HEADER_SIZE) % CACHE_RECORD_SIZE == 0;
+        } finally {
+            in.close();
+        }
+    }
+
+    private void map(long start) throws IOException {
+        windowStart = start;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                Math.min(windowSize, length - start));
+    }
+
+    /**
+     * Returns true if the reader is serving records from the binary cache.
+     */
+    public boolean isReadingCache() {
+        return readingCache;
+    }
+
+    public int userID() {
+        return userID;
+    }
+
+    public int itemID() {
+        return itemID;
+    }
+
+    public double rating() {
+        return rating;
+    }
+
+    /**
+     * Returns the fraction of the underlying file consumed so far.
+     */
+    public double fractionRead() {
+        return (length > 0 ? (double) position / length : 1.0);
+    }
+
+    /**
+     * Advances to the next rating, returning false at the end of the file.
+     */
+    public boolean next() throws IOException {
+        boolean found = (readingCache ? nextRecord() : nextLine());
+        if (!found)
+            finishCache();
+        return found;
+    }
+
+    private boolean nextRecord() throws IOException {
+        if (position + CACHE_RECORD_SIZE > length)
+            return false;
+        if (position + CACHE_RECORD_SIZE > windowStart + window.limit())
+            map(position);
+        int offset = (int) (position - windowStart);
+        userID = window.getInt(offset);
+        itemID = window.getInt(offset + 4);
+        rating = window.getDouble(offset + 8);
+        position += CACHE_RECORD_SIZE;
+        return true;
+    }
+
+    private boolean nextLine() throws IOException {
+        while (position < length) {
+            int end = findLineEnd();
+            int offset = (int) (position - windowStart);
+            int columns = parseLine(offset, end);
+            position = Math.min(length, windowStart + end + 1);
+            if (columns == 3) {
+                userID = (int) mantissa[0];
+                itemID = (int) mantissa[1];
+                rating = toDouble(mantissa[2], scale[2]);
+                if (cacheOut != null) {
+                    cacheOut.writeInt(userID);
+                    cacheOut.writeInt(itemID);
+                    cacheOut.writeDouble(rating);
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the window offset of the newline ending the current line (or
+     * of the end of the file), sliding the window if the line is cut by it.
+     */
+    private int findLineEnd() throws IOException {
+        int offset = (int) (position - windowStart);
+        int limit = window.limit();
+        for (int i = offset; i < limit; ++i)
+            if (window.get(i) == '\n')
+                return i;
+        if (windowStart + limit >= length)
+            return limit;
+        if (offset == 0)
+            throw new IOException("Line longer than " + windowSize + " bytes in " + file);
+        map(position);
+        return findLineEnd();
+    }
+
+    /**
+     * Parses up to three numeric columns of the line in [from, to) into
+     * {@link #mantissa} and {@link #scale}, returning how many were found.
+     * A column with an exponent is left to {@link Double#parseDouble}.
+     */
+    private int parseLine(int from, int to) {
+        int column = 0;
+        int i = from;
+        while (i < to && column < 3) {
+            byte c = window.get(i);
+            boolean startsNumber = (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.';
+            if (!startsNumber) {
+                if (column == 0 && c != ' ' && c != '\t' && c != '\r')
+                    return 0;
+                ++i;
+                continue;
+            }
+            int start = i;
+            boolean negative = (c == '-');
+            if (c == '-' || c == '+')
+                ++i;
+            long value = 0;
+            int digitsAfterPoint = -1;
+            boolean digits = false;
+            while (i < to) {
+                c = window.get(i);
+                if (c >= '0' && c <= '9') {
+                    value = value*10 + (c - '0');
+                    digits = true;
+                    if (digitsAfterPoint >= 0)
+                        ++digitsAfterPoint;
+                } else if (c == '.' && digitsAfterPoint < 0) {
+                    digitsAfterPoint = 0;
+                } else {
+                    break;
+                }
+                ++i;
+            }
+            if (!digits)
+                return (column == 0 ? 0 : column);
+            if (i < to && (window.get(i) == 'e' || window.get(i) == 'E')) {
+                ++i;
+                while (i < to && ((c = window.get(i)) == '-' || c == '+' || (c >= '0' && c <= '9')))
+                    ++i;
+                byte[] chars = new byte[i - start];
+                for (int k = 0; k < chars.length; ++k)
+                    chars[k] = window.get(start + k);
+                double parsed = Double.parseDouble(new String(chars));
+                mantissa[column] = Double.doubleToRawLongBits(parsed);
+                scale[column] = -1;
+            } else {
+                mantissa[column] = (negative ? -value : value);
+                scale[column] = Math.max(digitsAfterPoint, 0);
+            }
+            ++column;
+        }
+        return column;
+    }
+
+    private static double toDouble(long mantissa, int scale) {
+        if (scale < 0)
+            return Double.longBitsToDouble(mantissa);
+        // Dividing an exact integer by an exact power of ten rounds once,
+        // giving the same value as Double.parseDouble
+        double value = mantissa;
+        return (scale == 0 ? value : value / POWERS_OF_TEN[Math.min(scale, POWERS_OF_TEN.length - 1)]);
+    }
+
+    private void finishCache() throws IOException {
+        if (cacheOut != null) {
+            cacheOut.close();
+            cacheOut = null;
+            File cache = getCacheFile(file);
+            if (cache.exists())
+                cache.delete();
+            if (!cacheTmp.renameTo(cache))
+                cacheTmp.delete();
+        }
+    }
+
+    /**
+     * Restarts reading from the first rating. A cache file completed by the
+     * previous pass is used from now on.
+     */
+    public void reset() throws IOException {
+        close();
+        open();
+    }
+
+    public void close() throws IOException {
+        if (cacheOut != null) {
+            // Incomplete pass, the partial cache is useless
+            cacheOut.close();
+            cacheOut = null;
+            cacheTmp.delete();
+        }
+        window = null;
+        if (raf != null) {
+            raf.close();
+            raf = null;
+        }
+    }
+}
@@ -20,26 +20,12 @@
 
 package moa.recommender.dataset.impl;
 
-import moa.recommender.dataset.Dataset;
-import java.io.BufferedReader;
-import java.io.DataInputStream;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.util.logging.Level;
-import java.util.logging.Logger;
-import moa.core.ObjectRepository;
-import moa.options.AbstractOptionHandler;
+import java.io.File;
+import moa.recommender.dataset.AbstractFileDataset;
 import com.github.javacliparser.FileOption;
-import moa.tasks.TaskMonitor;
 
-public class MovielensDataset extends AbstractOptionHandler implements Dataset {
+public class MovielensDataset extends AbstractFileDataset {
 
-    private String strLine;
-    
-    private BufferedReader br;
-    
     public FileOption fileOption = new FileOption("file", 'f',
             "File to load.", "/Users/abifet/Downloads/ml-1M/ratings.dat", "dat", false);
 
@@ -48,71 +34,12 @@ public class MovielensDataset extends AbstractOptionHandler implements Dataset {
         return "A Movie Lens Dataset reader.";
     }
 
-    public void init() {
-        FileInputStream fstream = null;
-        try {
-            //fstream = new FileInputStream("/Users/abifet/Downloads/ml-1M/ratings.dat");
-            fstream = new FileInputStream(this.fileOption.getFile());
-            DataInputStream in = new DataInputStream(fstream);
-            br = new BufferedReader(new InputStreamReader(in));
-        } catch (FileNotFoundException ex) {
-            Logger.getLogger(MovielensDataset.class.getName()).log(Level.SEVERE, null, ex);
-        }
-
-    }
-
     @Override
-    public boolean next() {
-        try {
-            return (strLine = ((BufferedReader) br).readLine()) != null;
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        return false;
+    protected File getFile() {
+        return this.fileOption.getFile();
     }
 
     public String toString() {
         return "Movielens";
     }
-
-    @Override
-    public int curUserID() {
-        String[] split = strLine.split("::");
-        return Integer.valueOf(split[0]);
-    }
-
-    @Override
-    public int curItemID() {
-        String[] split = strLine.split("::");
-        return Integer.valueOf(split[1]);
-    }
-
-    @Override
-    public double curRating() {
-        String[] split = strLine.split("::");
-        return Double.valueOf(split[2]);
-    }
-
-    @Override
-    public void reset() {
-        try {
-            br.close();
-            //FileInputStream fstream = new FileInputStream("/home/alex/datasets/ml-1m/ratings.dat");
-            //DataInputStream in = new DataInputStream(fstream);
-            //br = new BufferedReader(new InputStreamReader(in));
-            this.init();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-    }
-
-    @Override
-    protected void prepareForUseImpl(TaskMonitor monitor, ObjectRepository repository) {
-        this.init();
-    }
-
-    @Override
-    public void getDescription(StringBuilder sb, int indent) {
-        throw new UnsupportedOperationException("Not supported yet.");
-    }
 }
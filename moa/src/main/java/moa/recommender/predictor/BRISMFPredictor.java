@@ -24,6 +24,7 @@ import java.util.List;
 import moa.core.ObjectRepository;
 import moa.options.AbstractOptionHandler;
 import moa.options.ClassOption;
+import com.github.javacliparser.FlagOption;
 import com.github.javacliparser.FloatOption;
 import com.github.javacliparser.IntOption;
 import moa.recommender.data.RecommenderData;
@@ -53,6 +54,9 @@ import moa.tasks.TaskMonitor;
  *      regularization</li>
  * <li> i: iterations - the number of iterations to be used when retraining
  *      user and item features (online training). </li>
+ * <li> j: numberOfJobs - the number of threads used in batch training</li>
+ * <li> s: striped - train in parallel over blocks sharing no user or item,
+ *      so the result does not depend on thread scheduling</li>
  * </lu>
  * 
  */
@@ -77,6 +81,13 @@ public class BRISMFPredictor extends AbstractOptionHandler implements RatingPred
             "How many iterations to use.",
             100, 0, Integer.MAX_VALUE);
 
+    public IntOption numberOfJobsOption = new IntOption("numberOfJobs", 'j',
+            "Total number of concurrent jobs used for batch training (-1 = as much as possible, 1 = do not use multithreading)",
+            1, -1, Integer.MAX_VALUE);
+    
+    public FlagOption stripedOption = new FlagOption("striped", 's',
+            "Train in parallel over user and item blocks sharing no rows (reproducible) instead of lock-free Hogwild updates.");
+
     public ClassOption dataOption = new ClassOption("data", 'd',
             "Data", RecommenderData.class, "moa.recommender.data.MemRecommenderData");
      
@@ -86,6 +97,8 @@ public class BRISMFPredictor extends AbstractOptionHandler implements RatingPred
         RecommenderData data = (RecommenderData) getPreparedClassOption(this.dataOption);
         rp = new moa.recommender.rc.predictor.impl.BRISMFPredictor(featuresOption.getValue(), data.getData(), lRateOption.getValue(), rFactorOption.getValue(), false);
         rp.setNIterations(iterationsOption.getValue());
+        rp.setNumThreads(numberOfJobsOption.getValue());
+        rp.setStriped(stripedOption.isSet());
     }
 
     @Override
@@ -115,5 +128,12 @@ public class BRISMFPredictor extends AbstractOptionHandler implements RatingPred
     public void train() {
         rp.train();
     }
+
+    /**
+     * Returns how many rating updates have been applied to the features.
+     */
+    public long getNumTrainedRatings() {
+        return rp.getNumTrainedRatings();
+    }
     
 }
@@ -23,6 +23,9 @@ package moa.recommender.rc.data;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import moa.recommender.rc.utils.Pair;
+import moa.recommender.rc.utils.RatingsBuffer;
+import moa.recommender.rc.utils.SparseVector;
 import moa.recommender.rc.utils.Updatable;
 
 
@@ -96,6 +99,34 @@ public abstract class AbstractRecommenderData implements RecommenderData {
         }
     }
 
+    /**
+     * Fills the buffer with the ratings of the user. Implementations with
+     * primitive storage should override this to avoid going through
+     * {@link #getRatingsUser(int)}.
+     */
+    public void getRatingsUser(int userID, RatingsBuffer buffer) {
+        fillBuffer(getRatingsUser(userID), buffer);
+    }
+
+    /**
+     * Fills the buffer with the ratings of the item. Implementations with
+     * primitive storage should override this to avoid going through
+     * {@link #getRatingsItem(int)}.
+     */
+    public void getRatingsItem(int itemID, RatingsBuffer buffer) {
+        fillBuffer(getRatingsItem(itemID), buffer);
+    }
+
+    private static void fillBuffer(SparseVector ratings, RatingsBuffer buffer) {
+        buffer.clear();
+        buffer.ensureCapacity(ratings.size());
+        Iterator<Pair<Integer, Double>> it = ratings.iterator();
+        while (it.hasNext()) {
+            Pair<Integer, Double> p = it.next();
+            buffer.add(p.getFirst(), p.getSecond());
+        }
+    }
+
     public void attachUpdatable(Updatable obj) {
         updatables.add(obj);
     }
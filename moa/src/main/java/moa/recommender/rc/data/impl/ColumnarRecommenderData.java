@@ -0,0 +1,511 @@
+/*
+ *    ColumnarRecommenderData.java
+ *    Copyright (C) 2018 University of Waikato, Hamilton, New Zealand
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ *
+ */
+
+package moa.recommender.rc.data.impl;
+
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import moa.recommender.rc.data.AbstractRecommenderData;
+import moa.recommender.rc.utils.IntIntHashMap;
+import moa.recommender.rc.utils.Rating;
+import moa.recommender.rc.utils.RatingsBuffer;
+import moa.recommender.rc.utils.SparseVector;
+
+/**
+ * In-memory rating store that keeps no boxed values. Users and items are
+ * mapped to dense row indices with {@link IntIntHashMap}s, and every row
+ * stores its ratings in growable primitive arrays, much like a compressed
+ * sparse row matrix that is kept once by user and once by item. Each entry
+ * also records its position in the mirror row of the other side, so updates
+ * and removals touch both sides in constant time after the entry is found
+ * by scanning the shorter of the two rows.
+ */
+public class ColumnarRecommenderData extends AbstractRecommenderData {
+
+    private static final long serialVersionUID = -4311580049870317326L;
+
+    private static final int INITIAL_ROW_CAPACITY = 4;
+
+    /**
+     * One side (users or items) of the rating matrix.
+     */
+    protected static class RatingRows implements Serializable {
+
+        private static final long serialVersionUID = 6521934752216005413L;
+
+        protected IntIntHashMap index = new IntIntHashMap();
+        protected int[] rowId = new int[16];
+        protected int[][] ids = new int[16][];
+        protected double[][] ratings = new double[16][];
+        protected int[][] mirror = new int[16][];
+        protected int[] size = new int[16];
+        protected double[] sum = new double[16];
+        protected int numRows = 0;
+
+        public int rowOf(int id) {
+            return index.get(id);
+        }
+
+        public int addRow(int id) {
+            if (numRows == rowId.length) {
+                int capacity = rowId.length << 1;
+                rowId = Arrays.copyOf(rowId, capacity);
+                ids = Arrays.copyOf(ids, capacity);
+                ratings = Arrays.copyOf(ratings, capacity);
+                mirror = Arrays.copyOf(mirror, capacity);
+                size = Arrays.copyOf(size, capacity);
+                sum = Arrays.copyOf(sum, capacity);
+            }
+            int row = numRows++;
+            rowId[row] = id;
+            ids[row] = new int[INITIAL_ROW_CAPACITY];
+            ratings[row] = new double[INITIAL_ROW_CAPACITY];
+            mirror[row] = new int[INITIAL_ROW_CAPACITY];
+            size[row] = 0;
+            sum[row] = 0;
+            index.put(id, row);
+            return row;
+        }
+
+        public int getOrAddRow(int id) {
+            int row = index.get(id);
+            return row >= 0 ? row : addRow(id);
+        }
+
+        public int append(int row, int otherId, double rating, int mirrorPos) {
+            int pos = size[row];
+            if (pos == ids[row].length) {
+                int capacity = pos << 1;
+                ids[row] = Arrays.copyOf(ids[row], capacity);
+                ratings[row] = Arrays.copyOf(ratings[row], capacity);
+                mirror[row] = Arrays.copyOf(mirror[row], capacity);
+            }
+            ids[row][pos] = otherId;
+            ratings[row][pos] = rating;
+            mirror[row][pos] = mirrorPos;
+            sum[row] += rating;
+            size[row] = pos + 1;
+            return pos;
+        }
+
+        public int find(int row, int otherId) {
+            int[] rowIds = ids[row];
+            int n = size[row];
+            for (int i = 0; i < n; ++i)
+                if (rowIds[i] == otherId)
+                    return i;
+            return -1;
+        }
+
+        /**
+         * Removes the entry at the given position by moving the last entry
+         * of the row into its place, and fixes the mirror pointer of the
+         * moved entry on the other side.
+         */
+        public void removeAt(int row, int pos, RatingRows other) {
+            sum[row] -= ratings[row][pos];
+            int last = --size[row];
+            if (pos != last) {
+                ids[row][pos] = ids[row][last];
+                ratings[row][pos] = ratings[row][last];
+                mirror[row][pos] = mirror[row][last];
+                int otherRow = other.rowOf(ids[row][pos]);
+                other.mirror[otherRow][mirror[row][pos]] = pos;
+            }
+        }
+
+        /**
+         * Removes an empty row by moving the last row into its slot.
+         */
+        public void removeRow(int row) {
+            index.remove(rowId[row]);
+            int last = --numRows;
+            if (row != last) {
+                rowId[row] = rowId[last];
+                ids[row] = ids[last];
+                ratings[row] = ratings[last];
+                mirror[row] = mirror[last];
+                size[row] = size[last];
+                sum[row] = sum[last];
+                index.put(rowId[row], row);
+            }
+            ids[last] = null;
+            ratings[last] = null;
+            mirror[last] = null;
+        }
+
+        public void fill(int row, RatingsBuffer buffer) {
+            buffer.clear();
+            if (row < 0)
+                return;
+            int n = size[row];
+            buffer.ensureCapacity(n);
+            System.arraycopy(ids[row], 0, buffer.ids, 0, n);
+            System.arraycopy(ratings[row], 0, buffer.ratings, 0, n);
+            buffer.size = n;
+        }
+
+        public SparseVector toSparseVector(int row) {
+            Map<Integer, Double> map = new HashMap<Integer, Double>();
+            if (row >= 0)
+                for (int i = 0; i < size[row]; ++i)
+                    map.put(ids[row][i], ratings[row][i]);
+            return new SparseVector(map);
+        }
+
+        public Set<Integer> idSet() {
+            return new AbstractSet<Integer>() {
+                @Override
+                public Iterator<Integer> iterator() {
+                    return new Iterator<Integer>() {
+                        private int next = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < numRows;
+                        }
+
+                        @Override
+                        public Integer next() {
+                            if (next >= numRows)
+                                throw new NoSuchElementException();
+                            return rowId[next++];
+                        }
+
+                        @Override
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return numRows;
+                }
+
+                @Override
+                public boolean contains(Object o) {
+                    return (o instanceof Integer) && index.containsKey((Integer) o);
+                }
+            };
+        }
+
+        public void clear() {
+            index.clear();
+            for (int i = 0; i < numRows; ++i) {
+                ids[i] = null;
+                ratings[i] = null;
+                mirror[i] = null;
+            }
+            numRows = 0;
+        }
+    }
+
+    protected RatingRows users = new RatingRows();
+    protected RatingRows items = new RatingRows();
+
+    protected double sumRatings = 0;
+    protected int nRatings = 0;
+    protected double minRating = 0;
+    protected double maxRating = 0;
+
+    public ColumnarRecommenderData() {
+        super();
+    }
+
+    @Override
+    public void addUser(int userID, List<Integer> ratedItems, List<Double> ratings) {
+        super.addUser(userID, ratedItems, ratings);
+        if (users.rowOf(userID) >= 0)
+            auxRemoveUser(userID);
+        users.addRow(userID);
+        int n = ratedItems.size();
+        for (int i = 0; i < n; ++i)
+            auxSetRating(userID, ratedItems.get(i), ratings.get(i));
+    }
+
+    @Override
+    public void removeUser(int userID) {
+        super.removeUser(userID);
+        auxRemoveUser(userID);
+    }
+
+    @Override
+    public void addItem(int itemID, List<Integer> ratingUsers, List<Double> ratings) {
+        super.addItem(itemID, ratingUsers, ratings);
+        if (items.rowOf(itemID) >= 0)
+            auxRemoveItem(itemID);
+        items.addRow(itemID);
+        int n = ratingUsers.size();
+        for (int i = 0; i < n; ++i)
+            auxSetRating(ratingUsers.get(i), itemID, ratings.get(i));
+    }
+
+    @Override
+    public void removeItem(int itemID) {
+        super.removeItem(itemID);
+        auxRemoveItem(itemID);
+    }
+
+    private void auxRemoveUser(int userID) {
+        int row = users.rowOf(userID);
+        if (row < 0)
+            return;
+        int n = users.size[row];
+        for (int i = 0; i < n; ++i) {
+            int itemRow = items.rowOf(users.ids[row][i]);
+            items.removeAt(itemRow, users.mirror[row][i], users);
+        }
+        sumRatings -= users.sum[row];
+        nRatings -= n;
+        users.removeRow(row);
+    }
+
+    private void auxRemoveItem(int itemID) {
+        int row = items.rowOf(itemID);
+        if (row < 0)
+            return;
+        int n = items.size[row];
+        for (int i = 0; i < n; ++i) {
+            int userRow = users.rowOf(items.ids[row][i]);
+            users.removeAt(userRow, items.mirror[row][i], items);
+        }
+        sumRatings -= items.sum[row];
+        nRatings -= n;
+        items.removeRow(row);
+    }
+
+    private void auxSetRating(int userID, int itemID, double rating) {
+        if (nRatings == 0) {
+            minRating = rating;
+            maxRating = rating;
+        }
+        else {
+            minRating = Math.min(minRating, rating);
+            maxRating = Math.max(maxRating, rating);
+        }
+
+        int userRow = users.getOrAddRow(userID);
+        int itemRow = items.getOrAddRow(itemID);
+        int userPos;
+        int itemPos;
+        if (users.size[userRow] <= items.size[itemRow]) {
+            userPos = users.find(userRow, itemID);
+            itemPos = (userPos >= 0 ? users.mirror[userRow][userPos] : -1);
+        }
+        else {
+            itemPos = items.find(itemRow, userID);
+            userPos = (itemPos >= 0 ? items.mirror[itemRow][itemPos] : -1);
+        }
+
+        if (userPos >= 0) {
+            double old = users.ratings[userRow][userPos];
+            users.ratings[userRow][userPos] = rating;
+            items.ratings[itemRow][itemPos] = rating;
+            users.sum[userRow] += rating - old;
+            items.sum[itemRow] += rating - old;
+            sumRatings += rating - old;
+        }
+        else {
+            userPos = users.append(userRow, itemID, rating, items.size[itemRow]);
+            items.append(itemRow, userID, rating, userPos);
+            sumRatings += rating;
+            ++nRatings;
+        }
+    }
+
+    @Override
+    public void setRating(int userID, int itemID, double rating) {
+        super.setRating(userID, itemID, rating);
+        auxSetRating(userID, itemID, rating);
+    }
+
+    @Override
+    public void removeRating(int userID, int itemID) {
+        super.removeRating(userID, itemID);
+
+        int userRow = users.rowOf(userID);
+        int itemRow = items.rowOf(itemID);
+        if (userRow < 0 || itemRow < 0)
+            return;
+        int userPos = users.find(userRow, itemID);
+        if (userPos >= 0) {
+            int itemPos = users.mirror[userRow][userPos];
+            sumRatings -= users.ratings[userRow][userPos];
+            --nRatings;
+            users.removeAt(userRow, userPos, items);
+            items.removeAt(itemRow, itemPos, users);
+        }
+    }
+
+    @Override
+    public SparseVector getRatingsUser(int userID) {
+        return users.toSparseVector(users.rowOf(userID));
+    }
+
+    @Override
+    public SparseVector getRatingsItem(int itemID) {
+        return items.toSparseVector(items.rowOf(itemID));
+    }
+
+    @Override
+    public void getRatingsUser(int userID, RatingsBuffer buffer) {
+        users.fill(users.rowOf(userID), buffer);
+    }
+
+    @Override
+    public void getRatingsItem(int itemID, RatingsBuffer buffer) {
+        items.fill(items.rowOf(itemID), buffer);
+    }
+
+    @Override
+    public double getRating(int userID, int itemID) {
+        int userRow = users.rowOf(userID);
+        if (userRow < 0)
+            return 0;
+        int pos = users.find(userRow, itemID);
+        return (pos >= 0 ? users.ratings[userRow][pos] : 0);
+    }
+
+    @Override
+    public int getNumItems() {
+        return items.numRows;
+    }
+
+    @Override
+    public int getNumUsers() {
+        return users.numRows;
+    }
+
+    @Override
+    public int getNumRatings() {
+        return nRatings;
+    }
+
+    private double avgRating(RatingRows rows, int id) {
+        int row = rows.rowOf(id);
+        double sum = (row >= 0 ? rows.sum[row] : 0);
+        double num = (row >= 0 ? rows.size[row] : 0);
+        return (getGlobalMean()*25 + sum)/(25 + num);
+    }
+
+    @Override
+    public double getAvgRatingUser(int userID) {
+        return avgRating(users, userID);
+    }
+
+    @Override
+    public double getAvgRatingItem(int itemID) {
+        return avgRating(items, itemID);
+    }
+
+    @Override
+    public double getMinRating() {
+        return minRating;
+    }
+
+    @Override
+    public double getMaxRating() {
+        return maxRating;
+    }
+
+    @Override
+    public Set<Integer> getUsers() {
+        return users.idSet();
+    }
+
+    @Override
+    public Set<Integer> getItems() {
+        return items.idSet();
+    }
+
+    @Override
+    public double getGlobalMean() {
+        return (nRatings > 0 ? sumRatings/(double)nRatings : (minRating + maxRating)/2.0);
+    }
+
+    @Override
+    public int countRatingsUser(int userID) {
+        int row = users.rowOf(userID);
+        return (row >= 0 ? users.size[row] : 0);
+    }
+
+    @Override
+    public int countRatingsItem(int itemID) {
+        int row = items.rowOf(itemID);
+        return (row >= 0 ? items.size[row] : 0);
+    }
+
+    @Override
+    public Iterator<Rating> ratingIterator() {
+        return new Iterator<Rating>() {
+            private int row = 0;
+            private int pos = 0;
+
+            @Override
+            public boolean hasNext() {
+                while (row < users.numRows && pos >= users.size[row]) {
+                    ++row;
+                    pos = 0;
+                }
+                return row < users.numRows;
+            }
+
+            @Override
+            public Rating next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                Rating rat = new Rating(users.rowId[row], users.ids[row][pos], users.ratings[row][pos]);
+                ++pos;
+                return rat;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    @Override
+    public boolean userExists(int userID) {
+        return users.rowOf(userID) >= 0;
+    }
+
+    @Override
+    public boolean itemExists(int itemID) {
+        return items.rowOf(itemID) >= 0;
+    }
+
+    @Override
+    public void clear() {
+        users.clear();
+        items.clear();
+        minRating = maxRating = 0;
+        sumRatings = nRatings = 0;
+    }
+}
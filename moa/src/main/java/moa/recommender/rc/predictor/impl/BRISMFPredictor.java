@@ -21,14 +21,18 @@
 package moa.recommender.rc.predictor.impl;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import moa.recommender.rc.data.RecommenderData;
-import moa.recommender.rc.utils.Pair;
-import moa.recommender.rc.utils.Rating;
-import moa.recommender.rc.utils.SparseVector;
+import moa.recommender.rc.utils.IntIntHashMap;
+import moa.recommender.rc.utils.RatingsBuffer;
 import moa.recommender.rc.utils.Updatable;
 
 /**
@@ -46,6 +50,12 @@ import moa.recommender.rc.utils.Updatable;
  * by retraining only the affected user and item vectors when 
  * a new rating is inserted.
  * 
+ * <p>The feature vectors of all users (and of all items) are stored
+ * contiguously in a single float array, one row of <code>features</code>
+ * values per user (item), and identifiers are mapped to rows with a
+ * primitive hash map. Ratings are read into reusable buffers, so online
+ * retraining does not allocate.</p>
+ * 
  * <p>Parameters:</p>
  * <ul>
  * <li> features - the number of features to be trained for each user and 
@@ -55,6 +65,9 @@ import moa.recommender.rc.utils.Updatable;
  *      regularization</li>
  * <li> iterations - the number of iterations to be used when retraining
  *      user and item features (online training). </li>
+ * <li> threads - the number of threads used in batch training, either
+ *      lock-free (Hogwild) or over conflict-free stripes of users and
+ *      items</li>
  * </lu>
  * 
  */
@@ -63,12 +76,25 @@ public class BRISMFPredictor implements Updatable {
     
     protected RecommenderData data;
     protected int nFeatures;
-    protected HashMap<Integer, float[]> userFeature;
-    protected HashMap<Integer, float[]> itemFeature;
+    protected IntIntHashMap userRow;
+    protected IntIntHashMap itemRow;
+    protected int[] userRowID;
+    protected int[] itemRowID;
+    protected int nUserRows;
+    protected int nItemRows;
+    protected float[] userFeature;
+    protected float[] itemFeature;
     protected Random rnd;
     protected double lRate = 0.01;
     protected double rFactor = 0.02;
     protected int nIterations = 30;
+    protected int numThreads = 1;
+    protected boolean striped = false;
+    protected long numTrainedRatings = 0;
+    
+    protected RatingsBuffer ratingsBuffer = new RatingsBuffer();
+    protected int[] offsetsBuffer = new int[16];
+    protected float[] featsBuffer;
     
     public void setLRate(double lRate) {
         this.lRate = lRate;
@@ -82,6 +108,35 @@ public class BRISMFPredictor implements Updatable {
         this.nIterations = nIterations; 
     }
     
+    /**
+     * Sets the number of threads used by batch training: 1 trains
+     * sequentially and -1 uses all available processors.
+     */
+    public void setNumThreads(int numThreads) {
+        this.numThreads = numThreads;
+    }
+    
+    /**
+     * Selects the parallel batch training scheme. Hogwild (the default)
+     * lets every worker update the shared features of a shard of the
+     * ratings without locking. Striped training splits users and items
+     * into as many blocks as threads and only lets workers run
+     * concurrently on blocks sharing no user or item, which makes the
+     * result independent of thread scheduling.
+     */
+    public void setStriped(boolean striped) {
+        this.striped = striped;
+    }
+    
+    /**
+     * Returns how many rating updates have been applied to the features,
+     * counting every epoch of batch training and every iteration of
+     * online retraining.
+     */
+    public long getNumTrainedRatings() {
+        return numTrainedRatings;
+    }
+    
     public RecommenderData getData() {
     	return data;
     }
@@ -89,8 +144,7 @@ public class BRISMFPredictor implements Updatable {
     public BRISMFPredictor(int nFeatures, RecommenderData data, boolean train) {
         this.data = data;
         this.nFeatures = nFeatures;
-        this.userFeature = new HashMap<Integer, float[]>();
-        this.itemFeature = new HashMap<Integer, float[]>();
+        initFeatures();
         this.rnd = new Random(12345);
         data.attachUpdatable(this);
         if (train) train();
@@ -99,8 +153,7 @@ public class BRISMFPredictor implements Updatable {
     public BRISMFPredictor(int nFeatures, RecommenderData data, double lRate, double rFactor, boolean train) {
         this.data = data;
         this.nFeatures = nFeatures;
-        this.userFeature = new HashMap<Integer, float[]>();
-        this.itemFeature = new HashMap<Integer, float[]>();
+        initFeatures();
         this.rnd = new Random(12345);
         this.lRate = lRate;
         this.rFactor = rFactor;
@@ -108,25 +161,85 @@ public class BRISMFPredictor implements Updatable {
         if (train) train();
     }
     
-    private void resetFeatures(float[] feats, boolean userFeats) {
-        int n = feats.length;
-        for (int i = 0; i < n; ++i)
-            feats[i] = (float)0.01*(rnd.nextFloat()*2 - 1);
-        if (userFeats) feats[0] = 1;
-        else feats[1] = 1;
+    private void initFeatures() {
+        this.userRow = new IntIntHashMap();
+        this.itemRow = new IntIntHashMap();
+        this.userRowID = new int[16];
+        this.itemRowID = new int[16];
+        this.nUserRows = 0;
+        this.nItemRows = 0;
+        this.userFeature = new float[16*nFeatures];
+        this.itemFeature = new float[16*nFeatures];
+        this.featsBuffer = new float[nFeatures];
+    }
+    
+    private void resetFeatures(float[] feats, int offset, boolean userFeats) {
+        for (int i = 0; i < nFeatures; ++i)
+            feats[offset + i] = (float)0.01*(rnd.nextFloat()*2 - 1);
+        if (userFeats) feats[offset] = 1;
+        else feats[offset + 1] = 1;
+    }
+    
+    /**
+     * Returns the offset of the user's features in {@link #userFeature},
+     * or -1 if the user has no features yet.
+     */
+    protected int userOffset(int userID) {
+        int row = userRow.get(userID);
+        return (row >= 0 ? row*nFeatures : -1);
+    }
+    
+    /**
+     * Returns the offset of the item's features in {@link #itemFeature},
+     * or -1 if the item has no features yet.
+     */
+    protected int itemOffset(int itemID) {
+        int row = itemRow.get(itemID);
+        return (row >= 0 ? row*nFeatures : -1);
+    }
+    
+    private int addUserRow(int userID) {
+        int row = userRow.get(userID);
+        if (row < 0) {
+            row = nUserRows++;
+            if (row == userRowID.length) {
+                userRowID = Arrays.copyOf(userRowID, row << 1);
+                userFeature = Arrays.copyOf(userFeature, (row << 1)*nFeatures);
+            }
+            userRowID[row] = userID;
+            userRow.put(userID, row);
+        }
+        return row*nFeatures;
+    }
+    
+    private int addItemRow(int itemID) {
+        int row = itemRow.get(itemID);
+        if (row < 0) {
+            row = nItemRows++;
+            if (row == itemRowID.length) {
+                itemRowID = Arrays.copyOf(itemRowID, row << 1);
+                itemFeature = Arrays.copyOf(itemFeature, (row << 1)*nFeatures);
+            }
+            itemRowID[row] = itemID;
+            itemRow.put(itemID, row);
+        }
+        return row*nFeatures;
     }
     
     public double predictRating(int userID, int itemID) {
-        float[] userFeats = userFeature.get(userID);
-        float[] itemFeats = itemFeature.get(itemID);
-        return predictRating(userFeats, itemFeats);
+        return predictRating(userFeature, userOffset(userID), itemFeature, itemOffset(itemID));
     }
     
     public double predictRating(float userFeats[], float itemFeats[]) {
+        return predictRating(userFeats, userFeats != null ? 0 : -1, 
+                itemFeats, itemFeats != null ? 0 : -1);
+    }
+    
+    protected double predictRating(float userFeats[], int userOffset, float itemFeats[], int itemOffset) {
         double ret = data.getGlobalMean();
-        if (userFeats != null && itemFeats != null)
+        if (userOffset >= 0 && itemOffset >= 0)
             for (int i = 0; i < nFeatures; ++i)
-                ret += userFeats[i]*itemFeats[i];
+                ret += userFeats[userOffset + i]*itemFeats[itemOffset + i];
 
         if (ret < data.getMinRating()) ret = data.getMinRating();
         else if (ret > data.getMaxRating()) ret = data.getMaxRating();
@@ -134,208 +247,349 @@ public class BRISMFPredictor implements Updatable {
         return ret;
     }
     
-    public float[] trainUserFeats(List<Integer> itm, List<Double> rat, int nIts) {
-        float[] userFeats = new float[nFeatures];
-        resetFeatures(userFeats, true);
+    private int[] offsets(RatingsBuffer rats, boolean ofItems) {
+        if (offsetsBuffer.length < rats.size)
+            offsetsBuffer = new int[Math.max(rats.size, offsetsBuffer.length << 1)];
+        for (int i = 0; i < rats.size; ++i)
+            offsetsBuffer[i] = (ofItems ? itemOffset(rats.ids[i]) : userOffset(rats.ids[i]));
+        return offsetsBuffer;
+    }
+    
+    /**
+     * Trains the features of a user from scratch, given the user's ratings,
+     * writing them into <code>userFeats</code>.
+     */
+    protected void trainUserFeats(RatingsBuffer rats, int nIts, float[] userFeats) {
+        resetFeatures(userFeats, 0, true);
         
-        int n = itm.size();
+        int n = rats.size;
+        int[] itemOffsets = offsets(rats, true);
+        float[] itemFeats = itemFeature;
         for (int k = 0; k < nIts; ++k) {
             for (int i = 0; i < n; ++i) {
-                int itemID = itm.get(i);
-                float[] itemFeats = itemFeature.get(itemID);
-                double rating = rat.get(i);
-                double pred = predictRating(userFeats, itemFeats);
+                int itemOffset = itemOffsets[i];
+                double rating = rats.ratings[i];
+                double pred = predictRating(userFeats, 0, itemFeats, itemOffset);
                 double err = rating - pred;
                 
-                if (itemFeats != null)
+                if (itemOffset >= 0)
                     for (int j = 1; j < nFeatures; ++j) 
-                        userFeats[j] += lRate*(err*itemFeats[j] - rFactor*userFeats[j]);
+                        userFeats[j] += lRate*(err*itemFeats[itemOffset + j] - rFactor*userFeats[j]);
             }
         }
-        
-        return userFeats;
     }
     
-    public float[] trainItemFeats(int itemID, List<Integer> usr, List<Double> rat, int nIts) {
-        float[] itemFeats = new float[nFeatures];
-        resetFeatures(itemFeats, false);
+    /**
+     * Trains the features of an item from scratch, given the item's ratings,
+     * writing them into <code>itemFeats</code>.
+     */
+    protected void trainItemFeats(RatingsBuffer rats, int nIts, float[] itemFeats) {
+        resetFeatures(itemFeats, 0, false);
         
-        int n = usr.size();
+        int n = rats.size;
+        int[] userOffsets = offsets(rats, false);
+        float[] userFeats = userFeature;
         for (int k = 0; k < nIts; ++k) {
             for (int i = 0; i < n; ++i) {
-                int userID = usr.get(i);
-                float[] userFeats = userFeature.get(userID);
-                double rating = rat.get(i);
-                double pred = predictRating(userFeats, itemFeats);
+                int userOffset = userOffsets[i];
+                double rating = rats.ratings[i];
+                double pred = predictRating(userFeats, userOffset, itemFeats, 0);
                 double err = rating - pred;
                 
-                if (userFeats != null) {
-                    itemFeats[0] += lRate*(err*userFeats[0] - rFactor*itemFeats[0]);
+                if (userOffset >= 0) {
+                    itemFeats[0] += lRate*(err*userFeats[userOffset] - rFactor*itemFeats[0]);
                     for (int j = 2; j < nFeatures; ++j)
-                        itemFeats[j] += lRate*(err*userFeats[j] - rFactor*itemFeats[j]);
+                        itemFeats[j] += lRate*(err*userFeats[userOffset + j] - rFactor*itemFeats[j]);
                 }
             }
         }
-        
+    }
+    
+    public float[] trainUserFeats(List<Integer> itm, List<Double> rat, int nIts) {
+        ratingsBuffer.clear();
+        ratingsBuffer.addAll(itm, rat);
+        float[] userFeats = new float[nFeatures];
+        trainUserFeats(ratingsBuffer, nIts, userFeats);
+        return userFeats;
+    }
+    
+    public float[] trainItemFeats(int itemID, List<Integer> usr, List<Double> rat, int nIts) {
+        ratingsBuffer.clear();
+        ratingsBuffer.addAll(usr, rat);
+        float[] itemFeats = new float[nFeatures];
+        trainItemFeats(ratingsBuffer, nIts, itemFeats);
         return itemFeats;
     }
     
+    protected void trainUser(int userID, RatingsBuffer rats, int nIts) {
+        trainUserFeats(rats, nIts, featsBuffer);
+        numTrainedRatings += (long)rats.size*nIts;
+        int offset = addUserRow(userID);
+        System.arraycopy(featsBuffer, 0, userFeature, offset, nFeatures);
+    }
+    
+    protected void trainItem(int itemID, RatingsBuffer rats, int nIts) {
+        trainItemFeats(rats, nIts, featsBuffer);
+        numTrainedRatings += (long)rats.size*nIts;
+        int offset = addItemRow(itemID);
+        System.arraycopy(featsBuffer, 0, itemFeature, offset, nFeatures);
+    }
+    
     public void trainUser(int userID, List<Integer> itm, List<Double> rat, int nIts) {
-        userFeature.put(userID, trainUserFeats(itm, rat, nIts));
+        ratingsBuffer.clear();
+        ratingsBuffer.addAll(itm, rat);
+        trainUser(userID, ratingsBuffer, nIts);
     }
     
     public void trainUser(int userID, int nIts) {
-        SparseVector usrRats = data.getRatingsUser(userID);
-        ArrayList<Integer> itm = new ArrayList<Integer>();
-        ArrayList<Double> rat = new ArrayList<Double>();
-        Iterator<Pair<Integer, Double>> it = usrRats.iterator();
-        
-        while (it.hasNext()) {
-            Pair<Integer, Double> p = it.next();
-            itm.add(p.getFirst());
-            rat.add(p.getSecond());
-        }
-        trainUser(userID, itm, rat, nIts);
+        data.getRatingsUser(userID, ratingsBuffer);
+        trainUser(userID, ratingsBuffer, nIts);
     }
     
     public void trainUser(int userID, List<Integer> itm, List<Double> rat) {
-        userFeature.put(userID, trainUserFeats(itm, rat, nIterations));
+        trainUser(userID, itm, rat, nIterations);
     }
     
     public void trainItem(int itemID) {
-        SparseVector itmRats = data.getRatingsItem(itemID);
-        ArrayList<Integer> usr = new ArrayList<Integer>();
-        ArrayList<Double> rat = new ArrayList<Double>();
-        Iterator<Pair<Integer, Double>> it = itmRats.iterator();
-        
-        while (it.hasNext()) {
-            Pair<Integer, Double> p = it.next();
-            usr.add(p.getFirst());
-            rat.add(p.getSecond());
-        }
-        trainItem(itemID, usr, rat);
+        trainItem(itemID, nIterations);
     }
     
     public void trainItem(int itemID, int nIts) {
-        SparseVector itmRats = data.getRatingsItem(itemID);
-        ArrayList<Integer> usr = new ArrayList<Integer>();
-        ArrayList<Double> rat = new ArrayList<Double>();
-        Iterator<Pair<Integer, Double>> it = itmRats.iterator();
-        
-        while (it.hasNext()) {
-            Pair<Integer, Double> p = it.next();
-            usr.add(p.getFirst());
-            rat.add(p.getSecond());
-        }
-        trainItem(itemID, usr, rat, nIts);
+        data.getRatingsItem(itemID, ratingsBuffer);
+        trainItem(itemID, ratingsBuffer, nIts);
     }
     
     public void trainUser(int userID) {
-        SparseVector usrRats = data.getRatingsUser(userID);
-        ArrayList<Integer> itm = new ArrayList<Integer>();
-        ArrayList<Double> rat = new ArrayList<Double>();
-        Iterator<Pair<Integer, Double>> it = usrRats.iterator();
-        
-        while (it.hasNext()) {
-            Pair<Integer, Double> p = it.next();
-            itm.add(p.getFirst());
-            rat.add(p.getSecond());
-        }
-        trainUser(userID, itm, rat);
+        trainUser(userID, nIterations);
     }
     
     public void trainItem(int itemID, List<Integer> usr, List<Double> rat) {
-        itemFeature.put(itemID, trainItemFeats(itemID, usr, rat, nIterations));
+        trainItem(itemID, usr, rat, nIterations);
     }
     
     public void trainItem(int itemID, List<Integer> usr, List<Double> rat, int nIts) {
-        itemFeature.put(itemID, trainItemFeats(itemID, usr, rat, nIts));
+        ratingsBuffer.clear();
+        ratingsBuffer.addAll(usr, rat);
+        trainItem(itemID, ratingsBuffer, nIts);
     }
     
     public void train() {
-        userFeature.clear();
-        itemFeature.clear();
+        userRow.clear();
+        itemRow.clear();
+        nUserRows = 0;
+        nItemRows = 0;
         
         int n = data.getNumRatings();
         
         Iterator<Integer> it = data.getUsers().iterator();
         while (it.hasNext()) {
-            float[] feats = new float[nFeatures];
-            resetFeatures(feats, true);
-            userFeature.put(it.next(), feats);
+            int offset = addUserRow(it.next());
+            resetFeatures(userFeature, offset, true);
         }
         
         it = data.getItems().iterator();
         while (it.hasNext()) {
-            float[] feats = new float[nFeatures];
-            resetFeatures(feats, false);
-            itemFeature.put(it.next(), feats);
+            int offset = addItemRow(it.next());
+            resetFeatures(itemFeature, offset, false);
         }
 
-        int exit = 0;
-        double lastRMSE = 1e20;
-        
-        int count = 0;
+        // Split the ratings once into flat training and test arrays
         int trainDiv = Math.max(20, n/1000000);
-        ArrayList<Rating> ratTest = new ArrayList<Rating>(n/trainDiv);
-        do {
-            long start = System.currentTimeMillis();
-            Iterator<Rating> ratIt = data.ratingIterator();
-            int idx = 0;
-            
-            while (ratIt.hasNext()) {
-                Rating rat = ratIt.next();
+        int[] testUser = new int[n/trainDiv + 1];
+        int[] testItem = new int[testUser.length];
+        double[] testRating = new double[testUser.length];
+        int[] trainUser = new int[n];
+        int[] trainItem = new int[n];
+        double[] trainRating = new double[n];
+        int nTest = 0;
+        int nTrain = 0;
+        int idx = 0;
+        for (int u = 0; u < nUserRows; ++u) {
+            int userID = userRowID[u];
+            data.getRatingsUser(userID, ratingsBuffer);
+            int[] itemOffsets = offsets(ratingsBuffer, true);
+            for (int i = 0; i < ratingsBuffer.size; ++i) {
                 if (idx%trainDiv == 0) {
-                    if (count == 0) ratTest.add(rat);
-                }
-                else {
-                    int userID = rat.userID;
-                    int itemID = rat.itemID;
-                    double rating = rat.rating;
-                    float[] userFeats = userFeature.get(userID);
-                    float[] itemFeats = itemFeature.get(itemID);
-                    
-                    double pred = predictRating(userFeats, itemFeats);
-                    double err = rating - pred;
-                    
-                    itemFeats[0] += lRate*(err*userFeats[0] - rFactor*itemFeats[0]);
-                    userFeats[1] += lRate*(err*itemFeats[1] - rFactor*userFeats[1]);
-                    for (int j = 2; j < nFeatures; ++j) {
-                        double uv = userFeats[j];
-                        userFeats[j] += lRate*(err*itemFeats[j] - rFactor*userFeats[j]);
-                        itemFeats[j] += lRate*(err*uv - rFactor*itemFeats[j]);
+                    if (nTest < testUser.length) {
+                        testUser[nTest] = userID;
+                        testItem[nTest] = ratingsBuffer.ids[i];
+                        testRating[nTest] = ratingsBuffer.ratings[i];
+                        ++nTest;
                     }
                 }
+                else if (nTrain < n) {
+                    trainUser[nTrain] = u*nFeatures;
+                    trainItem[nTrain] = itemOffsets[i];
+                    trainRating[nTrain] = ratingsBuffer.ratings[i];
+                    ++nTrain;
+                }
                 ++idx;
             }
-            int nTest = ratTest.size();
+        }
+        
+        int threads = numThreads;
+        if (threads == -1)
+            threads = Runtime.getRuntime().availableProcessors();
+        threads = Math.min(threads, Math.max(1, nTrain));
+        ExecutorService executor = null;
+        List<Callable<Integer>> tasks = null;
+        int[] order = null;
+        int[] bucketStart = null;
+        if (threads > 1) {
+            executor = Executors.newFixedThreadPool(threads);
+            tasks = new ArrayList<Callable<Integer>>(threads);
+            if (striped) {
+                // Group the ratings by (user block, item block), keeping
+                // their relative order inside each bucket
+                bucketStart = new int[threads*threads + 1];
+                for (int i = 0; i < nTrain; ++i)
+                    ++bucketStart[bucketOf(trainUser[i], trainItem[i], threads) + 1];
+                for (int b = 0; b < threads*threads; ++b)
+                    bucketStart[b + 1] += bucketStart[b];
+                int[] next = Arrays.copyOf(bucketStart, threads*threads);
+                order = new int[nTrain];
+                for (int i = 0; i < nTrain; ++i)
+                    order[next[bucketOf(trainUser[i], trainItem[i], threads)]++] = i;
+            }
+        }
 
-            double sum = 0;
-            for (int i = 0; i < nTest; ++i) {
-                int userID = ratTest.get(i).userID;
-                int itemID = ratTest.get(i).itemID;
-                double rating = ratTest.get(i).rating;
-                double pred = predictRating(userID, itemID);
-                sum += Math.pow(rating - pred, 2);
+        int exit = 0;
+        double lastRMSE = 1e20;
+        try {
+            do {
+                long start = System.currentTimeMillis();
+                
+                if (executor == null) {
+                    for (int i = 0; i < nTrain; ++i)
+                        sgdStep(trainUser[i], trainItem[i], trainRating[i]);
+                }
+                else if (striped) {
+                    // In every sub-epoch, worker p owns user block p and item
+                    // block (p + s) % threads, so no two workers share a row
+                    for (int s = 0; s < threads; ++s) {
+                        tasks.clear();
+                        for (int p = 0; p < threads; ++p) {
+                            int bucket = p*threads + (p + s)%threads;
+                            tasks.add(new SGDTask(trainUser, trainItem, trainRating,
+                                    order, bucketStart[bucket], bucketStart[bucket + 1]));
+                        }
+                        invokeAll(executor, tasks);
+                    }
+                }
+                else {
+                    // Hogwild: disjoint shards of the ratings, updating the
+                    // shared feature arrays without any locking
+                    tasks.clear();
+                    for (int p = 0; p < threads; ++p)
+                        tasks.add(new SGDTask(trainUser, trainItem, trainRating, null,
+                                (int)((long)nTrain*p/threads), (int)((long)nTrain*(p + 1)/threads)));
+                    invokeAll(executor, tasks);
+                }
+                numTrainedRatings += nTrain;
+
+                double sum = 0;
+                for (int i = 0; i < nTest; ++i) {
+                    double pred = predictRating(testUser[i], testItem[i]);
+                    sum += Math.pow(testRating[i] - pred, 2);
+                }
+                
+                double curRMSE = Math.sqrt(sum/(double)nTest);
+                System.out.println(curRMSE + " " + (System.currentTimeMillis() - start)/1000);
+                if (curRMSE + 0.0001 >= lastRMSE) {
+                    ++exit;
+                }
+                lastRMSE = curRMSE;
             }
-            
-            double curRMSE = Math.sqrt(sum/(double)nTest);
-            System.out.println(curRMSE + " " + (System.currentTimeMillis() - start)/1000);
-            if (curRMSE + 0.0001 >= lastRMSE) {
-                ++exit;
+            while (exit < 1);
+        }
+        finally {
+            if (executor != null)
+                executor.shutdown();
+        }
+    }
+    
+    private int bucketOf(int userOffset, int itemOffset, int threads) {
+        return ((userOffset/nFeatures)%threads)*threads + (itemOffset/nFeatures)%threads;
+    }
+    
+    private static void invokeAll(ExecutorService executor, List<Callable<Integer>> tasks) {
+        try {
+            for (Future<Integer> f : executor.invokeAll(tasks))
+                f.get();
+        } catch (InterruptedException ex) {
+            throw new RuntimeException("Could not call invokeAll() on training threads.");
+        } catch (ExecutionException ex) {
+            throw new RuntimeException(ex.getCause());
+        }
+    }
+    
+    /**
+     * One stochastic gradient descent update of the features of a user and
+     * an item, given by their offsets in the feature arrays.
+     */
+    protected void sgdStep(int userOffset, int itemOffset, double rating) {
+        float[] userFeats = userFeature;
+        float[] itemFeats = itemFeature;
+        double pred = predictRating(userFeats, userOffset, itemFeats, itemOffset);
+        double err = rating - pred;
+        
+        itemFeats[itemOffset] += lRate*(err*userFeats[userOffset] - rFactor*itemFeats[itemOffset]);
+        userFeats[userOffset + 1] += lRate*(err*itemFeats[itemOffset + 1] - rFactor*userFeats[userOffset + 1]);
+        for (int j = 2; j < nFeatures; ++j) {
+            double uv = userFeats[userOffset + j];
+            userFeats[userOffset + j] += lRate*(err*itemFeats[itemOffset + j] - rFactor*userFeats[userOffset + j]);
+            itemFeats[itemOffset + j] += lRate*(err*uv - rFactor*itemFeats[itemOffset + j]);
+        }
+    }
+    
+    /**
+     * Runs {@link #sgdStep} over a range of the training ratings, either
+     * directly or through a permutation of their indices.
+     */
+    protected class SGDTask implements Callable<Integer> {
+        private final int[] trainUser;
+        private final int[] trainItem;
+        private final double[] trainRating;
+        private final int[] order;
+        private final int from;
+        private final int to;
+        
+        public SGDTask(int[] trainUser, int[] trainItem, double[] trainRating,
+                int[] order, int from, int to) {
+            this.trainUser = trainUser;
+            this.trainItem = trainItem;
+            this.trainRating = trainRating;
+            this.order = order;
+            this.from = from;
+            this.to = to;
+        }
+        
+        @Override
+        public Integer call() {
+            for (int k = from; k < to; ++k) {
+                int i = (order != null ? order[k] : k);
+                sgdStep(trainUser[i], trainItem[i], trainRating[i]);
             }
-            lastRMSE = curRMSE;
-            ++count;
+            return to - from;
         }
-        while (exit < 1);
     }
     
+    /**
+     * Returns a copy of the features of the user, or null if the user has
+     * no features.
+     */
     public float[] getUserFeatures(int userID) {
-        return userFeature.get(userID);
+        int offset = userOffset(userID);
+        return (offset >= 0 ? Arrays.copyOfRange(userFeature, offset, offset + nFeatures) : null);
     }
 
+    /**
+     * Returns a copy of the features of the item, or null if the item has
+     * no features.
+     */
     public float[] getItemFeatures(int itemID) {
-        return itemFeature.get(itemID);
+        int offset = itemOffset(itemID);
+        return (offset >= 0 ? Arrays.copyOfRange(itemFeature, offset, offset + nFeatures) : null);
     }
 
     public int getNumFeatures() {
@@ -360,12 +614,28 @@ public class BRISMFPredictor implements Updatable {
 
     @Override
     public void updateRemoveUser(int userID) {
-        userFeature.remove(userID);
+        int row = userRow.remove(userID);
+        if (row >= 0) {
+            int last = --nUserRows;
+            if (row != last) {
+                userRowID[row] = userRowID[last];
+                System.arraycopy(userFeature, last*nFeatures, userFeature, row*nFeatures, nFeatures);
+                userRow.put(userRowID[row], row);
+            }
+        }
     }
 
     @Override
     public void updateRemoveItem(int itemID) {
-        itemFeature.remove(itemID);
+        int row = itemRow.remove(itemID);
+        if (row >= 0) {
+            int last = --nItemRows;
+            if (row != last) {
+                itemRowID[row] = itemRowID[last];
+                System.arraycopy(itemFeature, last*nFeatures, itemFeature, row*nFeatures, nFeatures);
+                itemRow.put(itemRowID[row], row);
+            }
+        }
     }
     
     //We retrain the user/item separately, depending on a probability
@@ -379,50 +649,17 @@ public class BRISMFPredictor implements Updatable {
         double prob2 = Math.pow(0.99, nItm);
 
         if (nUsr < 5 || rnd.nextDouble() < prob1) {
-            SparseVector usrRats = data.getRatingsUser(userID);
-            ArrayList<Integer> itm = new ArrayList<Integer>();
-            ArrayList<Double> rat = new ArrayList<Double>();
-            
             //Train user
-            boolean found = false;
-            Iterator<Pair<Integer, Double>> it = usrRats.iterator();
-            while (it.hasNext()) {
-                Pair<Integer, Double> p = it.next();
-                itm.add(p.getFirst());
-                if (p.getFirst() == itemID) {
-                    found = true;
-                    rat.add(rating);
-                }
-                else rat.add(p.getSecond());
-            }
-            if (!found) {
-                itm.add(itemID);
-                rat.add(rating);
-            }
-            trainUser(userID, itm, rat);
+            data.getRatingsUser(userID, ratingsBuffer);
+            ratingsBuffer.set(itemID, rating);
+            trainUser(userID, ratingsBuffer, nIterations);
         }
         
         if (nItm < 5 || rnd.nextDouble() < prob2) {
-            SparseVector itmRats = data.getRatingsItem(itemID);
             //Train item
-            Iterator<Pair<Integer, Double>> it = itmRats.iterator();
-            boolean found = false;
-            ArrayList<Integer> usr = new ArrayList<Integer>();
-            ArrayList<Double> rat = new ArrayList<Double>();
-            while (it.hasNext()) {
-                Pair<Integer, Double> p = it.next();
-                usr.add(p.getFirst());
-                if (p.getFirst() == userID) {
-                    found = true;
-                    rat.add(rating);
-                }
-                else rat.add(p.getSecond());
-            }
-            if (!found) {
-                usr.add(itemID);
-                rat.add(rating);
-            }
-            trainItem(itemID, usr, rat);
+            data.getRatingsItem(itemID, ratingsBuffer);
+            ratingsBuffer.set(userID, rating);
+            trainItem(itemID, ratingsBuffer, nIterations);
         }
     }
 
@@ -0,0 +1,177 @@
+/*
+ *    IntIntHashMap.java
+ *    Copyright (C) 2018 University of Waikato, Hamilton, New Zealand
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ *
+ */
+
+package moa.recommender.rc.utils;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from int keys to int values. Collisions are
+ * resolved by linear probing and removals use backward shift deletion, so
+ * no tombstones are left behind. Neither keys nor values are boxed, which
+ * makes it suitable for mapping external user/item identifiers to dense
+ * row indices.
+ */
+public class IntIntHashMap implements Serializable {
+
+    private static final long serialVersionUID = -2317592283371846551L;
+
+    /** Value returned by {@link #get(int)} for keys that are not mapped. */
+    public static final int NO_VALUE = -1;
+
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private int[] keys;
+    private int[] values;
+    private boolean[] used;
+    private int size = 0;
+    private int mask;
+    private int threshold;
+
+    public IntIntHashMap() {
+        this(16);
+    }
+
+    public IntIntHashMap(int expectedSize) {
+        int capacity = 2;
+        while (capacity * LOAD_FACTOR < expectedSize)
+            capacity <<= 1;
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+        threshold = (int)(capacity * LOAD_FACTOR);
+    }
+
+    private int slot(int key) {
+        return Hash.hashCode(key) & mask;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(int key) {
+        return indexOf(key) >= 0;
+    }
+
+    private int indexOf(int key) {
+        int pos = slot(key);
+        while (used[pos]) {
+            if (keys[pos] == key)
+                return pos;
+            pos = (pos + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the value mapped to the key, or {@link #NO_VALUE} if there is
+     * none.
+     */
+    public int get(int key) {
+        int pos = slot(key);
+        while (used[pos]) {
+            if (keys[pos] == key)
+                return values[pos];
+            pos = (pos + 1) & mask;
+        }
+        return NO_VALUE;
+    }
+
+    /**
+     * Maps the key to the value, returning the previous value or
+     * {@link #NO_VALUE}.
+     */
+    public int put(int key, int value) {
+        int pos = slot(key);
+        while (used[pos]) {
+            if (keys[pos] == key) {
+                int old = values[pos];
+                values[pos] = value;
+                return old;
+            }
+            pos = (pos + 1) & mask;
+        }
+        used[pos] = true;
+        keys[pos] = key;
+        values[pos] = value;
+        if (++size > threshold)
+            rehash(keys.length << 1);
+        return NO_VALUE;
+    }
+
+    /**
+     * Removes the key, returning its value or {@link #NO_VALUE}.
+     */
+    public int remove(int key) {
+        int pos = indexOf(key);
+        if (pos < 0)
+            return NO_VALUE;
+        int old = values[pos];
+        // Shift back the entries of the probe sequence that follows the hole
+        int last = pos;
+        pos = (pos + 1) & mask;
+        while (used[pos]) {
+            int home = slot(keys[pos]);
+            boolean movable = (last <= pos) ? (home <= last || home > pos)
+                                            : (home <= last && home > pos);
+            if (movable) {
+                keys[last] = keys[pos];
+                values[last] = values[pos];
+                last = pos;
+            }
+            pos = (pos + 1) & mask;
+        }
+        used[last] = false;
+        --size;
+        return old;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        boolean[] oldUsed = used;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; ++i) {
+            if (oldUsed[i]) {
+                int pos = slot(oldKeys[i]);
+                while (used[pos])
+                    pos = (pos + 1) & mask;
+                used[pos] = true;
+                keys[pos] = oldKeys[i];
+                values[pos] = oldValues[i];
+            }
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(used, false);
+        size = 0;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ *    RatingsBuffer.java
+ *    Copyright (C) 2018 University of Waikato, Hamilton, New Zealand
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ *
+ */
+
+package moa.recommender.rc.utils;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Reusable pair of primitive arrays holding the ratings of one user (ids are
+ * items) or one item (ids are users). Buffers only grow, so filling the same
+ * instance over and over does not allocate once it has reached the size of
+ * the largest row.
+ */
+public class RatingsBuffer implements Serializable {
+
+    private static final long serialVersionUID = 4185011383405722690L;
+
+    public int[] ids;
+    public double[] ratings;
+    public int size = 0;
+
+    public RatingsBuffer() {
+        this(16);
+    }
+
+    public RatingsBuffer(int capacity) {
+        ids = new int[Math.max(capacity, 1)];
+        ratings = new double[ids.length];
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public void ensureCapacity(int capacity) {
+        if (capacity > ids.length) {
+            int newCapacity = Math.max(capacity, ids.length << 1);
+            int[] newIds = new int[newCapacity];
+            double[] newRatings = new double[newCapacity];
+            System.arraycopy(ids, 0, newIds, 0, size);
+            System.arraycopy(ratings, 0, newRatings, 0, size);
+            ids = newIds;
+            ratings = newRatings;
+        }
+    }
+
+    public void add(int id, double rating) {
+        if (size == ids.length)
+            ensureCapacity(size + 1);
+        ids[size] = id;
+        ratings[size] = rating;
+        ++size;
+    }
+
+    /**
+     * Sets the rating for the given id, appending it if not yet present.
+     */
+    public void set(int id, double rating) {
+        for (int i = 0; i < size; ++i) {
+            if (ids[i] == id) {
+                ratings[i] = rating;
+                return;
+            }
+        }
+        add(id, rating);
+    }
+
+    public void addAll(List<Integer> ids, List<Double> ratings) {
+        int n = ids.size();
+        ensureCapacity(size + n);
+        for (int i = 0; i < n; ++i)
+            add(ids.get(i), ratings.get(i));
+    }
+}
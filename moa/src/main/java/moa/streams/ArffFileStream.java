@@ -24,11 +24,19 @@ import com.github.javacliparser.IntOption;
 import com.yahoo.labs.samoa.instances.Instances;
 import com.yahoo.labs.samoa.instances.InstancesHeader;
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
 import java.io.FileInputStream;
+import java.io.FilterReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Reader;
+import java.io.SequenceInputStream;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 
 import moa.core.InputStreamProgressMonitor;
@@ -42,6 +50,12 @@ import moa.tasks.TaskMonitor;
 /**
  * Stream reader of ARFF files.
  *
+ * <p>When serialized, the stream saves the byte offset of the line it is
+ * reading, and a deserialized stream reopens the file and seeks to that offset,
+ * so that it continues with the same instance. If the offset is not known,
+ * because the file is not in UTF-8 or a single byte encoding, the instances
+ * already read are read again and skipped.</p>
+ *
  * @author Richard Kirkby (rkirkby@cs.waikato.ac.nz)
  * @version $Revision: 7 $
  */
@@ -64,9 +78,9 @@ public class ArffFileStream extends AbstractOptionHandler implements
             "Class index of data. 0 for none or -1 for last attribute in file.",
             -1, -1, Integer.MAX_VALUE);
 
-    protected Instances instances;
+    protected transient Instances instances;
 
-    protected Reader fileReader;
+    protected transient Reader fileReader;
 
     protected boolean hitEndOfFile;
 
@@ -74,7 +88,12 @@ public class ArffFileStream extends AbstractOptionHandler implements
 
     protected int numInstancesRead;
 
-    protected InputStreamProgressMonitor fileProgressMonitor;
+    protected transient InputStreamProgressMonitor fileProgressMonitor;
+
+    protected transient LineOffsetReader lineOffsets;
+
+    /** Byte offset to resume reading from, saved when serialized. */
+    protected long resumeOffset = -1;
 
     public ArffFileStream() {
     }
@@ -125,21 +144,7 @@ public class ArffFileStream extends AbstractOptionHandler implements
     @Override
     public void restart() {
         try {
-            if (this.fileReader != null) {
-                this.fileReader.close();
-            }
-            InputStream fileStream = new FileInputStream(this.arffFileOption.getFile());
-            this.fileProgressMonitor = new InputStreamProgressMonitor(
-                    fileStream);
-            this.fileReader = new BufferedReader(new InputStreamReader(
-                    this.fileProgressMonitor));
-            int classIndex = this.classIndexOption.getValue();
-            this.instances = new Instances(this.fileReader, 1, classIndex);
-            if (classIndex < 0) {
-		this.instances.setClassIndex(this.instances.numAttributes() - 1);
-            } else if (this.classIndexOption.getValue() > 0) {
-                this.instances.setClassIndex(this.classIndexOption.getValue() - 1);
-				}
+            open(-1);
             this.numInstancesRead = 0;
             this.lastInstanceRead = null;
             this.hitEndOfFile = !readNextInstanceFromFile();
@@ -149,6 +154,112 @@ public class ArffFileStream extends AbstractOptionHandler implements
         this.clusterEvents = new ArrayList<ClusterEvent>();
     }
 
+    /**
+     * Opens the file and reads its header. The data is read from the given
+     * byte offset of the file on, which must be the start of a line, or from
+     * the beginning if the offset is negative.
+     */
+    protected void open(long dataOffset) throws IOException {
+        if (this.fileReader != null) {
+            this.fileReader.close();
+        }
+        File file = this.arffFileOption.getFile();
+        Charset charset = Charset.defaultCharset();
+        InputStream fileStream = new FileInputStream(file);
+        this.fileProgressMonitor = new InputStreamProgressMonitor(
+                fileStream);
+        InputStream dataStream = this.fileProgressMonitor;
+        long headerLength = -1;
+        if (dataOffset >= 0) {
+            byte[] header = readHeader(file, charset);
+            // Seeks, and counts the bytes skipped as read
+            this.fileProgressMonitor.skip(dataOffset);
+            dataStream = new SequenceInputStream(new ByteArrayInputStream(header),
+                    this.fileProgressMonitor);
+            headerLength = header.length;
+        }
+        this.lineOffsets = new LineOffsetReader(new BufferedReader(new InputStreamReader(
+                dataStream, charset)), charset, headerLength, dataOffset);
+        this.fileReader = this.lineOffsets;
+        int classIndex = this.classIndexOption.getValue();
+        this.instances = new Instances(this.fileReader, 1, classIndex);
+        if (classIndex < 0) {
+            this.instances.setClassIndex(this.instances.numAttributes() - 1);
+        } else if (this.classIndexOption.getValue() > 0) {
+            this.instances.setClassIndex(this.classIndexOption.getValue() - 1);
+        }
+    }
+
+    /**
+     * Reads the bytes of the header of the file, up to the line where the
+     * data starts.
+     */
+    protected byte[] readHeader(File file, Charset charset) throws IOException {
+        LineOffsetReader reader = new LineOffsetReader(new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), charset)), charset, -1, -1);
+        long dataStart;
+        try {
+            Instances header = new Instances(reader, 1, -1);
+            dataStart = reader.getLineStart(header.getNextTokenLine());
+        } finally {
+            reader.close();
+        }
+        if (dataStart < 0) {
+            throw new IOException("Could not find the data section of " + file);
+        }
+        byte[] bytes = new byte[(int) dataStart];
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            in.readFully(bytes);
+        } finally {
+            in.close();
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the byte offset of the line the next instance is parsed from,
+     * or -1 if it is not known.
+     */
+    protected long getResumeOffset() {
+        if (this.hitEndOfFile || this.lineOffsets == null) {
+            return -1;
+        }
+        int line = this.instances.getNextTokenLine();
+        if (line < 0) {
+            // Only the instance already read is left
+            return this.lineOffsets.getOffset();
+        }
+        return this.lineOffsets.getLineStart(line);
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        this.resumeOffset = getResumeOffset();
+        out.defaultWriteObject();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException,
+            ClassNotFoundException {
+        in.defaultReadObject();
+        if (this.lastInstanceRead == null && !this.hitEndOfFile) {
+            // Never opened
+            return;
+        }
+        if (this.hitEndOfFile) {
+            open(-1);
+            this.fileReader.close();
+            this.fileReader = null;
+        } else if (this.resumeOffset >= 0) {
+            open(this.resumeOffset);
+        } else {
+            int instancesToSkip = this.numInstancesRead;
+            restart();
+            while (this.numInstancesRead < instancesToSkip && !this.hitEndOfFile) {
+                this.hitEndOfFile = !readNextInstanceFromFile();
+            }
+        }
+    }
+
     protected boolean readNextInstanceFromFile() {
         try {
             if (this.instances.readInstance(this.fileReader)) {
@@ -180,4 +291,114 @@ public class ArffFileStream extends AbstractOptionHandler implements
         //This is used only in the CD Tab
         return this.clusterEvents;
     }
+
+    /**
+     * Reader that keeps the byte offsets where the most recent lines start.
+     * The parser buffers the characters it reads, so it can be behind the
+     * reader by up to a buffer of characters, and therefore lines.
+     */
+    protected static class LineOffsetReader extends FilterReader {
+
+        protected static final int LINES_KEPT = 1 << 14;
+
+        protected final long[] lineStarts = new long[LINES_KEPT];
+
+        /** Bytes per character, or 0 for UTF-8, or -1 if unknown. */
+        protected final int bytesPerChar;
+
+        protected final long jumpFrom;
+
+        protected final long jumpTo;
+
+        protected int line = 1;
+
+        protected long offset;
+
+        protected boolean lastWasCR;
+
+        /**
+         * Creates a reader of a file whose bytes from jumpFrom on are read
+         * from offset jumpTo of the file, if jumpFrom is not negative.
+         */
+        public LineOffsetReader(Reader in, Charset charset, long jumpFrom, long jumpTo) {
+            super(in);
+            if (charset.name().equals("UTF-8")) {
+                this.bytesPerChar = 0;
+            } else if (charset.newEncoder().maxBytesPerChar() == 1.0f) {
+                this.bytesPerChar = 1;
+            } else {
+                this.bytesPerChar = -1;
+            }
+            this.jumpFrom = jumpFrom;
+            this.jumpTo = jumpTo;
+        }
+
+        /**
+         * Returns the byte offset where a line starts, or -1 if it is not
+         * known.
+         */
+        public long getLineStart(int lineNumber) {
+            if (this.bytesPerChar < 0 || lineNumber < 1 || lineNumber > this.line
+                    || this.line - lineNumber >= LINES_KEPT) {
+                return -1;
+            }
+            return this.lineStarts[lineNumber & (LINES_KEPT - 1)];
+        }
+
+        /**
+         * Returns the byte offset of the next character, or -1 if it is not
+         * known.
+         */
+        public long getOffset() {
+            return (this.bytesPerChar < 0) ? -1 : this.offset;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int c = this.in.read();
+            if (c >= 0) {
+                count((char) c);
+            }
+            return c;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            int n = this.in.read(cbuf, off, len);
+            for (int i = 0; i < n; i++) {
+                count(cbuf[off + i]);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = 0;
+            while (skipped < n && read() >= 0) {
+                skipped++;
+            }
+            return skipped;
+        }
+
+        // Lines end as for StreamTokenizer, at \n, \r or \r\n
+        private void count(char c) {
+            if (this.bytesPerChar != 0 || c < 0x80) {
+                this.offset++;
+            } else if (c < 0x800 || Character.isSurrogate(c)) {
+                this.offset += 2;
+            } else {
+                this.offset += 3;
+            }
+            if (this.offset == this.jumpFrom) {
+                this.offset = this.jumpTo;
+            }
+            if (c == '\n' && this.lastWasCR) {
+                this.lineStarts[this.line & (LINES_KEPT - 1)] = this.offset;
+            } else if (c == '\n' || c == '\r') {
+                this.line++;
+                this.lineStarts[this.line & (LINES_KEPT - 1)] = this.offset;
+            }
+            this.lastWasCR = (c == '\r');
+        }
+    }
 }
\ No newline at end of file
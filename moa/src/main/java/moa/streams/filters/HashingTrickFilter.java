@@ -0,0 +1,300 @@
+/*
+ *    HashingTrickFilter.java
+ *    Copyright (C) 2018 University of Waikato, Hamilton, New Zealand
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.streams.filters;
+
+import java.util.Arrays;
+
+import moa.core.FastVector;
+import moa.core.InstanceExample;
+import moa.streams.InstanceStream;
+
+import com.github.javacliparser.FlagOption;
+import com.github.javacliparser.IntOption;
+import com.yahoo.labs.samoa.instances.Attribute;
+import com.yahoo.labs.samoa.instances.Instance;
+import com.yahoo.labs.samoa.instances.Instances;
+import com.yahoo.labs.samoa.instances.InstancesHeader;
+import com.yahoo.labs.samoa.instances.SparseInstance;
+
+/**
+ * Filter mapping the attributes of a stream into a fixed number of numeric
+ * attributes with the hashing trick, so nominal attributes with an unbounded
+ * number of values, such as user ids, URLs or tokens, do not make the models
+ * grow with the stream.
+ *
+ * A nominal value is hashed with the name of its attribute, and adds 1 to
+ * the attribute of its hash. A numeric value adds its value to the attribute
+ * of the hash of its attribute name, unless numeric attributes are kept as
+ * they are. Values falling into the same attribute are summed, with a sign
+ * also given by the hash so that collisions cancel out on average. The
+ * filtered instances are sparse, with the class as last attribute.
+ *
+ * The hash is MurmurHash3, and the buffers of the filter are reused from one
+ * instance to the next, so filtering an instance only allocates its arrays.
+ *
+ * See K. Weinberger, A. Dasgupta, J. Langford, A. Smola and J. Attenberg:
+ * Feature Hashing for Large Scale Multitask Learning. In: 26th International
+ * Conference on Machine Learning, 1113-1120, 2009.
+ *
+ * @version $Revision: 1 $
+ */
+public class HashingTrickFilter extends AbstractStreamFilter {
+
+    @Override
+    public String getPurposeString() {
+        return "Maps the attributes of a stream into a fixed number of sparse numeric attributes with the hashing trick.";
+    }
+
+    private static final long serialVersionUID = 1L;
+
+    public IntOption numBucketsOption = new IntOption("numBuckets", 'n',
+            "Number of numeric attributes the attributes are hashed into.",
+            1024, 1, Integer.MAX_VALUE);
+
+    public IntOption hashSeedOption = new IntOption("hashSeed", 'r',
+            "Seed of the hash function.", 1);
+
+    public FlagOption keepNumericOption = new FlagOption("keepNumeric", 'k',
+            "Keep numeric attributes as they are instead of hashing them.");
+
+    public FlagOption unsignedOption = new FlagOption("unsigned", 'u',
+            "Add the values to their attribute without a sign given by the hash.");
+
+    protected InstancesHeader streamHeader;
+
+    /** Hash of the name of every input attribute, seed of its values */
+    protected int[] attributeHashes;
+
+    /** Output index of every kept numeric attribute, -1 for the others */
+    protected int[] keptAttributes;
+
+    /** Input indices of the nominal attributes */
+    protected int[] nominalAttributes;
+
+    protected boolean[] isNominal;
+
+    protected int numKeptAttributes;
+
+    protected double[] keptValues;
+
+    protected int[] keptIndices;
+
+    /** Sums of the values hashed into every attribute by an instance */
+    protected double[] bucketValues;
+
+    protected boolean[] bucketTouched;
+
+    protected int[] touchedBuckets;
+
+    protected int numTouchedBuckets;
+
+    @Override
+    protected void restartImpl() {
+        this.streamHeader = null;
+    }
+
+    @Override
+    public InstancesHeader getHeader() {
+        if (this.streamHeader == null) {
+            initialize(this.inputStream.getHeader());
+        }
+        return this.streamHeader;
+    }
+
+    protected void initialize(InstancesHeader inputHeader) {
+        int numBuckets = this.numBucketsOption.getValue();
+        int seed = this.hashSeedOption.getValue();
+        boolean keepNumeric = this.keepNumericOption.isSet();
+        int classIndex = inputHeader.classIndex();
+        int numAttributes = inputHeader.numAttributes();
+
+        FastVector attributes = new FastVector();
+        this.attributeHashes = new int[numAttributes];
+        this.keptAttributes = new int[numAttributes];
+        this.isNominal = new boolean[numAttributes];
+        int[] nominal = new int[numAttributes];
+        int numNominal = 0;
+        for (int j = 0; j < numAttributes; j++) {
+            Attribute attribute = inputHeader.attribute(j);
+            this.attributeHashes[j] = murmurHash3(attribute.name(), seed);
+            this.keptAttributes[j] = -1;
+            if (j == classIndex) {
+                continue;
+            }
+            if (attribute.isNominal()) {
+                this.isNominal[j] = true;
+                nominal[numNominal++] = j;
+            } else if (keepNumeric) {
+                this.keptAttributes[j] = attributes.size();
+                attributes.addElement(attribute);
+            }
+        }
+        this.nominalAttributes = Arrays.copyOf(nominal, numNominal);
+        this.numKeptAttributes = attributes.size();
+        for (int i = 0; i < numBuckets; i++) {
+            attributes.addElement(new Attribute("hash" + i));
+        }
+        attributes.addElement(inputHeader.classAttribute());
+        this.streamHeader = new InstancesHeader(new Instances(
+                getCLICreationString(InstanceStream.class), attributes, 0));
+        this.streamHeader.setClassIndex(this.streamHeader.numAttributes() - 1);
+
+        this.keptValues = new double[this.numKeptAttributes];
+        this.keptIndices = new int[this.numKeptAttributes];
+        this.bucketValues = new double[numBuckets];
+        this.bucketTouched = new boolean[numBuckets];
+        this.touchedBuckets = new int[numBuckets];
+        this.numTouchedBuckets = 0;
+    }
+
+    @Override
+    public InstanceExample nextInstance() {
+        Instance inst = (Instance) this.inputStream.nextInstance().getData();
+        return new InstanceExample(filterInstance(inst));
+    }
+
+    @Override
+    public Instance filterInstance(Instance inst) {
+        InstancesHeader header = getHeader();
+        int classIndex = inst.classIndex();
+
+        // Numeric values, reading only the values stored by sparse instances
+        int numKept = 0;
+        int n = inst.numValues();
+        for (int p = 0; p < n; p++) {
+            int j = inst.index(p);
+            if (j == classIndex || j >= this.attributeHashes.length
+                    || this.isNominal[j] || inst.isMissingSparse(p)) {
+                continue;
+            }
+            double value = inst.valueSparse(p);
+            if (value == 0.0) {
+                continue;
+            }
+            if (this.keptAttributes[j] >= 0) {
+                this.keptIndices[numKept] = this.keptAttributes[j];
+                this.keptValues[numKept] = value;
+                numKept++;
+            } else {
+                addHashedValue(this.attributeHashes[j], value);
+            }
+        }
+
+        // Nominal values, including the first value omitted by sparse instances
+        for (int j : this.nominalAttributes) {
+            double value = inst.value(j);
+            if (Double.isNaN(value)) {
+                continue;
+            }
+            String nominalValue = inst.attribute(j).value((int) value);
+            addHashedValue(murmurHash3(nominalValue, this.attributeHashes[j]), 1.0);
+        }
+
+        Arrays.sort(this.touchedBuckets, 0, this.numTouchedBuckets);
+        int size = numKept + this.numTouchedBuckets + 1;
+        double[] values = new double[size];
+        int[] indices = new int[size];
+        System.arraycopy(this.keptValues, 0, values, 0, numKept);
+        System.arraycopy(this.keptIndices, 0, indices, 0, numKept);
+        int count = numKept;
+        for (int i = 0; i < this.numTouchedBuckets; i++) {
+            int bucket = this.touchedBuckets[i];
+            double value = this.bucketValues[bucket];
+            this.bucketValues[bucket] = 0.0;
+            this.bucketTouched[bucket] = false;
+            // values cancelled out by their signs are left out
+            if (value != 0.0) {
+                indices[count] = this.numKeptAttributes + bucket;
+                values[count] = value;
+                count++;
+            }
+        }
+        this.numTouchedBuckets = 0;
+        indices[count] = header.numAttributes() - 1;
+        values[count] = inst.classValue();
+        count++;
+        if (count < size) {
+            values = Arrays.copyOf(values, count);
+            indices = Arrays.copyOf(indices, count);
+        }
+
+        Instance filtered = new SparseInstance(inst.weight(), values, indices,
+                header.numAttributes());
+        filtered.setDataset(header);
+        return filtered;
+    }
+
+    /**
+     * Adds a value to the attribute of a hash, with the sign given by the
+     * highest bit of the hash.
+     */
+    protected void addHashedValue(int hash, double value) {
+        int bucket = (hash & 0x7fffffff) % this.bucketValues.length;
+        if (hash < 0 && !this.unsignedOption.isSet()) {
+            value = -value;
+        }
+        if (!this.bucketTouched[bucket]) {
+            this.bucketTouched[bucket] = true;
+            this.touchedBuckets[this.numTouchedBuckets++] = bucket;
+        }
+        this.bucketValues[bucket] += value;
+    }
+
+    /**
+     * Returns the 32 bit MurmurHash3 of the characters of a string.
+     *
+     * @param key the string to hash
+     * @param seed the seed of the hash
+     * @return the hash
+     */
+    public static int murmurHash3(String key, int seed) {
+        final int c1 = 0xcc9e2d51;
+        final int c2 = 0x1b873593;
+        int h = seed;
+        int length = key.length();
+        int i = 0;
+        for (; i + 1 < length; i += 2) {
+            int k = key.charAt(i) | (key.charAt(i + 1) << 16);
+            k *= c1;
+            k = Integer.rotateLeft(k, 15);
+            k *= c2;
+            h ^= k;
+            h = Integer.rotateLeft(h, 13);
+            h = h * 5 + 0xe6546b64;
+        }
+        if (i < length) {
+            int k = key.charAt(i);
+            k *= c1;
+            k = Integer.rotateLeft(k, 15);
+            k *= c2;
+            h ^= k;
+        }
+        h ^= length * 2;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    @Override
+    public void getDescription(StringBuilder sb, int indent) {
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ *    CheckpointWriter.java
+ *    Copyright (C) 2018 University of Waikato, Hamilton, New Zealand
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.tasks;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the checkpoints of a task to a file on a background thread. The task
+ * only serializes the checkpoint into memory, taking a snapshot of its state
+ * that it can go on modifying, and the snapshot is compressed and written
+ * while the task continues. The file is replaced atomically, so it always
+ * holds a complete checkpoint.
+ *
+ * @version $Revision: 1 $
+ */
+public class CheckpointWriter {
+
+    protected final File file;
+
+    protected final ExecutorService executor;
+
+    protected Future<Void> pendingWrite;
+
+    public CheckpointWriter(File file) {
+        this.file = file;
+        this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Checkpoint writer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Takes a snapshot of the checkpoint and queues it to be written. Waits
+     * if the previous checkpoint is still being written.
+     */
+    public void write(EvaluationCheckpoint checkpoint) {
+        final byte[] snapshot;
+        try {
+            snapshot = checkpoint.toByteArray();
+        } catch (IOException ex) {
+            throw new RuntimeException("Unable to take checkpoint.", ex);
+        }
+        waitForPendingWrite();
+        this.pendingWrite = this.executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                writeFile(snapshot);
+                return null;
+            }
+        });
+    }
+
+    protected void writeFile(byte[] snapshot) throws IOException {
+        File tmp = new File(this.file.getPath() + ".tmp");
+        FileOutputStream fileStream = new FileOutputStream(tmp);
+        try {
+            GZIPOutputStream out = new GZIPOutputStream(new BufferedOutputStream(fileStream));
+            out.write(snapshot);
+            out.finish();
+            out.flush();
+            fileStream.getFD().sync();
+        } finally {
+            fileStream.close();
+        }
+        Files.move(tmp.toPath(), this.file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    protected void waitForPendingWrite() {
+        if (this.pendingWrite == null) {
+            return;
+        }
+        try {
+            this.pendingWrite.get();
+        } catch (InterruptedException ex) {
+            throw new RuntimeException("Interrupted while writing checkpoint.");
+        } catch (ExecutionException ex) {
+            throw new RuntimeException("Unable to write checkpoint file: "
+                    + this.file, ex.getCause());
+        } finally {
+            this.pendingWrite = null;
+        }
+    }
+
+    /**
+     * Waits for the last checkpoint to be written and stops the thread.
+     */
+    public void close() {
+        try {
+            waitForPendingWrite();
+        } finally {
+            this.executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ *    ConvertPredictionFile.java
+ *    Copyright (C) 2018 University of Waikato, Hamilton, New Zealand
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.tasks;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+
+import moa.core.ObjectRepository;
+import moa.evaluation.output.BinaryPredictionReader;
+import moa.evaluation.output.CSVPredictionSink;
+
+import com.github.javacliparser.FileOption;
+import com.github.javacliparser.FlagOption;
+
+/**
+ * Task to convert a binary prediction file to CSV. Without timestamps and
+ * votes, the lines are the same the CSV prediction format has.
+ *
+ * @version $Revision: 1 $
+ */
+public class ConvertPredictionFile extends AuxiliarMainTask {
+
+    @Override
+    public String getPurposeString() {
+        return "Converts a binary prediction file to CSV.";
+    }
+
+    private static final long serialVersionUID = 1L;
+
+    public FileOption predictionFileOption = new FileOption("predictionFile", 'p',
+            "Binary prediction file to convert.", null, "pred", false);
+
+    public FileOption csvFileOption = new FileOption("csvFile", 'c',
+            "Destination CSV file.", null, "csv", true);
+
+    public FlagOption timestampsOption = new FlagOption("timestamps", 't',
+            "Add the time of every prediction, in milliseconds since the epoch.");
+
+    public FlagOption votesOption = new FlagOption("votes", 'v',
+            "Add the votes of every prediction.");
+
+    @Override
+    protected Object doMainTask(TaskMonitor monitor, ObjectRepository repository) {
+        File sourceFile = this.predictionFileOption.getFile();
+        File destFile = this.csvFileOption.getFile();
+        if (sourceFile == null || destFile == null) {
+            throw new IllegalArgumentException("No prediction file or no destination file.");
+        }
+        long numWritten = 0;
+        try {
+            BinaryPredictionReader reader = new BinaryPredictionReader(sourceFile);
+            Writer w = new BufferedWriter(new FileWriter(destFile));
+            monitor.setCurrentActivityDescription("Converting predictions to CSV");
+            StringBuilder line = new StringBuilder();
+            while (reader.next()) {
+                line.setLength(0);
+                CSVPredictionSink.appendPrediction(line, reader.predictedClass(), reader.trueClass());
+                if (this.timestampsOption.isSet()) {
+                    line.append(',').append(reader.timestamp());
+                }
+                if (this.votesOption.isSet()) {
+                    for (int i = 0; i < reader.numVotes(); i++) {
+                        line.append(',').append(reader.vote(i));
+                    }
+                }
+                line.append(CSVPredictionSink.LINE_SEPARATOR);
+                w.write(line.toString());
+                numWritten++;
+                if (numWritten % INSTANCES_BETWEEN_MONITOR_UPDATES == 0
+                        && monitor.taskShouldAbort()) {
+                    break;
+                }
+            }
+            w.close();
+            reader.close();
+        } catch (Exception ex) {
+            throw new RuntimeException(
+                    "Failed converting " + sourceFile + " to " + destFile, ex);
+        }
+        return numWritten + " predictions written to CSV file " + destFile;
+    }
+
+    @Override
+    public Class<?> getTaskResultType() {
+        return String.class;
+    }
+}
@@ -22,6 +22,9 @@ package moa.tasks;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import moa.classifiers.Classifier;
 import moa.classifiers.MultiClassClassifier;
@@ -35,6 +38,7 @@ import moa.evaluation.preview.LearningCurve;
 import moa.learners.Learner;
 import moa.options.ClassOption;
 import com.github.javacliparser.FileOption;
+import com.github.javacliparser.FlagOption;
 import com.github.javacliparser.IntOption;
 import moa.streams.ExampleStream;
 import moa.streams.InstanceStream;
@@ -92,6 +96,19 @@ public class EvaluateInterleavedTestThenTrain extends ClassificationMainTask {
     public FileOption dumpFileOption = new FileOption("dumpFile", 'd',
             "File to append intermediate csv reslts to.", null, "csv", true);
 
+    public FileOption checkpointFileOption = new FileOption("checkpointFile", 'k',
+            "File to save checkpoints of the evaluation to.", null, "ckpt", true);
+
+    public IntOption checkpointFrequencyOption = new IntOption("checkpointFrequency", 'y',
+            "How many instances between checkpoints, taken with the next sample of the learning performance.",
+            1000000, 1, Integer.MAX_VALUE);
+
+    public FlagOption resumeOption = new FlagOption("resume", 'z',
+            "Resume the evaluation from the checkpoint file, if it exists.");
+
+    public FlagOption latencyOption = new FlagOption("latency", 'L',
+            "Measure the wall clock latency of every prediction and training, and add its percentiles since the previous sample to the learning curve.");
+
     @Override
     public Class<?> getTaskResultType() {
         return LearningCurve.class;
@@ -113,14 +130,25 @@ public class EvaluateInterleavedTestThenTrain extends ClassificationMainTask {
         ExampleStream stream = (InstanceStream) getPreparedClassOption(this.streamOption);
         
         LearningPerformanceEvaluator evaluator = (LearningPerformanceEvaluator) getPreparedClassOption(this.evaluatorOption);
-        learner.setModelContext(stream.getHeader());
+        LearningCurve learningCurve = new LearningCurve(
+                "learning evaluation instances");
+        File checkpointFile = this.checkpointFileOption.getFile();
+        EvaluationCheckpoint checkpoint = null;
+        if (this.resumeOption.isSet() && checkpointFile != null && checkpointFile.exists()) {
+            checkpoint = EvaluationCheckpoint.read(checkpointFile);
+            learner = checkpoint.learner;
+            evaluator = checkpoint.evaluator;
+            stream = checkpoint.restoreStream(stream);
+            learningCurve = checkpoint.learningCurve;
+            EvaluationCheckpoint.truncate(this.dumpFileOption.getFile(), checkpoint.dumpFileLength);
+        } else {
+            learner.setModelContext(stream.getHeader());
+        }
         int maxInstances = this.instanceLimitOption.getValue();
         long instancesProcessed = 0;
         int maxSeconds = this.timeLimitOption.getValue();
         int secondsElapsed = 0;
         monitor.setCurrentActivity("Evaluating learner...", -1.0);
-        LearningCurve learningCurve = new LearningCurve(
-                "learning evaluation instances");
         File dumpFile = this.dumpFileOption.getFile();
         PrintStream immediateResultStream = null;
         if (dumpFile != null) {
@@ -137,11 +165,30 @@ public class EvaluateInterleavedTestThenTrain extends ClassificationMainTask {
                         "Unable to open immediate result file: " + dumpFile, ex);
             }
         }
-        boolean firstDump = true;
+        boolean firstDump = learningCurve.numEntries() == 0;
         boolean preciseCPUTiming = TimingUtils.enablePreciseTiming();
         long evaluateStartTime = TimingUtils.getNanoCPUTimeOfCurrentThread();
         long lastEvaluateStartTime = evaluateStartTime;
         double RAMHours = 0.0;
+        CheckpointWriter checkpointWriter = null;
+        long lastCheckpoint = 0;
+        if (checkpoint != null) {
+            instancesProcessed = checkpoint.instancesProcessed;
+            RAMHours = checkpoint.RAMHours;
+            evaluateStartTime -= checkpoint.cpuTime;
+            lastCheckpoint = instancesProcessed;
+        }
+        if (checkpointFile != null) {
+            if (checkpoint == null) {
+                checkpoint = new EvaluationCheckpoint();
+            }
+            checkpoint.learner = learner;
+            checkpoint.evaluator = evaluator;
+            checkpoint.stream = stream;
+            checkpoint.learningCurve = learningCurve;
+            checkpointWriter = new CheckpointWriter(checkpointFile);
+        }
+        LatencyRecorder latencies = this.latencyOption.isSet() ? new LatencyRecorder() : null;
         while (stream.hasMoreInstances()
                 && ((maxInstances < 0) || (instancesProcessed < maxInstances))
                 && ((maxSeconds < 0) || (secondsElapsed < maxSeconds))) {
@@ -149,11 +196,21 @@ public class EvaluateInterleavedTestThenTrain extends ClassificationMainTask {
             Example testInst = trainInst; //.copy();
             //int trueClass = (int) trainInst.classValue();
             //testInst.setClassMissing();
+            long latencyStart = latencies != null ? System.nanoTime() : 0L;
             double[] prediction = learner.getVotesForInstance(testInst);
+            if (latencies != null) {
+                latencies.addPredictionLatency(System.nanoTime() - latencyStart);
+            }
             //evaluator.addClassificationAttempt(trueClass, prediction, testInst
             //		.weight());
             evaluator.addResult(testInst, prediction);
-            learner.trainOnInstance(trainInst);
+            if (latencies != null) {
+                latencyStart = System.nanoTime();
+                learner.trainOnInstance(trainInst);
+                latencies.addTrainingLatency(System.nanoTime() - latencyStart);
+            } else {
+                learner.trainOnInstance(trainInst);
+            }
             instancesProcessed++;
             if (instancesProcessed % this.sampleFrequencyOption.getValue() == 0
                   ||  stream.hasMoreInstances() == false) {
@@ -164,7 +221,7 @@ public class EvaluateInterleavedTestThenTrain extends ClassificationMainTask {
                 RAMHoursIncrement *= (timeIncrement / 3600.0); //Hours
                 RAMHours += RAMHoursIncrement;
                 lastEvaluateStartTime = evaluateTime;
-                learningCurve.insertEntry(new LearningEvaluation(
+                LearningEvaluation learningEvaluation = new LearningEvaluation(
                         new Measurement[]{
                             new Measurement(
                             "learning evaluation instances",
@@ -178,7 +235,15 @@ public class EvaluateInterleavedTestThenTrain extends ClassificationMainTask {
                             "model cost (RAM-Hours)",
                             RAMHours)
                         },
-                        evaluator, learner));
+                        evaluator, learner);
+                if (latencies != null) {
+                    List<Measurement> measurements = new ArrayList<Measurement>(
+                            Arrays.asList(learningEvaluation.getMeasurements()));
+                    measurements.addAll(Arrays.asList(latencies.getMeasurements()));
+                    learningEvaluation = new LearningEvaluation(
+                            measurements.toArray(new Measurement[measurements.size()]));
+                }
+                learningCurve.insertEntry(learningEvaluation);
                 if (immediateResultStream != null) {
                     if (firstDump) {
                         immediateResultStream.print("Learner,stream,randomSeed,");
@@ -189,9 +254,22 @@ public class EvaluateInterleavedTestThenTrain extends ClassificationMainTask {
                     immediateResultStream.println(learningCurve.entryToString(learningCurve.numEntries() - 1));
                     immediateResultStream.flush();
                 }
+                if (checkpointWriter != null && instancesProcessed - lastCheckpoint
+                        >= this.checkpointFrequencyOption.getValue()) {
+                    checkpoint.instancesProcessed = instancesProcessed;
+                    checkpoint.instancesRead = instancesProcessed;
+                    checkpoint.cpuTime = evaluateTime - evaluateStartTime;
+                    checkpoint.RAMHours = RAMHours;
+                    checkpoint.dumpFileLength = EvaluationCheckpoint.lengthOf(dumpFile);
+                    checkpointWriter.write(checkpoint);
+                    lastCheckpoint = instancesProcessed;
+                }
             }
             if (instancesProcessed % INSTANCES_BETWEEN_MONITOR_UPDATES == 0) {
                 if (monitor.taskShouldAbort()) {
+                    if (checkpointWriter != null) {
+                        checkpointWriter.close();
+                    }
                     return null;
                 }
                 long estimatedRemainingInstances = stream.estimatedRemainingInstances();
@@ -215,6 +293,9 @@ public class EvaluateInterleavedTestThenTrain extends ClassificationMainTask {
         if (immediateResultStream != null) {
             immediateResultStream.close();
         }
+        if (checkpointWriter != null) {
+            checkpointWriter.close();
+        }
         return learningCurve;
     }
 }
@@ -20,18 +20,19 @@
 package moa.tasks;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.PrintStream;
 import com.github.javacliparser.FileOption;
 import com.github.javacliparser.IntOption;
+import com.github.javacliparser.MultiChoiceOption;
 import moa.classifiers.Classifier;
 import moa.classifiers.MultiClassClassifier;
 import moa.core.Example;
 import moa.core.Measurement;
 import moa.core.ObjectRepository;
-import moa.core.Utils;
 import moa.evaluation.LearningEvaluation;
 import moa.evaluation.LearningPerformanceEvaluator;
+import moa.evaluation.output.BinaryPredictionSink;
+import moa.evaluation.output.CSVPredictionSink;
+import moa.evaluation.output.PredictionSink;
 import moa.evaluation.preview.LearningCurve;
 import moa.learners.Learner;
 import moa.options.ClassOption;
@@ -78,6 +79,13 @@ public class EvaluateModel extends ClassificationMainTask {
     public FileOption outputPredictionFileOption = new FileOption("outputPredictionFile", 'o',
             "File to append output predictions to.", null, "pred", true);
 
+    public MultiChoiceOption outputPredictionFormatOption = new MultiChoiceOption(
+            "outputPredictionFormat", 'P', "Format of the output prediction file.",
+            new String[]{"CSV", "Binary"},
+            new String[]{"Predicted and true class, one line per prediction",
+                "Blocks of timestamps, predicted classes, true classes and votes, see ConvertPredictionFile"},
+            0);
+
     public EvaluateModel() {
     }
 
@@ -106,68 +114,69 @@ public class EvaluateModel extends ClassificationMainTask {
 
         //File for output predictions
         File outputPredictionFile = this.outputPredictionFileOption.getFile();
-        PrintStream outputPredictionResultStream = null;
+        PredictionSink outputPredictionSink = null;
         if (outputPredictionFile != null) {
             try {
-                if (outputPredictionFile.exists()) {
-                    outputPredictionResultStream = new PrintStream(
-                            new FileOutputStream(outputPredictionFile, true), true);
+                if (this.outputPredictionFormatOption.getChosenIndex() == 0) {
+                    outputPredictionSink = new CSVPredictionSink(outputPredictionFile);
                 } else {
-                    outputPredictionResultStream = new PrintStream(
-                            new FileOutputStream(outputPredictionFile), true);
+                    outputPredictionSink = new BinaryPredictionSink(outputPredictionFile);
                 }
             } catch (Exception ex) {
                 throw new RuntimeException(
                         "Unable to open prediction result file: " + outputPredictionFile, ex);
             }
         }
-        while (stream.hasMoreInstances()
-                && ((maxInstances < 0) || (instancesProcessed < maxInstances))) {
-            Example testInst = (Example) stream.nextInstance();//.copy();
-            int trueClass = (int) ((Instance) testInst.getData()).classValue();
-            //testInst.setClassMissing();
-            double[] prediction = model.getVotesForInstance(testInst);
-            //evaluator.addClassificationAttempt(trueClass, prediction, testInst
-            //		.weight());
-            if (outputPredictionFile != null) {
-                outputPredictionResultStream.println(Utils.maxIndex(prediction) + "," +(
-                        ((Instance) testInst.getData()).classIsMissing() == true ? " ? " : trueClass));
-            }
-            evaluator.addResult(testInst, prediction);
-            instancesProcessed++;
-
-            if (instancesProcessed % this.sampleFrequencyOption.getValue() == 0
-                    || stream.hasMoreInstances() == false) {
-	            learningCurve.insertEntry(new LearningEvaluation(
-	                    new Measurement[]{
-	                        new Measurement(
-	                        "learning evaluation instances",
-	                        instancesProcessed)
-	                    },
-	                    evaluator, model));
-            }
-            if (instancesProcessed % INSTANCES_BETWEEN_MONITOR_UPDATES == 0) {
-                if (monitor.taskShouldAbort()) {
-                    return null;
+        try {
+            while (stream.hasMoreInstances()
+                    && ((maxInstances < 0) || (instancesProcessed < maxInstances))) {
+                Example testInst = (Example) stream.nextInstance();//.copy();
+                //testInst.setClassMissing();
+                double[] prediction = model.getVotesForInstance(testInst);
+                //evaluator.addClassificationAttempt(trueClass, prediction, testInst
+                //		.weight());
+                if (outputPredictionSink != null) {
+                    Instance instance = (Instance) testInst.getData();
+                    outputPredictionSink.addPrediction(prediction,
+                            instance.classIsMissing() ? Double.NaN : instance.classValue());
                 }
-                long estimatedRemainingInstances = stream.estimatedRemainingInstances();
-                if (maxInstances > 0) {
-                    long maxRemaining = maxInstances - instancesProcessed;
-                    if ((estimatedRemainingInstances < 0)
-                            || (maxRemaining < estimatedRemainingInstances)) {
-                        estimatedRemainingInstances = maxRemaining;
-                    }
+                evaluator.addResult(testInst, prediction);
+                instancesProcessed++;
+
+                if (instancesProcessed % this.sampleFrequencyOption.getValue() == 0
+                        || stream.hasMoreInstances() == false) {
+    	            learningCurve.insertEntry(new LearningEvaluation(
+    	                    new Measurement[]{
+    	                        new Measurement(
+    	                        "learning evaluation instances",
+    	                        instancesProcessed)
+    	                    },
+    	                    evaluator, model));
                 }
-                monitor.setCurrentActivityFractionComplete(estimatedRemainingInstances < 0 ? -1.0
-                        : (double) instancesProcessed
-                        / (double) (instancesProcessed + estimatedRemainingInstances));
-                if (monitor.resultPreviewRequested()) {
-                    monitor.setLatestResultPreview(learningCurve.copy());
+                if (instancesProcessed % INSTANCES_BETWEEN_MONITOR_UPDATES == 0) {
+                    if (monitor.taskShouldAbort()) {
+                        return null;
+                    }
+                    long estimatedRemainingInstances = stream.estimatedRemainingInstances();
+                    if (maxInstances > 0) {
+                        long maxRemaining = maxInstances - instancesProcessed;
+                        if ((estimatedRemainingInstances < 0)
+                                || (maxRemaining < estimatedRemainingInstances)) {
+                            estimatedRemainingInstances = maxRemaining;
+                        }
+                    }
+                    monitor.setCurrentActivityFractionComplete(estimatedRemainingInstances < 0 ? -1.0
+                            : (double) instancesProcessed
+                            / (double) (instancesProcessed + estimatedRemainingInstances));
+                    if (monitor.resultPreviewRequested()) {
+                        monitor.setLatestResultPreview(learningCurve.copy());
+                    }
                 }
             }
-        }
-        if (outputPredictionResultStream != null) {
-            outputPredictionResultStream.close();
+        } finally {
+            if (outputPredictionSink != null) {
+                outputPredictionSink.close();
+            }
         }
         return learningCurve;
     }
@@ -19,13 +19,17 @@
  */
 package moa.tasks;
 
+import java.util.Arrays;
 import moa.core.Measurement;
 import moa.core.ObjectRepository;
 import moa.evaluation.LearningEvaluation;
 import moa.evaluation.preview.LearningCurve;
 import moa.options.ClassOption;
+import com.github.javacliparser.FlagOption;
 import com.github.javacliparser.IntOption;
+import moa.recommender.dataset.AbstractFileDataset;
 import moa.recommender.dataset.Dataset;
+import moa.recommender.predictor.BRISMFPredictor;
 import moa.recommender.predictor.RatingPredictor;
 import moa.recommender.rc.data.RecommenderData;
 
@@ -38,6 +42,9 @@ import moa.recommender.rc.data.RecommenderData;
  * <ul>  
  * <li> d: dataset - the dataset to be used to train/test the rating predictor.</li>
  * <li> f: sample frequency - the frequency in which a rating from the dataset will be used to test the model </li>
+ * <li> w: warm start - the number of initial ratings used to batch train the rating predictor before evaluation starts</li>
+ * <li> t: throughput - report the training throughput in ratings per second, and
+ * the warm start throughput in rating updates per second</li>
  * </ul>
  *
  * @author Alex Catarineu (a.catarineu@gmail.com)
@@ -64,6 +71,14 @@ public class EvaluateOnlineRecommender extends AuxiliarMainTask {
             "How many instances between samples of the learning performance.",
             100, 0, Integer.MAX_VALUE);
 
+    public IntOption warmStartOption = new IntOption("warmStart",
+            'w',
+            "Number of initial ratings used to batch train the predictor before evaluating.",
+            0, 0, Integer.MAX_VALUE);
+
+    public FlagOption throughputOption = new FlagOption("throughput", 't',
+            "Report the training throughput in ratings per second, and the warm start throughput in rating updates per second.");
+
     public EvaluateOnlineRecommender() {
     }
 
@@ -87,10 +102,40 @@ public class EvaluateOnlineRecommender extends AuxiliarMainTask {
         int n = 0;
         //ArrayList<TestMetric> metrics = new ArrayList<TestMetric>();
         int sampleFrequency = this.sampleFrequencyOption.getValue();
+        // File datasets report their own progress, others need a counting pass
+        AbstractFileDataset fileDataset = (d instanceof AbstractFileDataset ? (AbstractFileDataset) d : null);
         int count = 0;
-        while (d.next())
-          ++count;
-        d.reset();
+        if (fileDataset == null) {
+            while (d.next())
+              ++count;
+            d.reset();
+        }
+        int warmStart = this.warmStartOption.getValue();
+        double warmStartThroughput = 0;
+        if (warmStart > 0) {
+            monitor.setCurrentActivityDescription("Warm start");
+            data.disableUpdates(true);
+            int warmed = 0;
+            while (warmed < warmStart && d.next()) {
+                data.setRating(d.curUserID(), d.curItemID(), d.curRating());
+                ++warmed;
+                if (fileDataset != null && warmed%sampleFrequency == 0)
+                    monitor.setCurrentActivityFractionComplete(fileDataset.getFractionRead());
+            }
+            data.disableUpdates(false);
+            // Only batch training is timed, counting every update of every
+            // epoch when the predictor reports them
+            long updates = numTrainedRatings(rp);
+            long startWarmStart = System.currentTimeMillis();
+            rp.train();
+            long warmStartTime = Math.max(1, System.currentTimeMillis() - startWarmStart);
+            updates = (updates < 0 ? warmed : numTrainedRatings(rp) - updates);
+            warmStartThroughput = updates/(warmStartTime/1000.0);
+            count -= warmed;
+            monitor.setCurrentActivityDescription("Evaluating");
+            start = System.currentTimeMillis();
+        }
+        boolean reportThroughput = this.throughputOption.isSet();
         while (d.next()) {
             Integer user = d.curUserID();
             Integer item = d.curItemID();
@@ -107,9 +152,10 @@ public class EvaluateOnlineRecommender extends AuxiliarMainTask {
                if (monitor.taskShouldAbort()) {
                     return null;
                 }
-                monitor.setCurrentActivityFractionComplete((double)n/(double)count);
-                learningCurve.insertEntry(new LearningEvaluation(
-                        new Measurement[]{
+                monitor.setCurrentActivityFractionComplete(fileDataset != null ?
+                        fileDataset.getFractionRead() : (double)n/(double)count);
+                long trainingTime = System.currentTimeMillis() - start - evalTime;
+                Measurement[] measurements = new Measurement[]{
                             new Measurement(
                             "n",
                             n),
@@ -118,12 +164,21 @@ public class EvaluateOnlineRecommender extends AuxiliarMainTask {
                             Math.sqrt(sum/(double)n)),
                             new Measurement(
                             "trainingTime",
-                            (int)((System.currentTimeMillis() - start - evalTime)/1000)),
+                            (int)(trainingTime/1000)),
                             new Measurement(
                             "evalTime",
                             (int)(evalTime/1000))
-                        }
-                         ));
+                        };
+                if (reportThroughput) {
+                    measurements = Arrays.copyOf(measurements, measurements.length + 2);
+                    measurements[measurements.length - 2] = new Measurement(
+                            "trainingThroughput (ratings/sec)",
+                            n/(Math.max(1, trainingTime)/1000.0));
+                    measurements[measurements.length - 1] = new Measurement(
+                            "warmStartThroughput (updates/sec)",
+                            warmStartThroughput);
+                }
+                learningCurve.insertEntry(new LearningEvaluation(measurements));
                 if (monitor.resultPreviewRequested()) {
                     monitor.setLatestResultPreview(learningCurve.headerToString() + "\n" +
                       learningCurve.entryToString(learningCurve.numEntries() - 1));
@@ -140,4 +195,12 @@ public class EvaluateOnlineRecommender extends AuxiliarMainTask {
        
         return learningCurve;
     }
+
+    /**
+     * Returns the number of rating updates applied by the predictor, or -1
+     * if it does not count them.
+     */
+    protected static long numTrainedRatings(RatingPredictor rp) {
+        return (rp instanceof BRISMFPredictor ? ((BRISMFPredictor) rp).getNumTrainedRatings() : -1);
+    }
 }
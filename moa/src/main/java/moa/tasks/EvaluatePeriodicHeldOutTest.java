@@ -94,14 +94,35 @@ public class EvaluatePeriodicHeldOutTest extends ClassificationMainTask {
     public FlagOption cacheTestOption = new FlagOption("cacheTest", 'c',
             "Cache test instances in memory.");
 
+    public FileOption checkpointFileOption = new FileOption("checkpointFile", 'k',
+            "File to save checkpoints of the evaluation to.", null, "ckpt", true);
+
+    public IntOption checkpointFrequencyOption = new IntOption("checkpointFrequency", 'y',
+            "How many training examples between checkpoints, taken after the next test.",
+            1000000, 1, Integer.MAX_VALUE);
+
+    public FlagOption resumeOption = new FlagOption("resume", 'z',
+            "Resume the evaluation from the checkpoint file, if it exists.");
+
     @Override
     protected Object doMainTask(TaskMonitor monitor, ObjectRepository repository) {
         Learner learner = (Learner) getPreparedClassOption(this.learnerOption);
         ExampleStream stream = (ExampleStream) getPreparedClassOption(this.streamOption);
         LearningPerformanceEvaluator evaluator = (LearningPerformanceEvaluator) getPreparedClassOption(this.evaluatorOption);
-        learner.setModelContext(stream.getHeader());
         long instancesProcessed = 0;
         LearningCurve learningCurve = new LearningCurve("evaluation instances");
+        File checkpointFile = this.checkpointFileOption.getFile();
+        EvaluationCheckpoint checkpoint = null;
+        if (this.resumeOption.isSet() && checkpointFile != null && checkpointFile.exists()) {
+            checkpoint = EvaluationCheckpoint.read(checkpointFile);
+            learner = checkpoint.learner;
+            evaluator = checkpoint.evaluator;
+            stream = checkpoint.restoreStream(stream);
+            learningCurve = checkpoint.learningCurve;
+            EvaluationCheckpoint.truncate(this.dumpFileOption.getFile(), checkpoint.dumpFileLength);
+        } else {
+            learner.setModelContext(stream.getHeader());
+        }
         File dumpFile = this.dumpFileOption.getFile();
         PrintStream immediateResultStream = null;
         if (dumpFile != null) {
@@ -118,10 +139,12 @@ public class EvaluatePeriodicHeldOutTest extends ClassificationMainTask {
                         "Unable to open immediate result file: " + dumpFile, ex);
             }
         }
-        boolean firstDump = true;
+        boolean firstDump = learningCurve.numEntries() == 0;
         ExampleStream testStream = null;
         int testSize = this.testSizeOption.getValue();
-        if (this.cacheTestOption.isSet()) {
+        if (checkpoint != null) {
+            testStream = this.cacheTestOption.isSet() ? checkpoint.testStream : stream;
+        } else if (this.cacheTestOption.isSet()) {
             monitor.setCurrentActivity("Caching test examples...", -1.0);
             Instances testInstances = new Instances(stream.getHeader(),
                     this.testSizeOption.getValue());
@@ -148,6 +171,24 @@ public class EvaluatePeriodicHeldOutTest extends ClassificationMainTask {
         instancesProcessed = 0;
         TimingUtils.enablePreciseTiming();
         double totalTrainTime = 0.0;
+        CheckpointWriter checkpointWriter = null;
+        long lastCheckpoint = 0;
+        if (checkpoint != null) {
+            instancesProcessed = checkpoint.instancesProcessed;
+            totalTrainTime = checkpoint.trainTime;
+            lastCheckpoint = instancesProcessed;
+        }
+        if (checkpointFile != null) {
+            if (checkpoint == null) {
+                checkpoint = new EvaluationCheckpoint();
+            }
+            checkpoint.learner = learner;
+            checkpoint.evaluator = evaluator;
+            checkpoint.stream = stream;
+            checkpoint.testStream = testStream;
+            checkpoint.learningCurve = learningCurve;
+            checkpointWriter = new CheckpointWriter(checkpointFile);
+        }
         while ((this.trainSizeOption.getValue() < 1
                 || instancesProcessed < this.trainSizeOption.getValue())
                 && stream.hasMoreInstances() == true) {
@@ -237,6 +278,17 @@ public class EvaluatePeriodicHeldOutTest extends ClassificationMainTask {
                 immediateResultStream.println(learningCurve.entryToString(learningCurve.numEntries() - 1));
                 immediateResultStream.flush();
             }
+            if (checkpointWriter != null && instancesProcessed - lastCheckpoint
+                    >= this.checkpointFrequencyOption.getValue()) {
+                checkpoint.instancesProcessed = instancesProcessed;
+                // Every test reads from the stream, unless the test set is cached
+                checkpoint.instancesRead = instancesProcessed + (long) testSize
+                        * (this.cacheTestOption.isSet() ? 1 : learningCurve.numEntries());
+                checkpoint.trainTime = totalTrainTime;
+                checkpoint.dumpFileLength = EvaluationCheckpoint.lengthOf(dumpFile);
+                checkpointWriter.write(checkpoint);
+                lastCheckpoint = instancesProcessed;
+            }
             if (monitor.resultPreviewRequested()) {
                 monitor.setLatestResultPreview(learningCurve.copy());
             }
@@ -283,6 +335,9 @@ public class EvaluatePeriodicHeldOutTest extends ClassificationMainTask {
         if (immediateResultStream != null) {
             immediateResultStream.close();
         }
+        if (checkpointWriter != null) {
+            checkpointWriter.close();
+        }
         return learningCurve;
     }
 
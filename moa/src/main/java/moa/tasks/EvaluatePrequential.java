@@ -20,6 +20,7 @@
  */
 package moa.tasks;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.PrintStream;
@@ -27,25 +28,31 @@ import java.io.PrintStream;
 import moa.classifiers.Classifier;
 import moa.classifiers.MultiClassClassifier;
 import moa.core.Example;
-import moa.core.Measurement;
 import moa.core.ObjectRepository;
+import moa.core.Profiler;
+import moa.core.ProfilerEventWriter;
+import moa.core.TimeHistogram;
 import moa.core.TimingUtils;
 import moa.evaluation.WindowClassificationPerformanceEvaluator;
 import moa.evaluation.preview.LearningCurve;
+import moa.evaluation.preview.LearningCurveRow;
 import moa.evaluation.EWMAClassificationPerformanceEvaluator;
 import moa.evaluation.FadingFactorClassificationPerformanceEvaluator;
-import moa.evaluation.LearningEvaluation;
 import moa.evaluation.LearningPerformanceEvaluator;
+import moa.evaluation.output.BinaryPredictionSink;
+import moa.evaluation.output.CSVPredictionSink;
+import moa.evaluation.output.PredictionSink;
 import moa.learners.Learner;
 import moa.options.ClassOption;
 
 import com.github.javacliparser.FileOption;
+import com.github.javacliparser.FlagOption;
 import com.github.javacliparser.FloatOption;
 import com.github.javacliparser.IntOption;
+import com.github.javacliparser.MultiChoiceOption;
 import moa.streams.ExampleStream;
 import moa.streams.InstanceStream;
 import com.yahoo.labs.samoa.instances.Instance;
-import moa.core.Utils;
 
 /**
  * Task for evaluating a classifier on a stream by testing then training with each example in sequence.
@@ -99,6 +106,32 @@ public class EvaluatePrequential extends ClassificationMainTask {
     public FileOption outputPredictionFileOption = new FileOption("outputPredictionFile", 'o',
             "File to append output predictions to.", null, "pred", true);
 
+    public MultiChoiceOption outputPredictionFormatOption = new MultiChoiceOption(
+            "outputPredictionFormat", 'P', "Format of the output prediction file.",
+            new String[]{"CSV", "Binary"},
+            new String[]{"Predicted and true class, one line per prediction",
+                "Blocks of timestamps, predicted classes, true classes and votes, see ConvertPredictionFile"},
+            0);
+
+    public FileOption checkpointFileOption = new FileOption("checkpointFile", 'k',
+            "File to save checkpoints of the evaluation to.", null, "ckpt", true);
+
+    public IntOption checkpointFrequencyOption = new IntOption("checkpointFrequency", 'y',
+            "How many instances between checkpoints, taken with the next sample of the learning performance.",
+            1000000, 1, Integer.MAX_VALUE);
+
+    public FlagOption resumeOption = new FlagOption("resume", 'z',
+            "Resume the evaluation from the checkpoint file, if it exists.");
+
+    public FlagOption profileOption = new FlagOption("profile", 'g',
+            "Measure the time spent reading the stream, predicting, training and evaluating, and add it to the learning curve.");
+
+    public FlagOption profileEventsOption = new FlagOption("profileEvents", 'J',
+            "Profile and also write the phase times as Java Flight Recorder events, when the JVM supports it.");
+
+    public FlagOption latencyOption = new FlagOption("latency", 'L',
+            "Measure the wall clock latency of every prediction and training, and add its percentiles since the previous sample to the learning curve.");
+
     //New for prequential method DEPRECATED
     public IntOption widthOption = new IntOption("width",
             'w', "Size of Window", 1000);
@@ -144,7 +177,20 @@ public class EvaluatePrequential extends ClassificationMainTask {
         }
         //End New for prequential methods
 
-        learner.setModelContext(stream.getHeader());
+        File checkpointFile = this.checkpointFileOption.getFile();
+        EvaluationCheckpoint checkpoint = null;
+        if (this.resumeOption.isSet() && checkpointFile != null && checkpointFile.exists()) {
+            checkpoint = EvaluationCheckpoint.read(checkpointFile);
+            learner = checkpoint.learner;
+            evaluator = checkpoint.evaluator;
+            stream = checkpoint.restoreStream(stream);
+            learningCurve = checkpoint.learningCurve;
+            EvaluationCheckpoint.truncate(this.dumpFileOption.getFile(), checkpoint.dumpFileLength);
+            EvaluationCheckpoint.truncate(this.outputPredictionFileOption.getFile(),
+                    checkpoint.outputPredictionFileLength);
+        } else {
+            learner.setModelContext(stream.getHeader());
+        }
         int maxInstances = this.instanceLimitOption.getValue();
         long instancesProcessed = 0;
         int maxSeconds = this.timeLimitOption.getValue();
@@ -155,13 +201,9 @@ public class EvaluatePrequential extends ClassificationMainTask {
         PrintStream immediateResultStream = null;
         if (dumpFile != null) {
             try {
-                if (dumpFile.exists()) {
-                    immediateResultStream = new PrintStream(
-                            new FileOutputStream(dumpFile, true), true);
-                } else {
-                    immediateResultStream = new PrintStream(
-                            new FileOutputStream(dumpFile), true);
-                }
+                // Buffered, flushed on monitor updates and when done
+                immediateResultStream = new PrintStream(new BufferedOutputStream(
+                        new FileOutputStream(dumpFile, dumpFile.exists())), false);
             } catch (Exception ex) {
                 throw new RuntimeException(
                         "Unable to open immediate result file: " + dumpFile, ex);
@@ -169,105 +211,198 @@ public class EvaluatePrequential extends ClassificationMainTask {
         }
         //File for output predictions
         File outputPredictionFile = this.outputPredictionFileOption.getFile();
-        PrintStream outputPredictionResultStream = null;
+        PredictionSink outputPredictionSink = null;
         if (outputPredictionFile != null) {
             try {
-                if (outputPredictionFile.exists()) {
-                    outputPredictionResultStream = new PrintStream(
-                            new FileOutputStream(outputPredictionFile, true), true);
+                if (this.outputPredictionFormatOption.getChosenIndex() == 0) {
+                    outputPredictionSink = new CSVPredictionSink(outputPredictionFile);
                 } else {
-                    outputPredictionResultStream = new PrintStream(
-                            new FileOutputStream(outputPredictionFile), true);
+                    outputPredictionSink = new BinaryPredictionSink(outputPredictionFile);
                 }
             } catch (Exception ex) {
                 throw new RuntimeException(
                         "Unable to open prediction result file: " + outputPredictionFile, ex);
             }
         }
-        boolean firstDump = true;
+        boolean firstDump = learningCurve.numEntries() == 0;
+        boolean dumpPending = false;
+        StringBuilder dumpLine = new StringBuilder();
         boolean preciseCPUTiming = TimingUtils.enablePreciseTiming();
+        // Register the task measurements once, their values go in a reused row
+        LearningCurveRow learningCurveRow = new LearningCurveRow(learningCurve);
+        int instancesIndex = learningCurve.getMeasurementIndex(
+                "learning evaluation instances");
+        int timeIndex = learningCurve.getMeasurementIndex(
+                "evaluation time (" + (preciseCPUTiming ? "cpu " : "") + "seconds)");
+        int ramHoursIndex = learningCurve.getMeasurementIndex(
+                "model cost (RAM-Hours)");
         long evaluateStartTime = TimingUtils.getNanoCPUTimeOfCurrentThread();
         long lastEvaluateStartTime = evaluateStartTime;
         double RAMHours = 0.0;
-        while (stream.hasMoreInstances()
-                && ((maxInstances < 0) || (instancesProcessed < maxInstances))
-                && ((maxSeconds < 0) || (secondsElapsed < maxSeconds))) {
-            Example trainInst = stream.nextInstance();
-            Example testInst = (Example) trainInst; //.copy();
-            //testInst.setClassMissing();
-            double[] prediction = learner.getVotesForInstance(testInst);
-            // Output prediction
-            if (outputPredictionFile != null) {
-                int trueClass = (int) ((Instance) trainInst.getData()).classValue();
-                outputPredictionResultStream.println(Utils.maxIndex(prediction) + "," + (
-                 ((Instance) testInst.getData()).classIsMissing() == true ? " ? " : trueClass));
+        CheckpointWriter checkpointWriter = null;
+        long lastCheckpoint = 0;
+        if (checkpoint != null) {
+            instancesProcessed = checkpoint.instancesProcessed;
+            RAMHours = checkpoint.RAMHours;
+            evaluateStartTime -= checkpoint.cpuTime;
+            lastCheckpoint = instancesProcessed;
+        }
+        if (checkpointFile != null) {
+            if (checkpoint == null) {
+                checkpoint = new EvaluationCheckpoint();
             }
+            checkpoint.learner = learner;
+            checkpoint.evaluator = evaluator;
+            checkpoint.stream = stream;
+            checkpoint.learningCurve = learningCurve;
+            checkpointWriter = new CheckpointWriter(checkpointFile);
+        }
+        LatencyRecorder latencies = this.latencyOption.isSet() ? new LatencyRecorder() : null;
+        boolean profile = this.profileOption.isSet() || this.profileEventsOption.isSet();
+        Profiler profiler = null;
+        ProfilerEventWriter profilerEventWriter = null;
+        if (profile) {
+            profiler = Profiler.open();
+            if (this.profileEventsOption.isSet()) {
+                profilerEventWriter = ProfilerEventWriter.create();
+            }
+        }
+        try {
+            while (stream.hasMoreInstances()
+                    && ((maxInstances < 0) || (instancesProcessed < maxInstances))
+                    && ((maxSeconds < 0) || (secondsElapsed < maxSeconds))) {
+                long profileStart = Profiler.start();
+                Example trainInst = stream.nextInstance();
+                Profiler.stop(Profiler.Phase.STREAM, profileStart);
+                Example testInst = (Example) trainInst; //.copy();
+                //testInst.setClassMissing();
+                long latencyStart = latencies != null ? System.nanoTime() : 0L;
+                double[] prediction = learner.getVotesForInstance(testInst);
+                if (latencies != null) {
+                    latencies.addPredictionLatency(System.nanoTime() - latencyStart);
+                }
+                // Output prediction
+                if (outputPredictionSink != null) {
+                    Instance instance = (Instance) testInst.getData();
+                    outputPredictionSink.addPrediction(prediction,
+                            instance.classIsMissing() ? Double.NaN : instance.classValue());
+                }
 
-            //evaluator.addClassificationAttempt(trueClass, prediction, testInst.weight());
-            evaluator.addResult(testInst, prediction);
-            learner.trainOnInstance(trainInst);
-            instancesProcessed++;
-            if (instancesProcessed % this.sampleFrequencyOption.getValue() == 0
-                    || stream.hasMoreInstances() == false) {
-                long evaluateTime = TimingUtils.getNanoCPUTimeOfCurrentThread();
-                double time = TimingUtils.nanoTimeToSeconds(evaluateTime - evaluateStartTime);
-                double timeIncrement = TimingUtils.nanoTimeToSeconds(evaluateTime - lastEvaluateStartTime);
-                double RAMHoursIncrement = learner.measureByteSize() / (1024.0 * 1024.0 * 1024.0); //GBs
-                RAMHoursIncrement *= (timeIncrement / 3600.0); //Hours
-                RAMHours += RAMHoursIncrement;
-                lastEvaluateStartTime = evaluateTime;
-                learningCurve.insertEntry(new LearningEvaluation(
-                        new Measurement[]{
-                            new Measurement(
-                            "learning evaluation instances",
-                            instancesProcessed),
-                            new Measurement(
-                            "evaluation time ("
-                            + (preciseCPUTiming ? "cpu "
-                            : "") + "seconds)",
-                            time),
-                            new Measurement(
-                            "model cost (RAM-Hours)",
-                            RAMHours)
-                        },
-                        evaluator, learner));
+                //evaluator.addClassificationAttempt(trueClass, prediction, testInst.weight());
+                profileStart = Profiler.start();
+                evaluator.addResult(testInst, prediction);
+                Profiler.stop(Profiler.Phase.EVALUATION, profileStart);
+                if (latencies != null) {
+                    latencyStart = System.nanoTime();
+                    learner.trainOnInstance(trainInst);
+                    latencies.addTrainingLatency(System.nanoTime() - latencyStart);
+                } else {
+                    learner.trainOnInstance(trainInst);
+                }
+                instancesProcessed++;
+                if (instancesProcessed % this.sampleFrequencyOption.getValue() == 0
+                        || stream.hasMoreInstances() == false) {
+                    long evaluateTime = TimingUtils.getNanoCPUTimeOfCurrentThread();
+                    double time = TimingUtils.nanoTimeToSeconds(evaluateTime - evaluateStartTime);
+                    double timeIncrement = TimingUtils.nanoTimeToSeconds(evaluateTime - lastEvaluateStartTime);
+                    double RAMHoursIncrement = learner.measureByteSize() / (1024.0 * 1024.0 * 1024.0); //GBs
+                    RAMHoursIncrement *= (timeIncrement / 3600.0); //Hours
+                    RAMHours += RAMHoursIncrement;
+                    lastEvaluateStartTime = evaluateTime;
+                    learningCurveRow.add(instancesIndex, instancesProcessed);
+                    learningCurveRow.add(timeIndex, time);
+                    learningCurveRow.add(ramHoursIndex, RAMHours);
+                    learningCurveRow.addAll(evaluator);
+                    learningCurveRow.addAll(learner.getModelMeasurements());
+                    if (latencies != null) {
+                        learningCurveRow.addAll(latencies.getMeasurements());
+                    }
+                    if (profile) {
+                        TimeHistogram[] phaseTimes = profiler.getHistograms();
+                        learningCurveRow.addAll(Profiler.getMeasurements(phaseTimes));
+                        if (profilerEventWriter != null) {
+                            profilerEventWriter.write(phaseTimes);
+                        }
+                    }
+                    learningCurveRow.insert();
 
-                if (immediateResultStream != null) {
-                    if (firstDump) {
-                        immediateResultStream.println(learningCurve.headerToString());
-                        firstDump = false;
+                    if (immediateResultStream != null) {
+                        if (firstDump) {
+                            immediateResultStream.println(learningCurve.headerToString());
+                            firstDump = false;
+                        }
+                        dumpLine.setLength(0);
+                        learningCurve.entryToString(learningCurve.numEntries() - 1, dumpLine);
+                        immediateResultStream.println(dumpLine);
+                        dumpPending = true;
                     }
-                    immediateResultStream.println(learningCurve.entryToString(learningCurve.numEntries() - 1));
-                    immediateResultStream.flush();
-                }
-            }
-            if (instancesProcessed % INSTANCES_BETWEEN_MONITOR_UPDATES == 0) {
-                if (monitor.taskShouldAbort()) {
-                    return null;
-                }
-                long estimatedRemainingInstances = stream.estimatedRemainingInstances();
-                if (maxInstances > 0) {
-                    long maxRemaining = maxInstances - instancesProcessed;
-                    if ((estimatedRemainingInstances < 0)
-                            || (maxRemaining < estimatedRemainingInstances)) {
-                        estimatedRemainingInstances = maxRemaining;
+                    if (checkpointWriter != null && instancesProcessed - lastCheckpoint
+                            >= this.checkpointFrequencyOption.getValue()) {
+                        if (dumpPending) {
+                            immediateResultStream.flush();
+                            dumpPending = false;
+                        }
+                        checkpoint.instancesProcessed = instancesProcessed;
+                        checkpoint.instancesRead = instancesProcessed;
+                        checkpoint.cpuTime = evaluateTime - evaluateStartTime;
+                        checkpoint.RAMHours = RAMHours;
+                        if (outputPredictionSink != null) {
+                            outputPredictionSink.flush();
+                        }
+                        checkpoint.dumpFileLength = EvaluationCheckpoint.lengthOf(dumpFile);
+                        checkpoint.outputPredictionFileLength = EvaluationCheckpoint.lengthOf(outputPredictionFile);
+                        checkpointWriter.write(checkpoint);
+                        lastCheckpoint = instancesProcessed;
                     }
                 }
-                monitor.setCurrentActivityFractionComplete(estimatedRemainingInstances < 0 ? -1.0
-                        : (double) instancesProcessed
-                        / (double) (instancesProcessed + estimatedRemainingInstances));
-                if (monitor.resultPreviewRequested()) {
-                    monitor.setLatestResultPreview(learningCurve.copy());
+                if (instancesProcessed % INSTANCES_BETWEEN_MONITOR_UPDATES == 0) {
+                    if (dumpPending) {
+                        immediateResultStream.flush();
+                        dumpPending = false;
+                    }
+                    if (monitor.taskShouldAbort()) {
+                        if (immediateResultStream != null) {
+                            immediateResultStream.close();
+                        }
+                        if (outputPredictionSink != null) {
+                            outputPredictionSink.close();
+                        }
+                        if (checkpointWriter != null) {
+                            checkpointWriter.close();
+                        }
+                        return null;
+                    }
+                    long estimatedRemainingInstances = stream.estimatedRemainingInstances();
+                    if (maxInstances > 0) {
+                        long maxRemaining = maxInstances - instancesProcessed;
+                        if ((estimatedRemainingInstances < 0)
+                                || (maxRemaining < estimatedRemainingInstances)) {
+                            estimatedRemainingInstances = maxRemaining;
+                        }
+                    }
+                    monitor.setCurrentActivityFractionComplete(estimatedRemainingInstances < 0 ? -1.0
+                            : (double) instancesProcessed
+                            / (double) (instancesProcessed + estimatedRemainingInstances));
+                    if (monitor.resultPreviewRequested()) {
+                        monitor.setLatestResultPreview(learningCurve.copy());
+                    }
+                    secondsElapsed = (int) TimingUtils.nanoTimeToSeconds(TimingUtils.getNanoCPUTimeOfCurrentThread()
+                            - evaluateStartTime);
                 }
-                secondsElapsed = (int) TimingUtils.nanoTimeToSeconds(TimingUtils.getNanoCPUTimeOfCurrentThread()
-                        - evaluateStartTime);
+            }
+        } finally {
+            if (profiler != null) {
+                profiler.close();
             }
         }
         if (immediateResultStream != null) {
             immediateResultStream.close();
         }
-        if (outputPredictionResultStream != null) {
-            outputPredictionResultStream.close();
+        if (outputPredictionSink != null) {
+            outputPredictionSink.close();
+        }
+        if (checkpointWriter != null) {
+            checkpointWriter.close();
         }
         return learningCurve;
     }
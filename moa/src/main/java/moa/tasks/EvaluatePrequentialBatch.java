@@ -0,0 +1,262 @@
+/*
+ *    EvaluatePrequentialBatch.java
+ *    Copyright (C) 2018 University of Waikato, Hamilton, New Zealand
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.tasks;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+
+import moa.classifiers.Classifier;
+import moa.classifiers.MultiClassClassifier;
+import moa.core.Example;
+import moa.core.ObjectRepository;
+import moa.core.TimingUtils;
+import moa.evaluation.LearningPerformanceEvaluator;
+import moa.evaluation.output.BinaryPredictionSink;
+import moa.evaluation.output.CSVPredictionSink;
+import moa.evaluation.output.PredictionSink;
+import moa.evaluation.preview.LearningCurve;
+import moa.evaluation.preview.LearningCurveRow;
+import moa.options.ClassOption;
+import moa.streams.ExampleStream;
+
+import com.github.javacliparser.FileOption;
+import com.github.javacliparser.IntOption;
+import com.github.javacliparser.MultiChoiceOption;
+import com.yahoo.labs.samoa.instances.Instance;
+
+/**
+ * Task for evaluating a classifier on a stream by testing then training with
+ * mini-batches of examples. All the examples of a batch are tested with the
+ * model trained on the previous batches, then the model is trained on the
+ * batch, through the getVotesForInstances and trainOnInstances methods of
+ * the classifier. With a batch size of 1 it gives the same results as
+ * EvaluatePrequential. Batches end at the sample points, so the learning
+ * curve has the same entries.
+ *
+ * @version $Revision: 1 $
+ */
+public class EvaluatePrequentialBatch extends ClassificationMainTask {
+
+    @Override
+    public String getPurposeString() {
+        return "Evaluates a classifier on a stream by testing then training with mini-batches of examples in sequence.";
+    }
+
+    private static final long serialVersionUID = 1L;
+
+    public ClassOption learnerOption = new ClassOption("learner", 'l',
+            "Learner to train.", MultiClassClassifier.class, "moa.classifiers.bayes.NaiveBayes");
+
+    public ClassOption streamOption = new ClassOption("stream", 's',
+            "Stream to learn from.", ExampleStream.class,
+            "generators.RandomTreeGenerator");
+
+    public ClassOption evaluatorOption = new ClassOption("evaluator", 'e',
+            "Classification performance evaluation method.",
+            LearningPerformanceEvaluator.class,
+            "WindowClassificationPerformanceEvaluator");
+
+    public IntOption batchSizeOption = new IntOption("batchSize", 'b',
+            "Number of examples tested before training on them.", 100, 1,
+            Integer.MAX_VALUE);
+
+    public IntOption instanceLimitOption = new IntOption("instanceLimit", 'i',
+            "Maximum number of instances to test/train on  (-1 = no limit).",
+            100000000, -1, Integer.MAX_VALUE);
+
+    public IntOption timeLimitOption = new IntOption("timeLimit", 't',
+            "Maximum number of seconds to test/train for (-1 = no limit).", -1,
+            -1, Integer.MAX_VALUE);
+
+    public IntOption sampleFrequencyOption = new IntOption("sampleFrequency",
+            'f',
+            "How many instances between samples of the learning performance.",
+            100000, 0, Integer.MAX_VALUE);
+
+    public FileOption dumpFileOption = new FileOption("dumpFile", 'd',
+            "File to append intermediate csv results to.", null, "csv", true);
+
+    public FileOption outputPredictionFileOption = new FileOption("outputPredictionFile", 'o',
+            "File to append output predictions to.", null, "pred", true);
+
+    public MultiChoiceOption outputPredictionFormatOption = new MultiChoiceOption(
+            "outputPredictionFormat", 'P', "Format of the output prediction file.",
+            new String[]{"CSV", "Binary"},
+            new String[]{"Predicted and true class, one line per prediction",
+                "Blocks of timestamps, predicted classes, true classes and votes, see ConvertPredictionFile"},
+            0);
+
+    @Override
+    public Class<?> getTaskResultType() {
+        return LearningCurve.class;
+    }
+
+    @Override
+    protected Object doMainTask(TaskMonitor monitor, ObjectRepository repository) {
+        Classifier learner = (Classifier) getPreparedClassOption(this.learnerOption);
+        ExampleStream stream = (ExampleStream) getPreparedClassOption(this.streamOption);
+        LearningPerformanceEvaluator evaluator = (LearningPerformanceEvaluator) getPreparedClassOption(this.evaluatorOption);
+        LearningCurve learningCurve = new LearningCurve(
+                "learning evaluation instances");
+        learner.setModelContext(stream.getHeader());
+        int maxInstances = this.instanceLimitOption.getValue();
+        int sampleFrequency = this.sampleFrequencyOption.getValue();
+        int batchSize = this.batchSizeOption.getValue();
+        long instancesProcessed = 0;
+        int maxSeconds = this.timeLimitOption.getValue();
+        int secondsElapsed = 0;
+        monitor.setCurrentActivity("Evaluating learner...", -1.0);
+
+        File dumpFile = this.dumpFileOption.getFile();
+        PrintStream immediateResultStream = null;
+        if (dumpFile != null) {
+            try {
+                immediateResultStream = new PrintStream(new BufferedOutputStream(
+                        new FileOutputStream(dumpFile, dumpFile.exists())), false);
+            } catch (Exception ex) {
+                throw new RuntimeException(
+                        "Unable to open immediate result file: " + dumpFile, ex);
+            }
+        }
+        //File for output predictions
+        File outputPredictionFile = this.outputPredictionFileOption.getFile();
+        PredictionSink outputPredictionSink = null;
+        if (outputPredictionFile != null) {
+            try {
+                if (this.outputPredictionFormatOption.getChosenIndex() == 0) {
+                    outputPredictionSink = new CSVPredictionSink(outputPredictionFile);
+                } else {
+                    outputPredictionSink = new BinaryPredictionSink(outputPredictionFile);
+                }
+            } catch (Exception ex) {
+                throw new RuntimeException(
+                        "Unable to open prediction result file: " + outputPredictionFile, ex);
+            }
+        }
+        boolean firstDump = true;
+        StringBuilder dumpLine = new StringBuilder();
+        boolean preciseCPUTiming = TimingUtils.enablePreciseTiming();
+        LearningCurveRow learningCurveRow = new LearningCurveRow(learningCurve);
+        int instancesIndex = learningCurve.getMeasurementIndex(
+                "learning evaluation instances");
+        int timeIndex = learningCurve.getMeasurementIndex(
+                "evaluation time (" + (preciseCPUTiming ? "cpu " : "") + "seconds)");
+        int ramHoursIndex = learningCurve.getMeasurementIndex(
+                "model cost (RAM-Hours)");
+        long evaluateStartTime = TimingUtils.getNanoCPUTimeOfCurrentThread();
+        long lastEvaluateStartTime = evaluateStartTime;
+        double RAMHours = 0.0;
+        Example[] examples = new Example[batchSize];
+        Instance[] batch = new Instance[batchSize];
+        long lastMonitorUpdate = 0;
+        while (stream.hasMoreInstances()
+                && ((maxInstances < 0) || (instancesProcessed < maxInstances))
+                && ((maxSeconds < 0) || (secondsElapsed < maxSeconds))) {
+            // End the batch at the next sample point or instance limit
+            long batchEnd = instancesProcessed + batchSize;
+            if (sampleFrequency > 0) {
+                batchEnd = Math.min(batchEnd,
+                        (instancesProcessed / sampleFrequency + 1) * sampleFrequency);
+            }
+            if (maxInstances >= 0) {
+                batchEnd = Math.min(batchEnd, maxInstances);
+            }
+            int n = 0;
+            while (instancesProcessed + n < batchEnd && stream.hasMoreInstances()) {
+                examples[n] = stream.nextInstance();
+                batch[n] = (Instance) examples[n].getData();
+                n++;
+            }
+            double[][] predictions = learner.getVotesForInstances(batch, n);
+            for (int i = 0; i < n; i++) {
+                if (outputPredictionSink != null) {
+                    outputPredictionSink.addPrediction(predictions[i],
+                            batch[i].classIsMissing() ? Double.NaN : batch[i].classValue());
+                }
+                evaluator.addResult(examples[i], predictions[i]);
+            }
+            learner.trainOnInstances(batch, n);
+            instancesProcessed += n;
+            if ((sampleFrequency > 0 && instancesProcessed % sampleFrequency == 0)
+                    || stream.hasMoreInstances() == false) {
+                long evaluateTime = TimingUtils.getNanoCPUTimeOfCurrentThread();
+                double time = TimingUtils.nanoTimeToSeconds(evaluateTime - evaluateStartTime);
+                double timeIncrement = TimingUtils.nanoTimeToSeconds(evaluateTime - lastEvaluateStartTime);
+                double RAMHoursIncrement = learner.measureByteSize() / (1024.0 * 1024.0 * 1024.0); //GBs
+                RAMHoursIncrement *= (timeIncrement / 3600.0); //Hours
+                RAMHours += RAMHoursIncrement;
+                lastEvaluateStartTime = evaluateTime;
+                learningCurveRow.add(instancesIndex, instancesProcessed);
+                learningCurveRow.add(timeIndex, time);
+                learningCurveRow.add(ramHoursIndex, RAMHours);
+                learningCurveRow.addAll(evaluator);
+                learningCurveRow.addAll(learner.getModelMeasurements());
+                learningCurveRow.insert();
+
+                if (immediateResultStream != null) {
+                    if (firstDump) {
+                        immediateResultStream.println(learningCurve.headerToString());
+                        firstDump = false;
+                    }
+                    dumpLine.setLength(0);
+                    learningCurve.entryToString(learningCurve.numEntries() - 1, dumpLine);
+                    immediateResultStream.println(dumpLine);
+                    immediateResultStream.flush();
+                }
+            }
+            if (instancesProcessed - lastMonitorUpdate >= INSTANCES_BETWEEN_MONITOR_UPDATES) {
+                lastMonitorUpdate = instancesProcessed;
+                if (monitor.taskShouldAbort()) {
+                    if (immediateResultStream != null) {
+                        immediateResultStream.close();
+                    }
+                    if (outputPredictionSink != null) {
+                        outputPredictionSink.close();
+                    }
+                    return null;
+                }
+                long estimatedRemainingInstances = stream.estimatedRemainingInstances();
+                if (maxInstances > 0) {
+                    long maxRemaining = maxInstances - instancesProcessed;
+                    if ((estimatedRemainingInstances < 0)
+                            || (maxRemaining < estimatedRemainingInstances)) {
+                        estimatedRemainingInstances = maxRemaining;
+                    }
+                }
+                monitor.setCurrentActivityFractionComplete(estimatedRemainingInstances < 0 ? -1.0
+                        : (double) instancesProcessed
+                        / (double) (instancesProcessed + estimatedRemainingInstances));
+                if (monitor.resultPreviewRequested()) {
+                    monitor.setLatestResultPreview(learningCurve.copy());
+                }
+                secondsElapsed = (int) TimingUtils.nanoTimeToSeconds(TimingUtils.getNanoCPUTimeOfCurrentThread()
+                        - evaluateStartTime);
+            }
+        }
+        if (immediateResultStream != null) {
+            immediateResultStream.close();
+        }
+        if (outputPredictionSink != null) {
+            outputPredictionSink.close();
+        }
+        return learningCurve;
+    }
+}
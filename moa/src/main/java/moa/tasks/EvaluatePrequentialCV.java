@@ -21,6 +21,7 @@
 package moa.tasks;
 
 import com.github.javacliparser.FileOption;
+import com.github.javacliparser.FlagOption;
 import com.github.javacliparser.IntOption;
 import com.github.javacliparser.MultiChoiceOption;
 import moa.classifiers.Classifier;
@@ -108,6 +109,9 @@ public class EvaluatePrequentialCV extends ClassificationMainTask {
     public IntOption randomSeedOption = new IntOption("randomSeed", 'r',
             "Seed for random behaviour of the task.", 1);
 
+    public FlagOption parallelFoldsOption = new FlagOption("parallelFolds", 'p',
+            "Test and train the learner of every fold on its own thread.");
+
 
     @Override
     public Class<?> getTaskResultType() {
@@ -120,11 +124,11 @@ public class EvaluatePrequentialCV extends ClassificationMainTask {
         Random random = new Random(this.randomSeedOption.getValue());
         ExampleStream stream = (ExampleStream) getPreparedClassOption(this.streamOption);
 
-        Learner[] learners = new Learner[this.numFoldsOption.getValue()];
+        final Learner[] learners = new Learner[this.numFoldsOption.getValue()];
         Learner baseLearner = (Learner) getPreparedClassOption(this.learnerOption);
         baseLearner.resetLearning();
 
-        LearningPerformanceEvaluator[] evaluators = new LearningPerformanceEvaluator[this.numFoldsOption.getValue()];
+        final LearningPerformanceEvaluator[] evaluators = new LearningPerformanceEvaluator[this.numFoldsOption.getValue()];
         LearningPerformanceEvaluator baseEvaluator = (LearningPerformanceEvaluator) getPreparedClassOption(this.evaluatorOption);
         for (int i = 0; i < learners.length; i++) {
             learners[i] = (Learner) baseLearner.copy();
@@ -162,6 +166,19 @@ public class EvaluatePrequentialCV extends ClassificationMainTask {
         long evaluateStartTime = TimingUtils.getNanoCPUTimeOfCurrentThread();
         long lastEvaluateStartTime = evaluateStartTime;
         double RAMHours = 0.0;
+        int[] foldWeights = new int[learners.length];
+        FoldWorkerPool foldWorkers = null;
+        if (this.parallelFoldsOption.isSet()) {
+            foldWorkers = new FoldWorkerPool(learners.length, new FoldWorkerPool.FoldProcessor() {
+                @Override
+                public void process(int fold, Example example, int weight) {
+                    evaluators[fold].addResult(example, learners[fold].getVotesForInstance(example));
+                    if (weight > 0) {
+                        trainFold(learners[fold], example, weight);
+                    }
+                }
+            });
+        }
         while (stream.hasMoreInstances()
                 && ((maxInstances < 0) || (instancesProcessed < maxInstances))
                 && ((maxSeconds < 0) || (secondsElapsed < maxSeconds))) {
@@ -169,27 +186,25 @@ public class EvaluatePrequentialCV extends ClassificationMainTask {
             Example testInst = (Example) trainInst; //.copy();
             //testInst.setClassMissing();
 
+            // Drawn before testing, in fold order, so that the weights do not
+            // depend on how the folds are run
             for (int i = 0; i < learners.length; i++) {
-                evaluators[i].addResult(testInst, learners[i].getVotesForInstance(testInst));
+                foldWeights[i] = getFoldWeight(i, learners.length, instancesProcessed, random);
             }
 
-            for (int i = 0; i < learners.length; i++) {
-                int k = 1;
-                switch (this.validationMethodologyOption.getChosenIndex()) {
-                    case 0: //Cross-Validation;
-                        k = instancesProcessed % learners.length == i ? 0: 1; //Test all except one
-                        break;
-                    case 1: //Bootstrap;
-                        k = MiscUtils.poisson(1, random);
-                        break;
-                    case 2: //Split-Validation;
-                        k = instancesProcessed % learners.length == i ? 1: 0; //Test only one
-                        break;
+            if (foldWorkers != null) {
+                for (int i = 0; i < learners.length; i++) {
+                    foldWorkers.submit(i, testInst, foldWeights[i]);
                 }
-                if (k > 0) {
-                    Example weightedInst = (Example) trainInst.copy();
-                    weightedInst.setWeight(trainInst.weight() * k);
-                    learners[i].trainOnInstance(weightedInst);
+            } else {
+                for (int i = 0; i < learners.length; i++) {
+                    evaluators[i].addResult(testInst, learners[i].getVotesForInstance(testInst));
+                }
+
+                for (int i = 0; i < learners.length; i++) {
+                    if (foldWeights[i] > 0) {
+                        trainFold(learners[i], trainInst, foldWeights[i]);
+                    }
                 }
             }
 
@@ -197,6 +212,10 @@ public class EvaluatePrequentialCV extends ClassificationMainTask {
             if (instancesProcessed % this.sampleFrequencyOption.getValue() == 0
                     || stream.hasMoreInstances() == false) {
                 long evaluateTime = TimingUtils.getNanoCPUTimeOfCurrentThread();
+                if (foldWorkers != null) {
+                    foldWorkers.sync();
+                    evaluateTime += foldWorkers.getCPUTime();
+                }
                 double time = TimingUtils.nanoTimeToSeconds(evaluateTime - evaluateStartTime);
                 double timeIncrement = TimingUtils.nanoTimeToSeconds(evaluateTime - lastEvaluateStartTime);
 
@@ -234,6 +253,9 @@ public class EvaluatePrequentialCV extends ClassificationMainTask {
             }
             if (instancesProcessed % INSTANCES_BETWEEN_MONITOR_UPDATES == 0) {
                 if (monitor.taskShouldAbort()) {
+                    if (foldWorkers != null) {
+                        foldWorkers.shutdown();
+                    }
                     return null;
                 }
                 long estimatedRemainingInstances = stream.estimatedRemainingInstances();
@@ -251,15 +273,45 @@ public class EvaluatePrequentialCV extends ClassificationMainTask {
                     monitor.setLatestResultPreview(learningCurve.copy());
                 }
                 secondsElapsed = (int) TimingUtils.nanoTimeToSeconds(TimingUtils.getNanoCPUTimeOfCurrentThread()
+                        + (foldWorkers != null ? foldWorkers.getCPUTime() : 0)
                         - evaluateStartTime);
             }
         }
+        if (foldWorkers != null) {
+            foldWorkers.shutdown();
+        }
         if (immediateResultStream != null) {
             immediateResultStream.close();
         }
         return learningCurve;
     }
 
+    /**
+     * Returns how many times a fold trains on an instance, given the number
+     * of instances processed before it.
+     */
+    protected int getFoldWeight(int fold, int numFolds, long instancesProcessed, Random random) {
+        int k = 1;
+        switch (this.validationMethodologyOption.getChosenIndex()) {
+            case 0: //Cross-Validation;
+                k = instancesProcessed % numFolds == fold ? 0: 1; //Test all except one
+                break;
+            case 1: //Bootstrap;
+                k = MiscUtils.poisson(1, random);
+                break;
+            case 2: //Split-Validation;
+                k = instancesProcessed % numFolds == fold ? 1: 0; //Test only one
+                break;
+        }
+        return k;
+    }
+
+    protected void trainFold(Learner learner, Example trainInst, int k) {
+        Example weightedInst = (Example) trainInst.copy();
+        weightedInst.setWeight(trainInst.weight() * k);
+        learner.trainOnInstance(weightedInst);
+    }
+
 
     public Measurement[] getEvaluationMeasurements(Measurement[] modelMeasurements, LearningPerformanceEvaluator[] subEvaluators) {
         List<Measurement> measurementList = new LinkedList<Measurement>();
@@ -37,6 +37,9 @@ import moa.evaluation.EWMAClassificationPerformanceEvaluator;
 import moa.evaluation.FadingFactorClassificationPerformanceEvaluator;
 import moa.evaluation.LearningEvaluation;
 import moa.evaluation.LearningPerformanceEvaluator;
+import moa.evaluation.output.BinaryPredictionSink;
+import moa.evaluation.output.CSVPredictionSink;
+import moa.evaluation.output.PredictionSink;
 import moa.learners.Learner;
 import moa.options.ClassOption;
 
@@ -44,11 +47,11 @@ import com.github.javacliparser.FileOption;
 import com.github.javacliparser.FlagOption;
 import com.github.javacliparser.FloatOption;
 import com.github.javacliparser.IntOption;
+import com.github.javacliparser.MultiChoiceOption;
 import moa.streams.ExampleStream;
 import com.yahoo.labs.samoa.instances.Instance;
 import java.util.LinkedList;
 import moa.core.InstanceExample;
-import moa.core.Utils;
 
 /**
  * Task for evaluating a classifier on a delayed stream by testing and only 
@@ -123,6 +126,13 @@ public class EvaluatePrequentialDelayed extends ClassificationMainTask {
     public FileOption outputPredictionFileOption = new FileOption("outputPredictionFile", 'o',
             "File to append output predictions to.", null, "pred", true);
 
+    public MultiChoiceOption outputPredictionFormatOption = new MultiChoiceOption(
+            "outputPredictionFormat", 'P', "Format of the output prediction file.",
+            new String[]{"CSV", "Binary"},
+            new String[]{"Predicted and true class, one line per prediction",
+                "Blocks of timestamps, predicted classes, true classes and votes, see ConvertPredictionFile"},
+            0);
+
     //New for prequential method DEPRECATED
     public IntOption widthOption = new IntOption("width",
             'w', "Size of Window", 1000);
@@ -196,15 +206,13 @@ public class EvaluatePrequentialDelayed extends ClassificationMainTask {
         }
         //File for output predictions
         File outputPredictionFile = this.outputPredictionFileOption.getFile();
-        PrintStream outputPredictionResultStream = null;
+        PredictionSink outputPredictionSink = null;
         if (outputPredictionFile != null) {
             try {
-                if (outputPredictionFile.exists()) {
-                    outputPredictionResultStream = new PrintStream(
-                            new FileOutputStream(outputPredictionFile, true), true);
+                if (this.outputPredictionFormatOption.getChosenIndex() == 0) {
+                    outputPredictionSink = new CSVPredictionSink(outputPredictionFile);
                 } else {
-                    outputPredictionResultStream = new PrintStream(
-                            new FileOutputStream(outputPredictionFile), true);
+                    outputPredictionSink = new BinaryPredictionSink(outputPredictionFile);
                 }
             } catch (Exception ex) {
                 throw new RuntimeException(
@@ -217,119 +225,121 @@ public class EvaluatePrequentialDelayed extends ClassificationMainTask {
         long lastEvaluateStartTime = evaluateStartTime;
         double RAMHours = 0.0;
         
-        while (stream.hasMoreInstances()
-                && ((maxInstances < 0) || (instancesProcessed < maxInstances))
-                && ((maxSeconds < 0) || (secondsElapsed < maxSeconds))) {
+        try {
+            while (stream.hasMoreInstances()
+                    && ((maxInstances < 0) || (instancesProcessed < maxInstances))
+                    && ((maxSeconds < 0) || (secondsElapsed < maxSeconds))) {
             
-            instancesProcessed++;
-            Example currentInst = stream.nextInstance();
+                instancesProcessed++;
+                Example currentInst = stream.nextInstance();
             
-            if(instancesProcessed <= this.initialWindowSizeOption.getValue()) {
-                if(this.trainOnInitialWindowOption.isSet()) {
-                    learner.trainOnInstance(currentInst);
+                if(instancesProcessed <= this.initialWindowSizeOption.getValue()) {
+                    if(this.trainOnInitialWindowOption.isSet()) {
+                        learner.trainOnInstance(currentInst);
+                    }
+                    else if((this.initialWindowSizeOption.getValue() - instancesProcessed) < this.delayLengthOption.getValue()) {
+                        this.trainInstances.addLast(currentInst);
+                    }
                 }
-                else if((this.initialWindowSizeOption.getValue() - instancesProcessed) < this.delayLengthOption.getValue()) {
+                else {
                     this.trainInstances.addLast(currentInst);
-                }
-            }
-            else {
-                this.trainInstances.addLast(currentInst);
 
-                if(this.delayLengthOption.getValue() < this.trainInstances.size()) {
-                    if(this.trainInBatches.isSet()) {
-                        // Do not train on the latest instance, otherwise
-                        // it would train on k+1 instances
-                        while(this.trainInstances.size() > 1) {
+                    if(this.delayLengthOption.getValue() < this.trainInstances.size()) {
+                        if(this.trainInBatches.isSet()) {
+                            // Do not train on the latest instance, otherwise
+                            // it would train on k+1 instances
+                            while(this.trainInstances.size() > 1) {
+                                Example trainInst = this.trainInstances.removeFirst();
+                                learner.trainOnInstance(trainInst);
+                            }
+                        }
+                        else {
                             Example trainInst = this.trainInstances.removeFirst();
                             learner.trainOnInstance(trainInst);
                         }
                     }
-                    else {
-                        Example trainInst = this.trainInstances.removeFirst();
-                        learner.trainOnInstance(trainInst);
-                    }
-                }
 
-                // Remove class label from test instances. 
-                Instance testInstance = ((Instance) currentInst.getData()).copy();
-                Example testInst = new InstanceExample(testInstance);
-                testInstance.setMissing(testInstance.classAttribute());
-                testInstance.setClassValue(0.0);
+                    // Remove class label from test instances. 
+                    Instance testInstance = ((Instance) currentInst.getData()).copy();
+                    Example testInst = new InstanceExample(testInstance);
+                    testInstance.setMissing(testInstance.classAttribute());
+                    testInstance.setClassValue(0.0);
           
-                double[] prediction = learner.getVotesForInstance(testInst);
-    //          reinstate the testInstance as it is used in evaluator.addResult
-                testInstance = ((Instance) currentInst.getData()).copy();
-                testInst = new InstanceExample(testInstance);
+                    double[] prediction = learner.getVotesForInstance(testInst);
+        //          reinstate the testInstance as it is used in evaluator.addResult
+                    testInstance = ((Instance) currentInst.getData()).copy();
+                    testInst = new InstanceExample(testInstance);
 
-                // Output prediction
-                if (outputPredictionFile != null) {
-                    int trueClass = (int) ((Instance) currentInst.getData()).classValue();
-                    outputPredictionResultStream.println(Utils.maxIndex(prediction) + "," + (
-                     ((Instance) testInst.getData()).classIsMissing() == true ? " ? " : trueClass));
-                }
-                evaluator.addResult(testInst, prediction);
+                    // Output prediction
+                    if (outputPredictionSink != null) {
+                        outputPredictionSink.addPrediction(prediction, testInstance.classIsMissing()
+                                ? Double.NaN : testInstance.classValue());
+                    }
+                    evaluator.addResult(testInst, prediction);
                 
-                if (instancesProcessed % this.sampleFrequencyOption.getValue() == 0
-                        || stream.hasMoreInstances() == false) {
-                    long evaluateTime = TimingUtils.getNanoCPUTimeOfCurrentThread();
-                    double time = TimingUtils.nanoTimeToSeconds(evaluateTime - evaluateStartTime);
-                    double timeIncrement = TimingUtils.nanoTimeToSeconds(evaluateTime - lastEvaluateStartTime);
-                    double RAMHoursIncrement = learner.measureByteSize() / (1024.0 * 1024.0 * 1024.0); //GBs
-                    RAMHoursIncrement *= (timeIncrement / 3600.0); //Hours
-                    RAMHours += RAMHoursIncrement;
-                    lastEvaluateStartTime = evaluateTime;
-                    learningCurve.insertEntry(new LearningEvaluation(
-                            new Measurement[]{
-                                new Measurement(
-                                "learning evaluation instances",
-                                instancesProcessed),
-                                new Measurement(
-                                "evaluation time ("
-                                + (preciseCPUTiming ? "cpu "
-                                : "") + "seconds)",
-                                time),
-                                new Measurement(
-                                "model cost (RAM-Hours)",
-                                RAMHours)
-                            },
-                            evaluator, learner));
-                    if (immediateResultStream != null) {
-                        if (firstDump) {
-                            immediateResultStream.println(learningCurve.headerToString());
-                            firstDump = false;
+                    if (instancesProcessed % this.sampleFrequencyOption.getValue() == 0
+                            || stream.hasMoreInstances() == false) {
+                        long evaluateTime = TimingUtils.getNanoCPUTimeOfCurrentThread();
+                        double time = TimingUtils.nanoTimeToSeconds(evaluateTime - evaluateStartTime);
+                        double timeIncrement = TimingUtils.nanoTimeToSeconds(evaluateTime - lastEvaluateStartTime);
+                        double RAMHoursIncrement = learner.measureByteSize() / (1024.0 * 1024.0 * 1024.0); //GBs
+                        RAMHoursIncrement *= (timeIncrement / 3600.0); //Hours
+                        RAMHours += RAMHoursIncrement;
+                        lastEvaluateStartTime = evaluateTime;
+                        learningCurve.insertEntry(new LearningEvaluation(
+                                new Measurement[]{
+                                    new Measurement(
+                                    "learning evaluation instances",
+                                    instancesProcessed),
+                                    new Measurement(
+                                    "evaluation time ("
+                                    + (preciseCPUTiming ? "cpu "
+                                    : "") + "seconds)",
+                                    time),
+                                    new Measurement(
+                                    "model cost (RAM-Hours)",
+                                    RAMHours)
+                                },
+                                evaluator, learner));
+                        if (immediateResultStream != null) {
+                            if (firstDump) {
+                                immediateResultStream.println(learningCurve.headerToString());
+                                firstDump = false;
+                            }
+                            immediateResultStream.println(learningCurve.entryToString(learningCurve.numEntries() - 1));
+                            immediateResultStream.flush();
                         }
-                        immediateResultStream.println(learningCurve.entryToString(learningCurve.numEntries() - 1));
-                        immediateResultStream.flush();
                     }
-                }
-                if (instancesProcessed % INSTANCES_BETWEEN_MONITOR_UPDATES == 0) {
-                    if (monitor.taskShouldAbort()) {
-                        return null;
-                    }
-                    long estimatedRemainingInstances = stream.estimatedRemainingInstances();
-                    if (maxInstances > 0) {
-                        long maxRemaining = maxInstances - instancesProcessed;
-                        if ((estimatedRemainingInstances < 0)
-                                || (maxRemaining < estimatedRemainingInstances)) {
-                            estimatedRemainingInstances = maxRemaining;
+                    if (instancesProcessed % INSTANCES_BETWEEN_MONITOR_UPDATES == 0) {
+                        if (monitor.taskShouldAbort()) {
+                            return null;
                         }
+                        long estimatedRemainingInstances = stream.estimatedRemainingInstances();
+                        if (maxInstances > 0) {
+                            long maxRemaining = maxInstances - instancesProcessed;
+                            if ((estimatedRemainingInstances < 0)
+                                    || (maxRemaining < estimatedRemainingInstances)) {
+                                estimatedRemainingInstances = maxRemaining;
+                            }
+                        }
+                        monitor.setCurrentActivityFractionComplete(estimatedRemainingInstances < 0 ? -1.0
+                                : (double) instancesProcessed
+                                / (double) (instancesProcessed + estimatedRemainingInstances));
+                        if (monitor.resultPreviewRequested()) {
+                            monitor.setLatestResultPreview(learningCurve.copy());
+                        }
+                        secondsElapsed = (int) TimingUtils.nanoTimeToSeconds(TimingUtils.getNanoCPUTimeOfCurrentThread()
+                                - evaluateStartTime);
                     }
-                    monitor.setCurrentActivityFractionComplete(estimatedRemainingInstances < 0 ? -1.0
-                            : (double) instancesProcessed
-                            / (double) (instancesProcessed + estimatedRemainingInstances));
-                    if (monitor.resultPreviewRequested()) {
-                        monitor.setLatestResultPreview(learningCurve.copy());
-                    }
-                    secondsElapsed = (int) TimingUtils.nanoTimeToSeconds(TimingUtils.getNanoCPUTimeOfCurrentThread()
-                            - evaluateStartTime);
                 }
             }
-        }
-        if (immediateResultStream != null) {
-            immediateResultStream.close();
-        }
-        if (outputPredictionResultStream != null) {
-            outputPredictionResultStream.close();
+            if (immediateResultStream != null) {
+                immediateResultStream.close();
+            }
+        } finally {
+            if (outputPredictionSink != null) {
+                outputPredictionSink.close();
+            }
         }
         return learningCurve;
     }
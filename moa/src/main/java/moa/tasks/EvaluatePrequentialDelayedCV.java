@@ -22,6 +22,7 @@
 package moa.tasks;
 
 import com.github.javacliparser.FileOption;
+import com.github.javacliparser.FlagOption;
 import com.github.javacliparser.IntOption;
 import com.github.javacliparser.MultiChoiceOption;
 import moa.classifiers.Classifier;
@@ -120,6 +121,9 @@ public class EvaluatePrequentialDelayedCV extends ClassificationMainTask {
     public IntOption randomSeedOption = new IntOption("randomSeed", 'r',
             "Seed for random behaviour of the task.", 1);
 
+    public FlagOption parallelFoldsOption = new FlagOption("parallelFolds", 'p',
+            "Test and train the learner of every fold on its own thread.");
+
     // Buffer of instances to use for training. 
     // Note: It is a list of lists because it stores instances per learner, e.g.
     // CV of 10, would be 10 lists of buffered instances for delayed training. 
@@ -136,11 +140,11 @@ public class EvaluatePrequentialDelayedCV extends ClassificationMainTask {
         Random random = new Random(this.randomSeedOption.getValue());
         ExampleStream stream = (ExampleStream) getPreparedClassOption(this.streamOption);
 
-        Learner[] learners = new Learner[this.numFoldsOption.getValue()];
+        final Learner[] learners = new Learner[this.numFoldsOption.getValue()];
         Learner baseLearner = (Learner) getPreparedClassOption(this.learnerOption);
         baseLearner.resetLearning();
 
-        LearningPerformanceEvaluator[] evaluators = new LearningPerformanceEvaluator[this.numFoldsOption.getValue()];
+        final LearningPerformanceEvaluator[] evaluators = new LearningPerformanceEvaluator[this.numFoldsOption.getValue()];
         LearningPerformanceEvaluator baseEvaluator = (LearningPerformanceEvaluator) getPreparedClassOption(this.evaluatorOption);
         for (int i = 0; i < learners.length; i++) {
             learners[i] = (Learner) baseLearner.copy();
@@ -183,6 +187,18 @@ public class EvaluatePrequentialDelayedCV extends ClassificationMainTask {
         long evaluateStartTime = TimingUtils.getNanoCPUTimeOfCurrentThread();
         long lastEvaluateStartTime = evaluateStartTime;
         double RAMHours = 0.0;
+        int[] foldWeights = new int[learners.length];
+        FoldWorkerPool foldWorkers = null;
+        if (this.parallelFoldsOption.isSet()) {
+            foldWorkers = new FoldWorkerPool(learners.length, new FoldWorkerPool.FoldProcessor() {
+                @Override
+                public void process(int fold, Example example, int weight) {
+                    double[] prediction = learners[fold].getVotesForInstance(example);
+                    evaluators[fold].addResult(example, prediction);
+                    trainFold(fold, learners[fold], example, weight);
+                }
+            });
+        }
         
         while (stream.hasMoreInstances()
                 && ((maxInstances < 0) || (instancesProcessed < maxInstances))
@@ -193,35 +209,29 @@ public class EvaluatePrequentialDelayedCV extends ClassificationMainTask {
             Example testInst = (Example) trainInst;
             
             instancesProcessed++;
+            // Drawn in fold order, so that the weights do not depend on how
+            // the folds are run
             for (int i = 0; i < learners.length; i++) {
-                
-                double[] prediction = learners[i].getVotesForInstance(testInst);
-                evaluators[i].addResult(testInst, prediction);
-                
-                int k = 1;
-                switch (this.validationMethodologyOption.getChosenIndex()) {
-                    case 0: //Cross-Validation;
-                        k = instancesProcessed % learners.length == i ? 0: 1; //Test all except one
-                        break;
-                    case 1: //Bootstrap;
-                        k = MiscUtils.poisson(1, random);
-                        break;
-                    case 2: //Split-Validation;
-                        k = instancesProcessed % learners.length == i ? 1: 0; //Test only one
-                        break;
-                }
-                if (k > 0) {
-                    this.trainInstances.get(i).addLast(trainInst);
-                }
-                if(this.delayLengthOption.getValue() < this.trainInstances.get(i).size()) {
-                    Example trainInstI = this.trainInstances.get(i).removeFirst();
-                    learners[i].trainOnInstance(trainInstI);
+                foldWeights[i] = getFoldWeight(i, learners.length, instancesProcessed, random);
+            }
+
+            for (int i = 0; i < learners.length; i++) {
+                if (foldWorkers != null) {
+                    foldWorkers.submit(i, testInst, foldWeights[i]);
+                } else {
+                    double[] prediction = learners[i].getVotesForInstance(testInst);
+                    evaluators[i].addResult(testInst, prediction);
+                    trainFold(i, learners[i], trainInst, foldWeights[i]);
                 }
             }
             
             if (instancesProcessed % this.sampleFrequencyOption.getValue() == 0
                     || stream.hasMoreInstances() == false) {
                 long evaluateTime = TimingUtils.getNanoCPUTimeOfCurrentThread();
+                if (foldWorkers != null) {
+                    foldWorkers.sync();
+                    evaluateTime += foldWorkers.getCPUTime();
+                }
                 double time = TimingUtils.nanoTimeToSeconds(evaluateTime - evaluateStartTime);
                 double timeIncrement = TimingUtils.nanoTimeToSeconds(evaluateTime - lastEvaluateStartTime);
 
@@ -259,6 +269,9 @@ public class EvaluatePrequentialDelayedCV extends ClassificationMainTask {
             }
             if (instancesProcessed % INSTANCES_BETWEEN_MONITOR_UPDATES == 0) {
                 if (monitor.taskShouldAbort()) {
+                    if (foldWorkers != null) {
+                        foldWorkers.shutdown();
+                    }
                     return null;
                 }
                 long estimatedRemainingInstances = stream.estimatedRemainingInstances();
@@ -276,15 +289,56 @@ public class EvaluatePrequentialDelayedCV extends ClassificationMainTask {
                     monitor.setLatestResultPreview(learningCurve.copy());
                 }
                 secondsElapsed = (int) TimingUtils.nanoTimeToSeconds(TimingUtils.getNanoCPUTimeOfCurrentThread()
+                        + (foldWorkers != null ? foldWorkers.getCPUTime() : 0)
                         - evaluateStartTime);
             }
         }
+        if (foldWorkers != null) {
+            foldWorkers.shutdown();
+        }
         if (immediateResultStream != null) {
             immediateResultStream.close();
         }
         return learningCurve;
     }
 
+    /**
+     * Returns whether a fold trains on an instance, given the number of
+     * instances processed including it: 0 means no, bootstrap validation
+     * returns the Poisson weight.
+     */
+    protected int getFoldWeight(int fold, int numFolds, long instancesProcessed, Random random) {
+        int k = 1;
+        switch (this.validationMethodologyOption.getChosenIndex()) {
+            case 0: //Cross-Validation;
+                k = instancesProcessed % numFolds == fold ? 0: 1; //Test all except one
+                break;
+            case 1: //Bootstrap;
+                k = MiscUtils.poisson(1, random);
+                break;
+            case 2: //Split-Validation;
+                k = instancesProcessed % numFolds == fold ? 1: 0; //Test only one
+                break;
+        }
+        return k;
+    }
+
+    /**
+     * Adds the instance to the delay buffer of the fold if it trains on it,
+     * and trains on the oldest buffered instance once the buffer holds more
+     * than the delay.
+     */
+    protected void trainFold(int fold, Learner learner, Example trainInst, int k) {
+        LinkedList<Example> buffer = this.trainInstances.get(fold);
+        if (k > 0) {
+            buffer.addLast(trainInst);
+        }
+        if(this.delayLengthOption.getValue() < buffer.size()) {
+            Example trainInstI = buffer.removeFirst();
+            learner.trainOnInstance(trainInstI);
+        }
+    }
+
 
     public Measurement[] getEvaluationMeasurements(Measurement[] modelMeasurements, LearningPerformanceEvaluator[] subEvaluators) {
         List<Measurement> measurementList = new LinkedList<>();
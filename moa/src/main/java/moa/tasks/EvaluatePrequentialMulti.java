@@ -0,0 +1,327 @@
+/*
+ *    EvaluatePrequentialMulti.java
+ *    Copyright (C) 2018 University of Waikato, Hamilton, New Zealand
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.tasks;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import moa.classifiers.MultiClassClassifier;
+import moa.core.Example;
+import moa.core.ObjectRepository;
+import moa.core.TimingUtils;
+import moa.evaluation.LearningPerformanceEvaluator;
+import moa.evaluation.preview.LearningCurve;
+import moa.evaluation.preview.LearningCurveRow;
+import moa.learners.Learner;
+import moa.options.ClassOption;
+import moa.streams.ExampleStream;
+
+import com.github.javacliparser.FileOption;
+import com.github.javacliparser.IntOption;
+import com.github.javacliparser.ListOption;
+import com.github.javacliparser.Option;
+
+/**
+ * Task for evaluating several classifiers on the same stream by testing then
+ * training each of them with every example in sequence. The stream is read
+ * only once: examples are collected in batches, and every learner, paired
+ * with its own copy of the evaluator, then processes the whole batch before
+ * the next one is read. Learners work on the batch in parallel and share the
+ * examples, which they must therefore not modify.
+ *
+ * <p>The result is a single learning curve with one entry per learner and
+ * sample point, told apart by the "learner id" measurement, which is the
+ * position of the learner in the list (starting at 0). Evaluation time and
+ * RAM-Hours are measured per learner.</p>
+ *
+ * @version $Revision: 1 $
+ */
+public class EvaluatePrequentialMulti extends ClassificationMainTask {
+
+    @Override
+    public String getPurposeString() {
+        return "Evaluates several classifiers on a stream read once, by testing then training each of them with each example in sequence.";
+    }
+
+    private static final long serialVersionUID = 1L;
+
+    public ListOption learnerListOption = new ListOption("learners", 'l',
+            "Learners to train.",
+            new ClassOption("learner", ' ', "", MultiClassClassifier.class,
+            "trees.HoeffdingTree"),
+            new Option[]{
+                new ClassOption("", ' ', "", MultiClassClassifier.class,
+                "bayes.NaiveBayes"),
+                new ClassOption("", ' ', "", MultiClassClassifier.class,
+                "trees.HoeffdingTree")},
+            ',');
+
+    public ClassOption streamOption = new ClassOption("stream", 's',
+            "Stream to learn from.", ExampleStream.class,
+            "generators.RandomTreeGenerator");
+
+    public ClassOption evaluatorOption = new ClassOption("evaluator", 'e',
+            "Classification performance evaluation method, copied for each learner.",
+            LearningPerformanceEvaluator.class,
+            "WindowClassificationPerformanceEvaluator");
+
+    public IntOption instanceLimitOption = new IntOption("instanceLimit", 'i',
+            "Maximum number of instances to test/train on  (-1 = no limit).",
+            100000000, -1, Integer.MAX_VALUE);
+
+    public IntOption timeLimitOption = new IntOption("timeLimit", 't',
+            "Maximum number of seconds to test/train for (-1 = no limit).", -1,
+            -1, Integer.MAX_VALUE);
+
+    public IntOption sampleFrequencyOption = new IntOption("sampleFrequency",
+            'f',
+            "How many instances between samples of the learning performance.",
+            100000, 0, Integer.MAX_VALUE);
+
+    public IntOption batchSizeOption = new IntOption("batchSize", 'b',
+            "How many instances are read before the learners process them.",
+            1000, 1, Integer.MAX_VALUE);
+
+    public IntOption numberOfJobsOption = new IntOption("numberOfJobs", 'j',
+            "Total number of concurrent jobs used for processing (-1 = as much as possible, 0 = do not use multithreading)",
+            -1, -1, Integer.MAX_VALUE);
+
+    public FileOption dumpFileOption = new FileOption("dumpFile", 'd',
+            "File to append intermediate csv results to.", null, "csv", true);
+
+    @Override
+    public Class<?> getTaskResultType() {
+        return LearningCurve.class;
+    }
+
+    /**
+     * Tests then trains one learner on the current batch, accumulating the
+     * CPU time of the thread that runs it.
+     */
+    protected static class LearnerRunner implements Callable<Void> {
+
+        protected final Learner learner;
+
+        protected final LearningPerformanceEvaluator evaluator;
+
+        protected Example[] batch;
+
+        protected int batchLength;
+
+        protected long cpuTime;
+
+        protected LearnerRunner(Learner learner, LearningPerformanceEvaluator evaluator) {
+            this.learner = learner;
+            this.evaluator = evaluator;
+        }
+
+        @Override
+        public Void call() {
+            long start = TimingUtils.getNanoCPUTimeOfCurrentThread();
+            for (int i = 0; i < this.batchLength; i++) {
+                Example example = this.batch[i];
+                double[] prediction = this.learner.getVotesForInstance(example);
+                this.evaluator.addResult(example, prediction);
+                this.learner.trainOnInstance(example);
+            }
+            this.cpuTime += TimingUtils.getNanoCPUTimeOfCurrentThread() - start;
+            return null;
+        }
+    }
+
+    @Override
+    protected Object doMainTask(TaskMonitor monitor, ObjectRepository repository) {
+        ExampleStream stream = (ExampleStream) getPreparedClassOption(this.streamOption);
+        LearningPerformanceEvaluator baseEvaluator = (LearningPerformanceEvaluator) getPreparedClassOption(this.evaluatorOption);
+        Option[] learnerOptions = this.learnerListOption.getList();
+        LearnerRunner[] runners = new LearnerRunner[learnerOptions.length];
+        for (int i = 0; i < runners.length; i++) {
+            monitor.setCurrentActivity("Materializing learner " + (i + 1)
+                    + "...", -1.0);
+            Learner learner = (Learner) ((ClassOption) learnerOptions[i]).materializeObject(monitor, repository);
+            if (monitor.taskShouldAbort()) {
+                return null;
+            }
+            learner.prepareForUse(monitor, repository);
+            if (monitor.taskShouldAbort()) {
+                return null;
+            }
+            learner.setModelContext(stream.getHeader());
+            runners[i] = new LearnerRunner(learner,
+                    (LearningPerformanceEvaluator) baseEvaluator.copy());
+        }
+        LearningCurve learningCurve = new LearningCurve(
+                "learning evaluation instances");
+
+        int numberOfJobs = this.numberOfJobsOption.getValue();
+        if (numberOfJobs == -1) {
+            numberOfJobs = Runtime.getRuntime().availableProcessors();
+        }
+        numberOfJobs = Math.min(numberOfJobs, runners.length);
+        ExecutorService executor = null;
+        List<LearnerRunner> tasks = new ArrayList<LearnerRunner>();
+        for (LearnerRunner runner : runners) {
+            tasks.add(runner);
+        }
+        if (numberOfJobs > 1) {
+            executor = Executors.newFixedThreadPool(numberOfJobs);
+        }
+
+        int maxInstances = this.instanceLimitOption.getValue();
+        long instancesProcessed = 0;
+        int maxSeconds = this.timeLimitOption.getValue();
+        int secondsElapsed = 0;
+        int sampleFrequency = this.sampleFrequencyOption.getValue();
+        monitor.setCurrentActivity("Evaluating learners...", -1.0);
+
+        File dumpFile = this.dumpFileOption.getFile();
+        PrintStream immediateResultStream = null;
+        if (dumpFile != null) {
+            try {
+                immediateResultStream = new PrintStream(new BufferedOutputStream(
+                        new FileOutputStream(dumpFile, dumpFile.exists())), false);
+            } catch (Exception ex) {
+                throw new RuntimeException(
+                        "Unable to open immediate result file: " + dumpFile, ex);
+            }
+        }
+        boolean firstDump = true;
+        StringBuilder dumpLine = new StringBuilder();
+        boolean preciseCPUTiming = TimingUtils.enablePreciseTiming();
+        LearningCurveRow learningCurveRow = new LearningCurveRow(learningCurve);
+        int instancesIndex = learningCurve.getMeasurementIndex(
+                "learning evaluation instances");
+        int learnerIndex = learningCurve.getMeasurementIndex("learner id");
+        int timeIndex = learningCurve.getMeasurementIndex(
+                "evaluation time (" + (preciseCPUTiming ? "cpu " : "") + "seconds)");
+        int ramHoursIndex = learningCurve.getMeasurementIndex(
+                "model cost (RAM-Hours)");
+        long[] lastCpuTime = new long[runners.length];
+        double[] ramHours = new double[runners.length];
+
+        Example[] batch = new Example[this.batchSizeOption.getValue()];
+        for (LearnerRunner runner : runners) {
+            runner.batch = batch;
+        }
+        long evaluateStartTime = System.nanoTime();
+        try {
+            while (stream.hasMoreInstances()
+                    && ((maxInstances < 0) || (instancesProcessed < maxInstances))
+                    && ((maxSeconds < 0) || (secondsElapsed < maxSeconds))) {
+                // Fill the batch, stopping at the next sample point
+                int batchLength = 0;
+                while (batchLength < batch.length && stream.hasMoreInstances()
+                        && ((maxInstances < 0) || (instancesProcessed < maxInstances))) {
+                    batch[batchLength++] = stream.nextInstance();
+                    instancesProcessed++;
+                    if (sampleFrequency > 0 && instancesProcessed % sampleFrequency == 0) {
+                        break;
+                    }
+                }
+                for (LearnerRunner runner : runners) {
+                    runner.batchLength = batchLength;
+                }
+                if (executor == null) {
+                    for (LearnerRunner runner : runners) {
+                        runner.call();
+                    }
+                } else {
+                    try {
+                        for (Future<Void> future : executor.invokeAll(tasks)) {
+                            future.get();
+                        }
+                    } catch (InterruptedException ex) {
+                        throw new RuntimeException("Could not call invokeAll() on learner threads.");
+                    } catch (ExecutionException ex) {
+                        throw new RuntimeException("Learner failed to process the batch.", ex.getCause());
+                    }
+                }
+
+                if ((sampleFrequency > 0 && instancesProcessed % sampleFrequency == 0)
+                        || stream.hasMoreInstances() == false) {
+                    for (int i = 0; i < runners.length; i++) {
+                        LearnerRunner runner = runners[i];
+                        double time = TimingUtils.nanoTimeToSeconds(runner.cpuTime);
+                        double timeIncrement = TimingUtils.nanoTimeToSeconds(runner.cpuTime - lastCpuTime[i]);
+                        double RAMHoursIncrement = runner.learner.measureByteSize() / (1024.0 * 1024.0 * 1024.0); //GBs
+                        RAMHoursIncrement *= (timeIncrement / 3600.0); //Hours
+                        ramHours[i] += RAMHoursIncrement;
+                        lastCpuTime[i] = runner.cpuTime;
+                        learningCurveRow.add(instancesIndex, instancesProcessed);
+                        learningCurveRow.add(learnerIndex, i);
+                        learningCurveRow.add(timeIndex, time);
+                        learningCurveRow.add(ramHoursIndex, ramHours[i]);
+                        learningCurveRow.addAll(runner.evaluator);
+                        learningCurveRow.addAll(runner.learner.getModelMeasurements());
+                        learningCurveRow.insert();
+                    }
+                    if (immediateResultStream != null) {
+                        if (firstDump) {
+                            immediateResultStream.println(learningCurve.headerToString());
+                            firstDump = false;
+                        }
+                        for (int i = learningCurve.numEntries() - runners.length; i < learningCurve.numEntries(); i++) {
+                            dumpLine.setLength(0);
+                            learningCurve.entryToString(i, dumpLine);
+                            immediateResultStream.println(dumpLine);
+                        }
+                        immediateResultStream.flush();
+                    }
+                }
+
+                if (monitor.taskShouldAbort()) {
+                    return null;
+                }
+                long estimatedRemainingInstances = stream.estimatedRemainingInstances();
+                if (maxInstances > 0) {
+                    long maxRemaining = maxInstances - instancesProcessed;
+                    if ((estimatedRemainingInstances < 0)
+                            || (maxRemaining < estimatedRemainingInstances)) {
+                        estimatedRemainingInstances = maxRemaining;
+                    }
+                }
+                monitor.setCurrentActivityFractionComplete(estimatedRemainingInstances < 0 ? -1.0
+                        : (double) instancesProcessed
+                        / (double) (instancesProcessed + estimatedRemainingInstances));
+                if (monitor.resultPreviewRequested()) {
+                    monitor.setLatestResultPreview(learningCurve.copy());
+                }
+                secondsElapsed = (int) TimingUtils.nanoTimeToSeconds(System.nanoTime()
+                        - evaluateStartTime);
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            if (immediateResultStream != null) {
+                immediateResultStream.close();
+            }
+        }
+        return learningCurve;
+    }
+}
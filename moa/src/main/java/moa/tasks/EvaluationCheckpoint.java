@@ -0,0 +1,182 @@
+/*
+ *    EvaluationCheckpoint.java
+ *    Copyright (C) 2018 University of Waikato, Hamilton, New Zealand
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.tasks;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.util.zip.GZIPInputStream;
+
+import moa.evaluation.LearningPerformanceEvaluator;
+import moa.evaluation.preview.LearningCurve;
+import moa.learners.Learner;
+import moa.streams.ExampleStream;
+
+/**
+ * State of an evaluation task at a point of its stream, from which the task
+ * can be resumed. The learner, the evaluator and the stream are saved as they
+ * are, so a generator continues with the state of its random number generator
+ * and a file stream from the position it was reading at. A stream that cannot
+ * be serialized is left out, and a new one is skipped ahead instead.
+ *
+ * @version $Revision: 1 $
+ */
+public class EvaluationCheckpoint implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public Learner learner;
+
+    public LearningPerformanceEvaluator evaluator;
+
+    public ExampleStream stream;
+
+    /** Stream the learner is tested on, if the task has a separate one. */
+    public ExampleStream testStream;
+
+    public LearningCurve learningCurve;
+
+    /** Number of instances the learner was trained on. */
+    public long instancesProcessed;
+
+    /** Number of instances read from the stream. */
+    public long instancesRead;
+
+    /** CPU time used by the task, in nanoseconds. */
+    public long cpuTime;
+
+    /** Seconds spent training, for tasks timing training apart. */
+    public double trainTime;
+
+    public double RAMHours;
+
+    /** Length of the dump file, or -1 if there is none. */
+    public long dumpFileLength = -1;
+
+    /** Length of the prediction file, or -1 if there is none. */
+    public long outputPredictionFileLength = -1;
+
+    /** Set once the stream failed to serialize, so it is not tried again. */
+    protected transient boolean streamNotSerializable;
+
+    /**
+     * Serializes the checkpoint into memory, leaving the stream out if it
+     * cannot be serialized. The bytes are a snapshot that does not change
+     * with the objects of the task.
+     */
+    public byte[] toByteArray() throws IOException {
+        if (this.streamNotSerializable) {
+            return serialize(false);
+        }
+        try {
+            return serialize(true);
+        } catch (NotSerializableException ex) {
+            this.streamNotSerializable = true;
+            return serialize(false);
+        }
+    }
+
+    private byte[] serialize(boolean withStreams) throws IOException {
+        ExampleStream stream = this.stream;
+        ExampleStream testStream = this.testStream;
+        if (!withStreams) {
+            if (testStream == stream) {
+                this.testStream = null;
+            }
+            this.stream = null;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(this);
+            out.close();
+            return bytes.toByteArray();
+        } finally {
+            this.stream = stream;
+            this.testStream = testStream;
+        }
+    }
+
+    /**
+     * Reads a checkpoint written by a {@link CheckpointWriter}.
+     */
+    public static EvaluationCheckpoint read(File file) {
+        try {
+            ObjectInputStream in = new ObjectInputStream(new GZIPInputStream(
+                    new BufferedInputStream(new FileInputStream(file))));
+            try {
+                return (EvaluationCheckpoint) in.readObject();
+            } finally {
+                in.close();
+            }
+        } catch (Exception ex) {
+            throw new RuntimeException("Unable to read checkpoint file: " + file, ex);
+        }
+    }
+
+    /**
+     * Returns the saved stream, or the given new stream skipped ahead by the
+     * number of instances read before the checkpoint if the stream was not
+     * saved.
+     */
+    public ExampleStream restoreStream(ExampleStream newStream) {
+        if (this.stream != null) {
+            return this.stream;
+        }
+        for (long i = 0; i < this.instancesRead && newStream.hasMoreInstances(); i++) {
+            newStream.nextInstance();
+        }
+        this.stream = newStream;
+        return newStream;
+    }
+
+    /**
+     * Returns the length of a file the task writes to, or -1 if there is no
+     * such file.
+     */
+    public static long lengthOf(File file) {
+        return (file != null && file.exists()) ? file.length() : -1;
+    }
+
+    /**
+     * Drops what the task wrote to a file after the checkpoint was taken.
+     */
+    public static void truncate(File file, long length) {
+        if (file == null || length < 0 || !file.exists() || file.length() <= length) {
+            return;
+        }
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(length);
+            } finally {
+                raf.close();
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException("Unable to truncate " + file, ex);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ *    FoldWorkerPool.java
+ *    Copyright (C) 2018 University of Waikato, Hamilton, New Zealand
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.tasks;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import moa.core.Example;
+import moa.core.TimingUtils;
+
+/**
+ * Runs the folds of a cross-validated evaluation each on a dedicated thread.
+ * Examples reach the thread of a fold through a bounded queue and are
+ * processed in the order they were submitted, so every fold sees exactly the
+ * same sequence of examples and weights as in a sequential run. The reader of
+ * the stream only has to wait for the folds when it needs to look at their
+ * learners or evaluators, by calling {@link #sync()}.
+ *
+ * @version $Revision: 1 $
+ */
+public class FoldWorkerPool {
+
+    /** Number of examples that can be waiting for each fold. */
+    public static final int QUEUE_CAPACITY = 1024;
+
+    /**
+     * Processes an example in the fold it was submitted to, on the thread of
+     * the fold.
+     */
+    public interface FoldProcessor {
+
+        void process(int fold, Example example, int weight);
+    }
+
+    protected static class Item {
+
+        final Example example;
+
+        final int weight;
+
+        final CountDownLatch sync;
+
+        Item(Example example, int weight, CountDownLatch sync) {
+            this.example = example;
+            this.weight = weight;
+            this.sync = sync;
+        }
+    }
+
+    protected final BlockingQueue<Item>[] queues;
+
+    protected final long[] cpuTimes;
+
+    protected final ExecutorService executor;
+
+    protected volatile Throwable failure;
+
+    @SuppressWarnings("unchecked")
+    public FoldWorkerPool(int numFolds, final FoldProcessor processor) {
+        this.queues = new BlockingQueue[numFolds];
+        this.cpuTimes = new long[numFolds];
+        // Daemon threads, so that a task failing before shutdown() does not
+        // keep the JVM alive
+        this.executor = Executors.newFixedThreadPool(numFolds, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        for (int i = 0; i < numFolds; i++) {
+            final int fold = i;
+            this.queues[i] = new ArrayBlockingQueue<Item>(QUEUE_CAPACITY);
+            this.executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    work(fold, processor);
+                }
+            });
+        }
+    }
+
+    private void work(int fold, FoldProcessor processor) {
+        long start = TimingUtils.getNanoCPUTimeOfCurrentThread();
+        try {
+            while (true) {
+                Item item = this.queues[fold].take();
+                if (item.sync != null) {
+                    this.cpuTimes[fold] = TimingUtils.getNanoCPUTimeOfCurrentThread() - start;
+                    item.sync.countDown();
+                } else if (this.failure == null) {
+                    // After a failure examples are only drained
+                    try {
+                        processor.process(fold, item.example, item.weight);
+                    } catch (Throwable t) {
+                        this.failure = t;
+                    }
+                }
+            }
+        } catch (InterruptedException ex) {
+            // shut down
+        }
+    }
+
+    /**
+     * Queues an example for a fold, waiting while the queue is full.
+     */
+    public void submit(int fold, Example example, int weight) {
+        put(fold, new Item(example, weight, null));
+    }
+
+    private void put(int fold, Item item) {
+        try {
+            this.queues[fold].put(item);
+        } catch (InterruptedException ex) {
+            throw new RuntimeException("Interrupted while queueing examples for the folds.");
+        }
+    }
+
+    /**
+     * Waits until every fold has processed all the examples submitted so
+     * far. Afterwards the learners and evaluators of the folds can be read
+     * safely until the next example is submitted.
+     */
+    public void sync() {
+        CountDownLatch sync = new CountDownLatch(this.queues.length);
+        for (int i = 0; i < this.queues.length; i++) {
+            put(i, new Item(null, 0, sync));
+        }
+        try {
+            sync.await();
+        } catch (InterruptedException ex) {
+            throw new RuntimeException("Interrupted while waiting for the folds.");
+        }
+        if (this.failure != null) {
+            throw new RuntimeException("Fold failed to process an example.", this.failure);
+        }
+    }
+
+    /**
+     * Returns the CPU time, in nanoseconds, used by the threads of all the
+     * folds up to the last call to {@link #sync()}.
+     */
+    public long getCPUTime() {
+        long total = 0;
+        for (long cpuTime : this.cpuTimes) {
+            total += cpuTime;
+        }
+        return total;
+    }
+
+    /**
+     * Stops the threads, dropping any examples not processed yet.
+     */
+    public void shutdown() {
+        this.executor.shutdownNow();
+    }
+}
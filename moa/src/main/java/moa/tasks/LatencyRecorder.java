@@ -0,0 +1,73 @@
+/*
+ *    LatencyRecorder.java
+ *    Copyright (C) 2018 University of Waikato, Hamilton, New Zealand
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.tasks;
+
+import moa.core.Measurement;
+import moa.core.TimeHistogram;
+
+/**
+ * Records the wall clock latency of every prediction and training call of an
+ * evaluation, and reports its percentiles for the calls since the previous
+ * sample of the learning performance, so that the slow calls of a split or a
+ * drift reset show up at the sample where they happened.
+ *
+ * @version $Revision: 1 $
+ */
+public class LatencyRecorder {
+
+    protected static final double[] QUANTILES = {0.5, 0.99, 0.999};
+
+    protected static final String[] QUANTILE_NAMES = {"p50", "p99", "p999"};
+
+    protected final TimeHistogram predictionLatencies = new TimeHistogram();
+
+    protected final TimeHistogram trainingLatencies = new TimeHistogram();
+
+    public void addPredictionLatency(long nanos) {
+        this.predictionLatencies.record(nanos);
+    }
+
+    public void addTrainingLatency(long nanos) {
+        this.trainingLatencies.record(nanos);
+    }
+
+    /**
+     * Returns the percentiles and the maximum of the latencies recorded since
+     * the previous call, and starts recording a new sample.
+     */
+    public Measurement[] getMeasurements() {
+        Measurement[] measurements = new Measurement[2 * (QUANTILES.length + 1)];
+        int count = addMeasurements("prediction", this.predictionLatencies, measurements, 0);
+        addMeasurements("training", this.trainingLatencies, measurements, count);
+        this.predictionLatencies.reset();
+        this.trainingLatencies.reset();
+        return measurements;
+    }
+
+    protected int addMeasurements(String call, TimeHistogram latencies,
+            Measurement[] measurements, int offset) {
+        for (int i = 0; i < QUANTILES.length; i++) {
+            measurements[offset++] = new Measurement(call + " latency "
+                    + QUANTILE_NAMES[i] + " (ns)", latencies.getQuantile(QUANTILES[i]));
+        }
+        measurements[offset++] = new Measurement(call + " latency max (ns)",
+                latencies.getMax());
+        return offset;
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ *    ParameterSweep.java
+ *    Copyright (C) 2018 University of Waikato, Hamilton, New Zealand
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.tasks;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.github.javacliparser.FileOption;
+import com.github.javacliparser.Option;
+
+import moa.core.ObjectRepository;
+import moa.evaluation.preview.LearningCurve;
+import moa.evaluation.preview.LearningCurveRow;
+import moa.options.OptionHandler;
+
+/**
+ * Runs the tasks of a parameter sweep, one per parameter value, concurrently
+ * on a bounded thread pool. Every task reports to its own monitor, and the
+ * monitor of the sweep shows the average progress of all of them. If every
+ * task returns a learning curve, the result is a single curve holding the
+ * entries of all of them, ordered by parameter value.
+ *
+ * @version $Revision: 1 $
+ */
+public class ParameterSweep {
+
+    /** Milliseconds between updates of the monitor of the sweep. */
+    protected static final long MONITOR_UPDATE_INTERVAL = 500;
+
+    protected int numberOfJobs;
+
+    public ParameterSweep(int numberOfJobs) {
+        if (numberOfJobs == -1) {
+            numberOfJobs = Runtime.getRuntime().availableProcessors();
+        }
+        this.numberOfJobs = Math.max(numberOfJobs, 1);
+    }
+
+    /**
+     * Formats a value of a sweep with as many decimal places as the first
+     * value and the step of the sweep have, so that the rounding errors
+     * accumulated while stepping do not show.
+     *
+     * @param value the parameter value
+     * @param firstValue the first value of the sweep
+     * @param step the increment between values of the sweep
+     * @return the value, rounded to the precision of the sweep
+     */
+    public static String formatValue(double value, double firstValue, double step) {
+        int scale = Math.max(Math.max(BigDecimal.valueOf(firstValue).stripTrailingZeros().scale(),
+                BigDecimal.valueOf(step).stripTrailingZeros().scale()), 0);
+        return new BigDecimal(value).setScale(scale, RoundingMode.HALF_UP).toPlainString();
+    }
+
+    /**
+     * Makes the output files of a task unique to a parameter value by adding
+     * the value to their names, before the extension, so that tasks running
+     * at the same time do not write to the same files.
+     */
+    public static void isolateOutputFiles(Task task, String value) {
+        if (!(task instanceof OptionHandler)) {
+            return;
+        }
+        for (Option option : ((OptionHandler) task).getOptions().getOptionArray()) {
+            if (option instanceof FileOption && ((FileOption) option).isOutputFile()) {
+                FileOption fileOption = (FileOption) option;
+                String fileName = fileOption.getValue();
+                if (fileName != null && fileName.length() > 0) {
+                    int dot = fileName.lastIndexOf('.');
+                    int separator = Math.max(fileName.lastIndexOf('/'), fileName.lastIndexOf('\\'));
+                    if (dot > separator + 1) {
+                        fileName = fileName.substring(0, dot) + "_" + value + fileName.substring(dot);
+                    } else {
+                        fileName = fileName + "_" + value;
+                    }
+                    fileOption.setValue(fileName);
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the tasks and waits for all of them to finish.
+     *
+     * @param tasks the tasks, one per parameter value
+     * @param values the parameter values, in increasing order
+     * @param parameterName the name of the measurement holding the parameter
+     * value in the combined learning curve
+     * @param monitor the monitor of the sweep
+     * @param repository the repository passed to every task
+     * @return the combined learning curve, or the result of the task of the
+     * last value if not all tasks returned learning curves, or null if the
+     * sweep was aborted
+     */
+    public Object run(final Task[] tasks, double[] values, String parameterName,
+            TaskMonitor monitor, final ObjectRepository repository) {
+        int numberOfTasks = tasks.length;
+        final StandardTaskMonitor[] taskMonitors = new StandardTaskMonitor[numberOfTasks];
+        List<Future<Object>> futures = new ArrayList<Future<Object>>();
+        int threads = Math.min(this.numberOfJobs, Math.max(numberOfTasks, 1));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (int i = 0; i < numberOfTasks; i++) {
+                final int index = i;
+                taskMonitors[i] = new StandardTaskMonitor();
+                futures.add(executor.submit(new Callable<Object>() {
+                    @Override
+                    public Object call() {
+                        return tasks[index].doTask(taskMonitors[index], repository);
+                    }
+                }));
+            }
+            executor.shutdown();
+            while (!executor.awaitTermination(MONITOR_UPDATE_INTERVAL, TimeUnit.MILLISECONDS)) {
+                if (monitor.taskShouldAbort()) {
+                    for (StandardTaskMonitor taskMonitor : taskMonitors) {
+                        taskMonitor.requestCancel();
+                    }
+                    return null;
+                }
+                int completed = 0;
+                double fractionComplete = 0.0;
+                for (int i = 0; i < numberOfTasks; i++) {
+                    if (futures.get(i).isDone()) {
+                        completed++;
+                        fractionComplete += 1.0;
+                    } else {
+                        fractionComplete += Math.max(taskMonitors[i].getCurrentActivityFractionComplete(), 0.0);
+                    }
+                }
+                monitor.setCurrentActivity("Running " + numberOfTasks + " tasks on "
+                        + threads + " threads (" + completed + " complete)...",
+                        fractionComplete / numberOfTasks);
+                if (monitor.resultPreviewRequested()) {
+                    Object[] results = new Object[numberOfTasks];
+                    for (int i = 0; i < numberOfTasks; i++) {
+                        if (futures.get(i).isDone()) {
+                            results[i] = getResult(futures.get(i), values[i]);
+                        }
+                    }
+                    monitor.setLatestResultPreview(combineResults(results, values, parameterName));
+                }
+            }
+            if (monitor.taskShouldAbort()) {
+                return null;
+            }
+            Object[] results = new Object[numberOfTasks];
+            for (int i = 0; i < numberOfTasks; i++) {
+                results[i] = getResult(futures.get(i), values[i]);
+            }
+            return combineResults(results, values, parameterName);
+        } catch (InterruptedException ex) {
+            throw new RuntimeException("Could not wait for the tasks of the sweep.");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Object getResult(Future<Object> future, double value)
+            throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException ex) {
+            throw new RuntimeException("Task for parameter value " + value
+                    + " failed.", ex.getCause());
+        }
+    }
+
+    /**
+     * Merges the learning curves returned by the tasks into one, whose first
+     * measurement is the parameter value. Tasks that did not finish are
+     * skipped.
+     */
+    protected static Object combineResults(Object[] results, double[] values,
+            String parameterName) {
+        Object last = null;
+        for (Object result : results) {
+            if (result != null) {
+                if (!(result instanceof LearningCurve)) {
+                    return results[results.length - 1];
+                }
+                last = result;
+            }
+        }
+        if (last == null) {
+            return null;
+        }
+        LearningCurve combined = new LearningCurve(parameterName);
+        LearningCurveRow row = new LearningCurveRow(combined);
+        for (int i = 0; i < results.length; i++) {
+            LearningCurve curve = (LearningCurve) results[i];
+            if (curve == null) {
+                continue;
+            }
+            int numMeasurements = curve.getMeasurementNameCount();
+            int[] indices = new int[numMeasurements];
+            for (int m = 0; m < numMeasurements; m++) {
+                indices[m] = combined.getMeasurementIndex(curve.getMeasurementName(m));
+            }
+            for (int entry = 0; entry < curve.numEntries(); entry++) {
+                row.add(0, values[i]);
+                for (int m = 0; m < numMeasurements; m++) {
+                    double value = curve.getMeasurement(entry, m);
+                    if (!Double.isNaN(value)) {
+                        row.add(indices[m], value);
+                    }
+                }
+                row.insert();
+            }
+        }
+        return combined;
+    }
+}
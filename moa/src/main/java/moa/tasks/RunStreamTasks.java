@@ -20,7 +20,11 @@
  */
 package moa.tasks;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import com.github.javacliparser.FloatOption;
+import com.github.javacliparser.IntOption;
 import com.github.javacliparser.StringOption;
 import moa.MOAObject;
 import moa.core.ObjectRepository;
@@ -29,6 +33,10 @@ import moa.options.ClassOption;
 /**
  * Task for running several experiments modifying values of parameters.
  *
+ * <p>With more than one job the experiments run concurrently, each writing
+ * to its own output files (named after the parameter value), and the learning
+ * curves they return are combined into one, ordered by parameter value.</p>
+ *
  * @author Richard Kirkby (rkirkby@cs.waikato.ac.nz)
  * @author Albert Bifet (abifet at cs dot waikato dot ac dot nz)
  * @version $Revision: 7 $
@@ -43,7 +51,7 @@ public class RunStreamTasks extends ConceptDriftMainTask {
     private static final long serialVersionUID = 1L;
 
     public ClassOption taskOption = new ClassOption("task", 't',
-            "Task to do.", Task.class, "EvaluatePrequential -l active.ALUncertainty -i 1000000 -d temp.txt");
+            "Task to do.", Task.class, "EvaluatePrequential -l trees.HoeffdingTree -i 1000000 -d temp.txt");
 
     public StringOption streamParameterOption = new StringOption("streamParameter", 'p',
             "Stream parameter to vary.", "b");
@@ -57,6 +65,10 @@ public class RunStreamTasks extends ConceptDriftMainTask {
     public FloatOption incrementValueOption = new FloatOption("incrementValue",
             'i', "Increment value", 0.1);
 
+    public IntOption numberOfJobsOption = new IntOption("numberOfJobs", 'j',
+            "Number of experiments to run concurrently (-1 = as many as cores, 0 or 1 = one after the other).",
+            1, -1, Integer.MAX_VALUE);
+
     @Override
     public Class<?> getTaskResultType() {
         return this.task.getTaskResultType();
@@ -68,21 +80,49 @@ public class RunStreamTasks extends ConceptDriftMainTask {
     protected Object doMainTask(TaskMonitor monitor, ObjectRepository repository) {
         Object result = null;
         Task taskBase = (Task) getPreparedClassOption(this.taskOption); 
-        String commandString = this.taskOption.getValueAsCLIString();
-        //for each possible value of the parameter
+        String stream = null;
+        if (taskBase instanceof EvaluateConceptDrift) {
+            stream = ((EvaluateConceptDrift) taskBase).streamOption.getValueAsCLIString();
+        }
+        //each possible value of the parameter
+        List<Integer> valueList = new ArrayList<Integer>();
         for (int valueParameter = (int) this.firstValueOption.getValue();
                 valueParameter <= this.lastValueOption.getValue();
                 valueParameter += (int) this.incrementValueOption.getValue()) {
-            //Add parameter
-            this.task = (Task) ((MOAObject) taskBase).copy();
-            if (this.task instanceof EvaluateConceptDrift) {
-                String stream = ((EvaluateConceptDrift) this.task).streamOption.getValueAsCLIString();
-                ((EvaluateConceptDrift) this.task).streamOption.setValueViaCLIString(stream + " -" + streamParameterOption.getValue() + " " + valueParameter);
+            valueList.add(valueParameter);
+        }
+        int numberOfJobs = this.numberOfJobsOption.getValue();
+        if (numberOfJobs == 0 || numberOfJobs == 1) {
+            for (int valueParameter : valueList) {
+                this.task = createTask(taskBase, stream, valueParameter);
+                //Run task
+                result = this.task.doTask(monitor, repository);
             }
-            //Run task
-            result = this.task.doTask(monitor, repository);
-            //System.out.println(((AbstractOptionHandler) this.task).getCLICreationString(Task.class));
+            return result;
+        }
+        double[] values = new double[valueList.size()];
+        Task[] tasks = new Task[values.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = valueList.get(i);
+            tasks[i] = createTask(taskBase, stream, valueList.get(i));
+            ParameterSweep.isolateOutputFiles(tasks[i], Integer.toString(valueList.get(i)));
+            this.task = tasks[i];
+        }
+        return new ParameterSweep(numberOfJobs).run(tasks, values,
+                "stream parameter " + streamParameterOption.getValue(),
+                monitor, repository);
+    }
+
+    /**
+     * Creates a copy of the task with the stream parameter set to the given
+     * value.
+     */
+    protected Task createTask(Task taskBase, String stream, int valueParameter) {
+        Task task = (Task) ((MOAObject) taskBase).copy();
+        //Add parameter
+        if (task instanceof EvaluateConceptDrift) {
+            ((EvaluateConceptDrift) task).streamOption.setValueViaCLIString(stream + " -" + streamParameterOption.getValue() + " " + valueParameter);
         }
-        return result;
+        return task;
     }
 }
@@ -20,14 +20,23 @@
  */
 package moa.tasks;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import moa.MOAObject;
 import moa.core.ObjectRepository;
 import moa.options.ClassOption;
 import com.github.javacliparser.FloatOption;
+import com.github.javacliparser.IntOption;
 import com.github.javacliparser.StringOption;
 
 /**
  * Task for running several experiments modifying values of parameters.
  *
+ * <p>With more than one job the experiments run concurrently, each writing
+ * to its own output files (named after the parameter value), and the learning
+ * curves they return are combined into one, ordered by parameter value.</p>
+ *
  * @author Richard Kirkby (rkirkby@cs.waikato.ac.nz)
  * @author Albert Bifet (abifet at cs dot waikato dot ac dot nz)
  * @version $Revision: 7 $
@@ -42,10 +51,10 @@ public class RunTasks extends AuxiliarMainTask {
     private static final long serialVersionUID = 1L;
 
     public ClassOption taskOption = new ClassOption("task", 't',
-            "Task to do.", Task.class, "EvaluatePrequential -l active.ALUncertainty -i 1000000 -d temp.txt");
+            "Task to do.", Task.class, "EvaluatePrequential -l trees.HoeffdingTree -i 1000000 -d temp.txt");
 
     public StringOption classifierParameterOption = new StringOption("classifierParameter", 'p',
-            "Classifier parameter to vary.", "b");
+            "Classifier parameter to vary.", "t");
 
     public FloatOption firstValueOption = new FloatOption("firstValue",
             'f', "First value", 0.0);
@@ -56,6 +65,10 @@ public class RunTasks extends AuxiliarMainTask {
     public FloatOption incrementValueOption = new FloatOption("incrementValue",
             'i', "Increment value", 0.1);
 
+    public IntOption numberOfJobsOption = new IntOption("numberOfJobs", 'j',
+            "Number of experiments to run concurrently (-1 = as many as cores, 0 or 1 = one after the other).",
+            1, -1, Integer.MAX_VALUE);
+
     @Override
     public Class<?> getTaskResultType() {
         return this.task.getTaskResultType();
@@ -67,25 +80,59 @@ public class RunTasks extends AuxiliarMainTask {
     protected Object doMainTask(TaskMonitor monitor, ObjectRepository repository) {
         Object result = null;
 
-        String commandString = this.taskOption.getValueAsCLIString();
-        //for each possible value of the parameter
+        //each possible value of the parameter
+        List<Double> valueList = new ArrayList<Double>();
         for (double valueParameter = this.firstValueOption.getValue();
                 valueParameter <= this.lastValueOption.getValue();
                 valueParameter += this.incrementValueOption.getValue()) {
-            //Add parameter
-            this.task = (Task) getPreparedClassOption(this.taskOption);
-            if (this.task instanceof EvaluatePrequential) {
-                String classifier = ((EvaluatePrequential) this.task).learnerOption.getValueAsCLIString();
-                ((EvaluatePrequential) this.task).learnerOption.setValueViaCLIString(classifier + " -" + classifierParameterOption.getValue() + " " + valueParameter);
-            }
-            if (this.task instanceof EvaluateInterleavedTestThenTrain) {
-                String classifier = ((EvaluateInterleavedTestThenTrain) this.task).learnerOption.getValueAsCLIString();
-                ((EvaluateInterleavedTestThenTrain) this.task).learnerOption.setValueViaCLIString(classifier + " -" + classifierParameterOption.getValue() + " " + valueParameter);
+            valueList.add(valueParameter);
+        }
+        double[] values = new double[valueList.size()];
+        Task[] tasks = new Task[values.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = valueList.get(i);
+        }
+        Task taskBase = (Task) getPreparedClassOption(this.taskOption);
+        String classifier = null;
+        if (taskBase instanceof EvaluatePrequential) {
+            classifier = ((EvaluatePrequential) taskBase).learnerOption.getValueAsCLIString();
+        }
+        if (taskBase instanceof EvaluateInterleavedTestThenTrain) {
+            classifier = ((EvaluateInterleavedTestThenTrain) taskBase).learnerOption.getValueAsCLIString();
+        }
+        int numberOfJobs = this.numberOfJobsOption.getValue();
+        if (numberOfJobs == 0 || numberOfJobs == 1) {
+            for (int i = 0; i < values.length; i++) {
+                this.task = createTask(taskBase, classifier, values[i]);
+                //Run task
+                result = this.task.doTask(monitor, repository);
             }
-            //Run task
-            result = this.task.doTask(monitor, repository);
-            //System.out.println(((AbstractOptionHandler) this.task).getCLICreationString(Task.class));
+            return result;
+        }
+        for (int i = 0; i < values.length; i++) {
+            tasks[i] = createTask(taskBase, classifier, values[i]);
+            ParameterSweep.isolateOutputFiles(tasks[i], ParameterSweep.formatValue(values[i],
+                    this.firstValueOption.getValue(), this.incrementValueOption.getValue()));
+            this.task = tasks[i];
+        }
+        return new ParameterSweep(numberOfJobs).run(tasks, values,
+                "classifier parameter " + classifierParameterOption.getValue(),
+                monitor, repository);
+    }
+
+    /**
+     * Creates a copy of the task with the classifier parameter set to the
+     * given value.
+     */
+    protected Task createTask(Task taskBase, String classifier, double valueParameter) {
+        Task task = (Task) ((MOAObject) taskBase).copy();
+        //Add parameter
+        if (task instanceof EvaluatePrequential) {
+            ((EvaluatePrequential) task).learnerOption.setValueViaCLIString(classifier + " -" + classifierParameterOption.getValue() + " " + valueParameter);
+        }
+        if (task instanceof EvaluateInterleavedTestThenTrain) {
+            ((EvaluateInterleavedTestThenTrain) task).learnerOption.setValueViaCLIString(classifier + " -" + classifierParameterOption.getValue() + " " + valueParameter);
         }
-        return result;
+        return task;
     }
 }
@@ -27,9 +27,9 @@ package moa.tasks;
  */
 public class StandardTaskMonitor implements TaskMonitor {
 
-    protected String currentActivityDescription = "";
+    protected volatile String currentActivityDescription = "";
 
-    protected double currentActivityFractionComplete = -1.0;
+    protected volatile double currentActivityFractionComplete = -1.0;
 
     protected volatile boolean cancelFlag = false;
 
@@ -0,0 +1,120 @@
+package moa.classifiers;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import moa.classifiers.bayes.NaiveBayes;
+import moa.classifiers.functions.AdaGrad;
+import moa.classifiers.functions.Perceptron;
+import moa.classifiers.functions.SGD;
+import moa.classifiers.functions.SGDMultiClass;
+import moa.classifiers.meta.LeveragingBag;
+import moa.classifiers.meta.OzaBag;
+import moa.classifiers.meta.OzaBagAdwin;
+import moa.streams.generators.RandomRBFGenerator;
+import moa.streams.generators.RandomTreeGenerator;
+import moa.streams.InstanceStream;
+
+import org.junit.Test;
+
+import com.yahoo.labs.samoa.instances.Instance;
+
+/**
+ * Tests that the classifiers overriding trainOnInstances and
+ * getVotesForInstances learn and predict as one instance at a time.
+ */
+public class BatchLearningTest {
+
+	private static final double EPS = 0.0;
+
+	private static final int NUM_BATCHES = 30;
+
+	private static final int BATCH_SIZE = 97;
+
+	private InstanceStream newStream(boolean binary) {
+		RandomRBFGenerator stream = new RandomRBFGenerator();
+		stream.numClassesOption.setValue(binary ? 2 : 4);
+		stream.prepareForUse();
+		return stream;
+	}
+
+	private InstanceStream newNominalStream() {
+		RandomTreeGenerator stream = new RandomTreeGenerator();
+		stream.prepareForUse();
+		return stream;
+	}
+
+	private void checkBatches(Classifier learner, InstanceStream stream) {
+		learner.prepareForUse();
+		learner.setModelContext(stream.getHeader());
+		learner.resetLearning();
+		Classifier batchLearner = learner.copy();
+		Instance[] batch = new Instance[BATCH_SIZE];
+		for (int b = 0; b < NUM_BATCHES; b++) {
+			// varying batch sizes, including empty ones
+			int n = (b * 31) % (BATCH_SIZE + 1);
+			for (int i = 0; i < n; i++) {
+				batch[i] = stream.nextInstance().getData();
+			}
+			double[][] votes = batchLearner.getVotesForInstances(batch, n);
+			assertEquals(n, votes.length);
+			for (int i = 0; i < n; i++) {
+				assertArrayEquals(learner.getVotesForInstance(batch[i]), votes[i], EPS);
+			}
+			batchLearner.trainOnInstances(batch, n);
+			for (int i = 0; i < n; i++) {
+				learner.trainOnInstance(batch[i]);
+			}
+		}
+	}
+
+	@Test
+	public void testNaiveBayes() {
+		checkBatches(new NaiveBayes(), newStream(false));
+		checkBatches(new NaiveBayes(), newNominalStream());
+	}
+
+	@Test
+	public void testSGD() {
+		checkBatches(new SGD(), newStream(true));
+		SGD logistic = new SGD();
+		logistic.lossFunctionOption.setChosenIndex(1);
+		checkBatches(logistic, newStream(true));
+	}
+
+	@Test
+	public void testAdaGrad() {
+		checkBatches(new AdaGrad(), newStream(true));
+	}
+
+	@Test
+	public void testSGDMultiClass() {
+		checkBatches(new SGDMultiClass(), newStream(false));
+	}
+
+	@Test
+	public void testPerceptron() {
+		checkBatches(new Perceptron(), newStream(false));
+	}
+
+	@Test
+	public void testOzaBag() {
+		checkBatches(new OzaBag(), newStream(false));
+		OzaBag bag = new OzaBag();
+		bag.baseLearnerOption.setValueViaCLIString("bayes.NaiveBayes");
+		checkBatches(bag, newNominalStream());
+	}
+
+	@Test
+	public void testOzaBagAdwin() {
+		checkBatches(new OzaBagAdwin(), newStream(false));
+	}
+
+	@Test
+	public void testLeveragingBag() {
+		checkBatches(new LeveragingBag(), newStream(false));
+		LeveragingBag outputCodes = new LeveragingBag();
+		outputCodes.outputCodesOption.set();
+		checkBatches(outputCodes, newStream(false));
+	}
+}
@@ -0,0 +1,192 @@
+package moa.classifiers.core.attributeclassobservers;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Random;
+
+import moa.core.AutoExpandVector;
+import moa.core.DoubleVector;
+
+import org.junit.Test;
+
+/**
+ * Tests that NominalAttributeClassObserver gives the split distributions and
+ * probabilities of one vector of attribute value weights per class, also when
+ * values and classes grow past the capacity it was given.
+ */
+public class NominalAttributeClassObserverTest {
+
+	private static final double EPS = 1e-9;
+
+	/** The weights of the attribute values per class, as vectors */
+	private final AutoExpandVector<DoubleVector> expected = new AutoExpandVector<DoubleVector>();
+
+	private void observe(NominalAttributeClassObserver observer, double attVal, int classVal, double weight) {
+		observer.observeAttributeClass(attVal, classVal, weight);
+		if (!Double.isNaN(attVal)) {
+			DoubleVector valDist = this.expected.get(classVal);
+			if (valDist == null) {
+				valDist = new DoubleVector();
+				this.expected.set(classVal, valDist);
+			}
+			valDist.addToValue((int) attVal, weight);
+		}
+	}
+
+	private int maxAttValsObserved() {
+		int max = 0;
+		for (DoubleVector valDist : this.expected) {
+			if (valDist != null) {
+				max = Math.max(max, valDist.numValues());
+			}
+		}
+		return max;
+	}
+
+	private double[][] multiwaySplit(int maxAttValsObserved) {
+		DoubleVector[] dists = new DoubleVector[maxAttValsObserved];
+		for (int j = 0; j < dists.length; j++) {
+			dists[j] = new DoubleVector();
+		}
+		for (int i = 0; i < this.expected.size(); i++) {
+			DoubleVector valDist = this.expected.get(i);
+			if (valDist != null) {
+				for (int j = 0; j < valDist.numValues(); j++) {
+					dists[j].addToValue(i, valDist.getValue(j));
+				}
+			}
+		}
+		double[][] result = new double[dists.length][];
+		for (int j = 0; j < dists.length; j++) {
+			result[j] = dists[j].getArrayCopy();
+		}
+		return result;
+	}
+
+	private double[][] binarySplit(int valIndex) {
+		DoubleVector equalsDist = new DoubleVector();
+		DoubleVector notEqualDist = new DoubleVector();
+		for (int i = 0; i < this.expected.size(); i++) {
+			DoubleVector valDist = this.expected.get(i);
+			if (valDist != null) {
+				for (int j = 0; j < valDist.numValues(); j++) {
+					if (j == valIndex) {
+						equalsDist.addToValue(i, valDist.getValue(j));
+					} else {
+						notEqualDist.addToValue(i, valDist.getValue(j));
+					}
+				}
+			}
+		}
+		return new double[][]{equalsDist.getArrayCopy(), notEqualDist.getArrayCopy()};
+	}
+
+	private void assertSameDists(double[][] expectedDists, double[][] actualDists) {
+		assertEquals(expectedDists.length, actualDists.length);
+		for (int i = 0; i < expectedDists.length; i++) {
+			assertArrayEquals(expectedDists[i], actualDists[i], EPS);
+		}
+	}
+
+	private void assertSameAttValDistPerClass(AutoExpandVector<DoubleVector> actual) {
+		assertEquals(this.expected.size(), actual.size());
+		for (int i = 0; i < this.expected.size(); i++) {
+			if (this.expected.get(i) == null) {
+				assertNull(actual.get(i));
+			} else {
+				assertArrayEquals(this.expected.get(i).getArrayCopy(), actual.get(i).getArrayCopy(), EPS);
+			}
+		}
+	}
+
+	private void assertSameStatistics(NominalAttributeClassObserver observer) {
+		int maxAttValsObserved = maxAttValsObserved();
+		assertEquals(maxAttValsObserved, observer.getMaxAttValsObserved());
+		assertSameDists(multiwaySplit(maxAttValsObserved),
+				observer.getClassDistsResultingFromMultiwaySplit(maxAttValsObserved));
+		for (int valIndex = 0; valIndex <= maxAttValsObserved; valIndex++) {
+			assertSameDists(binarySplit(valIndex), observer.getClassDistsResultingFromBinarySplit(valIndex));
+		}
+		for (int i = 0; i <= this.expected.size(); i++) {
+			DoubleVector valDist = this.expected.get(i);
+			for (int j = 0; j <= maxAttValsObserved; j++) {
+				double probability = valDist != null
+						? (valDist.getValue(j) + 1.0) / (valDist.sumOfValues() + valDist.numValues()) : 0.0;
+				assertEquals(probability, observer.probabilityOfAttributeValueGivenClass(j, i), EPS);
+			}
+		}
+		assertSameAttValDistPerClass(observer.getAttValDistPerClass());
+	}
+
+	@Test
+	public void testSplitDistributions() {
+		Random random = new Random(1);
+		NominalAttributeClassObserver observer = new NominalAttributeClassObserver();
+		double missing = 0.0;
+		double total = 0.0;
+		for (int n = 1; n <= 1000; n++) {
+			// more values and classes are seen as the stream goes on
+			int numValues = 1 + Math.min(n / 100, 7);
+			int numClasses = 1 + Math.min(n / 150, 4);
+			double weight = random.nextInt(4) == 0 ? 0.0 : random.nextDouble();
+			double attVal = random.nextInt(10) == 0 ? Double.NaN : random.nextInt(numValues);
+			observe(observer, attVal, random.nextInt(numClasses), weight);
+			missing += Double.isNaN(attVal) ? weight : 0.0;
+			total += weight;
+			if (n % 50 == 0) {
+				assertSameStatistics(observer);
+			}
+		}
+		assertEquals(missing, observer.weightOfObservedMissingValues(), EPS);
+		assertEquals(total, observer.totalWeightOfClassObservations(), EPS);
+	}
+
+	@Test
+	public void testGrowthPastCapacity() {
+		Random random = new Random(2);
+		NominalAttributeClassObserver observer = new NominalAttributeClassObserver();
+		observer.ensureCapacity(3, 2);
+		assertEquals(3, observer.rowCapacity);
+		assertEquals(2, observer.numAttValsPerClass.length);
+		for (int n = 0; n < 200; n++) {
+			observe(observer, random.nextInt(3), random.nextInt(2), random.nextDouble());
+		}
+		assertSameStatistics(observer);
+		// a class without observations between the ones observed
+		observe(observer, 1, 4, 2.0);
+		assertSameStatistics(observer);
+		// a value past the capacity, for a class observed before
+		observe(observer, 9, 0, 3.0);
+		assertSameStatistics(observer);
+		for (int n = 0; n < 200; n++) {
+			observe(observer, random.nextInt(12), random.nextInt(6), random.nextDouble());
+		}
+		assertSameStatistics(observer);
+		// sizing for less than what is held keeps the weights
+		observer.ensureCapacity(1, 1);
+		assertSameStatistics(observer);
+	}
+
+	@SuppressWarnings("deprecation")
+	@Test
+	public void testDeprecatedAttValDistPerClass() {
+		Random random = new Random(3);
+		NominalAttributeClassObserver observer = new NominalAttributeClassObserver();
+		assertEquals(0, observer.attValDistPerClass.size());
+		for (int n = 0; n < 100; n++) {
+			observe(observer, random.nextInt(4), 1 + random.nextInt(2), 1.0);
+		}
+		assertSameAttValDistPerClass(observer.attValDistPerClass);
+		observe(observer, 6, 0, 1.0);
+		assertSameAttValDistPerClass(observer.attValDistPerClass);
+		// copies are serialized, and read it from their own weights
+		NominalAttributeClassObserver copy = (NominalAttributeClassObserver) observer.copy();
+		assertSameAttValDistPerClass(copy.attValDistPerClass);
+		assertSameAttValDistPerClass(observer.attValDistPerClass);
+		observe(copy, 2, 3, 1.0);
+		assertEquals(4, copy.attValDistPerClass.size());
+		assertEquals(3, observer.attValDistPerClass.size());
+	}
+}
@@ -0,0 +1,132 @@
+package moa.classifiers.core.statisticaltests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.yahoo.labs.samoa.instances.Instance;
+
+import moa.streams.generators.RandomRBFGenerator;
+
+import org.junit.Test;
+
+/**
+ * Tests that the KNN and Cramer tests give the same statistics when the
+ * distances of their samples are taken from a cache shared by several tests
+ * as when they are computed for every test, also after the lists of the
+ * samples change.
+ */
+public class DistanceCacheTest {
+
+	private static final int NUM_SAMPLES = 4;
+
+	private static final int SAMPLE_SIZE = 30;
+
+	private final RandomRBFGenerator stream = new RandomRBFGenerator();
+
+	private final List<List<Instance>> samples = new ArrayList<List<Instance>>();
+
+	public DistanceCacheTest() {
+		this.stream.getOptions().setViaCLIString("-a 4 -n 5");
+		this.stream.prepareForUse();
+		for (int i = 0; i < NUM_SAMPLES; i++) {
+			List<Instance> sample = new ArrayList<Instance>();
+			for (int j = 0; j < SAMPLE_SIZE + i; j++) {
+				sample.add(this.stream.nextInstance().getData());
+			}
+			this.samples.add(sample);
+		}
+	}
+
+	/** Replaces some instances of the samples and reorders one of them */
+	private void changeSamples() {
+		this.samples.get(0).remove(0);
+		this.samples.get(0).add(this.stream.nextInstance().getData());
+		this.samples.get(1).set(3, this.stream.nextInstance().getData());
+		this.samples.get(2).add(this.stream.nextInstance().getData());
+		Collections.reverse(this.samples.get(3));
+	}
+
+	private void compareAllPairs(StatisticalTest uncached, StatisticalTest cached, DistanceCache cache)
+			throws Exception {
+		for (List<Instance> x : this.samples) {
+			for (List<Instance> y : this.samples) {
+				if (x != y) {
+					uncached.set(x, y);
+					cached.set(x, y, cache);
+					assertEquals(uncached.call(), cached.call(), 0.0);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testKNN() throws Exception {
+		for (int k : new int[]{1, 3, 10}) {
+			KNN uncached = new KNN();
+			uncached.kValueOption.setValue(k);
+			KNN cached = new KNN();
+			cached.kValueOption.setValue(k);
+			DistanceCache cache = new DistanceCache();
+			compareAllPairs(uncached, cached, cache);
+			compareAllPairs(uncached, cached, cache);
+			changeSamples();
+			compareAllPairs(uncached, cached, cache);
+		}
+	}
+
+	private void compareAllPairs(Cramer cramer, DistanceCache cache) {
+		for (List<Instance> x : this.samples) {
+			for (List<Instance> y : this.samples) {
+				if (x != y) {
+					Cramer.CramerTest expected = cramer.cramerTest(x, y);
+					Cramer.CramerTest actual = cramer.cramerTest(cache.getSample(x), cache.getSample(y));
+					assertEquals(expected.statistic, actual.statistic, 0.0);
+					assertEquals(expected.pValue, actual.pValue, 0.0);
+					assertEquals(expected.critValue, actual.critValue, 0.0);
+					assertEquals(expected.result, actual.result, 0.0);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testCramer() {
+		String[] kernels = new Cramer().kernelOption.getOptionLabels();
+		// the samples hold the distances of every kernel
+		DistanceCache cache = new DistanceCache();
+		for (int kernel = 0; kernel < kernels.length; kernel++) {
+			Cramer cramer = new Cramer();
+			cramer.kernelOption.setChosenIndex(kernel);
+			compareAllPairs(cramer, cache);
+			// the kernel distances stored with the samples by the first pairs
+			compareAllPairs(cramer, cache);
+			changeSamples();
+			compareAllPairs(cramer, cache);
+		}
+	}
+
+	@Test
+	public void testSamplesFollowTheirLists() {
+		DistanceCache cache = new DistanceCache();
+		List<Instance> x = this.samples.get(0);
+		DistanceCache.Sample sample = cache.getSample(x);
+		assertSame(sample, cache.getSample(x));
+		// an equal list is a different list
+		assertNotSame(sample, cache.getSample(new ArrayList<Instance>(x)));
+		x.set(1, this.stream.nextInstance().getData());
+		DistanceCache.Sample changed = cache.getSample(x);
+		assertNotSame(sample, changed);
+		assertEquals(x.get(1).value(0), changed.values[1][0], 0.0);
+		List<List<Instance>> inUse = new ArrayList<List<Instance>>();
+		inUse.add(this.samples.get(1));
+		cache.getSample(this.samples.get(1));
+		cache.retain(inUse);
+		assertEquals(1, cache.samples.size());
+		assertNotSame(changed, cache.getSample(x));
+	}
+}
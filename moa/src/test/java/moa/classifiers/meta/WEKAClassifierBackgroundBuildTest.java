@@ -0,0 +1,169 @@
+package moa.classifiers.meta;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.yahoo.labs.samoa.instances.Instance;
+
+import moa.streams.generators.RandomTreeGenerator;
+
+import org.junit.Test;
+
+/**
+ * Tests that WEKAClassifier predicts as with synchronous builds once the
+ * classifiers built on the background thread are swapped in, that builds
+ * outlived by a reset are not swapped in, and that the builder thread exits
+ * when idle without stopping later builds.
+ */
+public class WEKAClassifierBackgroundBuildTest {
+
+	private static final String WINDOW = " -w 300 -i 300 -f 600";
+
+	/** Holds the builds of BlockingNaiveBayes until counted down */
+	private static volatile CountDownLatch buildLatch = new CountDownLatch(0);
+
+	/**
+	 * Naive Bayes whose builds wait for the latch of the test, so that a build
+	 * is known to be running.
+	 */
+	public static class BlockingNaiveBayes extends weka.classifiers.bayes.NaiveBayes {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public void buildClassifier(weka.core.Instances instances) throws Exception {
+			buildLatch.await();
+			super.buildClassifier(instances);
+		}
+	}
+
+	private RandomTreeGenerator stream() {
+		RandomTreeGenerator stream = new RandomTreeGenerator();
+		stream.getOptions().setViaCLIString("-r 3 -i 4");
+		stream.prepareForUse();
+		return stream;
+	}
+
+	private WEKAClassifier classifier(RandomTreeGenerator stream, String baseLearner, String options) {
+		WEKAClassifier classifier = new WEKAClassifier();
+		classifier.getOptions().setViaCLIString(options);
+		classifier.baseLearnerOption.setValueViaCLIString(baseLearner);
+		classifier.prepareForUse();
+		classifier.setModelContext(stream.getHeader());
+		return classifier;
+	}
+
+	private void assertUniformVotes(WEKAClassifier classifier, Instance inst) {
+		double[] votes = classifier.getVotesForInstance(inst);
+		for (double vote : votes) {
+			assertEquals(1.0 / votes.length, vote, 0.0);
+		}
+	}
+
+	private void compare(String baseLearner) {
+		RandomTreeGenerator stream = stream();
+		WEKAClassifier synchronous = classifier(stream, baseLearner, WINDOW);
+		WEKAClassifier background = classifier(stream, baseLearner, WINDOW + " -b");
+		int numBuilds = 0;
+		for (int n = 0; n < 3000; n++) {
+			Instance inst = stream.nextInstance().getData();
+			if (background.pendingBuild != null) {
+				numBuilds++;
+			}
+			background.waitForPendingBuild();
+			assertArrayEquals(baseLearner + ", instance " + n, synchronous.getVotesForInstance(inst),
+					background.getVotesForInstance(inst), 0.0);
+			synchronous.trainOnInstance(inst);
+			background.trainOnInstance(inst);
+		}
+		assertTrue(numBuilds >= 5);
+		background.resetLearning();
+	}
+
+	@Test
+	public void testSwappedInBuildsPredictAsSynchronousBuilds() {
+		compare("weka.classifiers.trees.J48");
+		compare("weka.classifiers.bayes.NaiveBayes");
+	}
+
+	@Test
+	public void testBuildOutlivedByResetIsNotSwappedIn() throws Exception {
+		RandomTreeGenerator stream = stream();
+		WEKAClassifier classifier = classifier(stream, BlockingNaiveBayes.class.getName(), "-i 100 -b");
+		buildLatch = new CountDownLatch(1);
+		try {
+			for (int n = 0; n < 100; n++) {
+				classifier.trainOnInstance(stream.nextInstance().getData());
+			}
+			Future<?> build = classifier.pendingBuild;
+			ExecutorService executor = classifier.buildExecutor;
+			assertNotNull(build);
+			Instance inst = stream.nextInstance().getData();
+			// no classifier predicts before the first build is swapped in
+			assertUniformVotes(classifier, inst);
+			classifier.resetLearning();
+			assertTrue(executor.isShutdown());
+			assertNull(classifier.buildExecutor);
+			buildLatch.countDown();
+			build.get();
+			assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+			assertFalse(classifier.isClassificationEnabled);
+			assertUniformVotes(classifier, inst);
+			// the learner builds as usual after the reset
+			for (int n = 0; n < 100; n++) {
+				classifier.trainOnInstance(stream.nextInstance().getData());
+			}
+			classifier.waitForPendingBuild();
+			assertTrue(classifier.isClassificationEnabled);
+		} finally {
+			buildLatch.countDown();
+			classifier.resetLearning();
+		}
+	}
+
+	@Test
+	public void testBuilderThreadExitsWhenIdle() throws Exception {
+		RandomTreeGenerator stream = stream();
+		WEKAClassifier synchronous = classifier(stream, "weka.classifiers.trees.J48", WINDOW);
+		WEKAClassifier classifier = classifier(stream, "weka.classifiers.trees.J48", WINDOW + " -b");
+		for (int n = 0; n < 300; n++) {
+			Instance inst = stream.nextInstance().getData();
+			synchronous.trainOnInstance(inst);
+			classifier.trainOnInstance(inst);
+		}
+		classifier.waitForPendingBuild();
+		ThreadPoolExecutor executor = (ThreadPoolExecutor) classifier.buildExecutor;
+		assertTrue(executor.allowsCoreThreadTimeOut());
+		assertEquals(WEKAClassifier.BUILDER_KEEP_ALIVE_SECONDS, executor.getKeepAliveTime(TimeUnit.SECONDS));
+		// shortened so that the test does not wait for the idle time
+		executor.setKeepAliveTime(50, TimeUnit.MILLISECONDS);
+		long deadline = System.currentTimeMillis() + 10000;
+		while (executor.getPoolSize() > 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(0, executor.getPoolSize());
+		assertFalse(executor.isShutdown());
+		// the next build starts a new thread on the same executor
+		for (int n = 300; n < 1000; n++) {
+			Instance inst = stream.nextInstance().getData();
+			synchronous.trainOnInstance(inst);
+			classifier.trainOnInstance(inst);
+		}
+		classifier.waitForPendingBuild();
+		assertSame(executor, classifier.buildExecutor);
+		Instance inst = stream.nextInstance().getData();
+		assertArrayEquals(synchronous.getVotesForInstance(inst), classifier.getVotesForInstance(inst), 0.0);
+		classifier.resetLearning();
+	}
+}
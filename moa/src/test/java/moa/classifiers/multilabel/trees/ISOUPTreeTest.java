@@ -0,0 +1,78 @@
+package moa.classifiers.multilabel.trees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import com.yahoo.labs.samoa.instances.MultiLabelInstance;
+import com.yahoo.labs.samoa.instances.Prediction;
+
+import moa.streams.MultiTargetArffFileStream;
+
+import org.junit.Test;
+
+/**
+ * Tests that ISOUPTree grows the same tree and gives the same predictions
+ * when the splits of a leaf are evaluated by several threads as when they
+ * are evaluated on the training thread.
+ */
+public class ISOUPTreeTest {
+
+	private static final int NUM_OUTPUTS = 3;
+
+	private MultiTargetArffFileStream stream() throws Exception {
+		File file = new File(getClass().getResource("/moa/classifiers/data/regression.arff").toURI());
+		MultiTargetArffFileStream stream = new MultiTargetArffFileStream(file.getPath(), "-" + NUM_OUTPUTS);
+		stream.prepareForUse();
+		return stream;
+	}
+
+	private ISOUPTree tree(MultiTargetArffFileStream stream, String options) {
+		ISOUPTree tree = new ISOUPTree();
+		tree.getOptions().setViaCLIString("-g 50 " + options);
+		tree.prepareForUse();
+		tree.setModelContext(stream.getHeader());
+		return tree;
+	}
+
+	private String describe(ISOUPTree tree) {
+		StringBuilder out = new StringBuilder();
+		tree.getModelDescription(out, 0);
+		return out.toString();
+	}
+
+	private void compare(String options) throws Exception {
+		MultiTargetArffFileStream stream = stream();
+		ISOUPTree sequential = tree(stream, options + " -j 1");
+		ISOUPTree parallel = tree(stream, options + " -j 4");
+		int n = 0;
+		while (stream.hasMoreInstances()) {
+			MultiLabelInstance inst = (MultiLabelInstance) stream.nextInstance().getData();
+			Prediction expected = sequential.getPredictionForInstance(inst);
+			Prediction actual = parallel.getPredictionForInstance(inst);
+			for (int i = 0; i < NUM_OUTPUTS; i++) {
+				assertEquals("output " + i + " of instance " + n,
+						expected.getVote(i, 1), actual.getVote(i, 1), 0.0);
+			}
+			sequential.trainOnInstance(inst);
+			parallel.trainOnInstance(inst);
+			n++;
+		}
+		String description = describe(sequential);
+		// the tree has grown past its root
+		assertTrue(description.startsWith("if "));
+		assertEquals(description, describe(parallel));
+		parallel.resetLearning();
+	}
+
+	@Test
+	public void testParallelSplitsMatchSequential() throws Exception {
+		compare("");
+	}
+
+	@Test
+	public void testParallelSplitsMatchSequentialRegressionTree() throws Exception {
+		compare("-r");
+	}
+}
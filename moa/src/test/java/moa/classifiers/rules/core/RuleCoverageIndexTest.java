@@ -0,0 +1,213 @@
+package moa.classifiers.rules.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import moa.classifiers.rules.core.conditionaltests.NumericAttributeBinaryRulePredicate;
+
+import org.junit.Test;
+
+import com.yahoo.labs.samoa.instances.Attribute;
+import com.yahoo.labs.samoa.instances.Instance;
+import com.yahoo.labs.samoa.instances.InstanceImpl;
+import com.yahoo.labs.samoa.instances.Instances;
+import com.yahoo.labs.samoa.instances.InstancesHeader;
+
+/**
+ * Tests that the rules RuleCoverageIndex finds covering an instance are the
+ * ones a linear scan of the rule set finds, while rules are added, changed
+ * and removed, for ordered and unordered rule sets.
+ */
+public class RuleCoverageIndexTest {
+
+	private static final int NUM_NUMERIC = 4;
+
+	private static final int NOMINAL = NUM_NUMERIC;
+
+	private static final int NUM_NOMINAL_VALUES = 3;
+
+	/** Thresholds and values are drawn from here, so they are often equal */
+	private static final double[] GRID = {-1.0, 0.0, 0.25, 0.5, 1.0};
+
+	/**
+	 * A rule covering the instances that satisfy all its predicates, as
+	 * Rule.isCovering does with the predicates of its nodes.
+	 */
+	private static class TestRule implements RuleCoverageIndex.IndexedRule {
+
+		private final List<Predicate> predicates = new ArrayList<Predicate>();
+
+		@Override
+		public List<Predicate> getPredicates() {
+			return this.predicates;
+		}
+
+		public boolean isCovering(Instance inst) {
+			for (Predicate predicate : this.predicates) {
+				if (!predicate.evaluate(inst)) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	private InstancesHeader header() {
+		List<Attribute> attributes = new ArrayList<Attribute>();
+		for (int i = 0; i < NUM_NUMERIC; i++) {
+			attributes.add(new Attribute("numeric" + i));
+		}
+		attributes.add(new Attribute("nominal", Arrays.asList("a", "b", "c")));
+		attributes.add(new Attribute("class"));
+		Instances instances = new Instances("coverage", attributes, 0);
+		instances.setClassIndex(attributes.size() - 1);
+		return new InstancesHeader(instances);
+	}
+
+	private Instance instance(Random random, InstancesHeader header) {
+		double[] values = new double[NUM_NUMERIC + 2];
+		for (int i = 0; i < NUM_NUMERIC; i++) {
+			double r = random.nextDouble();
+			values[i] = r < 0.1 ? Double.NaN
+					: r < 0.6 ? GRID[random.nextInt(GRID.length)] : 2 * random.nextDouble() - 1;
+		}
+		values[NOMINAL] = random.nextDouble() < 0.1 ? Double.NaN : random.nextInt(NUM_NOMINAL_VALUES);
+		values[NUM_NUMERIC + 1] = random.nextDouble();
+		Instance inst = new InstanceImpl(1.0, values);
+		inst.setDataset(header);
+		return inst;
+	}
+
+	private Predicate predicate(Random random) {
+		int att = random.nextInt(NUM_NUMERIC);
+		double threshold = GRID[random.nextInt(GRID.length)];
+		switch (random.nextInt(6)) {
+		case 0:
+			// not indexed, evaluated on the rules covered by the others
+			return new NumericAttributeBinaryRulePredicate(att, threshold, 0);
+		case 1:
+			NumericAttributeBinaryRulePredicate negated = new NumericAttributeBinaryRulePredicate(att,
+					threshold, 1 + random.nextInt(2));
+			negated.negateCondition();
+			return negated;
+		case 2:
+			return new NumericRulePredicate(att, threshold, random.nextBoolean());
+		case 3:
+			return new NominalRulePredicate(NOMINAL, random.nextInt(NUM_NOMINAL_VALUES), random.nextBoolean());
+		default:
+			return new NumericAttributeBinaryRulePredicate(att, threshold, 1 + random.nextInt(2));
+		}
+	}
+
+	private TestRule rule(Random random) {
+		TestRule rule = new TestRule();
+		int numPredicates = random.nextInt(4);
+		for (int i = 0; i < numPredicates; i++) {
+			rule.predicates.add(predicate(random));
+		}
+		return rule;
+	}
+
+	private void assertSameCoveringRules(RuleCoverageIndex<TestRule> index, List<TestRule> ruleSet,
+			Random random, InstancesHeader header) {
+		for (int i = 0; i < 50; i++) {
+			Instance inst = instance(random, header);
+			List<TestRule> expected = new ArrayList<TestRule>();
+			for (TestRule rule : ruleSet) {
+				if (rule.isCovering(inst)) {
+					expected.add(rule);
+				}
+			}
+			// unordered rule sets use all the covering rules
+			assertEquals(expected, index.getCoveringRules(ruleSet, inst, false));
+			// ordered rule sets use the first one
+			List<TestRule> first = index.getCoveringRules(ruleSet, inst, true);
+			assertEquals(expected.isEmpty() ? expected : expected.subList(0, 1), first);
+		}
+	}
+
+	@Test
+	public void testUpdatesMatchLinearScan() {
+		Random random = new Random(1);
+		InstancesHeader header = header();
+		RuleCoverageIndex<TestRule> index = new RuleCoverageIndex<TestRule>();
+		List<TestRule> ruleSet = new ArrayList<TestRule>();
+		for (int i = 0; i < 10; i++) {
+			ruleSet.add(rule(random));
+		}
+		// built from the rule set on the first query
+		assertSameCoveringRules(index, ruleSet, random, header);
+		for (int step = 0; step < 300; step++) {
+			int action = random.nextInt(3);
+			if (action == 0 || ruleSet.size() < 3) {
+				TestRule rule = rule(random);
+				ruleSet.add(rule);
+				index.ruleAdded(rule);
+			} else if (action == 1) {
+				// expanded with a condition, or a threshold moved
+				TestRule rule = ruleSet.get(random.nextInt(ruleSet.size()));
+				if (rule.predicates.isEmpty() || random.nextBoolean()) {
+					rule.predicates.add(predicate(random));
+				} else {
+					int i = random.nextInt(rule.predicates.size());
+					rule.predicates.set(i, predicate(random));
+				}
+				index.ruleChanged(rule);
+			} else {
+				TestRule rule = ruleSet.remove(random.nextInt(ruleSet.size()));
+				index.ruleRemoved(rule);
+			}
+			assertSameCoveringRules(index, ruleSet, random, header);
+		}
+	}
+
+	@Test
+	public void testRenumberingAfterRemovals() {
+		Random random = new Random(2);
+		InstancesHeader header = header();
+		RuleCoverageIndex<TestRule> index = new RuleCoverageIndex<TestRule>();
+		List<TestRule> ruleSet = new ArrayList<TestRule>();
+		assertSameCoveringRules(index, ruleSet, random, header);
+		for (int i = 0; i < 200; i++) {
+			TestRule rule = rule(random);
+			ruleSet.add(rule);
+			index.ruleAdded(rule);
+		}
+		// enough removals to rebuild the index with fewer slots
+		while (ruleSet.size() > 20) {
+			index.ruleRemoved(ruleSet.remove(random.nextInt(ruleSet.size())));
+			assertSameCoveringRules(index, ruleSet, random, header);
+		}
+		assertTrue(index.rules.size() < 200);
+	}
+
+	@Test
+	public void testMissingAndEqualValues() {
+		InstancesHeader header = header();
+		RuleCoverageIndex<TestRule> index = new RuleCoverageIndex<TestRule>();
+		List<TestRule> ruleSet = new ArrayList<TestRule>();
+		TestRule lessOrEqual = new TestRule();
+		lessOrEqual.predicates.add(new NumericAttributeBinaryRulePredicate(0, 0.5, 1));
+		TestRule greater = new TestRule();
+		greater.predicates.add(new NumericAttributeBinaryRulePredicate(0, 0.5, 2));
+		TestRule nominal = new TestRule();
+		nominal.predicates.add(new NominalRulePredicate(NOMINAL, 1, true));
+		TestRule empty = new TestRule();
+		ruleSet.addAll(Arrays.asList(lessOrEqual, greater, nominal, empty));
+
+		Instance inst = new InstanceImpl(1.0, new double[]{0.5, 0, 0, 0, 1, 0});
+		inst.setDataset(header);
+		assertEquals(Arrays.asList(lessOrEqual, nominal, empty), index.getCoveringRules(ruleSet, inst, false));
+		assertEquals(Arrays.asList(lessOrEqual), index.getCoveringRules(ruleSet, inst, true));
+
+		// no condition holds on a missing value
+		inst = new InstanceImpl(1.0, new double[]{Double.NaN, 0, 0, 0, Double.NaN, 0});
+		inst.setDataset(header);
+		assertEquals(Arrays.asList(empty), index.getCoveringRules(ruleSet, inst, false));
+	}
+}
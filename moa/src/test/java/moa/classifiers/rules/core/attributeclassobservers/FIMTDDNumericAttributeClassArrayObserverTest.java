@@ -0,0 +1,145 @@
+package moa.classifiers.rules.core.attributeclassobservers;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import moa.classifiers.core.AttributeSplitSuggestion;
+import moa.classifiers.core.conditionaltests.NumericAttributeBinaryTest;
+import moa.classifiers.core.splitcriteria.SplitCriterion;
+import moa.classifiers.core.splitcriteria.VarianceReductionSplitCriterion;
+
+import org.junit.Test;
+
+/**
+ * Tests that FIMTDDNumericAttributeClassArrayObserver suggests the splits of
+ * the E-BST with a limited number of nodes, and that removing bad splits
+ * merges their statistics into the next split point.
+ */
+public class FIMTDDNumericAttributeClassArrayObserverTest {
+
+	private static final double EPS = 1e-9;
+
+	private final SplitCriterion criterion = new VarianceReductionSplitCriterion();
+
+	private FIMTDDNumericAttributeClassArrayObserver arrayObserver(int maxNodes) {
+		FIMTDDNumericAttributeClassArrayObserver observer = new FIMTDDNumericAttributeClassArrayObserver();
+		observer.maxNodesOption.setValue(maxNodes);
+		return observer;
+	}
+
+	private double attributeValue(Random random) {
+		// repeated values as well as distinct ones
+		return random.nextBoolean() ? random.nextInt(20) / 4.0 : 5 * random.nextDouble();
+	}
+
+	private double target(Random random, double x) {
+		return (x < 2.5 ? 1.0 : 3.0) + random.nextGaussian();
+	}
+
+	private void assertSameSuggestion(AttributeSplitSuggestion expected, AttributeSplitSuggestion actual) {
+		assertEquals(((NumericAttributeBinaryTest) expected.splitTest).getSplitValue(),
+				((NumericAttributeBinaryTest) actual.splitTest).getSplitValue(), 0.0);
+		assertEquals(expected.merit, actual.merit, EPS);
+		for (int i = 0; i < 2; i++) {
+			assertArrayEquals(expected.resultingClassDistributions[i],
+					actual.resultingClassDistributions[i], EPS);
+		}
+	}
+
+	@Test
+	public void testSameSplitsAsLimitObserver() {
+		for (int maxNodes : new int[]{0, 1, 5, 30, 1000}) {
+			Random random = new Random(maxNodes);
+			FIMTDDNumericAttributeClassLimitObserver limitObserver = new FIMTDDNumericAttributeClassLimitObserver();
+			limitObserver.maxNodesOption.setValue(maxNodes);
+			FIMTDDNumericAttributeClassArrayObserver arrayObserver = arrayObserver(maxNodes);
+			double[] preSplitDist = new double[3];
+			for (int i = 1; i <= 500; i++) {
+				double x = attributeValue(random);
+				double y = target(random, x);
+				limitObserver.observeAttributeClass(x, y, 1.0);
+				arrayObserver.observeAttributeClass(x, y, 1.0);
+				preSplitDist[0] += 1;
+				preSplitDist[1] += y;
+				preSplitDist[2] += y * y;
+				if (i % 50 == 0) {
+					assertSameSuggestion(
+							limitObserver.getBestEvaluatedSplitSuggestion(criterion, preSplitDist, 3, true),
+							arrayObserver.getBestEvaluatedSplitSuggestion(criterion, preSplitDist, 3, true));
+				}
+			}
+			assertTrue(arrayObserver.getNumSplitPoints() <= maxNodes + 1);
+		}
+	}
+
+	@Test
+	public void testRemoveBadSplitsMergesIntoNextPoint() {
+		int maxNodes = 9;
+		Random random = new Random(1);
+		FIMTDDNumericAttributeClassArrayObserver observer = arrayObserver(maxNodes);
+		double[] preSplitDist = new double[3];
+		for (int i = 0; i < 300; i++) {
+			double x = attributeValue(random);
+			double y = target(random, x);
+			observer.observeAttributeClass(x, y, 1.0);
+			preSplitDist[0] += 1;
+			preSplitDist[1] += y;
+			preSplitDist[2] += y * y;
+		}
+		int numPoints = observer.getNumSplitPoints();
+		assertEquals(maxNodes + 1, numPoints);
+		double[] points = observer.splitPoints.clone();
+		double[] statistics = observer.statistics.clone();
+		AttributeSplitSuggestion best = observer.getBestEvaluatedSplitSuggestion(criterion, preSplitDist, 0, true);
+
+		// the points with less than 90% of the best merit are bad
+		double ratio = 0.9;
+		double[] left = new double[3];
+		double[] right = preSplitDist.clone();
+		boolean[] bad = new boolean[numPoints];
+		int numBad = 0;
+		for (int i = 0; i < numPoints; i++) {
+			for (int j = 0; j < 3; j++) {
+				left[j] += statistics[3 * i + j];
+				right[j] -= statistics[3 * i + j];
+			}
+			double merit = criterion.getMeritOfSplit(preSplitDist, new double[][]{left, right});
+			bad[i] = merit / best.merit < ratio;
+			numBad += bad[i] ? 1 : 0;
+		}
+		assertTrue(numBad > 0 && numBad < numPoints);
+		observer.removeBadSplits(criterion, ratio, best.merit, 0.0);
+
+		assertEquals(numPoints - numBad, observer.getNumSplitPoints());
+		int kept = 0;
+		double[] merged = new double[3];
+		for (int i = 0; i <= numPoints; i++) {
+			for (int j = 0; j < 3; j++) {
+				merged[j] += statistics[3 * i + j];
+			}
+			if (i == numPoints || !bad[i]) {
+				if (i < numPoints) {
+					assertEquals(points[i], observer.splitPoints[kept], 0.0);
+				}
+				for (int j = 0; j < 3; j++) {
+					assertEquals(merged[j], observer.statistics[3 * kept + j], EPS);
+				}
+				merged = new double[3];
+				kept++;
+			}
+		}
+		// the best split does not change
+		assertSameSuggestion(best, observer.getBestEvaluatedSplitSuggestion(criterion, preSplitDist, 0, true));
+
+		// new values take the freed room in the budget
+		for (int i = 0; i < numBad; i++) {
+			observer.observeAttributeClass(10.0 + i, 0.0, 1.0);
+		}
+		assertEquals(numPoints, observer.getNumSplitPoints());
+		observer.observeAttributeClass(20.0, 0.0, 1.0);
+		assertEquals(numPoints, observer.getNumSplitPoints());
+	}
+}
@@ -0,0 +1,110 @@
+package moa.classifiers.rules.multilabel.attributeclassobservers;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import moa.classifiers.rules.core.NumericRulePredicate;
+import moa.classifiers.rules.multilabel.core.AttributeExpansionSuggestion;
+import moa.classifiers.rules.multilabel.core.splitcriteria.MultiLabelSplitCriterion;
+import moa.classifiers.rules.multilabel.core.splitcriteria.MultiTargetVarianceRatio;
+import moa.classifiers.rules.multilabel.core.splitcriteria.MultilabelInformationGain;
+import moa.core.DoubleVector;
+
+import org.junit.Test;
+
+/**
+ * Tests that MultiLabelBSTreeArray suggests the splits of MultiLabelBSTree
+ * with the same maximum number of nodes, for several outputs.
+ */
+public class MultiLabelBSTreeArrayTest {
+
+	private static final double EPS = 1e-9;
+
+	private static final int NUM_OUTPUTS = 3;
+
+	private double attributeValue(Random random) {
+		// repeated values as well as distinct ones
+		return random.nextBoolean() ? random.nextInt(20) / 4.0 : 5 * random.nextDouble();
+	}
+
+	private void assertSameSuggestion(AttributeExpansionSuggestion expected, AttributeExpansionSuggestion actual) {
+		assertEquals(((NumericRulePredicate) expected.predicate).getAttributeValue(),
+				((NumericRulePredicate) actual.predicate).getAttributeValue(), 0.0);
+		assertEquals(expected.merit, actual.merit, EPS);
+		for (int i = 0; i < expected.resultingNodeStatistics.length; i++) {
+			for (int j = 0; j < 2; j++) {
+				DoubleVector e = expected.resultingNodeStatistics[i][j];
+				DoubleVector a = actual.resultingNodeStatistics[i][j];
+				for (int k = 0; k < Math.max(e.numValues(), a.numValues()); k++) {
+					assertEquals(e.getValue(k), a.getValue(k), EPS);
+				}
+			}
+		}
+	}
+
+	private void compare(MultiLabelSplitCriterion criterion, boolean classification) {
+		for (int maxNodes : new int[]{0, 1, 5, 30, 1000}) {
+			Random random = new Random(maxNodes);
+			MultiLabelBSTree tree = new MultiLabelBSTree();
+			tree.maxNodesOption.setValue(maxNodes);
+			tree.prepareForUse();
+			MultiLabelBSTreeArray array = new MultiLabelBSTreeArray();
+			array.maxNodesOption.setValue(maxNodes);
+			array.prepareForUse();
+			DoubleVector[] preSplitStatistics = new DoubleVector[NUM_OUTPUTS];
+			for (int i = 0; i < NUM_OUTPUTS; i++) {
+				preSplitStatistics[i] = new DoubleVector();
+			}
+			for (int n = 1; n <= 500; n++) {
+				double x = attributeValue(random);
+				DoubleVector[] statistics = new DoubleVector[NUM_OUTPUTS];
+				for (int i = 0; i < NUM_OUTPUTS; i++) {
+					if (classification) {
+						// the outputs see more classes as they go
+						int numClasses = 2 + Math.min(i + n / 100, 4);
+						int c = (x < 2.5 ? 0 : 1) + random.nextInt(numClasses - 1);
+						statistics[i] = new DoubleVector();
+						statistics[i].setValue(c, 1.0);
+					} else {
+						double y = (x < 1 + i ? i : -i) + random.nextGaussian();
+						statistics[i] = new DoubleVector(new double[]{1.0, y, y * y});
+					}
+					preSplitStatistics[i].addValues(statistics[i]);
+				}
+				tree.observeAttribute(x, statistics);
+				array.observeAttribute(x, statistics);
+				if (n % 50 == 0) {
+					assertSameSuggestion(
+							tree.getBestEvaluatedSplitSuggestion(criterion, preSplitStatistics, 2),
+							array.getBestEvaluatedSplitSuggestion(criterion, preSplitStatistics, 2));
+				}
+			}
+			assertTrue(array.getNumSplitPoints() <= maxNodes + 1);
+		}
+	}
+
+	@Test
+	public void testSameSplitsAsTreeForRegression() {
+		MultiTargetVarianceRatio criterion = new MultiTargetVarianceRatio();
+		criterion.prepareForUse();
+		compare(criterion, false);
+	}
+
+	@Test
+	public void testSameSplitsAsTreeWithNewClasses() {
+		MultilabelInformationGain criterion = new MultilabelInformationGain();
+		criterion.prepareForUse();
+		compare(criterion, true);
+	}
+
+	@Test
+	public void testMaxNodesOptionName() {
+		MultiLabelBSTreeArray array = new MultiLabelBSTreeArray();
+		array.getOptions().setViaCLIString("-z 7");
+		assertEquals("maxNodes", array.maxNodesOption.getName());
+		assertEquals(7, array.maxNodesOption.getValue());
+	}
+}
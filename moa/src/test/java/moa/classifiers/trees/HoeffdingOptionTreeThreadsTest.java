@@ -0,0 +1,89 @@
+package moa.classifiers.trees;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.yahoo.labs.samoa.instances.Instance;
+
+import moa.core.Measurement;
+import moa.streams.generators.RandomTreeGenerator;
+
+import org.junit.Test;
+
+/**
+ * Tests that HoeffdingOptionTree grows the same tree and gives the same votes
+ * when the leaves reached by an instance learn it on several threads as when
+ * they learn it one after the other, for every leaf prediction.
+ */
+public class HoeffdingOptionTreeThreadsTest {
+
+	private static final int NUM_INSTANCES = 20000;
+
+	private static final String[] STRUCTURE_MEASUREMENTS = {"tree size (nodes)", "tree size (leaves)",
+			"active learning leaves", "tree depth", "maximum prediction paths used"};
+
+	private HoeffdingOptionTree tree(RandomTreeGenerator stream, String options) {
+		HoeffdingOptionTree tree = new HoeffdingOptionTree();
+		// a loose secondary confidence to grow many option paths
+		tree.getOptions().setViaCLIString("-g 50 -w 0.5 -o 10 " + options);
+		tree.prepareForUse();
+		tree.setModelContext(stream.getHeader());
+		return tree;
+	}
+
+	private String describe(HoeffdingOptionTree tree) {
+		StringBuilder out = new StringBuilder();
+		tree.getModelDescription(out, 0);
+		return out.toString();
+	}
+
+	private double measurement(HoeffdingOptionTree tree, String name) {
+		Measurement measurement = Measurement.getMeasurementNamed(name, tree.getModelMeasurements());
+		return measurement.getValue();
+	}
+
+	private void compare(String options) {
+		RandomTreeGenerator stream = new RandomTreeGenerator();
+		stream.getOptions().setViaCLIString("-r 2 -i 3 -o 4 -u 4");
+		stream.prepareForUse();
+		HoeffdingOptionTree sequential = tree(stream, options + " -j 1");
+		HoeffdingOptionTree parallel = tree(stream, options + " -j 4");
+		int maxLeavesReached = 0;
+		for (int n = 0; n < NUM_INSTANCES; n++) {
+			Instance inst = stream.nextInstance().getData();
+			assertArrayEquals(options + ", votes of instance " + n, sequential.getVotesForInstance(inst),
+					parallel.getVotesForInstance(inst), 0.0);
+			sequential.trainOnInstance(inst);
+			parallel.trainOnInstance(inst);
+			maxLeavesReached = Math.max(maxLeavesReached, parallel.trainingNodes.size());
+		}
+		// option paths were grown, so leaves were trained on several threads
+		assertTrue(maxLeavesReached > 2);
+		for (String name : STRUCTURE_MEASUREMENTS) {
+			assertEquals(options + ", " + name, measurement(sequential, name), measurement(parallel, name), 0.0);
+		}
+		assertEquals(describe(sequential), describe(parallel));
+		parallel.resetLearning();
+	}
+
+	@Test
+	public void testMajorityClassLeaves() {
+		compare("-l MC");
+	}
+
+	@Test
+	public void testNaiveBayesLeaves() {
+		compare("-l NB");
+	}
+
+	@Test
+	public void testNaiveBayesAdaptiveLeaves() {
+		compare("-l NBAdaptive");
+	}
+
+	@Test
+	public void testBinarySplits() {
+		compare("-b");
+	}
+}
@@ -0,0 +1,90 @@
+package moa.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests that the profilers of tasks running at the same time keep their
+ * statistics apart, and that the histograms of terminated threads are merged
+ * and dropped.
+ */
+public class ProfilerTest {
+
+	private static long count(Profiler profiler, Profiler.Phase phase) {
+		return profiler.getHistograms()[phase.ordinal()].getCount();
+	}
+
+	private static void record(Profiler.Phase phase, int times) {
+		for (int i = 0; i < times; i++) {
+			long start = Profiler.start();
+			Profiler.stop(phase, start);
+		}
+	}
+
+	@Test
+	public void testConcurrentTasksAreSeparate() throws Exception {
+		final Profiler[] other = new Profiler[1];
+		Profiler profiler = Profiler.open();
+		try {
+			Thread task = new Thread() {
+				@Override
+				public void run() {
+					other[0] = Profiler.open();
+					record(Profiler.Phase.TRAINING, 3);
+				}
+			};
+			task.start();
+			task.join();
+			record(Profiler.Phase.TRAINING, 5);
+			assertEquals(5, count(profiler, Profiler.Phase.TRAINING));
+			assertEquals(3, count(other[0], Profiler.Phase.TRAINING));
+			// Closing the other task keeps this one profiling
+			other[0].close();
+			assertTrue(Profiler.isEnabled());
+			record(Profiler.Phase.TRAINING, 1);
+			assertEquals(6, count(profiler, Profiler.Phase.TRAINING));
+		} finally {
+			profiler.close();
+		}
+		assertNull(Profiler.current());
+		assertFalse(Profiler.isEnabled());
+		assertEquals(0L, Profiler.start());
+	}
+
+	@Test
+	public void testWorkerThreadsAndTermination() throws Exception {
+		final Profiler profiler = Profiler.open();
+		try {
+			Thread worker = new Thread() {
+				@Override
+				public void run() {
+					// Unbound threads record nothing
+					record(Profiler.Phase.ENSEMBLE_MEMBER, 2);
+					Profiler previous = Profiler.bind(profiler);
+					assertNull(previous);
+					assertSame(profiler, Profiler.current());
+					record(Profiler.Phase.ENSEMBLE_MEMBER, 4);
+					Profiler.bind(previous);
+				}
+			};
+			worker.start();
+			worker.join();
+			record(Profiler.Phase.STREAM, 1);
+			assertEquals(2, profiler.threadHistograms.size());
+			assertEquals(4, count(profiler, Profiler.Phase.ENSEMBLE_MEMBER));
+			// The terminated worker was merged and dropped
+			assertEquals(1, profiler.threadHistograms.size());
+			assertEquals(4, count(profiler, Profiler.Phase.ENSEMBLE_MEMBER));
+			assertEquals(1, count(profiler, Profiler.Phase.STREAM));
+			profiler.reset();
+			assertEquals(0, count(profiler, Profiler.Phase.ENSEMBLE_MEMBER));
+		} finally {
+			profiler.close();
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package moa.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests the quantiles of TimeHistogram against the sorted durations.
+ */
+public class TimeHistogramTest {
+
+	private static final double EPS = 0.0;
+
+	@Test
+	public void testSmallValuesAreExact() {
+		TimeHistogram histogram = new TimeHistogram();
+		for (int i = 1; i <= 20; i++) {
+			histogram.record(i);
+		}
+		assertEquals(20, histogram.getCount());
+		assertEquals(210, histogram.getTotal());
+		assertEquals(10.5, histogram.getMean(), EPS);
+		assertEquals(10, histogram.getQuantile(0.5));
+		assertEquals(20, histogram.getQuantile(0.99));
+		assertEquals(20, histogram.getMax());
+	}
+
+	@Test
+	public void testQuantilesWithinRelativeError() {
+		Random random = new Random(1);
+		TimeHistogram first = new TimeHistogram();
+		TimeHistogram second = new TimeHistogram();
+		long[] values = new long[100000];
+		for (int i = 0; i < values.length; i++) {
+			// log-uniform between 1 ns and 10 s
+			values[i] = (long) Math.exp(random.nextDouble() * Math.log(1e10));
+			(i % 2 == 0 ? first : second).record(values[i]);
+		}
+		first.add(second);
+		Arrays.sort(values);
+		for (double q : new double[]{0.01, 0.5, 0.9, 0.99, 0.999}) {
+			long expected = values[(int) Math.ceil(q * values.length) - 1];
+			long actual = first.getQuantile(q);
+			assertTrue(actual >= expected);
+			assertTrue(actual <= expected + expected / 32 + 1);
+		}
+		assertEquals(values[values.length - 1], first.getQuantile(1.0));
+	}
+}
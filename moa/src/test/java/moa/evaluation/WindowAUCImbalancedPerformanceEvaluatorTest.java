@@ -0,0 +1,209 @@
+package moa.evaluation;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+/**
+ * Differential test of the incremental AUC estimator against the original
+ * estimator, which sorts the window scores in a TreeSet and walks them on
+ * every call.
+ */
+public class WindowAUCImbalancedPerformanceEvaluatorTest {
+	private static double EPS = 0.00000001;
+
+	/**
+	 * The sorted set estimator the incremental one replaced.
+	 */
+	static class ReferenceEstimator {
+
+		static class Score implements Comparable<Score> {
+			double value;
+			int posWindow;
+			boolean isPositive;
+
+			Score(double value, int position, boolean isPositive) {
+				this.value = value;
+				this.posWindow = position;
+				this.isPositive = isPositive;
+			}
+
+			@Override
+			public int compareTo(Score o) {
+				if (o.value < this.value) {
+					return -1;
+				} else if (o.value > this.value) {
+					return 1;
+				} else if (!o.isPositive && this.isPositive) {
+					return -1;
+				} else if (o.isPositive && !this.isPositive) {
+					return 1;
+				} else {
+					return Integer.compare(this.posWindow, o.posWindow);
+				}
+			}
+		}
+
+		TreeSet<Score> sortedScores = new TreeSet<Score>();
+		TreeSet<Score> holdoutSortedScores = new TreeSet<Score>();
+		Score[] window;
+		int posWindow = 0;
+		int size;
+		double numPos, numNeg, holdoutNumPos, holdoutNumNeg;
+
+		ReferenceEstimator(int size) {
+			this.size = size;
+			this.window = new Score[size];
+		}
+
+		void add(double score, boolean isPositive) {
+			if (size > 0 && posWindow % size == 0) {
+				holdoutSortedScores = new TreeSet<Score>(sortedScores);
+				holdoutNumPos = numPos;
+				holdoutNumNeg = numNeg;
+			}
+			if (size > 0 && posWindow >= size) {
+				Score oldest = window[posWindow % size];
+				sortedScores.remove(oldest);
+				if (oldest.isPositive) {
+					numPos--;
+				} else {
+					numNeg--;
+				}
+			}
+			Score newScore = new Score(score, posWindow, isPositive);
+			sortedScores.add(newScore);
+			if (isPositive) {
+				numPos++;
+			} else {
+				numNeg++;
+			}
+			if (size > 0) {
+				window[posWindow % size] = newScore;
+			}
+			posWindow++;
+		}
+
+		static double auc(TreeSet<Score> scores, double numPos, double numNeg) {
+			double AUC = 0, c = 0, prevc = 0;
+			double lastPosScore = Double.MAX_VALUE;
+			if (numPos == 0 || numNeg == 0) {
+				return 1;
+			}
+			for (Score s : scores) {
+				if (s.isPositive) {
+					if (s.value != lastPosScore) {
+						prevc = c;
+						lastPosScore = s.value;
+					}
+					c += 1;
+				} else if (s.value == lastPosScore) {
+					AUC += (c + prevc) / 2.0;
+				} else {
+					AUC += c;
+				}
+			}
+			return AUC / (numPos * numNeg);
+		}
+
+		double getAUC() {
+			return auc(sortedScores, numPos, numNeg);
+		}
+
+		double getHoldoutAUC() {
+			if (holdoutSortedScores.isEmpty()) {
+				return 0;
+			}
+			return auc(holdoutSortedScores, holdoutNumPos, holdoutNumNeg);
+		}
+
+		double getScoredAUC() {
+			double AOC = 0, AUC = 0, r = 0, prevr = 0, c = 0, prevc = 0;
+			double lastPosScore = Double.MAX_VALUE;
+			double lastNegScore = Double.MAX_VALUE;
+			if (numPos == 0 || numNeg == 0) {
+				return 1;
+			}
+			for (Score s : sortedScores) {
+				if (s.isPositive) {
+					if (s.value != lastPosScore) {
+						prevc = c;
+						lastPosScore = s.value;
+					}
+					c += s.value;
+					if (s.value == lastNegScore) {
+						AOC += (r + prevr) / 2.0;
+					} else {
+						AOC += r;
+					}
+				} else {
+					if (s.value != lastNegScore) {
+						prevr = r;
+						lastNegScore = s.value;
+					}
+					r += s.value;
+					if (s.value == lastPosScore) {
+						AUC += (c + prevc) / 2.0;
+					} else {
+						AUC += c;
+					}
+				}
+			}
+			return (AUC) / (numPos * numNeg) - (numPos * r - AOC) / (numPos * numNeg);
+		}
+	}
+
+	private void compare(int width, int numExamples, double positiveRate, int scoreLevels, long seed) {
+		WindowAUCImbalancedPerformanceEvaluator evaluator = new WindowAUCImbalancedPerformanceEvaluator();
+		evaluator.widthOption.setValue(width);
+		evaluator.reset(2);
+		WindowAUCImbalancedPerformanceEvaluator.Estimator estimator = evaluator.getAucEstimator();
+		ReferenceEstimator reference = new ReferenceEstimator(width);
+		Random random = new Random(seed);
+
+		for (int i = 0; i < numExamples; i++) {
+			boolean isPositive = random.nextDouble() < positiveRate;
+			// informative but noisy scores, optionally quantized to force ties
+			double score = Math.min(1, Math.max(0, random.nextGaussian() * 0.25 + (isPositive ? 0.65 : 0.35)));
+			if (scoreLevels > 0) {
+				score = Math.round(score * scoreLevels) / (double) scoreLevels;
+			}
+			estimator.add(score, isPositive, (score >= 0.5) == isPositive);
+			reference.add(score, isPositive);
+
+			if (i % 97 == 0 || i == numExamples - 1) {
+				assertEquals("AUC at " + i, reference.getAUC(), estimator.getAUC(), 0.0);
+				assertEquals("holdout AUC at " + i, reference.getHoldoutAUC(), estimator.getHoldoutAUC(), 0.0);
+				assertEquals("sAUC at " + i, reference.getScoredAUC(), estimator.getScoredAUC(), EPS);
+			}
+		}
+	}
+
+	@Test
+	public void testDistinctScores() {
+		compare(500, 5000, 0.3, 0, 1);
+	}
+
+	@Test
+	public void testTiedScores() {
+		compare(500, 5000, 0.3, 10, 2);
+	}
+
+	@Test
+	public void testImbalancedSmallWindow() {
+		compare(50, 3000, 0.05, 20, 3);
+	}
+
+	@Test
+	public void testSingleScore() {
+		compare(100, 1000, 0.5, 1, 4);
+	}
+
+	@Test
+	public void testUnboundedWindow() {
+		compare(0, 3000, 0.2, 100, 5);
+	}
+}
@@ -0,0 +1,72 @@
+package moa.evaluation.output;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests that the predictions read back from a binary prediction file are the
+ * ones written, across several blocks and appends.
+ */
+public class BinaryPredictionSinkTest {
+
+	private static final double EPS = 0.0;
+
+	private static final int NUM_PREDICTIONS = 3 * BatchedPredictionSink.BATCH_SIZE + 17;
+
+	private double[] votes(Random random, int i) {
+		double[] votes = new double[1 + i % 4];
+		for (int j = 0; j < votes.length; j++) {
+			votes[j] = random.nextDouble();
+		}
+		return votes;
+	}
+
+	private double trueClass(int i) {
+		return i % 11 == 0 ? Double.NaN : i % 3;
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		File file = File.createTempFile("BinaryPredictionSinkTest", ".pred");
+		file.deleteOnExit();
+		file.delete();
+		Random random = new Random(1);
+		// Written in two runs, the second one appending
+		int half = NUM_PREDICTIONS / 2;
+		PredictionSink sink = new BinaryPredictionSink(file);
+		for (int i = 0; i < half; i++) {
+			sink.addPrediction(votes(random, i), trueClass(i));
+		}
+		sink.close();
+		sink = new BinaryPredictionSink(file);
+		for (int i = half; i < NUM_PREDICTIONS; i++) {
+			sink.addPrediction(votes(random, i), trueClass(i));
+		}
+		sink.close();
+
+		random = new Random(1);
+		BinaryPredictionReader reader = new BinaryPredictionReader(file);
+		for (int i = 0; i < NUM_PREDICTIONS; i++) {
+			assertTrue(reader.next());
+			double[] votes = votes(random, i);
+			assertEquals(votes.length, reader.numVotes());
+			int maxIndex = 0;
+			for (int j = 0; j < votes.length; j++) {
+				assertEquals(votes[j], reader.vote(j), EPS);
+				if (votes[j] > votes[maxIndex]) {
+					maxIndex = j;
+				}
+			}
+			assertEquals(maxIndex, reader.predictedClass());
+			assertEquals(trueClass(i), reader.trueClass(), EPS);
+		}
+		assertFalse(reader.next());
+		reader.close();
+	}
+}
@@ -0,0 +1,132 @@
+package moa.evaluation.preview;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import moa.core.Measurement;
+import moa.evaluation.ALWindowClassificationPerformanceEvaluator;
+import moa.evaluation.BasicClassificationPerformanceEvaluator;
+import moa.evaluation.LearningEvaluation;
+
+import org.junit.Test;
+
+public class LearningCurveTest {
+	private static double EPS = 0.00000001;
+
+	@Test
+	public void testInsertKeepsOrder() {
+		LearningCurve curve = new LearningCurve("n");
+		for (int n : new int[] {30, 10, 20, 40, 5}) {
+			curve.insertEntry(new LearningEvaluation(new Measurement[] {
+					new Measurement("n", n), new Measurement("twice", 2 * n) }));
+		}
+		assertEquals(5, curve.numEntries());
+		double[] expected = {5, 10, 20, 30, 40};
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], curve.getMeasurement(i, 0), EPS);
+			assertEquals(2 * expected[i], curve.getMeasurement(i, 1), EPS);
+		}
+	}
+
+	@Test
+	public void testMissingMeasurements() {
+		LearningCurve curve = new LearningCurve("n");
+		curve.insertEntry(new LearningEvaluation(new Measurement[] {
+				new Measurement("n", 1), new Measurement("a", 1.5) }));
+		curve.insertEntry(new LearningEvaluation(new Measurement[] {
+				new Measurement("n", 2), new Measurement("b", 2.5) }));
+		assertEquals("n,a,b", curve.headerToString());
+		assertEquals("1.0,1.5,?", curve.entryToString(0));
+		// measurements below the last one given by an entry default to zero
+		assertEquals("2.0,0.0,2.5", curve.entryToString(1));
+		assertEquals(2, curve.getEntryMeasurementCount(0));
+		assertTrue(Double.isNaN(curve.getEntryData(0)[2]));
+	}
+
+	@Test
+	public void testSchemaRowAndGrowth() {
+		LearningCurve curve = new LearningCurve("n");
+		LearningCurveRow row = new LearningCurveRow(curve);
+		int n = curve.getMeasurementIndex("n");
+		int square = curve.getMeasurementIndex("square");
+		for (int i = 1; i <= 100; i++) {
+			row.add(n, i);
+			row.add(square, i * i);
+			row.insert();
+		}
+		assertEquals(100, curve.numEntries());
+		assertEquals(99.0 * 99.0, curve.getMeasurement(98, square), EPS);
+
+		// entries with the same ordering value keep their insertion order,
+		// and measurements left out are missing
+		int id = curve.getMeasurementIndex("id");
+		for (int i = 0; i < 3; i++) {
+			row.add(n, 50);
+			row.add(id, i);
+			row.insert();
+		}
+		assertEquals(103, curve.numEntries());
+		for (int i = 0; i < 3; i++) {
+			assertEquals(i, curve.getMeasurement(50 + i, id), EPS);
+		}
+		assertTrue(Double.isNaN(curve.getMeasurement(50, square)));
+		assertEquals(51.0, curve.getMeasurement(53, n), EPS);
+
+		LearningCurve copy = (LearningCurve) curve.copy();
+		copy.setData(Arrays.asList("n", "square"), Arrays.asList(new double[] {3, 9}));
+		assertEquals(1, copy.numEntries());
+		assertEquals(103, curve.numEntries());
+		assertEquals("3.0,9.0", copy.entryToString(0));
+	}
+
+	/**
+	 * Evaluator adding a measurement only through getPerformanceMeasurements().
+	 */
+	public static class ExtraMeasurementEvaluator extends BasicClassificationPerformanceEvaluator {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public Measurement[] getPerformanceMeasurements() {
+			Measurement[] measurements = super.getPerformanceMeasurements();
+			measurements = Arrays.copyOf(measurements, measurements.length + 1);
+			measurements[measurements.length - 1] = new Measurement("extra", 42);
+			return measurements;
+		}
+	}
+
+	@Test
+	public void testSubclassMeasurementsAreKept() {
+		LearningCurve curve = new LearningCurve("classified instances");
+		LearningCurveRow row = new LearningCurveRow(curve);
+		BasicClassificationPerformanceEvaluator basic = new BasicClassificationPerformanceEvaluator();
+		basic.reset(2);
+		ExtraMeasurementEvaluator extra = new ExtraMeasurementEvaluator();
+		extra.reset(2);
+		ALWindowClassificationPerformanceEvaluator activeLearning = new ALWindowClassificationPerformanceEvaluator();
+		activeLearning.reset(2);
+		activeLearning.doLabelAcqReport(null, 1);
+		activeLearning.doLabelAcqReport(null, 0);
+		activeLearning.doLabelAcqReport(null, 1);
+
+		row.addAll(basic);
+		row.insert();
+		row.addAll(extra);
+		row.insert();
+		row.addAll(activeLearning);
+		row.insert();
+		int extraIndex = curve.getMeasurementIndex("extra");
+		int absIndex = curve.getMeasurementIndex("Abs Number of Label Acquisitions");
+		int relIndex = curve.getMeasurementIndex("Rel Number of Label Acquisitions");
+		assertEquals(basic.getPerformanceMeasurementNames().length + 3, curve.headerToString().split(",").length);
+		assertEquals(3, curve.numEntries());
+		assertEquals(42, curve.getMeasurement(1, extraIndex), EPS);
+		assertEquals(2, curve.getMeasurement(2, absIndex), EPS);
+		assertEquals(2.0 / 3.0, curve.getMeasurement(2, relIndex), EPS);
+
+		Measurement[] measurements = activeLearning.getPerformanceMeasurements();
+		assertEquals("Rel Number of Label Acquisitions", measurements[measurements.length - 1].getName());
+		assertEquals(2.0 / 3.0, measurements[measurements.length - 1].getValue(), EPS);
+	}
+}
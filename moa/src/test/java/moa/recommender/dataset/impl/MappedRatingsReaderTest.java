@@ -0,0 +1,114 @@
+package moa.recommender.dataset.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.junit.Test;
+
+/**
+ * Tests the ratings read through small mapped windows, the parsing of the
+ * numbers in place, and the binary cache.
+ */
+public class MappedRatingsReaderTest {
+
+	private static final double EPS = 0.0;
+
+	private static File newFile(String contents) throws IOException {
+		File file = File.createTempFile("MappedRatingsReaderTest", ".dat");
+		file.deleteOnExit();
+		MappedRatingsReader.getCacheFile(file).deleteOnExit();
+		write(file, contents);
+		return file;
+	}
+
+	private static void write(File file, String contents) throws IOException {
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), "US-ASCII");
+		try {
+			writer.write(contents);
+		} finally {
+			writer.close();
+		}
+	}
+
+	private static void assertNext(MappedRatingsReader reader, int userID, int itemID, double rating) throws IOException {
+		assertTrue(reader.next());
+		assertEquals(userID, reader.userID());
+		assertEquals(itemID, reader.itemID());
+		assertEquals(rating, reader.rating(), EPS);
+	}
+
+	@Test
+	public void testRecordsAcrossWindows() throws IOException {
+		StringBuilder contents = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			contents.append(i).append("::").append(1000 + i).append("::").append(i % 5).append(".5\n");
+		}
+		File file = newFile(contents.toString());
+		// Windows of 17 bytes cut most lines and cache records in two
+		for (boolean useCache : new boolean[]{true, true, false}) {
+			MappedRatingsReader reader = new MappedRatingsReader(file, useCache, 17);
+			for (int i = 0; i < 100; i++) {
+				assertNext(reader, i, 1000 + i, i % 5 + 0.5);
+			}
+			assertFalse(reader.next());
+			assertEquals(1.0, reader.fractionRead(), EPS);
+			reader.close();
+		}
+		MappedRatingsReader reader = new MappedRatingsReader(file, true, 17);
+		assertTrue(reader.isReadingCache());
+		reader.close();
+	}
+
+	@Test
+	public void testNumberParsing() throws IOException {
+		File file = newFile("user,item,rating\n"
+				+ "1::2::-3.25\n"
+				+ "3\t4\t2.5e-1\n"
+				+ "5,6,1E2,ignored\n"
+				+ "7 8 +4\n"
+				+ "9::10::0.1\r\n"
+				+ "-11::12::-7\n"
+				+ "13::14::-1.5e+1");
+		MappedRatingsReader reader = new MappedRatingsReader(file, false);
+		assertNext(reader, 1, 2, -3.25);
+		assertNext(reader, 3, 4, 0.25);
+		assertNext(reader, 5, 6, 100);
+		assertNext(reader, 7, 8, 4);
+		assertNext(reader, 9, 10, Double.parseDouble("0.1"));
+		assertNext(reader, -11, 12, -7);
+		assertNext(reader, 13, 14, -15);
+		assertFalse(reader.next());
+		reader.close();
+	}
+
+	@Test
+	public void testStaleCacheIsRebuilt() throws IOException {
+		File file = newFile("1::2::3\n4::5::6\n");
+		MappedRatingsReader reader = new MappedRatingsReader(file, true);
+		assertFalse(reader.isReadingCache());
+		while (reader.next()) {
+		}
+		reader.reset();
+		assertTrue(reader.isReadingCache());
+		reader.close();
+
+		write(file, "7::8::9.5\n");
+		file.setLastModified(file.lastModified() + 10000);
+		reader = new MappedRatingsReader(file, true);
+		assertFalse(reader.isReadingCache());
+		assertNext(reader, 7, 8, 9.5);
+		assertFalse(reader.next());
+		reader.reset();
+		assertTrue(reader.isReadingCache());
+		assertNext(reader, 7, 8, 9.5);
+		assertFalse(reader.next());
+		reader.close();
+	}
+}
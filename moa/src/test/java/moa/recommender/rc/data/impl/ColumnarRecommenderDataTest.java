@@ -0,0 +1,249 @@
+package moa.recommender.rc.data.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import moa.recommender.rc.data.RecommenderData;
+import moa.recommender.rc.utils.Pair;
+import moa.recommender.rc.utils.Rating;
+import moa.recommender.rc.utils.RatingsBuffer;
+import moa.recommender.rc.utils.SparseVector;
+
+import org.junit.Test;
+
+/**
+ * Tests that ColumnarRecommenderData holds the ratings MemRecommenderData
+ * holds after the same sequence of updates and removals, and that its rows
+ * on both sides stay consistent when entries and rows are moved on removal.
+ */
+public class ColumnarRecommenderDataTest {
+
+	private static final double EPS = 1e-9;
+
+	private static final int NUM_USERS = 40;
+
+	private static final int NUM_ITEMS = 30;
+
+	private int userID(Random random) {
+		// sparse and negative identifiers as well
+		return (random.nextInt(NUM_USERS) - NUM_USERS / 2) * 7919;
+	}
+
+	private int itemID(Random random) {
+		return (random.nextInt(NUM_ITEMS) - NUM_ITEMS / 2) * 104729;
+	}
+
+	private double rating(Random random) {
+		return 1 + random.nextInt(5) + (random.nextBoolean() ? 0.5 : 0.0);
+	}
+
+	private int randomElement(Random random, Set<Integer> ids) {
+		List<Integer> list = new ArrayList<Integer>(ids);
+		return list.get(random.nextInt(list.size()));
+	}
+
+	private Map<Integer, Double> toMap(SparseVector vector) {
+		Map<Integer, Double> map = new HashMap<Integer, Double>();
+		Iterator<Pair<Integer, Double>> it = vector.iterator();
+		while (it.hasNext()) {
+			Pair<Integer, Double> entry = it.next();
+			map.put(entry.getFirst(), entry.getSecond());
+		}
+		return map;
+	}
+
+	private Map<Integer, Double> toMap(RatingsBuffer buffer) {
+		Map<Integer, Double> map = new HashMap<Integer, Double>();
+		for (int i = 0; i < buffer.size; i++) {
+			map.put(buffer.ids[i], buffer.ratings[i]);
+		}
+		assertEquals(buffer.size, map.size());
+		return map;
+	}
+
+	/**
+	 * Checks that every entry of a row points to its mirror entry on the
+	 * other side, and that the row sums and the index agree with the rows.
+	 */
+	private void assertConsistent(ColumnarRecommenderData.RatingRows rows,
+			ColumnarRecommenderData.RatingRows other) {
+		assertEquals(rows.numRows, rows.index.size());
+		for (int row = 0; row < rows.numRows; row++) {
+			assertEquals(row, rows.rowOf(rows.rowId[row]));
+			double sum = 0;
+			for (int pos = 0; pos < rows.size[row]; pos++) {
+				int otherRow = other.rowOf(rows.ids[row][pos]);
+				assertTrue(otherRow >= 0);
+				int otherPos = rows.mirror[row][pos];
+				assertTrue(otherPos < other.size[otherRow]);
+				assertEquals(rows.rowId[row], other.ids[otherRow][otherPos]);
+				assertEquals(pos, other.mirror[otherRow][otherPos]);
+				assertEquals(rows.ratings[row][pos], other.ratings[otherRow][otherPos], 0.0);
+				sum += rows.ratings[row][pos];
+			}
+			assertEquals(sum, rows.sum[row], EPS);
+		}
+	}
+
+	private void assertSameData(RecommenderData expected, ColumnarRecommenderData actual) {
+		assertConsistent(actual.users, actual.items);
+		assertConsistent(actual.items, actual.users);
+		assertEquals(expected.getNumUsers(), actual.getNumUsers());
+		assertEquals(expected.getNumItems(), actual.getNumItems());
+		assertEquals(expected.getNumRatings(), actual.getNumRatings());
+		assertEquals(expected.getGlobalMean(), actual.getGlobalMean(), EPS);
+		assertEquals(expected.getMinRating(), actual.getMinRating(), 0.0);
+		assertEquals(expected.getMaxRating(), actual.getMaxRating(), 0.0);
+		assertEquals(expected.getUsers(), new HashSet<Integer>(actual.getUsers()));
+		assertEquals(expected.getItems(), new HashSet<Integer>(actual.getItems()));
+		RatingsBuffer buffer = new RatingsBuffer();
+		Map<Integer, Map<Integer, Double>> byUser = new HashMap<Integer, Map<Integer, Double>>();
+		for (int user : expected.getUsers()) {
+			assertTrue(actual.userExists(user));
+			Map<Integer, Double> ratings = toMap(expected.getRatingsUser(user));
+			assertEquals(ratings, toMap(actual.getRatingsUser(user)));
+			actual.getRatingsUser(user, buffer);
+			assertEquals(ratings, toMap(buffer));
+			assertEquals(expected.countRatingsUser(user), actual.countRatingsUser(user));
+			assertEquals(expected.getAvgRatingUser(user), actual.getAvgRatingUser(user), EPS);
+			for (Map.Entry<Integer, Double> entry : ratings.entrySet()) {
+				assertEquals(entry.getValue(), actual.getRating(user, entry.getKey()), 0.0);
+			}
+			byUser.put(user, ratings);
+		}
+		for (int item : expected.getItems()) {
+			assertTrue(actual.itemExists(item));
+			Map<Integer, Double> ratings = toMap(expected.getRatingsItem(item));
+			assertEquals(ratings, toMap(actual.getRatingsItem(item)));
+			actual.getRatingsItem(item, buffer);
+			assertEquals(ratings, toMap(buffer));
+			assertEquals(expected.countRatingsItem(item), actual.countRatingsItem(item));
+			assertEquals(expected.getAvgRatingItem(item), actual.getAvgRatingItem(item), EPS);
+		}
+		// the iterator goes through every rating once
+		int numRatings = 0;
+		Iterator<Rating> it = actual.ratingIterator();
+		while (it.hasNext()) {
+			Rating rating = it.next();
+			assertEquals(byUser.get(rating.userID).get(rating.itemID), rating.rating, 0.0);
+			numRatings++;
+		}
+		assertEquals(expected.getNumRatings(), numRatings);
+	}
+
+	@Test
+	public void testSameRatingsAsMemRecommenderData() {
+		Random random = new Random(1);
+		MemRecommenderData expected = new MemRecommenderData();
+		ColumnarRecommenderData actual = new ColumnarRecommenderData();
+		for (int step = 1; step <= 5000; step++) {
+			if (expected.getNumRatings() == 0 || random.nextInt(3) > 0) {
+				int user = userID(random);
+				int item = itemID(random);
+				double rating = rating(random);
+				expected.setRating(user, item, rating);
+				actual.setRating(user, item, rating);
+			} else {
+				// existing or missing ratings of known users and items
+				int user = randomElement(random, expected.getUsers());
+				int item = randomElement(random, expected.getItems());
+				expected.removeRating(user, item);
+				actual.removeRating(user, item);
+			}
+			if (step % 250 == 0) {
+				assertSameData(expected, actual);
+			}
+		}
+		assertSameData(expected, actual);
+	}
+
+	/**
+	 * Keeps the ratings by user and by item, as MemRecommenderData does, but
+	 * also removes the ratings of a removed user or item from the other side.
+	 */
+	private static class ReferenceData extends MemRecommenderData {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public void removeUser(int userID) {
+			for (int item : new ArrayList<Integer>(getRatingsUser(userID).getIdxs())) {
+				removeRating(userID, item);
+			}
+			super.removeUser(userID);
+			--this.nUsers;
+		}
+
+		@Override
+		public void removeItem(int itemID) {
+			for (int user : new ArrayList<Integer>(getRatingsItem(itemID).getIdxs())) {
+				removeRating(user, itemID);
+			}
+			super.removeItem(itemID);
+			--this.nItems;
+		}
+	}
+
+	@Test
+	public void testRemoveUsersAndItems() {
+		Random random = new Random(2);
+		ReferenceData expected = new ReferenceData();
+		ColumnarRecommenderData actual = new ColumnarRecommenderData();
+		for (int step = 1; step <= 5000; step++) {
+			int action = random.nextInt(10);
+			if (expected.getNumUsers() < 3 || expected.getNumItems() < 3 || action < 6) {
+				int user = userID(random);
+				int item = itemID(random);
+				double rating = rating(random);
+				expected.setRating(user, item, rating);
+				actual.setRating(user, item, rating);
+			} else if (action == 6) {
+				int user = randomElement(random, expected.getUsers());
+				int item = randomElement(random, expected.getItems());
+				expected.removeRating(user, item);
+				actual.removeRating(user, item);
+			} else if (action == 7) {
+				int user = randomElement(random, expected.getUsers());
+				expected.removeUser(user);
+				actual.removeUser(user);
+				assertFalse(actual.userExists(user));
+			} else if (action == 8) {
+				int item = randomElement(random, expected.getItems());
+				expected.removeItem(item);
+				actual.removeItem(item);
+				assertFalse(actual.itemExists(item));
+			} else {
+				// an existing user replaced with new ratings
+				int user = randomElement(random, expected.getUsers());
+				List<Integer> items = new ArrayList<Integer>();
+				List<Double> ratings = new ArrayList<Double>();
+				for (int i = random.nextInt(4); i > 0; i--) {
+					int item = itemID(random);
+					if (!items.contains(item)) {
+						items.add(item);
+						ratings.add(rating(random));
+					}
+				}
+				expected.removeUser(user);
+				expected.addUser(user, items, ratings);
+				// MemRecommenderData.addUser does not count the user
+				expected.nUsers++;
+				actual.addUser(user, items, ratings);
+			}
+			if (step % 100 == 0) {
+				assertSameData(expected, actual);
+			}
+		}
+		assertSameData(expected, actual);
+	}
+}
@@ -0,0 +1,63 @@
+package moa.recommender.rc.predictor.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import moa.recommender.rc.data.RecommenderData;
+import moa.recommender.rc.data.impl.MemRecommenderData;
+
+import org.junit.Test;
+
+/**
+ * Tests that striped batch training on several threads does not depend on
+ * thread scheduling.
+ */
+public class BRISMFPredictorTest {
+
+	private static final int NUM_FEATURES = 10;
+
+	private static RecommenderData newData() {
+		RecommenderData data = new MemRecommenderData();
+		data.disableUpdates(true);
+		Random random = new Random(1);
+		for (int user = 0; user < 200; user++) {
+			for (int item = 0; item < 100; item++) {
+				if (random.nextInt(5) == 0) {
+					data.setRating(user, item, 1 + (user % 5 + item % 3 + random.nextInt(2)) % 5);
+				}
+			}
+		}
+		data.disableUpdates(false);
+		return data;
+	}
+
+	private static BRISMFPredictor trainStriped(int numThreads) {
+		BRISMFPredictor predictor = new BRISMFPredictor(NUM_FEATURES, newData(), 0.01, 0.02, false);
+		predictor.setNumThreads(numThreads);
+		predictor.setStriped(true);
+		predictor.train();
+		return predictor;
+	}
+
+	@Test
+	public void testStripedTrainingIsReproducible() {
+		BRISMFPredictor first = trainStriped(3);
+		BRISMFPredictor second = trainStriped(3);
+		assertEquals(first.nUserRows, second.nUserRows);
+		assertEquals(first.nItemRows, second.nItemRows);
+		assertArrayEquals(Arrays.copyOf(first.userRowID, first.nUserRows),
+				Arrays.copyOf(second.userRowID, second.nUserRows));
+		assertArrayEquals(Arrays.copyOf(first.itemRowID, first.nItemRows),
+				Arrays.copyOf(second.itemRowID, second.nItemRows));
+		assertArrayEquals(Arrays.copyOf(first.userFeature, first.nUserRows * NUM_FEATURES),
+				Arrays.copyOf(second.userFeature, second.nUserRows * NUM_FEATURES), 0.0f);
+		assertArrayEquals(Arrays.copyOf(first.itemFeature, first.nItemRows * NUM_FEATURES),
+				Arrays.copyOf(second.itemFeature, second.nItemRows * NUM_FEATURES), 0.0f);
+		assertEquals(first.getNumTrainedRatings(), second.getNumTrainedRatings());
+		assertTrue(first.getNumTrainedRatings() > 0);
+	}
+}
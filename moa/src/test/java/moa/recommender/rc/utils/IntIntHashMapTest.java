@@ -0,0 +1,145 @@
+package moa.recommender.rc.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests that IntIntHashMap maps keys as a HashMap does when entries are
+ * removed from the middle of collision chains, from chains wrapping around
+ * the end of the table, and while the table is rehashed.
+ */
+public class IntIntHashMapTest {
+
+	/** Table size of a map created for 16 entries */
+	private static final int CAPACITY = 32;
+
+	private static int home(int key) {
+		return Hash.hashCode(key) & (CAPACITY - 1);
+	}
+
+	/** Returns keys whose home slot is the given one */
+	private static List<Integer> keysWithHome(int slot, int numKeys) {
+		List<Integer> keys = new ArrayList<Integer>();
+		for (int key = 0; keys.size() < numKeys; key++) {
+			if (home(key) == slot) {
+				keys.add(key);
+			}
+		}
+		return keys;
+	}
+
+	private static void assertSameMap(Map<Integer, Integer> expected, IntIntHashMap actual, int maxKey) {
+		assertEquals(expected.size(), actual.size());
+		assertEquals(expected.isEmpty(), actual.isEmpty());
+		for (int key = -1; key <= maxKey; key++) {
+			Integer value = expected.get(key);
+			assertEquals(value != null, actual.containsKey(key));
+			assertEquals(value != null ? value : IntIntHashMap.NO_VALUE, actual.get(key));
+		}
+	}
+
+	/**
+	 * Removes the keys of two overlapping chains in shuffled orders,
+	 * for chains starting in the middle and at the end of the table.
+	 */
+	private void checkChainRemovals(int firstSlot) {
+		int secondSlot = (firstSlot + 1) & (CAPACITY - 1);
+		List<Integer> keys = new ArrayList<Integer>();
+		// both chains share the slots after the first home slot
+		keys.addAll(keysWithHome(firstSlot, 5));
+		keys.addAll(keysWithHome(secondSlot, 4));
+		int maxKey = Collections.max(keys);
+		Random random = new Random(firstSlot);
+		for (int round = 0; round < 50; round++) {
+			IntIntHashMap map = new IntIntHashMap(16);
+			Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+			Collections.shuffle(keys, random);
+			for (int key : keys) {
+				map.put(key, key + 1);
+				expected.put(key, key + 1);
+			}
+			assertSameMap(expected, map, maxKey);
+			Collections.shuffle(keys, random);
+			for (int key : keys) {
+				assertEquals(key + 1, map.remove(key));
+				expected.remove(key);
+				assertEquals(IntIntHashMap.NO_VALUE, map.remove(key));
+				assertSameMap(expected, map, maxKey);
+			}
+			assertTrue(map.isEmpty());
+		}
+	}
+
+	@Test
+	public void testRemoveInsideCollisionChains() {
+		checkChainRemovals(5);
+	}
+
+	@Test
+	public void testRemoveInsideChainsWrappingAround() {
+		// the chains run past the last slot into the first ones
+		checkChainRemovals(CAPACITY - 3);
+		checkChainRemovals(CAPACITY - 1);
+	}
+
+	@Test
+	public void testRandomUpdatesAcrossRehash() {
+		Random random = new Random(1);
+		IntIntHashMap map = new IntIntHashMap();
+		Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+		int maxKey = 2000;
+		for (int step = 1; step <= 20000; step++) {
+			// the number of keys grows and shrinks, rehashing the map as it grows
+			int range = step < 10000 ? 50 + step / 5 : maxKey - (step - 10000) / 6;
+			int key = random.nextInt(range);
+			if (random.nextInt(3) > 0) {
+				Integer old = expected.put(key, step);
+				assertEquals(old != null ? old : IntIntHashMap.NO_VALUE, map.put(key, step));
+			} else {
+				Integer old = expected.remove(key);
+				assertEquals(old != null ? old : IntIntHashMap.NO_VALUE, map.remove(key));
+			}
+			if (step % 1000 == 0) {
+				assertSameMap(expected, map, maxKey);
+			}
+		}
+		map.clear();
+		assertTrue(map.isEmpty());
+		assertFalse(map.containsKey(random.nextInt(maxKey)));
+	}
+
+	@Test
+	public void testRemoveAfterRehash() {
+		IntIntHashMap map = new IntIntHashMap(16);
+		Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+		// collisions in the small table, spread over the grown one
+		List<Integer> keys = keysWithHome(7, 12);
+		keys.addAll(keysWithHome(8, 12));
+		int maxKey = Collections.max(keys);
+		for (int i = 0; i < keys.size(); i++) {
+			map.put(keys.get(i), i);
+			expected.put(keys.get(i), i);
+			if (i % 4 == 3) {
+				// removals before and after the table grows past 16 entries
+				map.remove(keys.get(i - 1));
+				expected.remove(keys.get(i - 1));
+			}
+			assertSameMap(expected, map, maxKey);
+		}
+		for (int i = 0; i < keys.size(); i += 2) {
+			map.remove(keys.get(i));
+			expected.remove(keys.get(i));
+			assertSameMap(expected, map, maxKey);
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package moa.streams;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import moa.core.SerializeUtils;
+
+import org.junit.Test;
+
+/**
+ * Tests that a serialized ArffFileStream continues with the instance it
+ * would have returned next.
+ */
+public class ArffFileStreamTest {
+
+	private File writeFile(String newline, boolean sparse) throws Exception {
+		File file = File.createTempFile("ArffFileStreamTest", ".arff");
+		file.deleteOnExit();
+		Random random = new Random(1);
+		StringBuilder sb = new StringBuilder();
+		sb.append("@relation test").append(newline).append(newline);
+		sb.append("@attribute a numeric").append(newline);
+		sb.append("@attribute b {x,y}").append(newline);
+		sb.append("@attribute c numeric").append(newline);
+		sb.append("@data").append(newline);
+		for (int i = 0; i < 2000; i++) {
+			// comments and blank lines between instances
+			if (i % 5 == 0) {
+				sb.append("% comment").append(newline);
+			}
+			if (i % 7 == 0) {
+				sb.append(newline);
+			}
+			if (sparse) {
+				sb.append("{0 ").append(random.nextInt(100)).append(",2 ").append(1 + random.nextInt(9)).append("}");
+			} else {
+				sb.append(random.nextInt(100)).append(random.nextBoolean() ? ",x," : ",y,").append(random.nextInt(10));
+			}
+			sb.append(newline);
+		}
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file));
+		writer.write(sb.toString());
+		writer.close();
+		return file;
+	}
+
+	private void checkResume(File file) throws Exception {
+		ArffFileStream reference = new ArffFileStream(file.getPath(), -1);
+		List<String> instances = new ArrayList<String>();
+		while (reference.hasMoreInstances()) {
+			instances.add(reference.nextInstance().getData().toString());
+		}
+		assertEquals(2000, instances.size());
+
+		ArffFileStream stream = new ArffFileStream(file.getPath(), -1);
+		int read = 0;
+		while (stream.hasMoreInstances()) {
+			if (read % 293 == 0) {
+				stream = (ArffFileStream) SerializeUtils.copyObject(stream);
+				assertTrue(stream.resumeOffset >= 0);
+			}
+			assertEquals("instance " + read, instances.get(read), stream.nextInstance().getData().toString());
+			read++;
+		}
+		assertEquals(instances.size(), read);
+		stream = (ArffFileStream) SerializeUtils.copyObject(stream);
+		assertFalse(stream.hasMoreInstances());
+	}
+
+	@Test
+	public void testResumeDense() throws Exception {
+		checkResume(writeFile("\n", false));
+	}
+
+	@Test
+	public void testResumeCRLF() throws Exception {
+		checkResume(writeFile("\r\n", false));
+	}
+
+	@Test
+	public void testResumeSparse() throws Exception {
+		checkResume(writeFile("\n", true));
+	}
+}
@@ -0,0 +1,73 @@
+package moa.streams.filters;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import moa.streams.generators.RandomTreeGenerator;
+
+import org.junit.Test;
+
+import com.yahoo.labs.samoa.instances.Instance;
+import com.yahoo.labs.samoa.instances.InstancesHeader;
+import com.yahoo.labs.samoa.instances.SparseInstance;
+
+/**
+ * Test HashingTrickFilter
+ */
+public class HashingTrickFilterTest {
+	private static double EPS = 0.00000001;
+
+	private HashingTrickFilter newFilter(RandomTreeGenerator stream, int numBuckets, boolean keepNumeric) {
+		HashingTrickFilter filter = new HashingTrickFilter();
+		filter.numBucketsOption.setValue(numBuckets);
+		filter.keepNumericOption.setValue(keepNumeric);
+		filter.unsignedOption.setValue(true);
+		filter.setInputStream(stream);
+		return filter;
+	}
+
+	private RandomTreeGenerator newStream() {
+		RandomTreeGenerator stream = new RandomTreeGenerator();
+		stream.prepareForUse();
+		return stream;
+	}
+
+	@Test
+	public void testHeader() {
+		RandomTreeGenerator stream = newStream();
+		HashingTrickFilter filter = newFilter(stream, 16, true);
+		InstancesHeader header = filter.getHeader();
+		int numNumeric = stream.numNumericsOption.getValue();
+		assertEquals(numNumeric + 16 + 1, header.numAttributes());
+		assertEquals(header.numAttributes() - 1, header.classIndex());
+		assertEquals(stream.getHeader().numClasses(), header.numClasses());
+		assertEquals("hash0", header.attribute(numNumeric).name());
+	}
+
+	@Test
+	public void testFilterInstance() {
+		RandomTreeGenerator stream = newStream();
+		HashingTrickFilter filter = newFilter(stream, 8, false);
+		RandomTreeGenerator copy = newStream();
+		for (int i = 0; i < 1000; i++) {
+			Instance filtered = filter.nextInstance().getData();
+			Instance inst = copy.nextInstance().getData();
+			assertTrue(filtered instanceof SparseInstance);
+			assertEquals(9, filtered.numAttributes());
+			assertEquals(inst.classValue(), filtered.classValue(), EPS);
+			// without signs, every nominal value adds 1 and numeric values their value
+			double expected = 0;
+			for (int j = 0; j < inst.numAttributes(); j++) {
+				if (j != inst.classIndex()) {
+					expected += inst.attribute(j).isNominal() ? 1 : inst.value(j);
+				}
+			}
+			double sum = 0;
+			for (int j = 0; j < filtered.numAttributes(); j++) {
+				if (j != filtered.classIndex()) {
+					sum += filtered.value(j);
+				}
+			}
+			assertEquals(expected, sum, EPS);
+		}
+	}
+}
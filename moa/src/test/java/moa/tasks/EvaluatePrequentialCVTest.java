@@ -0,0 +1,63 @@
+package moa.tasks;
+
+import static org.junit.Assert.assertEquals;
+
+import moa.evaluation.preview.LearningCurve;
+
+import org.junit.Test;
+
+/**
+ * Tests that EvaluatePrequentialCV gives the same measurements when the
+ * learner of every fold is tested and trained on its own thread as when the
+ * folds are run one after the other, for every validation methodology.
+ */
+public class EvaluatePrequentialCVTest {
+
+	private static final String LEARNER = "trees.HoeffdingTree";
+
+	private static final String STREAM = "(generators.RandomTreeGenerator -r 5 -i 6)";
+
+	private static final String EVALUATOR = "WindowClassificationPerformanceEvaluator -w 300";
+
+	private static final int NUM_INSTANCES = 3000;
+
+	private static final int SAMPLE_FREQUENCY = 500;
+
+	private static boolean isTiming(String name) {
+		return name.startsWith("evaluation time") || name.equals("model cost (RAM-Hours)");
+	}
+
+	private LearningCurve evaluate(int methodology, boolean parallelFolds) {
+		EvaluatePrequentialCV task = new EvaluatePrequentialCV();
+		task.getOptions().setViaCLIString("-l (" + LEARNER + ") -s " + STREAM + " -e (" + EVALUATOR
+				+ ") -i " + NUM_INSTANCES + " -f " + SAMPLE_FREQUENCY + " -w 5 -a "
+				+ task.validationMethodologyOption.getOptionLabels()[methodology]
+				+ (parallelFolds ? " -p" : ""));
+		task.prepareForUse();
+		return (LearningCurve) task.doTask();
+	}
+
+	private void assertSameCurve(String methodology, LearningCurve expected, LearningCurve actual) {
+		assertEquals(NUM_INSTANCES / SAMPLE_FREQUENCY, expected.numEntries());
+		assertEquals(expected.numEntries(), actual.numEntries());
+		assertEquals(expected.getMeasurementNameCount(), actual.getMeasurementNameCount());
+		for (int m = 0; m < expected.getMeasurementNameCount(); m++) {
+			String name = expected.getMeasurementName(m);
+			if (!isTiming(name)) {
+				for (int entry = 0; entry < expected.numEntries(); entry++) {
+					assertEquals(methodology + ": " + name + " at row " + entry,
+							expected.getMeasurement(entry, m),
+							actual.getMeasurement(entry, actual.getMeasurementIndex(name)), 0.0);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testParallelFoldsMatchSequentialFolds() {
+		String[] methodologies = new EvaluatePrequentialCV().validationMethodologyOption.getOptionLabels();
+		for (int i = 0; i < methodologies.length; i++) {
+			assertSameCurve(methodologies[i], evaluate(i, false), evaluate(i, true));
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package moa.tasks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import moa.evaluation.preview.LearningCurve;
+
+import org.junit.Test;
+
+/**
+ * Tests that the rows of every learner evaluated by EvaluatePrequentialMulti
+ * are the rows EvaluatePrequential gives for that learner alone, on the same
+ * stream, with and without learner threads.
+ */
+public class EvaluatePrequentialMultiTest {
+
+	private static final String[] LEARNERS = {"bayes.NaiveBayes", "trees.HoeffdingTree", "meta.OzaBag -s 3"};
+
+	private static final String STREAM = "(generators.RandomTreeGenerator -r 3 -i 4)";
+
+	private static final String EVALUATOR = "WindowClassificationPerformanceEvaluator -w 300";
+
+	private static final int NUM_INSTANCES = 3000;
+
+	private static final int SAMPLE_FREQUENCY = 500;
+
+	private static boolean isTiming(String name) {
+		return name.startsWith("evaluation time") || name.equals("model cost (RAM-Hours)");
+	}
+
+	private LearningCurve evaluateAlone(String learner) {
+		EvaluatePrequential task = new EvaluatePrequential();
+		task.getOptions().setViaCLIString("-l (" + learner + ") -s " + STREAM + " -e (" + EVALUATOR
+				+ ") -i " + NUM_INSTANCES + " -f " + SAMPLE_FREQUENCY);
+		task.prepareForUse();
+		return (LearningCurve) task.doTask();
+	}
+
+	private LearningCurve evaluateTogether(int batchSize, int numberOfJobs) {
+		StringBuilder learners = new StringBuilder();
+		for (String learner : LEARNERS) {
+			learners.append(learners.length() > 0 ? "," : "").append(learner);
+		}
+		EvaluatePrequentialMulti task = new EvaluatePrequentialMulti();
+		task.getOptions().setViaCLIString("-l (" + learners + ") -s " + STREAM + " -e (" + EVALUATOR
+				+ ") -i " + NUM_INSTANCES + " -f " + SAMPLE_FREQUENCY + " -b " + batchSize
+				+ " -j " + numberOfJobs);
+		task.prepareForUse();
+		return (LearningCurve) task.doTask();
+	}
+
+	private void assertSameRows(LearningCurve[] expected, LearningCurve actual) {
+		int learnerIndex = actual.getMeasurementIndex("learner id");
+		int[] numRows = new int[LEARNERS.length];
+		for (int entry = 0; entry < actual.numEntries(); entry++) {
+			int learner = (int) actual.getMeasurement(entry, learnerIndex);
+			LearningCurve alone = expected[learner];
+			int row = numRows[learner]++;
+			assertTrue(row < alone.numEntries());
+			for (int m = 0; m < alone.getMeasurementNameCount(); m++) {
+				String name = alone.getMeasurementName(m);
+				if (!isTiming(name)) {
+					assertEquals(LEARNERS[learner] + ": " + name + " at row " + row,
+							alone.getMeasurement(row, m),
+							actual.getMeasurement(entry, actual.getMeasurementIndex(name)), 0.0);
+				}
+			}
+		}
+		for (int i = 0; i < LEARNERS.length; i++) {
+			assertEquals(expected[i].numEntries(), numRows[i]);
+		}
+	}
+
+	@Test
+	public void testRowsMatchSeparateRuns() {
+		LearningCurve[] alone = new LearningCurve[LEARNERS.length];
+		for (int i = 0; i < LEARNERS.length; i++) {
+			alone[i] = evaluateAlone(LEARNERS[i]);
+			assertEquals(NUM_INSTANCES / SAMPLE_FREQUENCY, alone[i].numEntries());
+		}
+		// batches that divide the sample frequency and batches cut by it
+		assertSameRows(alone, evaluateTogether(100, 0));
+		assertSameRows(alone, evaluateTogether(300, 2));
+		assertSameRows(alone, evaluateTogether(1000, 3));
+	}
+}
@@ -0,0 +1,126 @@
+package moa.tasks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+
+import moa.evaluation.preview.LearningCurve;
+import moa.evaluation.preview.LearningCurveRow;
+
+import org.junit.Test;
+
+/**
+ * Tests that a parameter sweep combines the learning curves of its tasks
+ * ordered by parameter value, and that tasks run concurrently by RunTasks
+ * write to output files named after their own parameter value.
+ */
+public class ParameterSweepTest {
+
+	private static final String PARAMETER = "parameter";
+
+	/** Returns a curve of the given instances whose measurement is derived from them */
+	private LearningCurve curve(String measurement, int... instances) {
+		LearningCurve curve = new LearningCurve("learning evaluation instances");
+		LearningCurveRow row = new LearningCurveRow(curve);
+		for (int n : instances) {
+			row.add(0, n);
+			row.add(measurement, n / 10.0);
+			row.insert();
+		}
+		return curve;
+	}
+
+	private int countLines(File file) throws IOException {
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			int lines = 0;
+			while (reader.readLine() != null) {
+				lines++;
+			}
+			return lines;
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testFormatValue() {
+		double value = 0.0;
+		for (int i = 0; i < 3; i++) {
+			value += 0.1;
+		}
+		assertEquals("0.3", ParameterSweep.formatValue(value, 0.0, 0.1));
+		assertEquals("0.0", ParameterSweep.formatValue(0.0, 0.0, 0.1));
+		assertEquals("3", ParameterSweep.formatValue(3.0, 1.0, 1.0));
+		assertEquals("30", ParameterSweep.formatValue(30.0, 10.0, 10.0));
+		// a first value more precise than the step
+		assertEquals("0.15", ParameterSweep.formatValue(0.05 + 0.1, 0.05, 0.1));
+		assertEquals("0.0025", ParameterSweep.formatValue(0.001 + 0.0015, 0.001, 0.0015));
+	}
+
+	@Test
+	public void testCombineResultsOrdering() {
+		// the values as given, not increasing, with a task that did not finish
+		double[] values = {0.2, 0.0, 0.5, 0.1};
+		Object[] results = {curve("a", 100, 200, 300), curve("a", 100, 200), null, curve("b", 100, 200)};
+		LearningCurve combined = (LearningCurve) ParameterSweep.combineResults(results, values, PARAMETER);
+		assertEquals(PARAMETER, combined.getOrderingMeasurementName());
+		assertEquals(7, combined.numEntries());
+		double[] parameters = {0.0, 0.0, 0.1, 0.1, 0.2, 0.2, 0.2};
+		double[] instances = {100, 200, 100, 200, 100, 200, 300};
+		int instancesIndex = combined.getMeasurementIndex("learning evaluation instances");
+		int aIndex = combined.getMeasurementIndex("a");
+		int bIndex = combined.getMeasurementIndex("b");
+		for (int entry = 0; entry < combined.numEntries(); entry++) {
+			assertEquals(parameters[entry], combined.getMeasurement(entry, 0), 0.0);
+			assertEquals(instances[entry], combined.getMeasurement(entry, instancesIndex), 0.0);
+			// measurements a curve does not have are missing from its entries
+			boolean hasB = parameters[entry] == 0.1;
+			assertEquals(hasB ? Double.NaN : instances[entry] / 10.0, combined.getMeasurement(entry, aIndex), 0.0);
+			assertEquals(hasB ? instances[entry] / 10.0 : Double.NaN, combined.getMeasurement(entry, bIndex), 0.0);
+		}
+		assertNull(ParameterSweep.combineResults(new Object[2], new double[2], PARAMETER));
+		// results other than learning curves are not combined
+		Object last = "result";
+		assertEquals(last, ParameterSweep.combineResults(new Object[]{curve("a", 100), last},
+				new double[]{0.0, 1.0}, PARAMETER));
+	}
+
+	@Test
+	public void testOutputFilesIsolatedWithJobs() throws IOException {
+		File dir = File.createTempFile("ParameterSweepTest", "");
+		dir.delete();
+		assertTrue(dir.mkdir());
+		File dumpFile = new File(dir, "dump.csv");
+		RunTasks task = new RunTasks();
+		// stepping by 0.1 gives 0.30000000000000004 as the last value
+		task.getOptions().setViaCLIString("-t (EvaluatePrequential -l trees.HoeffdingTree"
+				+ " -s (generators.RandomTreeGenerator -r 3 -i 4) -i 1000 -f 500 -d "
+				+ dumpFile.getPath() + ") -p t -f 0.0 -l 0.35 -i 0.1 -j 2");
+		task.prepareForUse();
+		LearningCurve combined = (LearningCurve) task.doTask();
+		assertFalse(dumpFile.exists());
+		String[] values = {"0.0", "0.1", "0.2", "0.3"};
+		for (String value : values) {
+			File file = new File(dir, "dump_" + value + ".csv");
+			assertTrue(file.getName(), file.exists());
+			// the header and the two entries of its own task
+			assertEquals(file.getName(), 3, countLines(file));
+			assertTrue(file.delete());
+		}
+		assertEquals(0, dir.list().length);
+		assertTrue(dir.delete());
+		assertEquals(2 * values.length, combined.numEntries());
+		int instancesIndex = combined.getMeasurementIndex("learning evaluation instances");
+		for (int entry = 0; entry < combined.numEntries(); entry++) {
+			assertEquals(Double.parseDouble(values[entry / 2]), combined.getMeasurement(entry, 0), 1e-9);
+			assertEquals(500 * (1 + entry % 2), combined.getMeasurement(entry, instancesIndex), 0.0);
+		}
+	}
+}